@@ -17,12 +17,18 @@ package uk.org.raje.maven.plugin.msbuild;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 
+import uk.org.raje.maven.plugin.msbuild.configuration.BuildConfiguration;
+import uk.org.raje.maven.plugin.msbuild.configuration.BuildPlatform;
+import uk.org.raje.maven.plugin.msbuild.parser.ProjectDependencyGraph;
+import uk.org.raje.maven.plugin.msbuild.parser.VCProject;
+
 /**
  * Abstract base class for MSBuild Mojos.
  */
@@ -35,6 +41,13 @@ public abstract class AbstractMSBuildMojo extends AbstractMSBuildPluginMojo
     {
         getLog().debug( "MSBuild path: " + msbuildPath );
         getLog().debug( "Platforms: " + platforms );
+        getLog().debug( "Maximum concurrent builds: " + msbuildMaxConcurrentBuilds );
+        getLog().debug( "Single MSBuild invocation: " + msbuildSingleInvocation );
+        getLog().debug( "Project scheduler: " + msbuildProjectScheduler );
+        getLog().debug( "Skip up-to-date builds: " + msbuildSkipUpToDate );
+        getLog().debug( "Failure policy: " + msbuildFailurePolicy );
+        getLog().debug( "Output encoding: " + getOutputCharset() );
+        getLog().debug( "Output log directory: " + getOutputLogDirectory() );
     }
 
     /**
@@ -102,10 +115,32 @@ public abstract class AbstractMSBuildMojo extends AbstractMSBuildPluginMojo
             msbuild.setPlatforms( platforms );
             msbuild.setTargets( targets );
             msbuild.setEnvironment( environment );
+            msbuild.setMaxConcurrentBuilds( msbuildMaxConcurrentBuilds );
+            msbuild.setFailurePolicy( msbuildFailurePolicy );
+            msbuild.setOutputCharset( getOutputCharset() );
+            msbuild.setOutputLogDirectory( getOutputLogDirectory() );
+            if ( msbuildSingleInvocation )
+            {
+                msbuild.setTraversalProject( new File( mavenProject.getBuild().getDirectory(), TRAVERSAL_PROJECT ) );
+            }
+            if ( msbuildProjectScheduler )
+            {
+                msbuild.setDependencyGraphs( getDependencyGraphs() );
+                msbuild.setProjectDurationsFile( new File( mavenProject.getBuild().getDirectory(), 
+                        PROJECT_DURATIONS ) );
+            }
             if ( msbuild.execute() != 0 )
             {
+                StringBuilder failed = new StringBuilder();
+                for ( MSBuildExecutor.CellResult cell : msbuild.getCellResults() )
+                {
+                    if ( cell.getExitCode() != 0 && !cell.isCancelled() )
+                    {
+                        failed.append( failed.length() == 0 ? "" : ", " ).append( cell );
+                    }
+                }
                 throw new MojoFailureException(
-                        "MSBuild execution failed, see log for details." );
+                        "MSBuild execution failed for " + failed + ", see log for details." );
             }
         }
         catch ( IOException ioe ) 
@@ -120,10 +155,57 @@ public abstract class AbstractMSBuildMojo extends AbstractMSBuildPluginMojo
         }
     }
 
+    /**
+     * Get the dependency graph of the solution for every platform/configuration pair, for building one project at a
+     * time.
+     * @return the graphs keyed by &lt;platform&gt;-&lt;configuration&gt;, or null if the projects cannot be built 
+     * one at a time
+     * @throws MojoExecutionException if the projects cannot be parsed or depend on each other in a cycle
+     */
+    private Map<String, ProjectDependencyGraph> getDependencyGraphs() throws MojoExecutionException
+    {
+        if ( !MSBuildPackaging.isSolution( mavenProject.getPackaging() ) )
+        {
+            getLog().info( "Project scheduler only applies to solutions, building " + projectFile + " with MSBuild" );
+            return null;
+        }
+
+        Map<String, ProjectDependencyGraph> dependencyGraphs = new HashMap<String, ProjectDependencyGraph>();
+        for ( BuildPlatform platform : platforms )
+        {
+            for ( BuildConfiguration configuration : platform.getConfigurations() )
+            {
+                ProjectDependencyGraph graph = getDependencyGraph( platform, configuration );
+                for ( VCProject vcProject : graph.getProjects() )
+                {
+                    if ( vcProject.getTargetName() == null )
+                    {
+                        getLog().info( "Project " + vcProject.getName() + " has no target name, building " 
+                                + projectFile + " with MSBuild" );
+                        return null;
+                    }
+                }
+                getLog().debug( "Longest dependency chain for platform=" + platform.getName() + ", configuration=" 
+                        + configuration.getName() + ": " + graph.getCriticalPath() );
+                dependencyGraphs.put( platform.getName() + "-" + configuration.getName(), graph );
+            }
+        }
+        return dependencyGraphs;
+    }
 
     /**
      * The name of the environment variable that can store the location of
      * MSBuild.
      */
     private static final String ENV_MSBUILD_PATH = "MSBUILD_PATH";
+
+    /**
+     * The name of the traversal project generated in the build directory when msbuildSingleInvocation is set.
+     */
+    private static final String TRAVERSAL_PROJECT = "msbuild-traversal.proj";
+
+    /**
+     * The file in the build directory that records how long each project took to build with msbuildProjectScheduler.
+     */
+    private static final String PROJECT_DURATIONS = "msbuild-project-durations.properties";
 }
@@ -18,12 +18,18 @@ package uk.org.raje.maven.plugin.msbuild;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
 import java.security.InvalidParameterException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -35,18 +41,23 @@ import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
-import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.SelectorUtils;
 import org.xml.sax.SAXException;
 
 import uk.org.raje.maven.plugin.msbuild.configuration.BuildConfiguration;
 import uk.org.raje.maven.plugin.msbuild.configuration.BuildPlatform;
 import uk.org.raje.maven.plugin.msbuild.configuration.CppCheckConfiguration;
 import uk.org.raje.maven.plugin.msbuild.configuration.CxxTestConfiguration;
+import uk.org.raje.maven.plugin.msbuild.configuration.FailurePolicy;
+import uk.org.raje.maven.plugin.msbuild.configuration.LogOverflowPolicy;
 import uk.org.raje.maven.plugin.msbuild.configuration.SonarConfiguration;
 import uk.org.raje.maven.plugin.msbuild.configuration.VeraConfiguration;
 import uk.org.raje.maven.plugin.msbuild.configuration.VersionInfoConfiguration;
+import uk.org.raje.maven.plugin.msbuild.parser.ProjectDependencyGraph;
 import uk.org.raje.maven.plugin.msbuild.parser.VCProject;
 import uk.org.raje.maven.plugin.msbuild.parser.VCProjectHolder;
+import uk.org.raje.maven.plugin.msbuild.trace.BuildTimeline;
 
 /**
  * Abstract base class for the msbuild-maven-plugin which defines all configuration properties exposed.
@@ -61,6 +72,20 @@ public abstract class AbstractMSBuildPluginMojo extends AbstractMojo
         CMDLINE_RUNNER_LOGHANDLER.setLog( log );
     }
 
+    /**
+     * Return the asynchronous log while a goal is executing with msbuildLogBufferSize set, the Maven log otherwise.
+     * @return the Log to write to
+     */
+    @Override
+    public Log getLog()
+    {
+        if ( asyncLog != null )
+        {
+            return asyncLog;
+        }
+        return super.getLog();
+    }
+
     @Override
     public final void execute() throws MojoExecutionException, MojoFailureException
     {
@@ -96,8 +121,167 @@ public abstract class AbstractMSBuildPluginMojo extends AbstractMojo
             cxxTest.setIgnoreTestFailure( true );
         }
 
+        outputCharset = findOutputCharset();
+        if ( !CpuTokenPool.getSessionPool().configure( msbuildCpuTokens ) )
+        {
+            getLog().warn( "Ignoring msbuildCpuTokens=" + msbuildCpuTokens + ", the CPU token pool of this session "
+                    + "was already set to " + CpuTokenPool.getSessionPool().getCapacity() + " tokens" );
+        }
+        VCProjectHolder.checkForChanges();
+
+        BuildTimeline timeline = BuildTimeline.getInstance();
+        if ( msbuildTimeline )
+        {
+            timeline.setEnabled( true );
+        }
+        BuildTimeline.Span mojoSpan = timeline.start( getClass().getSimpleName(), "mojo" )
+                .arg( "project", mavenProject.getArtifactId() );
+
+        startAsyncLog();
+
         // Configuration fixed, call child to do real work
-        doExecute();
+        try
+        {
+            doExecute();
+        }
+        finally
+        {
+            stopAsyncLog();
+            mojoSpan.end();
+            if ( msbuildTimeline )
+            {
+                writeTimeline( timeline );
+            }
+            CpuTokenPool cpuTokenPool = CpuTokenPool.getSessionPool();
+            if ( cpuTokenPool.getTotalWaitTime() > 0 )
+            {
+                getLog().info( "CPU token pool: " + cpuTokenPool );
+            }
+            else
+            {
+                getLog().debug( "CPU token pool: " + cpuTokenPool );
+            }
+        }
+    }
+
+    /**
+     * Get the directory process output is written to when msbuildOutputToFiles is set.
+     * @return the output log directory, or null if output goes to the Maven log
+     */
+    protected File getOutputLogDirectory()
+    {
+        if ( !msbuildOutputToFiles )
+        {
+            return null;
+        }
+        return new File( mavenProject.getBuild().getDirectory(), OUTPUT_LOG_DIRECTORY );
+    }
+
+    /**
+     * Open a file for the full output of one tool run, when msbuildOutputToFiles is set.
+     * @param name the name of the file without extension, for example the tool and project
+     * @param log the Log that warnings, errors and the summary are also written to, for example the buffered Log of
+     * a run made concurrently with others
+     * @return a Log writing to target/logs/&lt;name&gt;.log, or null if output goes to the Maven log
+     * @throws MojoExecutionException if the file cannot be created
+     */
+    FileLog openOutputLog( String name, Log log ) throws MojoExecutionException
+    {
+        File outputLogDirectory = getOutputLogDirectory();
+        if ( outputLogDirectory == null )
+        {
+            return null;
+        }
+
+        File logFile = new File( outputLogDirectory, name + ".log" );
+        try
+        {
+            return new FileLog( name, logFile, log );
+        }
+        catch ( IOException ioe )
+        {
+            throw new MojoExecutionException( "Unable to create output log " + logFile, ioe );
+        }
+    }
+
+    /**
+     * Get the charset that MSBuild and tool output is decoded with.
+     * @return the charset configured with msbuildOutputEncoding or the platform default
+     */
+    protected Charset getOutputCharset()
+    {
+        if ( outputCharset == null )
+        {
+            return Charset.defaultCharset();
+        }
+        return outputCharset;
+    }
+
+    private Charset findOutputCharset() throws MojoExecutionException
+    {
+        if ( msbuildOutputEncoding == null || msbuildOutputEncoding.isEmpty() )
+        {
+            return Charset.defaultCharset();
+        }
+
+        try
+        {
+            if ( Charset.isSupported( msbuildOutputEncoding ) )
+            {
+                return Charset.forName( msbuildOutputEncoding );
+            }
+        }
+        catch ( IllegalCharsetNameException icne )
+        {
+            // Reported below
+        }
+        throw new MojoExecutionException( "Unsupported output encoding " + msbuildOutputEncoding );
+    }
+
+    /**
+     * Route the output of this goal through an {@link AsyncLog}, by way of {@link #getLog()}, so that the threads 
+     * pumping process output do not wait on the Maven console. Standard Java logging is left going straight to the
+     * Maven log, the handlers relaying it are shared by every goal running in the session.
+     */
+    private void startAsyncLog()
+    {
+        if ( msbuildLogBufferSize <= 0 )
+        {
+            return;
+        }
+
+        Log mavenLog = super.getLog();
+        File spillFile = new File( mavenProject.getBuild().getDirectory(), LOG_SPILL_FILE );
+        asyncLog = new AsyncLog( mavenLog, msbuildLogBufferSize, msbuildLogOverflowPolicy, spillFile );
+    }
+
+    /**
+     * Write out everything queued in the {@link AsyncLog} and go back to logging straight to Maven.
+     */
+    private void stopAsyncLog()
+    {
+        if ( asyncLog == null )
+        {
+            return;
+        }
+
+        AsyncLog toClose = asyncLog;
+        asyncLog = null;
+        toClose.close();
+    }
+
+    private void writeTimeline( BuildTimeline timeline )
+    {
+        File timelineFile = new File( mavenProject.getBuild().getDirectory(), TIMELINE_FILE );
+        try
+        {
+            timeline.writeTo( timelineFile );
+            getLog().debug( "Build timeline written to " + timelineFile );
+        }
+        catch ( IOException ioe )
+        {
+            getLog().warn( "Unable to write build timeline " + timelineFile, ioe );
+        }
     }
 
     /**
@@ -230,16 +414,137 @@ public abstract class AbstractMSBuildPluginMojo extends AbstractMojo
     }
 
     /**
-     * Generate a list of source files in the project directory and sub-directories
+     * Generate a list of the source files of a project. These are the files listed by its {@code <ClCompile>} items,
+     * and {@code <ClInclude>} items for headers, with wildcards expanded and files that do not exist left out.
+     * Projects that list no files are scanned for *.c and *.cpp files, and *.h and *.hpp for headers, in the project
+     * directory and sub-directories instead.
      * @param vcProject the parsed project
-     * @param includeHeaders set to true to include header files (*.h and *.hpp)
-     * @param excludes a List of pathname patterns to exclude from results
+     * @param includeHeaders set to true to include header files
+     * @param excludes a List of pathname patterns, relative to the project base directory, to exclude from results
      * @return a list of abstract paths representing each source file
+     * @throws MojoExecutionException if the project directory is not inside the base directory
      */
     protected List<File> getProjectSources( VCProject vcProject, boolean includeHeaders, List<String> excludes )
             throws MojoExecutionException
     {
-        final DirectoryScanner directoryScanner = new DirectoryScanner();
+        if ( vcProject.getSourceFiles().isEmpty() && vcProject.getHeaderFiles().isEmpty() )
+        {
+            getLog().debug( "Project " + vcProject.getName() + " lists no source files, scanning its directory" );
+            return scanProjectSources( vcProject, includeHeaders, excludes );
+        }
+
+        List<File> items = new ArrayList<File>( vcProject.getSourceFiles() );
+        if ( includeHeaders )
+        {
+            items.addAll( vcProject.getHeaderFiles() );
+        }
+
+        Set<File> sourceFiles = new LinkedHashSet<File>();
+        for ( File item : items )
+        {
+            if ( isWildcard( item.getPath() ) )
+            {
+                sourceFiles.addAll( expandWildcard( item ) );
+            }
+            else if ( item.isFile() )
+            {
+                sourceFiles.add( item );
+            }
+        }
+
+        List<File> result = new ArrayList<File>( sourceFiles.size() );
+        for ( File sourceFile : sourceFiles )
+        {
+            if ( !isExcluded( vcProject.getBaseDirectory(), sourceFile, excludes ) )
+            {
+                result.add( sourceFile );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the existing files listed by the items of a project other than {@code <ClCompile>} and 
+     * {@code <ClInclude>}, such as resource scripts, libraries and custom build inputs, with wildcards expanded.
+     * @param vcProject the project
+     * @return the files
+     * @throws MojoExecutionException if a wildcard cannot be expanded
+     */
+    protected List<File> getProjectOtherItemFiles( VCProject vcProject ) throws MojoExecutionException
+    {
+        Set<File> itemFiles = new LinkedHashSet<File>();
+        for ( File item : vcProject.getOtherItemFiles() )
+        {
+            if ( isWildcard( item.getPath() ) )
+            {
+                itemFiles.addAll( expandWildcard( item ) );
+            }
+            else if ( item.isFile() )
+            {
+                itemFiles.add( item );
+            }
+        }
+        return new ArrayList<File>( itemFiles );
+    }
+
+    /**
+     * Expand an item with wildcards, from the last directory in its path without any.
+     */
+    private static List<File> expandWildcard( File item ) throws MojoExecutionException
+    {
+        File directory = item;
+        while ( directory != null && isWildcard( directory.getPath() ) )
+        {
+            directory = directory.getParentFile();
+        }
+        if ( directory == null || !directory.isDirectory() )
+        {
+            return new ArrayList<File>();
+        }
+
+        List<String> includes = new ArrayList<String>();
+        includes.add( item.getPath().substring( directory.getPath().length() + 1 ) );
+        return findSourceFiles( directory, includes, new ArrayList<String>() );
+    }
+
+    private static boolean isWildcard( String path )
+    {
+        return path.indexOf( '*' ) >= 0 || path.indexOf( '?' ) >= 0;
+    }
+
+    /**
+     * Match a file against exclude patterns relative to a base directory, in the same way as a DirectoryScanner.
+     */
+    private static boolean isExcluded( File baseDirectory, File file, List<String> excludes )
+    {
+        String basePath = baseDirectory.getPath() + File.separator;
+        if ( excludes.isEmpty() || !file.getPath().startsWith( basePath ) )
+        {
+            return false;
+        }
+
+        String relativePath = file.getPath().substring( basePath.length() );
+        for ( String exclude : excludes )
+        {
+            String pattern = exclude.replace( '/', File.separatorChar ).replace( '\\', File.separatorChar );
+            if ( pattern.endsWith( File.separator ) )
+            {
+                pattern += "**";
+            }
+            if ( SelectorUtils.matchPath( pattern, relativePath, false ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Scan the project directory and sub-directories for source files.
+     */
+    private List<File> scanProjectSources( VCProject vcProject, boolean includeHeaders, List<String> excludes )
+            throws MojoExecutionException
+    {
         List<String> sourceFilePatterns = new ArrayList<String>();
         String relProjectDir = calculateProjectRelativeDirectory( vcProject );
 
@@ -252,20 +557,35 @@ public abstract class AbstractMSBuildPluginMojo extends AbstractMojo
             sourceFilePatterns.add( relProjectDir + "**\\*.hpp" );
         }
 
-        //Make sure we use case-insensitive matches as this plugin runs on a Windows platform 
-        directoryScanner.setCaseSensitive( false );
-        directoryScanner.setIncludes( sourceFilePatterns.toArray( new String[0] ) );
-        directoryScanner.setExcludes( excludes.toArray( new String[excludes.size()] ) );
-        directoryScanner.setBasedir( vcProject.getBaseDirectory() );
-        directoryScanner.scan();
-        
-        List<File> sourceFiles = new ArrayList<File>();
-        for ( String fileName : directoryScanner.getIncludedFiles() )
+        //The index matches case-insensitively as this plugin runs on a Windows platform
+        return findSourceFiles( vcProject.getBaseDirectory(), sourceFilePatterns, excludes );
+    }
+
+    /**
+     * Find files matching case-insensitive include and exclude patterns using the session-wide source file index, so
+     * that the same directories are not walked again by every Mojo and platform/configuration pair.
+     * @param baseDirectory the directory the patterns are relative to
+     * @param includes the patterns of the files to find
+     * @param excludes the patterns of the files to leave out
+     * @return the matching files
+     * @throws MojoExecutionException if a directory cannot be listed
+     */
+    private static List<File> findSourceFiles( File baseDirectory, List<String> includes, List<String> excludes )
+            throws MojoExecutionException
+    {
+        try
         {
-            sourceFiles.add( new File( vcProject.getBaseDirectory(), fileName ) );
+            return SourceFileIndex.getSessionIndex().getFiles( baseDirectory, includes, excludes );
+        }
+        catch ( IOException ioe )
+        {
+            throw new MojoExecutionException( "Failed to list source files in " + baseDirectory, ioe );
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException( "Interrupted while listing source files in " + baseDirectory, ie );
         }
-        
-        return sourceFiles;
     }
 
     /**
@@ -308,6 +628,169 @@ public abstract class AbstractMSBuildPluginMojo extends AbstractMojo
      */
     protected List<VCProject> getParsedProjects( BuildPlatform platform, BuildConfiguration configuration ) 
             throws MojoExecutionException
+    {
+        return getHolderProjects( platform, configuration, null );
+    }
+
+    /**
+     * Return project configurations for the specified platform and configuration filtered by name using the specified
+     * Pattern and, when msbuildChangedFiles or msbuildChangedFilesList is set, restricted to the projects affected by 
+     * the changed files.
+     * @param platform the platform to parse for
+     * @param configuration the configuration to parse for
+     * @param filterRegex a Pattern to use to filter the projects
+     * @return a list of VCProject objects containing configuration for the specified platform and configuration
+     * @throws MojoExecutionException if parsing fails or the list of changed files cannot be read
+     */
+    protected List<VCProject> getAffectedProjects( BuildPlatform platform, BuildConfiguration configuration, 
+            String filterRegex ) throws MojoExecutionException
+    {
+        List<VCProject> vcProjects = getParsedProjects( platform, configuration, filterRegex );
+        Collection<File> changed = getChangedFiles();
+        if ( changed == null )
+        {
+            return vcProjects;
+        }
+
+        List<VCProject> affectedProjects = new ArrayList<VCProject>( vcProjects );
+        affectedProjects.retainAll( new HashSet<VCProject>( getHolderProjects( platform, configuration, changed ) ) );
+        getLog().info( affectedProjects.size() + " of " + vcProjects.size() + " projects affected by " 
+                + changed.size() + " changed files for platform=" + platform.getName() + ", configuration=" 
+                + configuration.getName() );
+        return affectedProjects;
+    }
+
+    /**
+     * Check whether a project is affected by the files listed by msbuildChangedFiles and msbuildChangedFilesList.
+     * @param vcProject a project returned by {@link #getParsedProjects}
+     * @param platform the platform the project was parsed for
+     * @param configuration the configuration the project was parsed for
+     * @return true if the project is affected, or if neither parameter is set
+     * @throws MojoExecutionException if parsing fails or the list of changed files cannot be read
+     */
+    protected boolean isAffected( VCProject vcProject, BuildPlatform platform, BuildConfiguration configuration )
+            throws MojoExecutionException
+    {
+        Collection<File> changed = getChangedFiles();
+        return changed == null || getHolderProjects( platform, configuration, changed ).contains( vcProject );
+    }
+
+    /**
+     * Return the files listed by msbuildChangedFiles and msbuildChangedFilesList. The list file is read once.
+     * @return the changed files, or null if neither parameter is set
+     * @throws MojoExecutionException if the list file cannot be read
+     */
+    protected Collection<File> getChangedFiles() throws MojoExecutionException
+    {
+        if ( changedFiles == null && ( msbuildChangedFiles != null || msbuildChangedFilesList != null ) )
+        {
+            Set<File> files = new LinkedHashSet<File>();
+            if ( msbuildChangedFiles != null )
+            {
+                addChangedFiles( files, msbuildChangedFiles.split( "," ) );
+            }
+            if ( msbuildChangedFilesList != null )
+            {
+                try
+                {
+                    addChangedFiles( files, FileUtils.fileRead( msbuildChangedFilesList ).split( "\\r?\\n" ) );
+                }
+                catch ( IOException ioe )
+                {
+                    throw new MojoExecutionException( "Unable to read changed files from " 
+                            + msbuildChangedFilesList, ioe );
+                }
+            }
+            changedFiles = files;
+        }
+        return changedFiles;
+    }
+
+    private static void addChangedFiles( Set<File> files, String[] paths )
+    {
+        for ( String path : paths )
+        {
+            if ( !path.trim().isEmpty() )
+            {
+                files.add( new File( path.trim() ).getAbsoluteFile() );
+            }
+        }
+    }
+
+    /**
+     * Return the files read to parse the projects for the specified platform and configuration.
+     * @param platform the platform to parse for
+     * @param configuration the configuration to parse for
+     * @return the solution, the project files and every property sheet they import
+     * @throws MojoExecutionException if parsing fails
+     */
+    protected List<File> getParsedInputFiles( final BuildPlatform platform, final BuildConfiguration configuration ) 
+            throws MojoExecutionException
+    {
+        return queryProjectHolder( new ProjectHolderQuery<List<File>>()
+        {
+            @Override
+            public List<File> query( VCProjectHolder vcProjectHolder ) 
+                    throws IOException, ParserConfigurationException, ParseException, SAXException
+            {
+                return vcProjectHolder.getInputFiles( platform.getName(), configuration.getName() );
+            }
+        } );
+    }
+
+    /**
+     * Return the dependency graph of the projects for the specified platform and configuration.
+     * @param platform the platform to parse for
+     * @param configuration the configuration to parse for
+     * @return the dependency graph of the projects returned by {@link #getParsedProjects}
+     * @throws MojoExecutionException if parsing fails or the projects depend on each other in a cycle
+     */
+    protected ProjectDependencyGraph getDependencyGraph( final BuildPlatform platform, 
+            final BuildConfiguration configuration ) throws MojoExecutionException
+    {
+        return queryProjectHolder( new ProjectHolderQuery<ProjectDependencyGraph>()
+        {
+            @Override
+            public ProjectDependencyGraph query( VCProjectHolder vcProjectHolder ) 
+                    throws IOException, ParserConfigurationException, ParseException, SAXException
+            {
+                return vcProjectHolder.getDependencyGraph( platform.getName(), configuration.getName() );
+            }
+        } );
+    }
+
+    /**
+     * Parse the projects, or return the parsed projects affected by a set of changed files.
+     */
+    private List<VCProject> getHolderProjects( final BuildPlatform platform, final BuildConfiguration configuration, 
+            final Collection<File> changed ) throws MojoExecutionException
+    {
+        return queryProjectHolder( new ProjectHolderQuery<List<VCProject>>()
+        {
+            @Override
+            public List<VCProject> query( VCProjectHolder vcProjectHolder ) 
+                    throws IOException, ParserConfigurationException, ParseException, SAXException
+            {
+                if ( changed != null )
+                {
+                    return vcProjectHolder.getAffectedProjects( platform.getName(), configuration.getName(), 
+                            changed );
+                }
+                return vcProjectHolder.getParsedProjects( platform.getName(), configuration.getName() );
+            }
+        } );
+    }
+
+    /**
+     * Something to look up in the {@link VCProjectHolder} for the project file, parsing it if necessary.
+     */
+    private interface ProjectHolderQuery<T>
+    {
+        T query( VCProjectHolder vcProjectHolder ) 
+                throws IOException, ParserConfigurationException, ParseException, SAXException;
+    }
+
+    private <T> T queryProjectHolder( ProjectHolderQuery<T> query ) throws MojoExecutionException
     {
         Map<String, String> envVariables = new HashMap<String, String>();
         
@@ -318,10 +801,12 @@ public abstract class AbstractMSBuildPluginMojo extends AbstractMojo
         
         VCProjectHolder vcProjectHolder = VCProjectHolder.getVCProjectHolder( projectFile, 
                 MSBuildPackaging.isSolution( mavenProject.getPackaging() ), envVariables );
+        vcProjectHolder.setCacheDirectory( msbuildParseCache 
+                ? new File( mavenProject.getBuild().getDirectory(), PARSE_CACHE_DIRECTORY ) : null );
         
         try
         {
-            return vcProjectHolder.getParsedProjects( platform.getName(), configuration.getName() );
+            return query.query( vcProjectHolder );
         }
         catch ( FileNotFoundException fnfe ) 
         {
@@ -674,7 +1159,9 @@ public abstract class AbstractMSBuildPluginMojo extends AbstractMojo
 
     /**
      * The value for 'maxcpucount' to pass to MSBuild.
-     * Default value of -1 results in MSBuild being invoked with '/maxcpucount'.
+     * Default value of -1 results in MSBuild being invoked with '/maxcpucount:N', where N is the number of CPU tokens
+     * granted to it (see msbuildCpuTokens); set msbuildCpuTokens to -1 to invoke MSBuild with plain '/maxcpucount'
+     * as before.
      * Value of 0 results in MSBuild being invoked without /maxcpucount 
      * (useful for MSBuild that comes with .Net Framework v2, which doesn't support the maxcpucount param)
      */
@@ -684,6 +1171,193 @@ public abstract class AbstractMSBuildPluginMojo extends AbstractMojo
             required = false )
     protected int msbuildMaxCpuCount = -1;
 
+    /**
+     * The maximum number of platform/configuration pairs to build at the same time.
+     * Default value of 1 builds each pair in turn and stops at the first failure.
+     * With a larger value each pair runs in its own MSBuild process and the output of each process is written to the 
+     * log as a single block when it completes. See msbuildFailurePolicy for what happens when a pair fails.
+     */
+    @Parameter(
+            property = "msbuild.maxConcurrentBuilds",
+            defaultValue = "1",
+            readonly = false,
+            required = false )
+    protected int msbuildMaxConcurrentBuilds = 1;
+
+    /**
+     * Build every platform/configuration pair from a single MSBuild process.
+     * When set a traversal project is generated in the build directory that builds each pair in parallel, so that 
+     * MSBuild evaluates the projects and starts its nodes once rather than once per pair. Takes precedence over 
+     * msbuildMaxConcurrentBuilds. Requires MSBuild 4.5 or later.
+     */
+    @Parameter(
+            property = "msbuild.singleInvocation",
+            defaultValue = "false",
+            readonly = false,
+            required = false )
+    protected boolean msbuildSingleInvocation = false;
+
+    /**
+     * Skip running MSBuild in the build goal when nothing has changed since the last successful build.
+     * When set the solution and project files, the property sheets they import, the files listed by every item of 
+     * each project (sources, headers, resource scripts, libraries, custom build inputs and so on), include 
+     * directories, preprocessor definitions, platforms, configurations and targets are fingerprinted along with the 
+     * files in the output directories. If both match the fingerprint recorded in the build directory by the last 
+     * build, MSBuild is not run and the existing outputs are attached.
+     * Files that are only named in settings rather than listed as items, such as libraries in the linker's 
+     * AdditionalDependencies, module definition files and headers found through include directories outside the 
+     * project directories, are not fingerprinted: changes to the settings are seen, changes to those files are not.
+     */
+    @Parameter(
+            property = "msbuild.skipUpToDate",
+            defaultValue = "false",
+            readonly = false,
+            required = false )
+    protected boolean msbuildSkipUpToDate = false;
+
+    /**
+     * What to do when one MSBuild platform/configuration pair built concurrently, one project built by 
+     * msbuildProjectScheduler, or one CppCheck or Vera++ run, fails. With 'keepGoing' (the default) everything is run 
+     * and all failures are reported. With 'failFast' the remaining work is skipped and MSBuild processes still running
+     * concurrently are killed together with their worker nodes. Pairs built in turn, with msbuildMaxConcurrentBuilds 
+     * set to 1, always stop at the first failure.
+     */
+    @Parameter(
+            property = "msbuild.failurePolicy",
+            defaultValue = "keepGoing",
+            readonly = false,
+            required = false )
+    protected FailurePolicy msbuildFailurePolicy = FailurePolicy.keepGoing;
+
+    /**
+     * Record how long each goal, platform/configuration pair, project parse and external process takes and write the 
+     * timings to target/msbuild-timeline.json in the Chrome trace-event format (open it in chrome://tracing). 
+     * The file covers everything recorded in the Maven session so far, including other modules.
+     */
+    @Parameter(
+            property = "msbuild.timeline",
+            defaultValue = "false",
+            readonly = false,
+            required = false )
+    protected boolean msbuildTimeline = false;
+
+    /**
+     * The number of CPU tokens shared by every MSBuild and tool process started during the Maven session.
+     * Each process takes tokens from this pool before it starts and waits if none are available, so that modules 
+     * built in parallel (mvn -T) do not oversubscribe the machine. MSBuild receives its share of the pool as 
+     * '/maxcpucount:N' when msbuildMaxCpuCount is -1.
+     * Default value of 0 uses the number of available processors, a negative value disables the pool and MSBuild is 
+     * invoked with plain '/maxcpucount'.
+     * The pool is sized by the first module built in the session, use the msbuild.cpuTokens property to size it for
+     * every module; a module configured with a different value logs a warning and shares the existing pool.
+     */
+    @Parameter(
+            property = "msbuild.cpuTokens",
+            defaultValue = "0",
+            readonly = false,
+            required = false )
+    protected int msbuildCpuTokens = 0;
+
+    /**
+     * The number of log messages that can be queued between MSBuild or tool output and the Maven log. Messages are 
+     * written to the Maven log by a background thread so a slow console does not hold up the processes writing them.
+     * A value of 0 (the default) writes every message straight to the Maven log.
+     */
+    @Parameter(
+            property = "msbuild.logBufferSize",
+            defaultValue = "0",
+            readonly = false,
+            required = false )
+    protected int msbuildLogBufferSize = 0;
+
+    /**
+     * What to do with a log message when the queue set by msbuildLogBufferSize is full. 'block' (the default) waits 
+     * for space, 'dropInfo' discards debug and info messages but keeps warnings and errors, 'spill' writes the 
+     * message to target/msbuild-log-spill.log instead. The number of dropped or spilled messages is reported at the 
+     * end of the goal.
+     */
+    @Parameter(
+            property = "msbuild.logOverflowPolicy",
+            defaultValue = "block",
+            readonly = false,
+            required = false )
+    protected LogOverflowPolicy msbuildLogOverflowPolicy = LogOverflowPolicy.block;
+
+    /**
+     * The character encoding MSBuild and the other tools write their console output in, for example 'IBM850' for 
+     * the OEM code page of a Western European console or 'UTF-8' when the console code page has been set to 65001.
+     * Default is the platform default encoding.
+     */
+    @Parameter(
+            property = "msbuild.outputEncoding",
+            readonly = false,
+            required = false )
+    protected String msbuildOutputEncoding;
+
+    /**
+     * Write the full output of each MSBuild, CppCheck and Vera++ run to its own file under target/logs, for example 
+     * target/logs/msbuild-hello-world-Win32-Release.log. Only errors, warnings and a summary with their counts and 
+     * the path of the file are written to the Maven log.
+     */
+    @Parameter(
+            property = "msbuild.outputToFiles",
+            defaultValue = "false",
+            readonly = false,
+            required = false )
+    protected boolean msbuildOutputToFiles = false;
+
+    /**
+     * Keep the projects parsed from the solution or project file in target/msbuild-parse-cache so that later builds 
+     * do not parse them again. An entry is reused while the solution, project and property sheet files, the paths 
+     * they check for with Exists() or import when present, and the values of the variables substituted in them, are 
+     * unchanged. Anything else MSBuild would read, such as files under $(VCTargetsPath), is not checked.
+     */
+    @Parameter(
+            property = "msbuild.parseCache",
+            defaultValue = "false",
+            readonly = false,
+            required = false )
+    protected boolean msbuildParseCache = false;
+
+    /**
+     * A comma separated list of changed files, for example the files changed by a pull request. When this or 
+     * msbuildChangedFilesList is set only the projects affected by the changes are built (for solutions), analysed 
+     * by CppCheck and Vera++ and tested by CxxTest: the projects that own a changed file, by listing it as a source or
+     * header file or through their directory or their include directories, and every project that depends on them. 
+     * A change to the solution, to a property sheet or to a file no project owns affects every project. Relative 
+     * paths are relative to the directory Maven is run from.
+     */
+    @Parameter(
+            property = "msbuild.changedFiles",
+            readonly = false,
+            required = false )
+    protected String msbuildChangedFiles;
+
+    /**
+     * A file listing changed files one per line, such as the output of 'git diff --name-only' run from the directory 
+     * Maven is run from. See msbuildChangedFiles.
+     */
+    @Parameter(
+            property = "msbuild.changedFilesList",
+            readonly = false,
+            required = false )
+    protected File msbuildChangedFilesList;
+
+    /**
+     * Build the projects of a solution one MSBuild process per project, in dependency order, instead of building the 
+     * whole solution with one MSBuild process per platform/configuration pair. Up to as many projects as there are 
+     * CPU tokens (see msbuildCpuTokens) are built at the same time, each as soon as the projects it depends on have 
+     * been built. Projects at the head of the longest chains, by the time they took to build last time, are started 
+     * first. The time taken by each project is logged and recorded in target/msbuild-project-durations.properties.
+     * Takes precedence over msbuildSingleInvocation, every project must have a target name.
+     */
+    @Parameter(
+            property = "msbuild.projectScheduler",
+            defaultValue = "false",
+            readonly = false,
+            required = false )
+    protected boolean msbuildProjectScheduler = false;
+
     /**
      * The system includes to use.
      * A semi-colon separated list of paths.
@@ -730,6 +1404,26 @@ public abstract class AbstractMSBuildPluginMojo extends AbstractMojo
      */
     private static final String SOLUTION_EXTENSION = "sln";
 
+    /**
+     * The name of the file written to the build directory when msbuildTimeline is set.
+     */
+    private static final String TIMELINE_FILE = "msbuild-timeline.json";
+
+    /**
+     * The name of the file written to the build directory when log messages overflow with the spill policy.
+     */
+    private static final String LOG_SPILL_FILE = "msbuild-log-spill.log";
+
+    /**
+     * The directory, in the build directory, that output is written to when msbuildOutputToFiles is set.
+     */
+    private static final String OUTPUT_LOG_DIRECTORY = "logs";
+
+    /**
+     * The directory, in the build directory, that parsed projects are kept in when msbuildParseCache is set.
+     */
+    private static final String PARSE_CACHE_DIRECTORY = "msbuild-parse-cache";
+
     /**
      * This handler capture standard Java logging produced by {@link VCProjectHolder} (and by all classes in the 
      * same package) and relays it to the Maven logger provided by the Mojo. It needs to be static to prevent duplicate 
@@ -746,6 +1440,12 @@ public abstract class AbstractMSBuildPluginMojo extends AbstractMojo
      */
     private static final LoggingHandler CMDLINE_RUNNER_LOGHANDLER = 
             new LoggingHandler( CommandLineRunner.class.getName() );
+
+    private AsyncLog asyncLog;
+
+    private Charset outputCharset;
+
+    private Collection<File> changedFiles;
     
     
 }
@@ -0,0 +1,353 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.WriterFactory;
+
+import uk.org.raje.maven.plugin.msbuild.configuration.LogOverflowPolicy;
+
+/**
+ * A Log that queues messages in a bounded ring buffer and writes them to another Log from a background thread. The
+ * threads pumping the output of MSBuild and the other tools only wait on the buffer, not on the Maven console, so a
+ * slow console or log forwarder does not stall the process writing the output. When the buffer is full the
+ * {@link LogOverflowPolicy} decides whether to wait, drop the message or write it to a spill file.
+ * <p>
+ * {@link #close()} must be called to write out the remaining messages and stop the background thread.
+ */
+final class AsyncLog implements Log
+{
+    /**
+     * Create the Log and start the thread that writes to the target.
+     * @param target the Log to write to
+     * @param capacity the number of messages the buffer can hold
+     * @param overflowPolicy what to do when the buffer is full
+     * @param spillFile where to write messages when the buffer is full and the policy is
+     * {@link LogOverflowPolicy#spill}
+     */
+    public AsyncLog( Log target, int capacity, LogOverflowPolicy overflowPolicy, File spillFile )
+    {
+        this.target = target;
+        this.buffer = new LogEntry[Math.max( capacity, 1 )];
+        this.overflowPolicy = overflowPolicy;
+        this.spillFile = spillFile;
+
+        writerThread = new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                drain();
+            }
+        }, "msbuild-maven-plugin log writer" );
+        writerThread.setDaemon( true );
+        writerThread.start();
+    }
+
+    /**
+     * Write all queued messages to the target Log, stop the background thread and close the spill file. Warns on the
+     * target Log if any messages were dropped or spilled.
+     */
+    public void close()
+    {
+        synchronized ( this )
+        {
+            closed = true;
+            notifyAll();
+        }
+
+        try
+        {
+            writerThread.join();
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized ( this )
+        {
+            if ( spillWriter != null )
+            {
+                spillWriter.close();
+                spillWriter = null;
+            }
+        }
+
+        if ( droppedCount > 0 )
+        {
+            target.warn( droppedCount + " debug and info messages were dropped because the log could not keep up" );
+        }
+        if ( spilledCount > 0 )
+        {
+            target.warn( spilledCount + " messages were written to " + spillFile
+                    + " because the log could not keep up" );
+        }
+    }
+
+    /**
+     * @return the number of messages discarded because the buffer was full
+     */
+    public synchronized long getDroppedCount()
+    {
+        return droppedCount;
+    }
+
+    /**
+     * @return the number of messages written to the spill file because the buffer was full
+     */
+    public synchronized long getSpilledCount()
+    {
+        return spilledCount;
+    }
+
+    @Override
+    public boolean isDebugEnabled()
+    {
+        return target.isDebugEnabled();
+    }
+
+    @Override
+    public void debug( CharSequence content )
+    {
+        add( new LogEntry( LogEntry.Level.DEBUG, content, null ) );
+    }
+
+    @Override
+    public void debug( CharSequence content, Throwable error )
+    {
+        add( new LogEntry( LogEntry.Level.DEBUG, content, error ) );
+    }
+
+    @Override
+    public void debug( Throwable error )
+    {
+        add( new LogEntry( LogEntry.Level.DEBUG, null, error ) );
+    }
+
+    @Override
+    public boolean isInfoEnabled()
+    {
+        return target.isInfoEnabled();
+    }
+
+    @Override
+    public void info( CharSequence content )
+    {
+        add( new LogEntry( LogEntry.Level.INFO, content, null ) );
+    }
+
+    @Override
+    public void info( CharSequence content, Throwable error )
+    {
+        add( new LogEntry( LogEntry.Level.INFO, content, error ) );
+    }
+
+    @Override
+    public void info( Throwable error )
+    {
+        add( new LogEntry( LogEntry.Level.INFO, null, error ) );
+    }
+
+    @Override
+    public boolean isWarnEnabled()
+    {
+        return target.isWarnEnabled();
+    }
+
+    @Override
+    public void warn( CharSequence content )
+    {
+        add( new LogEntry( LogEntry.Level.WARN, content, null ) );
+    }
+
+    @Override
+    public void warn( CharSequence content, Throwable error )
+    {
+        add( new LogEntry( LogEntry.Level.WARN, content, error ) );
+    }
+
+    @Override
+    public void warn( Throwable error )
+    {
+        add( new LogEntry( LogEntry.Level.WARN, null, error ) );
+    }
+
+    @Override
+    public boolean isErrorEnabled()
+    {
+        return target.isErrorEnabled();
+    }
+
+    @Override
+    public void error( CharSequence content )
+    {
+        add( new LogEntry( LogEntry.Level.ERROR, content, null ) );
+    }
+
+    @Override
+    public void error( CharSequence content, Throwable error )
+    {
+        add( new LogEntry( LogEntry.Level.ERROR, content, error ) );
+    }
+
+    @Override
+    public void error( Throwable error )
+    {
+        add( new LogEntry( LogEntry.Level.ERROR, null, error ) );
+    }
+
+    private synchronized void add( LogEntry entry )
+    {
+        if ( closed )
+        {
+            // Nothing left to drain the buffer, write straight through
+            entry.writeTo( target );
+            return;
+        }
+
+        while ( count == buffer.length )
+        {
+            if ( overflowPolicy == LogOverflowPolicy.spill && spill( entry ) )
+            {
+                return;
+            }
+            if ( overflowPolicy == LogOverflowPolicy.dropInfo
+                    && ( entry.getLevel() == LogEntry.Level.DEBUG || entry.getLevel() == LogEntry.Level.INFO ) )
+            {
+                droppedCount++;
+                return;
+            }
+
+            try
+            {
+                wait();
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+                droppedCount++;
+                return;
+            }
+        }
+
+        buffer[( head + count ) % buffer.length] = entry;
+        count++;
+        notifyAll();
+    }
+
+    /**
+     * Write an entry to the spill file, opening it on first use.
+     * @return false if the spill file cannot be opened, in which case the caller waits for space instead
+     */
+    private boolean spill( LogEntry entry )
+    {
+        if ( spillWriter == null )
+        {
+            if ( spillFailed )
+            {
+                return false;
+            }
+            try
+            {
+                FileUtils.forceMkdir( spillFile.getParentFile() );
+                spillWriter = new PrintWriter( WriterFactory.newWriter( spillFile, WriterFactory.UTF_8 ) );
+            }
+            catch ( IOException ioe )
+            {
+                spillFailed = true;
+                return false;
+            }
+        }
+        entry.writeTo( spillWriter );
+        spilledCount++;
+        return true;
+    }
+
+    private void drain()
+    {
+        LogEntry[] batch = new LogEntry[buffer.length];
+        while ( true )
+        {
+            int batchSize;
+            synchronized ( this )
+            {
+                while ( count == 0 && !closed )
+                {
+                    try
+                    {
+                        wait();
+                    }
+                    catch ( InterruptedException ie )
+                    {
+                        return;
+                    }
+                }
+                if ( count == 0 )
+                {
+                    return;
+                }
+
+                // Take everything queued so far in one go so producers are released as early as possible
+                batchSize = count;
+                for ( int i = 0; i < batchSize; i++ )
+                {
+                    batch[i] = buffer[head];
+                    buffer[head] = null;
+                    head = ( head + 1 ) % buffer.length;
+                }
+                count = 0;
+                notifyAll();
+            }
+
+            for ( int i = 0; i < batchSize; i++ )
+            {
+                try
+                {
+                    batch[i].writeTo( target );
+                }
+                catch ( RuntimeException re )
+                {
+                    // Keep draining, losing one message is better than stalling every producer
+                    synchronized ( this )
+                    {
+                        droppedCount++;
+                    }
+                }
+                batch[i] = null;
+            }
+        }
+    }
+
+    private final Log target;
+    private final LogEntry[] buffer;
+    private final LogOverflowPolicy overflowPolicy;
+    private final File spillFile;
+    private final Thread writerThread;
+    private int head;
+    private int count;
+    private boolean closed;
+    private long droppedCount;
+    private long spilledCount;
+    private PrintWriter spillWriter;
+    private boolean spillFailed;
+}
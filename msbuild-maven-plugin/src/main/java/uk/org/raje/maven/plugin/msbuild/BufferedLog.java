@@ -0,0 +1,166 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A Log that holds on to every message it receives until {@link #flushTo(Log)} is called. This allows the output of
+ * processes running concurrently to be written to the Maven log as one contiguous block per process instead of
+ * interleaving line by line.
+ */
+final class BufferedLog implements Log
+{
+    /**
+     * Create a buffer that reports the same enabled levels as the Log it will eventually be flushed to.
+     * @param target the Log that determines which levels are enabled
+     */
+    public BufferedLog( Log target )
+    {
+        this.target = target;
+    }
+
+    /**
+     * Write all buffered messages to the given Log, in the order they were received, and empty the buffer. The
+     * destination Log is locked for the duration so that concurrent flushes do not interleave.
+     * @param log the Log to write to
+     */
+    public void flushTo( Log log )
+    {
+        List<LogEntry> toFlush;
+        synchronized ( this )
+        {
+            toFlush = entries;
+            entries = new ArrayList<LogEntry>();
+        }
+
+        synchronized ( log )
+        {
+            for ( LogEntry entry : toFlush )
+            {
+                entry.writeTo( log );
+            }
+        }
+    }
+
+    @Override
+    public boolean isDebugEnabled()
+    {
+        return target.isDebugEnabled();
+    }
+
+    @Override
+    public void debug( CharSequence content )
+    {
+        add( LogEntry.Level.DEBUG, content, null );
+    }
+
+    @Override
+    public void debug( CharSequence content, Throwable error )
+    {
+        add( LogEntry.Level.DEBUG, content, error );
+    }
+
+    @Override
+    public void debug( Throwable error )
+    {
+        add( LogEntry.Level.DEBUG, null, error );
+    }
+
+    @Override
+    public boolean isInfoEnabled()
+    {
+        return target.isInfoEnabled();
+    }
+
+    @Override
+    public void info( CharSequence content )
+    {
+        add( LogEntry.Level.INFO, content, null );
+    }
+
+    @Override
+    public void info( CharSequence content, Throwable error )
+    {
+        add( LogEntry.Level.INFO, content, error );
+    }
+
+    @Override
+    public void info( Throwable error )
+    {
+        add( LogEntry.Level.INFO, null, error );
+    }
+
+    @Override
+    public boolean isWarnEnabled()
+    {
+        return target.isWarnEnabled();
+    }
+
+    @Override
+    public void warn( CharSequence content )
+    {
+        add( LogEntry.Level.WARN, content, null );
+    }
+
+    @Override
+    public void warn( CharSequence content, Throwable error )
+    {
+        add( LogEntry.Level.WARN, content, error );
+    }
+
+    @Override
+    public void warn( Throwable error )
+    {
+        add( LogEntry.Level.WARN, null, error );
+    }
+
+    @Override
+    public boolean isErrorEnabled()
+    {
+        return target.isErrorEnabled();
+    }
+
+    @Override
+    public void error( CharSequence content )
+    {
+        add( LogEntry.Level.ERROR, content, null );
+    }
+
+    @Override
+    public void error( CharSequence content, Throwable error )
+    {
+        add( LogEntry.Level.ERROR, content, error );
+    }
+
+    @Override
+    public void error( Throwable error )
+    {
+        add( LogEntry.Level.ERROR, null, error );
+    }
+
+    private synchronized void add( LogEntry.Level level, CharSequence content, Throwable error )
+    {
+        entries.add( new LogEntry( level, content, error ) );
+    }
+
+    private final Log target;
+    private List<LogEntry> entries = new ArrayList<LogEntry>();
+}
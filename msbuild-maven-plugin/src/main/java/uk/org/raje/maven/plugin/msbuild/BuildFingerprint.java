@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Accumulates named values and file stamps (path, size and last modified time) that describe a build and reduces
+ * them to a single digest. Entries are sorted by name before hashing so the order in which they are added does not
+ * affect the result.
+ */
+final class BuildFingerprint
+{
+    /**
+     * Add a named value to the fingerprint.
+     * @param name the name of the value, adding the same name twice replaces the earlier value
+     * @param value the value, may be null
+     */
+    public void add( String name, Object value )
+    {
+        entries.put( name, String.valueOf( value ) );
+    }
+
+    /**
+     * Add the stamp of a file to the fingerprint. The contents are not read, a file is considered changed if its size
+     * or last modified time change.
+     * @param file the file, if it does not exist this is recorded instead
+     */
+    public void addFile( File file )
+    {
+        String path = file.getAbsolutePath();
+        if ( file.isFile() )
+        {
+            entries.put( FILE_PREFIX + path, file.length() + "|" + file.lastModified() );
+        }
+        else
+        {
+            entries.put( FILE_PREFIX + path, "missing" );
+        }
+    }
+
+    /**
+     * Add the stamp of each file in a collection.
+     * @param files the files to add
+     */
+    public void addFiles( Collection<File> files )
+    {
+        for ( File file : files )
+        {
+            addFile( file );
+        }
+    }
+
+    /**
+     * @return the number of entries in the fingerprint
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Calculate the digest of all entries.
+     * @return a hexadecimal String
+     */
+    public String getDigest()
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance( DIGEST_ALGORITHM );
+            for ( Map.Entry<String, String> entry : entries.entrySet() )
+            {
+                digest.update( entry.getKey().getBytes( ENCODING ) );
+                digest.update( ( byte ) '=' );
+                digest.update( entry.getValue().getBytes( ENCODING ) );
+                digest.update( ( byte ) '\n' );
+            }
+            return toHex( digest.digest() );
+        }
+        catch ( NoSuchAlgorithmException nsae )
+        {
+            throw new IllegalStateException( DIGEST_ALGORITHM + " is not available", nsae );
+        }
+        catch ( UnsupportedEncodingException uee )
+        {
+            throw new IllegalStateException( ENCODING + " is not available", uee );
+        }
+    }
+
+    private static String toHex( byte[] bytes )
+    {
+        StringBuilder hex = new StringBuilder( bytes.length * 2 );
+        for ( byte b : bytes )
+        {
+            hex.append( HEX_DIGITS.charAt( ( b >> 4 ) & 0xf ) ).append( HEX_DIGITS.charAt( b & 0xf ) );
+        }
+        return hex.toString();
+    }
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+    private static final String ENCODING = "UTF-8";
+    private static final String FILE_PREFIX = "file:";
+    private static final String HEX_DIGITS = "0123456789abcdef";
+
+    private final Map<String, String> entries = new TreeMap<String, String>();
+}
@@ -19,13 +19,15 @@ package uk.org.raje.maven.plugin.msbuild;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
 import org.codehaus.plexus.util.cli.StreamConsumer;
-import org.codehaus.plexus.util.cli.StreamPumper;
+
+import uk.org.raje.maven.plugin.msbuild.trace.BuildTimeline;
 
 /**
  * This class runs a native process on the command-line and catches the process' standard output and standard error 
@@ -57,29 +59,129 @@ public abstract class CommandLineRunner
 
     /**
      * Execute the configured program
-     * @return the exit code from the program
+     * @return the exit code from the program, see {@link #isCancelled()} for processes cancelled with their group
      * @throws IOException if there is a problem with program execution
      * @throws InterruptedException if we are interrupted waiting for the process to exit or streams to complete
      */
     public int runCommandLine() throws IOException, InterruptedException
     {
-        logRunnerConfiguration();
-        
+        CpuTokenPool cpuTokenPool = CpuTokenPool.getSessionPool();
+        long start = System.currentTimeMillis();
+        int cpuTokens = cpuTokenPool.acquire( getCpuTokens() );
+        LOGGER.fine( processName + " granted " + cpuTokens + " CPU tokens after waiting " 
+                + ( System.currentTimeMillis() - start ) + " ms" );
+        grantedCpuTokens = cpuTokens;
+        try
+        {
+            logRunnerConfiguration();
+            return runProcess();
+        }
+        finally
+        {
+            cpuTokenPool.release( cpuTokens );
+        }
+    }
+
+    /**
+     * Get the number of CPU cores the process can make use of, this many tokens are requested from the session-wide 
+     * {@link CpuTokenPool} before the process is started. Override for tools that run multiple threads.
+     * @return the number of CPU tokens to request, 1 by default
+     */
+    protected int getCpuTokens()
+    {
+        return 1;
+    }
+
+    /**
+     * Get the number of CPU tokens granted to the process, so that {@link #getCommandLineArguments()} can tell a tool 
+     * how many threads to use. This is set before the command line is built and may be less than requested.
+     * @return the number of CPU tokens granted, or 1 before tokens have been requested
+     */
+    protected int getGrantedCpuTokens()
+    {
+        return grantedCpuTokens;
+    }
+
+    /**
+     * Check whether the last run was cancelled, the process was not started or was killed because its 
+     * {@link ProcessGroup} was cancelled. The exit code of a cancelled run says nothing about the tool, it is kept 
+     * apart because a tool can itself exit with any code.
+     * @return true if the last run was cancelled
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    private int runProcess() throws IOException, InterruptedException
+    {
+        cancelled = false;
+        if ( processGroup != null && processGroup.isCancelled() )
+        {
+            LOGGER.fine( processName + " not started, execution has been cancelled" );
+            cancelled = true;
+            return NOT_STARTED_EXIT_CODE;
+        }
+
         ProcessBuilder processBuilder = new ProcessBuilder( getCommandLineArguments() );
         processBuilder.directory( workingDirectory );
         processBuilder.environment().putAll( environmentVars );
+        BuildTimeline.Span processSpan = BuildTimeline.getInstance().start( processName, "process" )
+                .arg( "workingDirectory", workingDirectory );
         Process commandLineProc = processBuilder.start();
+        if ( processGroup != null )
+        {
+            processGroup.add( commandLineProc, processBuilder.command() );
+        }
+        int exitCode;
+        boolean killed = false;
+        try
+        {
+            exitCode = waitForProcess( commandLineProc );
+        }
+        finally
+        {
+            if ( processGroup != null )
+            {
+                killed = processGroup.remove( commandLineProc );
+            }
+            processSpan.end();
+        }
+        if ( killed )
+        {
+            LOGGER.fine( processName + " was killed, execution has been cancelled" );
+            cancelled = true;
+        }
+        return exitCode;
+    }
+
+    private int waitForProcess( Process commandLineProc ) throws IOException, InterruptedException
+    {
 
-        final StreamPumper stdoutPumper = new StreamPumper( commandLineProc.getInputStream(), outputConsumer );
-        final StreamPumper stderrPumper = new StreamPumper( commandLineProc.getErrorStream(), errorConsumer );
+        final ProcessOutputPumper stdoutPumper = 
+                new ProcessOutputPumper( commandLineProc.getInputStream(), outputConsumer, outputCharset );
+        final ProcessOutputPumper stderrPumper = 
+                new ProcessOutputPumper( commandLineProc.getErrorStream(), errorConsumer, outputCharset );
         stdoutPumper.start();
         stderrPumper.start();
         
         if ( standardInputString != null )
         {
             OutputStream outputStream = commandLineProc.getOutputStream();
-            outputStream.write( standardInputString.getBytes() );
-            outputStream.close();
+            try
+            {
+                outputStream.write( standardInputString.getBytes() );
+                outputStream.close();
+            }
+            catch ( IOException ioe )
+            {
+                // A process started as its group is cancelled is killed straight away, before it reads its input
+                if ( processGroup == null || !processGroup.isCancelled() )
+                {
+                    throw ioe;
+                }
+                LOGGER.fine( processName + " was killed before reading its input" );
+            }
         }
 
         int exitCode = commandLineProc.waitFor();
@@ -125,6 +227,25 @@ public abstract class CommandLineRunner
         this.standardInputString = standardInputString;
     }
 
+    /**
+     * Set the charset the process writes its standard output and standard error in
+     * @param outputCharset the charset used to decode the process output, the platform default if not set
+     */
+    public void setOutputCharset( Charset outputCharset ) 
+    {
+        this.outputCharset = outputCharset;
+    }
+
+    /**
+     * Run the process as part of a group so that it can be killed, together with any processes it starts, when the 
+     * group is cancelled. If the group has already been cancelled the process is not started.
+     * @param processGroup the group to join, or null to run the process on its own
+     */
+    void setProcessGroup( ProcessGroup processGroup )
+    {
+        this.processGroup = processGroup;
+    }
+
     /**
      * Method that concrete implementations provide to construct the command line argument list for the process 
      * @return a List of Strings representing the command line arguments
@@ -185,12 +306,21 @@ public abstract class CommandLineRunner
         }
     }
     
+    /**
+     * Exit code returned when the process is not started, only meaningful together with {@link #isCancelled()}.
+     */
+    private static final int NOT_STARTED_EXIT_CODE = -1;
+
     private static final Logger LOGGER = Logger.getLogger( CommandLineRunner.class.getName() );
-    
+
     private String processName;
     private StreamConsumer outputConsumer;
     private StreamConsumer errorConsumer;
     private File workingDirectory = new File( "." );
     private String standardInputString;
     private Map<String, String> environmentVars = new HashMap<String, String>();
+    private ProcessGroup processGroup;
+    private Charset outputCharset = Charset.defaultCharset();
+    private int grantedCpuTokens = 1;
+    private volatile boolean cancelled;
 }
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.XMLEvent;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * A cache of the CppCheck findings for each source file of a project, so that only the files that have changed are
+ * analysed again. Each entry is a small CppCheck (version 1) XML report holding the findings for one file, named
+ * after a digest of the path and contents of the file and of everything else that affects the findings: the CppCheck
+ * version and options, the include directories, the preprocessor definitions and the headers of the project. An entry
+ * is never updated, a change to any of these gives a different name.
+ * <p>
+ * Findings in files that were not analysed directly, such as headers, cannot be attributed to the source file that
+ * included them, they are kept in the entry of every file analysed by the same CppCheck process and removed again
+ * when the entries are merged.
+ */
+final class CppCheckFindingsCache
+{
+    /**
+     * Create a cache for the sources of one project.
+     * @param directory the directory to keep the entries in, used by this project alone
+     * @param baseDirectory the directory CppCheck runs in, which the paths in its reports are relative to
+     * @param configurationDigest a digest of the CppCheck version, its options and the project headers
+     */
+    CppCheckFindingsCache( File directory, File baseDirectory, String configurationDigest )
+    {
+        this.directory = directory;
+        this.baseDirectory = baseDirectory;
+        this.configurationDigest = configurationDigest;
+    }
+
+    /**
+     * Find the source files that have no entry and need to be analysed.
+     * @param sources the source files of the project
+     * @return the files with no entry, in the same order
+     * @throws IOException if a source file cannot be read
+     */
+    public List<File> getUncachedFiles( List<File> sources ) throws IOException
+    {
+        List<File> uncached = new ArrayList<File>();
+        for ( File source : sources )
+        {
+            if ( !getEntry( source ).isFile() )
+            {
+                uncached.add( source );
+            }
+        }
+        return uncached;
+    }
+
+    /**
+     * Get the entries of source files that have been analysed.
+     * @param sources the source files
+     * @return the entry of each file that has one
+     * @throws IOException if a source file cannot be read
+     */
+    public List<File> getEntries( List<File> sources ) throws IOException
+    {
+        List<File> existing = new ArrayList<File>();
+        for ( File source : sources )
+        {
+            File entry = getEntry( source );
+            if ( entry.isFile() )
+            {
+                existing.add( entry );
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * Split the report of a successful CppCheck run into an entry for each of the files it analysed.
+     * @param report the report written by CppCheck
+     * @param analysedFiles the files CppCheck was given
+     * @throws IOException if the report cannot be read or an entry cannot be written
+     */
+    public void store( File report, List<File> analysedFiles ) throws IOException
+    {
+        Map<String, File> filesByPath = new HashMap<String, File>();
+        Map<File, List<XMLEvent>> findings = new LinkedHashMap<File, List<XMLEvent>>();
+        for ( File analysedFile : analysedFiles )
+        {
+            filesByPath.put( normalizePath( analysedFile.getAbsolutePath() ), analysedFile );
+            filesByPath.put( normalizePath( getRelativePath( analysedFile ) ), analysedFile );
+            findings.put( analysedFile, new ArrayList<XMLEvent>() );
+        }
+        List<XMLEvent> sharedFindings = new ArrayList<XMLEvent>();
+
+        if ( report.length() > 0 )
+        {
+            readFindings( report, filesByPath, findings, sharedFindings );
+        }
+
+        FileUtils.forceMkdir( directory );
+        for ( Map.Entry<File, List<XMLEvent>> entry : findings.entrySet() )
+        {
+            List<XMLEvent> events = new ArrayList<XMLEvent>( entry.getValue() );
+            events.addAll( sharedFindings );
+            writeEntry( getEntry( entry.getKey() ), events );
+        }
+    }
+
+    /**
+     * Delete the entries that do not belong to any of the current source files, left behind by earlier versions of
+     * the files or of the configuration.
+     * @param sources the source files of the project
+     * @throws IOException if a source file cannot be read
+     */
+    public void prune( List<File> sources ) throws IOException
+    {
+        File[] existing = directory.listFiles();
+        if ( existing == null )
+        {
+            return;
+        }
+
+        Set<File> current = new HashSet<File>( getEntries( sources ) );
+        for ( File entry : existing )
+        {
+            if ( entry.getName().endsWith( ENTRY_EXTENSION ) && !current.contains( entry ) )
+            {
+                entry.delete();
+            }
+        }
+    }
+
+    /**
+     * Calculate a digest of the contents of a file.
+     * @param file the file to read
+     * @return a hexadecimal String
+     * @throws IOException if the file cannot be read
+     */
+    static String digestContents( File file ) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance( DIGEST_ALGORITHM );
+        }
+        catch ( NoSuchAlgorithmException nsae )
+        {
+            throw new IOException( DIGEST_ALGORITHM + " is not available", nsae );
+        }
+
+        InputStream in = new FileInputStream( file );
+        try
+        {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ( ( read = in.read( buffer ) ) > 0 )
+            {
+                digest.update( buffer, 0, read );
+            }
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for ( byte b : digest.digest() )
+        {
+            hex.append( String.format( "%02x", b ) );
+        }
+        return hex.toString();
+    }
+
+    private File getEntry( File source ) throws IOException
+    {
+        File entry = entries.get( source );
+        if ( entry == null )
+        {
+            BuildFingerprint fingerprint = new BuildFingerprint();
+            fingerprint.add( "configuration", configurationDigest );
+            fingerprint.add( "path", getRelativePath( source ) );
+            fingerprint.add( "contents", digestContents( source ) );
+            entry = new File( directory, fingerprint.getDigest() + ENTRY_EXTENSION );
+            entries.put( source, entry );
+        }
+        return entry;
+    }
+
+    /**
+     * Read the findings of a report, each into the list of the file it is in or, for files that were not analysed
+     * directly, into the shared list.
+     */
+    private static void readFindings( File report, Map<String, File> filesByPath, Map<File, List<XMLEvent>> findings,
+            List<XMLEvent> sharedFindings ) throws IOException
+    {
+        InputStream inputStream = new BufferedInputStream( new FileInputStream( report ) );
+        try
+        {
+            XMLEventReader reader = INPUT_FACTORY.createXMLEventReader( inputStream );
+            List<XMLEvent> finding = null;
+            int depth = 0;
+            while ( reader.hasNext() )
+            {
+                XMLEvent event = reader.nextEvent();
+                if ( event.isStartElement() )
+                {
+                    depth++;
+                    if ( depth == 2 )
+                    {
+                        Attribute fileAttribute = event.asStartElement().getAttributeByName( FILE_ATTRIBUTE );
+                        File file = fileAttribute != null
+                                ? filesByPath.get( normalizePath( fileAttribute.getValue() ) ) : null;
+                        finding = file != null ? findings.get( file ) : sharedFindings;
+                    }
+                }
+                if ( depth >= 2 && finding != null )
+                {
+                    finding.add( event );
+                }
+                if ( event.isEndElement() )
+                {
+                    depth--;
+                    if ( depth == 1 && finding != null )
+                    {
+                        finding.add( EVENT_FACTORY.createCharacters( "\n" ) );
+                        finding = null;
+                    }
+                }
+            }
+            reader.close();
+        }
+        catch ( XMLStreamException xse )
+        {
+            throw new IOException( "Unable to read CppCheck report " + report, xse );
+        }
+        finally
+        {
+            IOUtil.close( inputStream );
+        }
+    }
+
+    private static void writeEntry( File entry, List<XMLEvent> events ) throws IOException
+    {
+        OutputStream outputStream = new BufferedOutputStream( new FileOutputStream( entry ) );
+        try
+        {
+            XMLEventWriter writer = OUTPUT_FACTORY.createXMLEventWriter( outputStream, ENTRY_ENCODING );
+            writer.add( EVENT_FACTORY.createStartDocument( ENTRY_ENCODING, "1.0" ) );
+            writer.add( EVENT_FACTORY.createCharacters( "\n" ) );
+            writer.add( EVENT_FACTORY.createStartElement( "", "", RESULTS_ELEMENT ) );
+            writer.add( EVENT_FACTORY.createCharacters( "\n" ) );
+            for ( XMLEvent event : events )
+            {
+                writer.add( event );
+            }
+            writer.add( EVENT_FACTORY.createEndElement( "", "", RESULTS_ELEMENT ) );
+            writer.add( EVENT_FACTORY.createEndDocument() );
+            writer.close();
+        }
+        catch ( XMLStreamException xse )
+        {
+            throw new IOException( "Unable to write CppCheck findings cache entry " + entry, xse );
+        }
+        finally
+        {
+            IOUtil.close( outputStream );
+        }
+    }
+
+    private String getRelativePath( File file )
+    {
+        String basePath = baseDirectory.getAbsolutePath() + File.separator;
+        String path = file.getAbsolutePath();
+        return path.startsWith( basePath ) ? path.substring( basePath.length() ) : path;
+    }
+
+    /**
+     * Compare paths the way Windows does, ignoring case and the kind of separator.
+     */
+    private static String normalizePath( String path )
+    {
+        String normalized = path.replace( '\\', '/' ).toLowerCase( Locale.ENGLISH );
+        return normalized.startsWith( "./" ) ? normalized.substring( 2 ) : normalized;
+    }
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+    private static final String ENTRY_ENCODING = "UTF-8";
+    private static final String ENTRY_EXTENSION = ".xml";
+    private static final int BUFFER_SIZE = 65536;
+    private static final QName FILE_ATTRIBUTE = new QName( "file" );
+    private static final String RESULTS_ELEMENT = "results";
+
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+    private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newInstance();
+
+    private final File directory;
+    private final File baseDirectory;
+    private final String configurationDigest;
+    private final Map<File, File> entries = new HashMap<File, File>();
+}
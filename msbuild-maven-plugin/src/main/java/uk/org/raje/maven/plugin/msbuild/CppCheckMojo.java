@@ -23,8 +23,17 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -37,6 +46,7 @@ import org.codehaus.plexus.util.cli.WriterStreamConsumer;
 
 import uk.org.raje.maven.plugin.msbuild.configuration.BuildConfiguration;
 import uk.org.raje.maven.plugin.msbuild.configuration.BuildPlatform;
+import uk.org.raje.maven.plugin.msbuild.configuration.FailurePolicy;
 import uk.org.raje.maven.plugin.msbuild.configuration.CppCheckConfiguration;
 import uk.org.raje.maven.plugin.msbuild.parser.VCProject;
 import uk.org.raje.maven.plugin.msbuild.streamconsumers.StdoutStreamToLog;
@@ -60,8 +70,6 @@ public class CppCheckMojo extends AbstractMSBuildPluginMojo
     @Override
     public void doExecute() throws MojoExecutionException, MojoFailureException 
     {
-        boolean wasExecutionSuccessful = true;
-
         if ( ! isCppCheckEnabled( false ) ) 
         {
             return;
@@ -69,38 +77,445 @@ public class CppCheckMojo extends AbstractMSBuildPluginMojo
      
         validateCppCheckConfiguration();
         
+        List<ProjectReport> projectReports = new ArrayList<ProjectReport>();
+        List<Shard> shards = new ArrayList<Shard>();
         for ( BuildPlatform platform : platforms ) 
         {
             for ( BuildConfiguration configuration : platform.getConfigurations() )
             {
-
-                for ( VCProject vcProject : getParsedProjects( platform, configuration, 
+                for ( VCProject vcProject : getAffectedProjects( platform, configuration, 
                         cppCheck.getExcludeProjectRegex() ) )
                 {
-                    getLog().info( "Running static code analysis for project " + vcProject.getName() + ", platform=" 
-                            + vcProject.getPlatform() + ", configuration=" + vcProject.getConfiguration() );
-                    
-                    try 
-                    {
-                        wasExecutionSuccessful &= runCppCheck( vcProject );
-                    }
-                    catch ( MojoExecutionException mee )
-                    {
-                        getLog().error( mee.getMessage() );
-                        throw mee;
-                    }
+                    ProjectReport projectReport = getProjectReport( vcProject );
+                    projectReports.add( projectReport );
+                    shards.addAll( projectReport.shards );
                 }
             }
         }
+
+        int concurrentRuns = Math.min( cppCheck.getMaxConcurrentRuns(), shards.size() );
+        jobsPerRun = getJobsPerRun( concurrentRuns );
+
+        Set<VCProject> failedProjects;
+        boolean completed = false;
+        try
+        {
+            if ( concurrentRuns > 1 )
+            {
+                failedProjects = runConcurrently( shards, concurrentRuns );
+            }
+            else
+            {
+                failedProjects = runSequentially( shards );
+            }
+            completed = true;
+        }
+        finally
+        {
+            if ( ! completed )
+            {
+                finishReportsAfterError( projectReports );
+            }
+        }
+        // Write the reports of every project analysed before reporting any failure
+        finishReports( projectReports );
         
-        if ( ! wasExecutionSuccessful )
+        if ( ! failedProjects.isEmpty() )
         {
+            getLog().error( "Static code analysis failed for projects " + failedProjects );
             throw new MojoFailureException( "Static code analysis failed" );
         }
         
         getLog().info( "Static code analysis complete" );
     }
 
+    /**
+     * Plan the analysis of a project: leave out the sources whose findings are cached and split the rest into shards 
+     * when there are more than filesPerShard of them.
+     */
+    private ProjectReport getProjectReport( VCProject vcProject ) throws MojoExecutionException
+    {
+        List<File> sources = getProjectSources( vcProject, false, cppCheck.getExcludes() );
+        File reportFile = getReportFile( vcProject );
+        CppCheckFindingsCache findingsCache = getFindingsCache( vcProject, sources );
+        ProjectReport projectReport = new ProjectReport( vcProject, sources, reportFile, findingsCache );
+
+        List<File> uncachedSources = sources;
+        if ( findingsCache != null )
+        {
+            try
+            {
+                uncachedSources = findingsCache.getUncachedFiles( sources );
+            }
+            catch ( IOException ioe )
+            {
+                throw new MojoExecutionException( "Failed to read the " + CppCheckConfiguration.TOOL_NAME 
+                        + " findings cache for project " + vcProject, ioe );
+            }
+            getLog().info( "Reusing cached findings for " + ( sources.size() - uncachedSources.size() ) + " of " 
+                    + sources.size() + " source files of project " + vcProject.getName() );
+            if ( uncachedSources.isEmpty() )
+            {
+                return projectReport;
+            }
+        }
+
+        int filesPerShard = cppCheck.getFilesPerShard();
+        int shardCount = 1;
+        if ( filesPerShard > 0 && uncachedSources.size() > filesPerShard )
+        {
+            shardCount = Math.min( ( uncachedSources.size() + filesPerShard - 1 ) / filesPerShard, 
+                    cppCheck.getMaxConcurrentRuns() );
+        }
+        if ( shardCount <= 1 && findingsCache == null )
+        {
+            projectReport.shards.add( new Shard( vcProject, uncachedSources, 0, 1, reportFile ) );
+            return projectReport;
+        }
+
+        // The findings of each shard are merged with those from the cache, so the report of the project is written 
+        // last
+        List<List<File>> split = CppCheckShards.split( uncachedSources, shardCount );
+        for ( int i = 0; i < split.size(); i++ )
+        {
+            projectReport.shards.add( new Shard( vcProject, split.get( i ), i, split.size(), 
+                    new File( reportFile.getPath() + ".shard" + i ) ) );
+        }
+        return projectReport;
+    }
+
+    /**
+     * Open the findings cache of a project, or return null if findingsCache is not set, the project has no sources 
+     * or the checks enabled look at the whole project at once.
+     */
+    private CppCheckFindingsCache getFindingsCache( VCProject vcProject, List<File> sources ) 
+            throws MojoExecutionException
+    {
+        if ( ! cppCheck.getFindingsCache() || sources.isEmpty() )
+        {
+            return null;
+        }
+        if ( cppCheck.getCppCheckType() == CppCheckConfiguration.CppCheckType.all 
+                || cppCheck.getCppCheckType() == CppCheckConfiguration.CppCheckType.unusedFunction )
+        {
+            getLog().info( "Not using the findings cache for project " + vcProject.getName() + ", cppCheckType "
+                    + cppCheck.getCppCheckType() + " analyses the whole project at once" );
+            return null;
+        }
+
+        List<File> headers = getProjectSources( vcProject, true, cppCheck.getExcludes() );
+        headers.removeAll( sources );
+
+        BuildFingerprint fingerprint = new BuildFingerprint();
+        fingerprint.add( "version", getCppCheckVersion() );
+        fingerprint.add( "type", cppCheck.getCppCheckType() );
+        fingerprint.add( "includes", getRelativeIncludeDirectories( vcProject ) );
+        fingerprint.add( "defines", vcProject.getPreprocessorDefs() );
+        for ( File header : headers )
+        {
+            try
+            {
+                fingerprint.add( "header:" + header.getAbsolutePath(), 
+                        CppCheckFindingsCache.digestContents( header ) );
+            }
+            catch ( IOException ioe )
+            {
+                throw new MojoExecutionException( "Failed to read header " + header, ioe );
+            }
+        }
+
+        File cacheDirectory = new File( new File( mavenProject.getBuild().getDirectory(), FINDINGS_CACHE_DIRECTORY ),
+                vcProject.toString() );
+        return new CppCheckFindingsCache( cacheDirectory, vcProject.getBaseDirectory(), fingerprint.getDigest() );
+    }
+
+    /**
+     * Get the version CppCheck reports, which is part of the key of every findings cache entry. If CppCheck cannot 
+     * tell us, the size and modification time of the executable are used instead.
+     */
+    private String getCppCheckVersion() throws MojoExecutionException
+    {
+        if ( cppCheckVersion == null )
+        {
+            File cppCheckPath = cppCheck.getCppCheckPath();
+            FirstLineStreamConsumer versionConsumer = new FirstLineStreamConsumer();
+            CppCheckVersionRunner versionRunner = new CppCheckVersionRunner( cppCheckPath, versionConsumer, getLog() );
+            if ( executeCppCheckRunner( versionRunner ) == 0 && versionConsumer.getFirstLine() != null )
+            {
+                cppCheckVersion = versionConsumer.getFirstLine();
+            }
+            else
+            {
+                cppCheckVersion = "unknown:" + cppCheckPath.length() + ":" + cppCheckPath.lastModified();
+            }
+            getLog().debug( "Using " + CppCheckConfiguration.TOOL_NAME + " version " + cppCheckVersion );
+        }
+        return cppCheckVersion;
+    }
+
+    /**
+     * Work out how many threads each CppCheck process can use from the CPU token pool left over by running several
+     * processes at once.
+     */
+    private static int getJobsPerRun( int concurrentRuns )
+    {
+        CpuTokenPool cpuTokenPool = CpuTokenPool.getSessionPool();
+        int capacity = cpuTokenPool.isEnabled() ? cpuTokenPool.getCapacity() 
+                : Runtime.getRuntime().availableProcessors();
+        return Math.max( 1, capacity / Math.max( concurrentRuns, 1 ) );
+    }
+
+    /**
+     * Analyse projects, or shards of projects, one at a time. With failFast the remaining ones are skipped after the 
+     * first failure.
+     * @return the projects that failed
+     */
+    private Set<VCProject> runSequentially( List<Shard> shards ) throws MojoExecutionException
+    {
+        Set<VCProject> failedProjects = new LinkedHashSet<VCProject>();
+        for ( Shard shard : shards )
+        {
+            logRunning( shard, getLog() );
+            try 
+            {
+                if ( runCppCheck( shard, getLog(), null ) != 0 )
+                {
+                    failedProjects.add( shard.vcProject );
+                    if ( msbuildFailurePolicy == FailurePolicy.failFast )
+                    {
+                        break;
+                    }
+                }
+            }
+            catch ( MojoExecutionException mee )
+            {
+                getLog().error( mee.getMessage() );
+                throw mee;
+            }
+        }
+        return failedProjects;
+    }
+
+    /**
+     * Analyse projects, or shards of projects, on a bounded pool of threads, the output of each CppCheck process is 
+     * held back and written to the log as one block when it completes. With failFast the first failure kills the 
+     * CppCheck processes still running and the remaining ones are skipped.
+     * @return the projects that failed
+     */
+    private Set<VCProject> runConcurrently( List<Shard> shards, int workers ) throws MojoExecutionException
+    {
+        getLog().info( "Running static code analysis in " + shards.size() + " CppCheck processes, up to " + workers 
+                + " at a time" );
+
+        final ProcessGroup processGroup = new ProcessGroup();
+        ExecutorService executor = Executors.newFixedThreadPool( workers );
+        Map<Shard, Future<Integer>> futures = new LinkedHashMap<Shard, Future<Integer>>();
+        Set<VCProject> failedProjects = new LinkedHashSet<VCProject>();
+        boolean completed = false;
+        try
+        {
+            for ( final Shard shard : shards )
+            {
+                futures.put( shard, executor.submit( new Callable<Integer>()
+                {
+                    @Override
+                    public Integer call() throws MojoExecutionException
+                    {
+                        if ( processGroup.isCancelled() )
+                        {
+                            shard.cancelled = true;
+                            return 0;
+                        }
+
+                        BufferedLog shardLog = new BufferedLog( getLog() );
+                        try
+                        {
+                            logRunning( shard, shardLog );
+                            int exitCode = runCppCheck( shard, shardLog, processGroup );
+                            if ( exitCode != 0 && ! shard.cancelled 
+                                    && msbuildFailurePolicy == FailurePolicy.failFast )
+                            {
+                                processGroup.cancel();
+                            }
+                            return exitCode;
+                        }
+                        finally
+                        {
+                            shardLog.flushTo( getLog() );
+                        }
+                    }
+                } ) );
+            }
+
+            int cancelled = 0;
+            for ( Map.Entry<Shard, Future<Integer>> entry : futures.entrySet() )
+            {
+                int exitCode = waitFor( entry.getValue() );
+                entry.getKey().exitCode = exitCode;
+                if ( entry.getKey().cancelled )
+                {
+                    cancelled++;
+                }
+                else if ( exitCode != 0 )
+                {
+                    failedProjects.add( entry.getKey().vcProject );
+                }
+            }
+            completed = true;
+
+            if ( cancelled > 0 )
+            {
+                getLog().warn( "Static code analysis cancelled for " + cancelled + " CppCheck processes" );
+            }
+        }
+        finally
+        {
+            if ( ! completed )
+            {
+                // Don't leave CppCheck running after an error or interrupt
+                processGroup.cancel();
+            }
+            executor.shutdownNow();
+        }
+
+        return failedProjects;
+    }
+
+    /**
+     * Write the report of each project that was split or uses the findings cache once its shards have run: store 
+     * the findings of the shards that succeeded in the cache and merge them with the cached findings of the sources 
+     * that were not analysed again. The report of a project with shards that were cancelled, or not run after a 
+     * failure, is not written, the findings of its shards that succeeded are still stored.
+     */
+    private void finishReports( List<ProjectReport> projectReports ) throws MojoExecutionException
+    {
+        for ( ProjectReport projectReport : projectReports )
+        {
+            if ( projectReport.findingsCache == null && projectReport.shards.size() <= 1 )
+            {
+                // CppCheck wrote the report itself
+                continue;
+            }
+
+            try
+            {
+                finishReport( projectReport );
+            }
+            catch ( IOException ioe )
+            {
+                throw new MojoExecutionException( "Failed to merge " + CppCheckConfiguration.TOOL_NAME + " reports "
+                        + "for project " + projectReport.vcProject, ioe );
+            }
+            finally
+            {
+                deleteShardReports( projectReport );
+            }
+        }
+    }
+
+    private void finishReport( ProjectReport projectReport ) throws IOException
+    {
+        CppCheckFindingsCache findingsCache = projectReport.findingsCache;
+        List<File> reports = new ArrayList<File>();
+        List<File> cachedSources = new ArrayList<File>( projectReport.sources );
+        boolean allCompleted = true;
+        for ( Shard shard : projectReport.shards )
+        {
+            cachedSources.removeAll( shard.sources );
+            reports.add( shard.reportFile );
+            allCompleted &= shard.completed;
+            if ( findingsCache != null && shard.completed && shard.exitCode == 0 )
+            {
+                findingsCache.store( shard.reportFile, shard.sources );
+            }
+        }
+
+        if ( ! allCompleted )
+        {
+            getLog().warn( "Static code analysis of project " + projectReport.vcProject + " did not complete, "
+                    + "report " + projectReport.reportFile + " not written" );
+            projectReport.reportFile.delete();
+            return;
+        }
+
+        if ( findingsCache != null )
+        {
+            reports.addAll( findingsCache.getEntries( cachedSources ) );
+        }
+        FileUtils.forceMkdir( projectReport.reportFile.getParentFile() );
+        CppCheckShards.mergeReports( reports, projectReport.reportFile );
+
+        if ( findingsCache != null )
+        {
+            findingsCache.prune( projectReport.sources );
+        }
+    }
+
+    /**
+     * Clean up after an error stopped the analysis: store what can be stored and remove the partial reports, without
+     * hiding the error with one of our own.
+     */
+    private void finishReportsAfterError( List<ProjectReport> projectReports )
+    {
+        try
+        {
+            finishReports( projectReports );
+        }
+        catch ( MojoExecutionException mee )
+        {
+            getLog().warn( mee.getMessage(), mee.getCause() );
+        }
+    }
+
+    private static void deleteShardReports( ProjectReport projectReport )
+    {
+        for ( Shard shard : projectReport.shards )
+        {
+            if ( ! shard.reportFile.equals( projectReport.reportFile ) )
+            {
+                shard.reportFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Wait for a project analysed on another thread, rethrowing the exception it failed with.
+     */
+    private int waitFor( Future<Integer> future ) throws MojoExecutionException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( ExecutionException ee )
+        {
+            Throwable cause = ee.getCause();
+            if ( cause instanceof MojoExecutionException )
+            {
+                getLog().error( cause.getMessage() );
+                throw ( MojoExecutionException ) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw ( RuntimeException ) cause;
+            }
+            throw new MojoExecutionException( "Static code analysis failed", cause );
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException( "Interrupted waiting for static code analysis to complete", ie );
+        }
+    }
+
+    private static void logRunning( Shard shard, Log log )
+    {
+        VCProject vcProject = shard.vcProject;
+        log.info( "Running static code analysis for project " + vcProject.getName() + ", platform=" 
+                + vcProject.getPlatform() + ", configuration=" + vcProject.getConfiguration() 
+                + ( shard.count > 1 ? ", shard " + ( shard.index + 1 ) + " of " + shard.count : "" ) );
+    }
+
     private void validateCppCheckConfiguration() throws MojoExecutionException, MojoFailureException 
     {
         try 
@@ -124,11 +539,11 @@ public class CppCheckMojo extends AbstractMSBuildPluginMojo
         platforms = MojoHelper.validatePlatforms( platforms );
     }
 
-    private String getSourcesForStdin( VCProject vcProject ) throws MojoExecutionException
+    private String getSourcesForStdin( VCProject vcProject, List<File> sources ) throws MojoExecutionException
     {
         StringBuilder stringBuilder = new StringBuilder();
         
-        for ( File sourceFile : getProjectSources( vcProject, false, cppCheck.getExcludes() ) )
+        for ( File sourceFile : sources )
         {
             try 
             {
@@ -161,16 +576,25 @@ public class CppCheckMojo extends AbstractMSBuildPluginMojo
         return cppCheckReportWriter;
     }
     
-    private CppCheckRunner createCppCheckRunner( VCProject vcProject, StreamConsumer streamConsumer ) 
+    private CppCheckRunner createCppCheckRunner( Shard shard, StreamConsumer streamConsumer, Log outputLog ) 
             throws MojoExecutionException
     {
-        CppCheckRunner cppCheckRunner = new CppCheckRunner( cppCheck.getCppCheckPath(), streamConsumer, getLog() );
+        VCProject vcProject = shard.vcProject;
+        CppCheckRunner cppCheckRunner = new CppCheckRunner( cppCheck.getCppCheckPath(), streamConsumer, outputLog );
         cppCheckRunner.setWorkingDirectory( vcProject.getBaseDirectory() );
-        cppCheckRunner.setStandardInputString( getSourcesForStdin( vcProject ) );
+        cppCheckRunner.setOutputCharset( getOutputCharset() );
+        cppCheckRunner.setStandardInputString( getSourcesForStdin( vcProject, shard.sources ) );
         cppCheckRunner.setCppCheckType( cppCheck.getCppCheckType() );
         cppCheckRunner.setIncludeDirectories( getRelativeIncludeDirectories( vcProject ) );
         cppCheckRunner.setPreprocessorDefs( vcProject.getPreprocessorDefs() );
         
+        // CppCheck only checks for unused functions, part of 'all', when it runs on a single thread
+        if ( shard.sources.size() > 1 && cppCheck.getCppCheckType() != CppCheckConfiguration.CppCheckType.all 
+                && cppCheck.getCppCheckType() != CppCheckConfiguration.CppCheckType.unusedFunction )
+        {
+            cppCheckRunner.setJobs( jobsPerRun );
+        }
+        
         return cppCheckRunner;
     }
 
@@ -206,12 +630,12 @@ public class CppCheckMojo extends AbstractMSBuildPluginMojo
         return relativeIncludeDirectories;
     }
 
-    private boolean executeCppCheckRunner( CommandLineRunner cppCheckRunner ) 
+    private int executeCppCheckRunner( CommandLineRunner cppCheckRunner ) 
         throws MojoExecutionException
     {
         try
         {
-            return cppCheckRunner.runCommandLine() == 0;
+            return cppCheckRunner.runCommandLine();
         }
         catch ( IOException ioe )
         {
@@ -236,26 +660,49 @@ public class CppCheckMojo extends AbstractMSBuildPluginMojo
         }
     }
 
-    private boolean runCppCheck( VCProject vcProject ) throws MojoExecutionException, MojoFailureException
+    /**
+     * Run CppCheck for one project or shard, writing its report and, when CppCheck suggests it, the output of a 
+     * second run with '--check-config'.
+     * @return the exit code of the main CppCheck run
+     */
+    private int runCppCheck( Shard shard, Log log, ProcessGroup processGroup ) 
+            throws MojoExecutionException
     {
-        File reportFile = getReportFile( vcProject );
-        Writer reportWriter = createCppCheckReportWriter( reportFile );
+        Writer reportWriter = createCppCheckReportWriter( shard.reportFile );
         CppCheckWriterStreamConsumer reportStreamConsumer = new CppCheckWriterStreamConsumer( reportWriter );
 
-        CommandLineRunner cppCheckRunner = createCppCheckRunner( vcProject, reportStreamConsumer );
-        boolean wasExecutionSuccessful = executeCppCheckRunner( cppCheckRunner );
-        finaliseReportWriter ( reportWriter, reportFile );
-        
-        if ( reportStreamConsumer.isCheckConfigSuggested() )
+        FileLog outputFileLog = openOutputLog( "cppcheck-" + shard.vcProject 
+                + ( shard.count > 1 ? "-shard" + shard.index : "" ), log );
+        Log outputLog = outputFileLog != null ? outputFileLog : log;
+        try
         {
-            CppCheckRunner cppCheckCheckConfigRunner = 
-                    createCppCheckRunner( vcProject, new StdoutStreamToLog( getLog() ) );
+            CppCheckRunner cppCheckRunner = createCppCheckRunner( shard, reportStreamConsumer, outputLog );
+            cppCheckRunner.setProcessGroup( processGroup );
+            int exitCode = executeCppCheckRunner( cppCheckRunner );
+            finaliseReportWriter ( reportWriter, shard.reportFile );
+            shard.exitCode = exitCode;
+            shard.cancelled = cppCheckRunner.isCancelled();
+            shard.completed = ! shard.cancelled;
+            
+            if ( reportStreamConsumer.isCheckConfigSuggested() && ! shard.cancelled )
+            {
+                CppCheckRunner cppCheckCheckConfigRunner = 
+                        createCppCheckRunner( shard, new StdoutStreamToLog( outputLog ), outputLog );
+                
+                cppCheckCheckConfigRunner.setCheckConfig( true );
+                cppCheckCheckConfigRunner.setProcessGroup( processGroup );
+                executeCppCheckRunner( cppCheckCheckConfigRunner );
+            }
             
-            cppCheckCheckConfigRunner.setCheckConfig( true );
-            executeCppCheckRunner( cppCheckCheckConfigRunner );
+            return exitCode;
+        }
+        finally
+        {
+            if ( outputFileLog != null )
+            {
+                outputFileLog.close();
+            }
         }
-        
-        return wasExecutionSuccessful;
     }
     
     private File getReportFile( VCProject vcProject ) 
@@ -298,6 +745,17 @@ public class CppCheckMojo extends AbstractMSBuildPluginMojo
             this.checkConfig = checkConfig;
         }
 
+        public void setJobs( int jobs )
+        {
+            this.jobs = jobs;
+        }
+
+        @Override
+        protected int getCpuTokens()
+        {
+            return jobs;
+        }
+
         @Override
         protected List<String> getCommandLineArguments() 
         {
@@ -307,6 +765,12 @@ public class CppCheckMojo extends AbstractMSBuildPluginMojo
             commandLineArguments.add( cppCheckPath.getAbsolutePath() );
             commandLineArguments.add( "--enable=" + cppCheckType.name() );
             
+            if ( getGrantedCpuTokens() > 1 && jobs > 1 )
+            {
+                commandLineArguments.add( "-j" );
+                commandLineArguments.add( String.valueOf( Math.min( getGrantedCpuTokens(), jobs ) ) );
+            }
+            
             for ( File includeDirectory : includeDirectories ) 
             {
                 //WARNING: remove any trailing slashes from include paths because CppCheck may fail if these are 
@@ -343,8 +807,100 @@ public class CppCheckMojo extends AbstractMSBuildPluginMojo
         private List<File> includeDirectories;
         private List<String> preprocessorDefs;
         private boolean checkConfig = false;
+        private int jobs = 1;
     }
     
+    /**
+     * The sources of a project analysed by one CppCheck process, all of them unless the project has been split.
+     */
+    private static final class Shard
+    {
+        Shard( VCProject vcProject, List<File> sources, int index, int count, File reportFile )
+        {
+            this.vcProject = vcProject;
+            this.sources = sources;
+            this.index = index;
+            this.count = count;
+            this.reportFile = reportFile;
+        }
+
+        private final VCProject vcProject;
+        private final List<File> sources;
+        private final int index;
+        private final int count;
+        private final File reportFile;
+        private volatile int exitCode;
+        private volatile boolean cancelled;
+        private volatile boolean completed;
+    }
+
+    /**
+     * The analysis of one project: its sources, the shards that analyse those not in the findings cache and the 
+     * report they are merged into.
+     */
+    private static final class ProjectReport
+    {
+        ProjectReport( VCProject vcProject, List<File> sources, File reportFile, 
+                CppCheckFindingsCache findingsCache )
+        {
+            this.vcProject = vcProject;
+            this.sources = sources;
+            this.reportFile = reportFile;
+            this.findingsCache = findingsCache;
+        }
+
+        private final VCProject vcProject;
+        private final List<File> sources;
+        private final File reportFile;
+        private final CppCheckFindingsCache findingsCache;
+        private final List<Shard> shards = new ArrayList<Shard>();
+    }
+
+    /**
+     * Run 'cppcheck --version'.
+     */
+    private static class CppCheckVersionRunner extends CommandLineRunner
+    {
+        CppCheckVersionRunner( File cppCheckPath, StreamConsumer versionConsumer, Log log )
+        {
+            super( CppCheckConfiguration.TOOL_NAME, versionConsumer, new StdoutStreamToLog( log ) );
+            this.cppCheckPath = cppCheckPath;
+        }
+
+        @Override
+        protected List<String> getCommandLineArguments()
+        {
+            final List<String> commandLineArguments = new LinkedList<String>();
+            commandLineArguments.add( cppCheckPath.getAbsolutePath() );
+            commandLineArguments.add( "--version" );
+            return commandLineArguments;
+        }
+
+        private File cppCheckPath;
+    }
+
+    /**
+     * Keep the first line of output that is not blank.
+     */
+    private static class FirstLineStreamConsumer implements StreamConsumer
+    {
+        @Override
+        public void consumeLine( String line )
+        {
+            if ( firstLine == null && line.trim().length() > 0 )
+            {
+                firstLine = line.trim();
+            }
+        }
+
+        String getFirstLine()
+        {
+            return firstLine;
+        }
+
+        private volatile String firstLine;
+    }
+
     /**
      * Override WriterStreamConsumer to add a check for message suggesting running with '--check-config' 
      */
@@ -373,4 +929,19 @@ public class CppCheckMojo extends AbstractMSBuildPluginMojo
         
         private boolean checkConfigSuggested = false;
     }
+
+    /**
+     * The number of threads each CppCheck process asks for, leaving room for the processes run at the same time.
+     */
+    private int jobsPerRun = 1;
+
+    /**
+     * The version CppCheck reports, read the first time a findings cache is opened.
+     */
+    private String cppCheckVersion;
+
+    /**
+     * The name of the directory created under 'target' where we keep the findings cache of each project.
+     */
+    private static final String FINDINGS_CACHE_DIRECTORY = "cppcheck-findings-cache";
 }
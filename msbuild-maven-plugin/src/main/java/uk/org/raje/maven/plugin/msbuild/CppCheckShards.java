@@ -0,0 +1,255 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Split the sources of a large project across several CppCheck processes and merge the reports they write back into
+ * the single report per project that Sonar reads.
+ */
+final class CppCheckShards
+{
+    private CppCheckShards()
+    {
+    }
+
+    /**
+     * Split files into shards of roughly equal total size, the largest files first each going to the shard with the
+     * least work so far. Files keep their original order within each shard.
+     * @param files the files to split
+     * @param shardCount the number of shards wanted
+     * @return the non-empty shards, at most {@code shardCount} of them
+     */
+    public static List<List<File>> split( final List<File> files, int shardCount )
+    {
+        List<Integer> bySize = new ArrayList<Integer>( files.size() );
+        final long[] weights = new long[files.size()];
+        for ( int i = 0; i < weights.length; i++ )
+        {
+            bySize.add( i );
+            weights[i] = Math.max( files.get( i ).length(), 1 );
+        }
+        Collections.sort( bySize, new Comparator<Integer>()
+        {
+            @Override
+            public int compare( Integer first, Integer second )
+            {
+                int bySizeDescending = Long.valueOf( weights[second] ).compareTo( weights[first] );
+                return bySizeDescending != 0 ? bySizeDescending : first.compareTo( second );
+            }
+        } );
+
+        int count = Math.max( 1, Math.min( shardCount, files.size() ) );
+        long[] loads = new long[count];
+        List<List<Integer>> assigned = new ArrayList<List<Integer>>( count );
+        for ( int i = 0; i < count; i++ )
+        {
+            assigned.add( new ArrayList<Integer>() );
+        }
+        for ( Integer index : bySize )
+        {
+            int lightest = 0;
+            for ( int i = 1; i < count; i++ )
+            {
+                if ( loads[i] < loads[lightest] )
+                {
+                    lightest = i;
+                }
+            }
+            loads[lightest] += weights[index];
+            assigned.get( lightest ).add( index );
+        }
+
+        List<List<File>> shards = new ArrayList<List<File>>( count );
+        for ( List<Integer> indices : assigned )
+        {
+            if ( indices.isEmpty() )
+            {
+                continue;
+            }
+            Collections.sort( indices );
+            List<File> shard = new ArrayList<File>( indices.size() );
+            for ( Integer index : indices )
+            {
+                shard.add( files.get( index ) );
+            }
+            shards.add( shard );
+        }
+        return shards;
+    }
+
+    /**
+     * Merge CppCheck XML (version 1) reports into one, streaming the elements under the root element of each report
+     * into the root element of the first. A finding reported more than once, such as one in a header included by
+     * files analysed by different processes, is written once. Empty reports, written by a CppCheck process that 
+     * failed before producing any output, are skipped.
+     * @param shardReports the reports to merge
+     * @param report the merged report to write
+     * @throws IOException if a report cannot be read or is not well formed, or the merged report cannot be written
+     */
+    public static void mergeReports( List<File> shardReports, File report ) throws IOException
+    {
+        OutputStream outputStream = new BufferedOutputStream( new FileOutputStream( report ) );
+        try
+        {
+            XMLEventWriter writer = OUTPUT_FACTORY.createXMLEventWriter( outputStream, REPORT_ENCODING );
+            XMLEvent rootEnd = null;
+            Set<String> written = new HashSet<String>();
+            for ( File shardReport : shardReports )
+            {
+                if ( shardReport.length() == 0 )
+                {
+                    continue;
+                }
+                rootEnd = copyReport( shardReport, writer, rootEnd == null, written );
+            }
+            if ( rootEnd != null )
+            {
+                writer.add( rootEnd );
+                writer.add( EVENT_FACTORY.createEndDocument() );
+            }
+            writer.close();
+        }
+        catch ( XMLStreamException xse )
+        {
+            throw new IOException( "Unable to merge CppCheck reports into " + report, xse );
+        }
+        finally
+        {
+            IOUtil.close( outputStream );
+        }
+    }
+
+    /**
+     * Copy the contents of the root element of a report, leaving out elements that have already been written.
+     * @param first true to also write the document and root element start of this report
+     * @param written the elements written so far, as text
+     * @return the end of the root element
+     */
+    private static XMLEvent copyReport( File shardReport, XMLEventWriter writer, boolean first, Set<String> written )
+            throws IOException, XMLStreamException
+    {
+        InputStream inputStream = new BufferedInputStream( new FileInputStream( shardReport ) );
+        try
+        {
+            XMLEventReader reader = INPUT_FACTORY.createXMLEventReader( inputStream );
+            XMLEvent rootEnd = null;
+            int depth = 0;
+            boolean skipping = false;
+            boolean skipped = false;
+            while ( reader.hasNext() )
+            {
+                XMLEvent event = reader.nextEvent();
+                if ( event.isStartDocument() || event.isEndDocument() )
+                {
+                    continue;
+                }
+                if ( event.isEndElement() && --depth == 0 )
+                {
+                    rootEnd = event;
+                    continue;
+                }
+                if ( event.isStartElement() && depth == 1 )
+                {
+                    skipping = !written.add( describe( event.asStartElement() ) );
+                    skipped = skipping;
+                }
+                else if ( skipped && event.isCharacters() && event.asCharacters().isWhiteSpace() )
+                {
+                    // Leave out the line break after an element that was left out
+                    continue;
+                }
+                if ( depth > 0 && !skipping )
+                {
+                    writer.add( event );
+                }
+                else if ( event.isStartElement() && depth == 0 && first )
+                {
+                    writer.add( EVENT_FACTORY.createStartDocument( REPORT_ENCODING, "1.0" ) );
+                    writer.add( EVENT_FACTORY.createCharacters( "\n" ) );
+                    writer.add( event );
+                }
+                if ( event.isStartElement() )
+                {
+                    depth++;
+                }
+                else if ( event.isEndElement() && depth == 1 )
+                {
+                    skipping = false;
+                }
+            }
+            reader.close();
+            if ( rootEnd == null )
+            {
+                throw new IOException( "CppCheck report " + shardReport + " has no root element" );
+            }
+            return rootEnd;
+        }
+        finally
+        {
+            IOUtil.close( inputStream );
+        }
+    }
+
+    /**
+     * Describe an element by its name and attributes, in name order.
+     */
+    private static String describe( StartElement element )
+    {
+        List<String> attributes = new ArrayList<String>();
+        for ( Iterator<?> iterator = element.getAttributes(); iterator.hasNext(); )
+        {
+            Attribute attribute = ( Attribute ) iterator.next();
+            attributes.add( attribute.getName() + "=" + attribute.getValue() );
+        }
+        Collections.sort( attributes );
+        return element.getName() + attributes.toString();
+    }
+
+    private static final String REPORT_ENCODING = "UTF-8";
+
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+    private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newInstance();
+}
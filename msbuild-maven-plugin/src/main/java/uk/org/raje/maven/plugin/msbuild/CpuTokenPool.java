@@ -0,0 +1,190 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild;
+
+/**
+ * A pool of CPU tokens shared by every process the plugin starts during a Maven session, in the style of the GNU make
+ * jobserver. Before a process is started it takes between 1 and the number of cores it could use from the pool and
+ * returns them when it exits, so that modules built in parallel (for example with {@code mvn -T 4}) share the cores
+ * of the machine rather than each assuming they have all of them.
+ * <p>
+ * The pool is held in a static field, it lives as long as the plugin class loader which is the Maven session.
+ */
+final class CpuTokenPool
+{
+    /**
+     * Create a pool with a fixed number of tokens.
+     * @param capacity the number of tokens in the pool, values less than 1 disable the pool
+     */
+    CpuTokenPool( int capacity )
+    {
+        setCapacity( capacity );
+    }
+
+    /**
+     * Get the pool shared by all Mojos in this Maven session.
+     * @return the session-wide pool
+     */
+    public static CpuTokenPool getSessionPool()
+    {
+        return SESSION_POOL;
+    }
+
+    /**
+     * Change the number of tokens in the pool. Tokens already handed out remain valid and still count against the 
+     * pool, including tokens granted while it was disabled: if the pool shrinks new requests wait until enough of 
+     * them have been returned.
+     * @param newCapacity the number of tokens, 0 uses the number of available processors and a negative value
+     * disables the pool so that every request is granted immediately
+     */
+    public synchronized void setCapacity( int newCapacity )
+    {
+        capacity = newCapacity == 0 ? Runtime.getRuntime().availableProcessors() : newCapacity;
+        notifyAll();
+    }
+
+    /**
+     * Set the number of tokens in the pool the first time this is called, later calls leave the pool unchanged so 
+     * that every module built in the session shares the same pool.
+     * @param requestedCapacity the number of tokens, as for {@link #setCapacity(int)}
+     * @return true if the pool has the requested number of tokens, false if an earlier call set a different number
+     */
+    public synchronized boolean configure( int requestedCapacity )
+    {
+        if ( !configured )
+        {
+            setCapacity( requestedCapacity );
+            configured = true;
+        }
+        int requested = requestedCapacity == 0 ? Runtime.getRuntime().availableProcessors() : requestedCapacity;
+        return requested == capacity || ( requested < 0 && capacity < 0 );
+    }
+
+    /**
+     * Get the number of tokens in the pool.
+     * @return the capacity or a negative value if the pool is disabled
+     */
+    public synchronized int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Get the number of tokens granted and not yet returned.
+     * @return the tokens in use, which can exceed the capacity after the pool has shrunk or been enabled
+     */
+    public synchronized int getTokensInUse()
+    {
+        return inUse;
+    }
+
+    /**
+     * Check whether requests are being limited by this pool.
+     * @return true if the pool has a positive capacity
+     */
+    public synchronized boolean isEnabled()
+    {
+        return capacity > 0;
+    }
+
+    /**
+     * Take tokens from the pool, waiting until at least one is available. The caller may receive fewer tokens than
+     * requested, it must pass the number received back to {@link #release(int)} once the work is done.
+     * @param wanted the number of tokens the caller could make use of
+     * @return the number of tokens granted, between 1 and {@code wanted}
+     * @throws InterruptedException if interrupted while waiting for a token
+     */
+    public synchronized int acquire( int wanted ) throws InterruptedException
+    {
+        int request = Math.max( wanted, 1 );
+        if ( capacity <= 0 )
+        {
+            inUse += request;
+            return request;
+        }
+
+        long start = System.currentTimeMillis();
+        while ( capacity > 0 && inUse >= capacity )
+        {
+            wait();
+        }
+        long waited = System.currentTimeMillis() - start;
+
+        int granted = capacity > 0 ? Math.min( request, capacity - inUse ) : request;
+        inUse += granted;
+
+        acquisitions++;
+        totalWaitTime += waited;
+        maxWaitTime = Math.max( maxWaitTime, waited );
+        return granted;
+    }
+
+    /**
+     * Return tokens to the pool.
+     * @param tokens the number of tokens previously granted by {@link #acquire(int)}
+     */
+    public synchronized void release( int tokens )
+    {
+        inUse = Math.max( inUse - tokens, 0 );
+        notifyAll();
+    }
+
+    /**
+     * @return the number of times tokens have been granted
+     */
+    public synchronized long getAcquisitionCount()
+    {
+        return acquisitions;
+    }
+
+    /**
+     * @return the total time in milliseconds that processes have spent waiting for tokens
+     */
+    public synchronized long getTotalWaitTime()
+    {
+        return totalWaitTime;
+    }
+
+    /**
+     * @return the longest time in milliseconds that any one process has waited for tokens
+     */
+    public synchronized long getMaxWaitTime()
+    {
+        return maxWaitTime;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "capacity=" + capacity + ", acquisitions=" + acquisitions + ", total wait=" + totalWaitTime
+                + " ms, max wait=" + maxWaitTime + " ms";
+    }
+
+    private static final CpuTokenPool SESSION_POOL = new CpuTokenPool( 0 );
+
+    private int capacity;
+    private boolean configured;
+
+    /**
+     * The tokens granted and not yet returned, counted whether or not the pool was enabled when they were granted so
+     * that changing the capacity never loses track of them.
+     */
+    private int inUse;
+    private long acquisitions;
+    private long totalWaitTime;
+    private long maxWaitTime;
+}
@@ -81,6 +81,12 @@ public class CxxTestRunnerMojo extends AbstractMSBuildMojo
                     try 
                     {
                         VCProject vcProject = getParsedProject( testTarget, platform, configuration );
+                        if ( ! isAffected( vcProject, platform, configuration ) )
+                        {
+                            getLog().info( "Skipping test target " + testTarget + ", platform=" + platform.getName() 
+                                    + ", configuration=" + configuration.getName() + ", not affected by the changes" );
+                            continue;
+                        }
                         wasExecutionSuccessful &= executeCxxTestTarget( vcProject.getOutputDirectory(), testTarget, 
                                 platform, configuration );
                     }
@@ -123,6 +129,7 @@ public class CxxTestRunnerMojo extends AbstractMSBuildMojo
         final File testTargetExec = new File( directory, testTargetName + ".exe" );
         CxxTestRunner cxxTestRunner = new CxxTestRunner( testTargetExec, getLog() );
         cxxTestRunner.setWorkingDirectory( directory );
+        cxxTestRunner.setOutputCharset( getOutputCharset() );
 
         return cxxTestRunner;
     }
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.WriterFactory;
+
+/**
+ * A Log that writes every message, as it was given, to a file and passes only warnings and errors on to another Log.
+ * It is used to keep the full output of MSBuild and the other tools out of the Maven log. {@link #close()} writes a
+ * summary with the number of errors and warnings and the path of the file to the other Log.
+ */
+final class FileLog implements Log
+{
+    /**
+     * Open the log file, replacing any existing file.
+     * @param name the name used for this output in the summary, for example the tool and project
+     * @param logFile the file to write
+     * @param target the Log to pass warnings, errors and the summary to
+     * @throws IOException if the file cannot be created
+     */
+    public FileLog( String name, File logFile, Log target ) throws IOException
+    {
+        this.name = name;
+        this.logFile = logFile;
+        this.target = target;
+        FileUtils.forceMkdir( logFile.getParentFile() );
+        this.writer = new BufferedWriter( WriterFactory.newWriter( logFile, WriterFactory.UTF_8 ), BUFFER_SIZE );
+    }
+
+    /**
+     * Close the file and write a summary to the target Log.
+     */
+    public void close()
+    {
+        synchronized ( this )
+        {
+            IOUtil.close( writer );
+            writer = null;
+        }
+        if ( writeError != null )
+        {
+            target.warn( "Unable to write all output to " + logFile, writeError );
+        }
+        target.info( name + ": " + errorCount + " error(s), " + warningCount + " warning(s), full output in "
+                + logFile );
+    }
+
+    /**
+     * @return the file output is written to
+     */
+    public File getLogFile()
+    {
+        return logFile;
+    }
+
+    /**
+     * @return the number of errors logged
+     */
+    public synchronized int getErrorCount()
+    {
+        return errorCount;
+    }
+
+    /**
+     * @return the number of warnings logged
+     */
+    public synchronized int getWarningCount()
+    {
+        return warningCount;
+    }
+
+    @Override
+    public boolean isDebugEnabled()
+    {
+        return target.isDebugEnabled();
+    }
+
+    @Override
+    public void debug( CharSequence content )
+    {
+        if ( target.isDebugEnabled() )
+        {
+            write( content, null );
+        }
+    }
+
+    @Override
+    public void debug( CharSequence content, Throwable error )
+    {
+        if ( target.isDebugEnabled() )
+        {
+            write( content, error );
+        }
+    }
+
+    @Override
+    public void debug( Throwable error )
+    {
+        if ( target.isDebugEnabled() )
+        {
+            write( null, error );
+        }
+    }
+
+    @Override
+    public boolean isInfoEnabled()
+    {
+        return true;
+    }
+
+    @Override
+    public void info( CharSequence content )
+    {
+        write( content, null );
+    }
+
+    @Override
+    public void info( CharSequence content, Throwable error )
+    {
+        write( content, error );
+    }
+
+    @Override
+    public void info( Throwable error )
+    {
+        write( null, error );
+    }
+
+    @Override
+    public boolean isWarnEnabled()
+    {
+        return true;
+    }
+
+    @Override
+    public void warn( CharSequence content )
+    {
+        countWarning();
+        write( content, null );
+        target.warn( content );
+    }
+
+    @Override
+    public void warn( CharSequence content, Throwable error )
+    {
+        countWarning();
+        write( content, error );
+        target.warn( content, error );
+    }
+
+    @Override
+    public void warn( Throwable error )
+    {
+        countWarning();
+        write( null, error );
+        target.warn( error );
+    }
+
+    @Override
+    public boolean isErrorEnabled()
+    {
+        return true;
+    }
+
+    @Override
+    public void error( CharSequence content )
+    {
+        countError();
+        write( content, null );
+        target.error( content );
+    }
+
+    @Override
+    public void error( CharSequence content, Throwable error )
+    {
+        countError();
+        write( content, error );
+        target.error( content, error );
+    }
+
+    @Override
+    public void error( Throwable error )
+    {
+        countError();
+        write( null, error );
+        target.error( error );
+    }
+
+    private synchronized void countWarning()
+    {
+        warningCount++;
+    }
+
+    private synchronized void countError()
+    {
+        errorCount++;
+    }
+
+    private synchronized void write( CharSequence content, Throwable error )
+    {
+        if ( writer == null )
+        {
+            return;
+        }
+
+        try
+        {
+            if ( content != null )
+            {
+                writer.append( content ).append( LINE_SEPARATOR );
+            }
+            if ( error != null )
+            {
+                StringWriter stackTrace = new StringWriter();
+                error.printStackTrace( new PrintWriter( stackTrace ) );
+                writer.write( stackTrace.toString() );
+            }
+        }
+        catch ( IOException ioe )
+        {
+            // Stop writing, the failure is reported on close
+            writeError = ioe;
+            IOUtil.close( writer );
+            writer = null;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String LINE_SEPARATOR = System.getProperty( "line.separator" );
+
+    private final String name;
+    private final File logFile;
+    private final Log target;
+    private Writer writer;
+    private IOException writeError;
+    private int errorCount;
+    private int warningCount;
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild;
+
+import java.io.PrintWriter;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A single log message held back to be written to a Log later.
+ */
+final class LogEntry
+{
+    /**
+     * The level a message was logged at.
+     */
+    enum Level
+    {
+        DEBUG,
+        INFO,
+        WARN,
+        ERROR
+    }
+
+    LogEntry( Level level, CharSequence content, Throwable error )
+    {
+        this.level = level;
+        this.content = content;
+        this.error = error;
+    }
+
+    Level getLevel()
+    {
+        return level;
+    }
+
+    void writeTo( Log log )
+    {
+        // Replay through the same overload that was originally called
+        if ( error == null )
+        {
+            writeContent( log );
+        }
+        else if ( content == null )
+        {
+            writeError( log );
+        }
+        else
+        {
+            writeContentAndError( log );
+        }
+    }
+
+    /**
+     * Write the message as text, in the same form Maven uses on the console.
+     * @param writer the destination
+     */
+    void writeTo( PrintWriter writer )
+    {
+        writer.print( "[" + level + "] " );
+        writer.println( content != null ? content : "" );
+        if ( error != null )
+        {
+            error.printStackTrace( writer );
+        }
+    }
+
+    private void writeContent( Log log )
+    {
+        switch ( level )
+        {
+        case DEBUG:
+            log.debug( content );
+            break;
+        case INFO:
+            log.info( content );
+            break;
+        case WARN:
+            log.warn( content );
+            break;
+        default:
+            log.error( content );
+        }
+    }
+
+    private void writeError( Log log )
+    {
+        switch ( level )
+        {
+        case DEBUG:
+            log.debug( error );
+            break;
+        case INFO:
+            log.info( error );
+            break;
+        case WARN:
+            log.warn( error );
+            break;
+        default:
+            log.error( error );
+        }
+    }
+
+    private void writeContentAndError( Log log )
+    {
+        switch ( level )
+        {
+        case DEBUG:
+            log.debug( content, error );
+            break;
+        case INFO:
+            log.info( content, error );
+            break;
+        case WARN:
+            log.warn( content, error );
+            break;
+        default:
+            log.error( content, error );
+        }
+    }
+
+    private final Level level;
+    private final CharSequence content;
+    private final Throwable error;
+}
@@ -16,18 +16,36 @@
 package uk.org.raje.maven.plugin.msbuild;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.maven.plugin.logging.Log;
-import org.codehaus.plexus.util.cli.StreamPumper;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
 
 import uk.org.raje.maven.plugin.msbuild.configuration.BuildConfiguration;
 import uk.org.raje.maven.plugin.msbuild.configuration.BuildPlatform;
+import uk.org.raje.maven.plugin.msbuild.configuration.FailurePolicy;
+import uk.org.raje.maven.plugin.msbuild.parser.ProjectDependencyGraph;
+import uk.org.raje.maven.plugin.msbuild.parser.VCProject;
 import uk.org.raje.maven.plugin.msbuild.streamconsumers.StderrStreamToLog;
 import uk.org.raje.maven.plugin.msbuild.streamconsumers.StdoutStreamToLog;
+import uk.org.raje.maven.plugin.msbuild.trace.BuildTimeline;
 
 final class MSBuildExecutor
 {
@@ -59,37 +77,597 @@ final class MSBuildExecutor
         this.environment = environment;
     }
 
+    /**
+     * Set the maximum number of platform/configuration pairs to build at the same time.
+     * A value of 1 (the default) builds each pair in turn and stops at the first failure.
+     * @param maxConcurrentBuilds the number of MSBuild processes that may run at once
+     */
+    public void setMaxConcurrentBuilds( int maxConcurrentBuilds )
+    {
+        this.maxConcurrentBuilds = maxConcurrentBuilds;
+    }
+
+    /**
+     * Build all platform/configuration pairs from a single MSBuild process using a generated traversal project.
+     * This takes precedence over {@link #setMaxConcurrentBuilds(int)}, the pairs are built in parallel by MSBuild
+     * itself subject to maxCpuCount.
+     * @param traversalProject the traversal project to generate, or null to run MSBuild once per pair
+     */
+    public void setTraversalProject( File traversalProject )
+    {
+        this.traversalProject = traversalProject;
+    }
+
+    /**
+     * Build the projects of a solution one MSBuild process per project rather than the whole solution at once. Each
+     * project is built with its target name as soon as the projects it depends on have been built, on as many 
+     * workers as there are CPU tokens in the session pool, with '/p:BuildProjectReferences=false' so that 
+     * references are not built again. When more projects are ready than there are free workers the ones heading 
+     * the longest chains, by their build times from the last build, go first. This takes precedence over 
+     * {@link #setTraversalProject(File)}.
+     * @param dependencyGraphs the dependency graph for each platform/configuration pair keyed by 
+     * &lt;platform&gt;-&lt;configuration&gt;, pairs without a graph are built with one MSBuild process
+     */
+    public void setDependencyGraphs( Map<String, ProjectDependencyGraph> dependencyGraphs )
+    {
+        this.dependencyGraphs = dependencyGraphs;
+    }
+
+    /**
+     * Keep the time taken to build each project in a file, used to order the projects built by the next build.
+     * @param projectDurationsFile the file to read and update, or null to order projects by build order alone
+     */
+    public void setProjectDurationsFile( File projectDurationsFile )
+    {
+        this.projectDurationsFile = projectDurationsFile;
+    }
+
+    /**
+     * Set what happens to the remaining platform/configuration pairs, or projects when building one project at a time,
+     * when one of them fails while building concurrently. With {@link FailurePolicy#failFast} no further pairs or
+     * projects are started and the MSBuild processes still running are killed. With {@link FailurePolicy#keepGoing} 
+     * (the default) everything that does not depend on the failure is built. Pairs built in turn always stop at the 
+     * first failure.
+     * @param failurePolicy the policy to apply
+     */
+    public void setFailurePolicy( FailurePolicy failurePolicy )
+    {
+        this.failurePolicy = failurePolicy;
+    }
+
+    /**
+     * Write the full output of each MSBuild process to its own file in a directory, passing only warnings, errors and
+     * a summary to the Log. The files are named msbuild-&lt;project&gt;-&lt;platform&gt;-&lt;configuration&gt;.log.
+     * @param outputLogDirectory the directory to write the files to, null to send all output to the Log
+     */
+    public void setOutputLogDirectory( File outputLogDirectory )
+    {
+        this.outputLogDirectory = outputLogDirectory;
+    }
+
+    /**
+     * Set the charset MSBuild writes its console output in, on Windows this is the OEM code page of the console 
+     * unless MSBuild is told otherwise.
+     * @param outputCharset the charset used to decode MSBuild output, the platform default if not set
+     */
+    public void setOutputCharset( Charset outputCharset )
+    {
+        this.outputCharset = outputCharset;
+    }
+
     /**
      * Execute the build.
      * The function assumes that at least 1 platform configuration has been provided
      * in a list via {@link #setPlatforms(List)}.
+     * @return 0 if all platform/configuration pairs built, otherwise the exit code of the first failed pair that 
+     * was not cancelled
      * @throws IOException if there is a problem executing MSBuild
      * @throws InterruptedException if execution is interrupted
      */
     public int execute() throws IOException, InterruptedException
     {
+        cellResults.clear();
+        processGroup = new ProcessGroup();
+
+        List<CellResult> cells = new ArrayList<CellResult>();
         for ( BuildPlatform platform: buildPlatforms ) 
         {
             for ( BuildConfiguration configuration : platform.getConfigurations() ) 
             {
-                int exitCode = runMSBuild( platform.getName(), configuration.getName() );
-                if ( exitCode != 0 )
+                cells.add( new CellResult( platform, configuration ) );
+            }
+        }
+
+        if ( dependencyGraphs != null )
+        {
+            return executeProjects( cells );
+        }
+
+        if ( traversalProject != null && cells.size() > 1 )
+        {
+            activeBuilds = 1;
+            return executeTraversal( cells );
+        }
+
+        return executeCells( cells );
+    }
+
+    /**
+     * Cancel the build, killing any MSBuild processes that are running together with their worker nodes. Pairs that
+     * have not started yet are skipped.
+     */
+    public void cancel()
+    {
+        processGroup.cancel();
+    }
+
+    /**
+     * Get the outcome of each platform/configuration pair run by the last call to {@link #execute()}, in the order
+     * they appear in the configured platforms. Pairs skipped after a failure in serial mode are not included.
+     * @return an unmodifiable List of results
+     */
+    public List<CellResult> getCellResults()
+    {
+        return Collections.unmodifiableList( cellResults );
+    }
+
+    /**
+     * Outcome of building one platform/configuration pair.
+     */
+    static final class CellResult
+    {
+        CellResult( BuildPlatform platform, BuildConfiguration configuration )
+        {
+            this.platform = platform;
+            this.configuration = configuration;
+        }
+
+        /**
+         * @return the platform built
+         */
+        public BuildPlatform getPlatform()
+        {
+            return platform;
+        }
+
+        /**
+         * @return the configuration built
+         */
+        public BuildConfiguration getConfiguration()
+        {
+            return configuration;
+        }
+
+        /**
+         * @return the exit code returned by MSBuild
+         */
+        public int getExitCode()
+        {
+            return exitCode;
+        }
+
+        /**
+         * @return true if this pair was skipped or killed because another pair failed
+         */
+        public boolean isCancelled()
+        {
+            return cancelled;
+        }
+
+        /**
+         * @return SUCCESS, FAILED or CANCELLED
+         */
+        public String getStatus()
+        {
+            if ( cancelled )
+            {
+                return "CANCELLED";
+            }
+            return exitCode == 0 ? "SUCCESS" : "FAILED";
+        }
+
+        /**
+         * @return the wall-clock time taken to build this pair in milliseconds
+         */
+        public long getDuration()
+        {
+            return duration;
+        }
+
+        @Override
+        public String toString()
+        {
+            return platform.getName() + "-" + configuration.getName();
+        }
+
+        private final BuildPlatform platform;
+        private final BuildConfiguration configuration;
+        private int exitCode;
+        private long duration;
+        private boolean cancelled;
+    }
+
+    private int executeCells( List<CellResult> cells ) throws IOException, InterruptedException
+    {
+        if ( maxConcurrentBuilds > 1 && cells.size() > 1 )
+        {
+            activeBuilds = Math.min( maxConcurrentBuilds, cells.size() );
+            return executeConcurrently( cells );
+        }
+
+        activeBuilds = 1;
+
+        for ( CellResult cell : cells )
+        {
+            runCell( cell, log );
+            cellResults.add( cell );
+            if ( cell.getExitCode() != 0 )
+            {
+                // Pairs built in turn always stop at the first failure, the failure policy applies to concurrent builds
+                break;
+            }
+        }
+        return getFirstFailure();
+    }
+
+    /**
+     * Build the platform/configuration pairs one MSBuild process per project, sharing the CPU tokens of the session
+     * between the projects of the pairs being built at the same time.
+     */
+    private int executeProjects( List<CellResult> cells ) throws IOException, InterruptedException
+    {
+        CpuTokenPool cpuTokenPool = CpuTokenPool.getSessionPool();
+        int capacity = cpuTokenPool.isEnabled() ? cpuTokenPool.getCapacity() 
+                : Runtime.getRuntime().availableProcessors();
+        int concurrentCells = maxConcurrentBuilds > 1 ? Math.min( maxConcurrentBuilds, cells.size() ) : 1;
+        projectWorkers = Math.max( 1, capacity / concurrentCells );
+
+        readProjectDurations();
+        try
+        {
+            return executeCells( cells );
+        }
+        finally
+        {
+            projectWorkers = 1;
+            writeProjectDurations();
+        }
+    }
+
+    private void readProjectDurations()
+    {
+        projectDurations.clear();
+        if ( projectDurationsFile == null || !projectDurationsFile.isFile() )
+        {
+            return;
+        }
+
+        InputStream durationsStream = null;
+        try
+        {
+            durationsStream = new FileInputStream( projectDurationsFile );
+            projectDurations.load( durationsStream );
+        }
+        catch ( IOException ioe )
+        {
+            log.warn( "Unable to read project build times from " + projectDurationsFile, ioe );
+        }
+        finally
+        {
+            IOUtil.close( durationsStream );
+        }
+    }
+
+    private void writeProjectDurations()
+    {
+        if ( projectDurationsFile == null )
+        {
+            return;
+        }
+
+        OutputStream durationsStream = null;
+        try
+        {
+            FileUtils.forceMkdir( projectDurationsFile.getParentFile() );
+            durationsStream = new FileOutputStream( projectDurationsFile );
+            projectDurations.store( durationsStream, "Project build times in milliseconds" );
+        }
+        catch ( IOException ioe )
+        {
+            log.warn( "Unable to write project build times to " + projectDurationsFile, ioe );
+        }
+        finally
+        {
+            IOUtil.close( durationsStream );
+        }
+    }
+
+    private int executeConcurrently( List<CellResult> cells ) throws IOException, InterruptedException
+    {
+        log.info( "Building " + cells.size() + " platform/configuration pairs, up to " 
+                + maxConcurrentBuilds + " at a time" );
+
+        ExecutorService executor = Executors.newFixedThreadPool( Math.min( maxConcurrentBuilds, cells.size() ) );
+        List<Future<CellResult>> futures = new ArrayList<Future<CellResult>>();
+        boolean completed = false;
+        try
+        {
+            for ( final CellResult cell : cells )
+            {
+                futures.add( executor.submit( new Callable<CellResult>()
                 {
-                    return exitCode;
-                }
+                    @Override
+                    public CellResult call() throws IOException, InterruptedException
+                    {
+                        // Hold this pair's output back until it completes so it appears as one block
+                        BufferedLog cellLog = new BufferedLog( log );
+                        try
+                        {
+                            runCell( cell, cellLog );
+                            if ( cell.getExitCode() != 0 && !cell.isCancelled() 
+                                    && failurePolicy == FailurePolicy.failFast )
+                            {
+                                processGroup.cancel();
+                            }
+                        }
+                        finally
+                        {
+                            cellLog.flushTo( log );
+                        }
+                        return cell;
+                    }
+                } ) );
+            }
+
+            for ( Future<CellResult> future : futures )
+            {
+                cellResults.add( waitFor( future ) );
+            }
+            completed = true;
+        }
+        finally
+        {
+            if ( !completed )
+            {
+                // Don't leave MSBuild running after an error or interrupt
+                processGroup.cancel();
+            }
+            executor.shutdownNow();
+        }
+
+        log.info( "MSBuild results:" );
+        for ( CellResult cell : cellResults )
+        {
+            log.info( "    " + cell + " " + cell.getStatus() + " [" + cell.getDuration() + " ms]" );
+        }
+        return getFirstFailure();
+    }
+
+    private int getFirstFailure()
+    {
+        for ( CellResult cell : cellResults )
+        {
+            if ( cell.getExitCode() != 0 && !cell.isCancelled() )
+            {
+                return cell.getExitCode();
             }
         }
         return 0;
     }
 
-    private int runMSBuild( String platform, String configuration ) 
+    /**
+     * Wait for a build running on another thread, rethrowing the exception it failed with.
+     */
+    static <T> T waitFor( Future<T> future ) throws IOException, InterruptedException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( ExecutionException ee )
+        {
+            Throwable cause = ee.getCause();
+            if ( cause instanceof IOException )
+            {
+                throw ( IOException ) cause;
+            }
+            if ( cause instanceof InterruptedException )
+            {
+                throw ( InterruptedException ) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw ( RuntimeException ) cause;
+            }
+            throw new IOException( "MSBuild execution failed", cause );
+        }
+    }
+
+    private void runCell( CellResult cell, Log cellLog ) throws IOException, InterruptedException
+    {
+        if ( processGroup.isCancelled() )
+        {
+            cell.cancelled = true;
+            return;
+        }
+
+        BuildTimeline.Span cellSpan = BuildTimeline.getInstance().start( cell.toString(), "cell" );
+        long start = System.currentTimeMillis();
+        ProjectDependencyGraph graph = dependencyGraphs != null ? dependencyGraphs.get( cell.toString() ) : null;
+        try
+        {
+            if ( graph != null )
+            {
+                runProjects( cell, graph, cellLog );
+            }
+            else
+            {
+                cell.exitCode = runMSBuild( projectFile, cell.getPlatform().getName(), 
+                        cell.getConfiguration().getName(), buildTargets, null, cellLog );
+            }
+        }
+        finally
+        {
+            cell.duration = System.currentTimeMillis() - start;
+            cellSpan.arg( "exitCode", cell.exitCode ).end();
+        }
+        if ( graph == null )
+        {
+            // MSBuild can exit with any code, -1 included, so only a failure once the group was cancelled, by 
+            // another pair failing, counts as cancelled
+            cell.cancelled = cell.exitCode != 0 && processGroup.isCancelled();
+        }
+    }
+
+    private int executeTraversal( List<CellResult> cells ) throws IOException, InterruptedException
+    {
+        MSBuildTraversalProject traversal = new MSBuildTraversalProject( traversalProject, projectFile, buildTargets );
+        traversal.write( cells );
+        log.info( "Building " + cells.size() + " platform/configuration pairs with " + traversalProject );
+
+        long start = System.currentTimeMillis();
+        int exitCode = runMSBuild( traversalProject, null, null, null, null, log );
+        long duration = System.currentTimeMillis() - start;
+
+        int result = 0;
+        log.info( "MSBuild results [" + duration + " ms]:" );
+        for ( CellResult cell : cells )
+        {
+            // The pairs are built by one process so individual durations are not available
+            cell.exitCode = traversal.readExitCode( cell, exitCode );
+            cell.duration = duration;
+            cellResults.add( cell );
+            log.info( "    " + cell + ( cell.getExitCode() == 0 ? " SUCCESS" : " FAILED" ) );
+            if ( result == 0 )
+            {
+                result = cell.getExitCode();
+            }
+        }
+        return result != 0 ? result : exitCode;
+    }
+
+    /**
+     * Build the projects of a solution for one platform/configuration pair one MSBuild process per project, see
+     * {@link #setDependencyGraphs(Map)}.
+     */
+    private void runProjects( CellResult cell, ProjectDependencyGraph graph, Log cellLog ) 
             throws IOException, InterruptedException
+    {
+        final String platform = cell.getPlatform().getName();
+        final String configuration = cell.getConfiguration().getName();
+        final String prefix = cell + ".";
+
+        ProjectScheduler scheduler = new ProjectScheduler( graph, buildTargets, projectWorkers, failurePolicy, 
+                processGroup );
+        Map<String, Long> previousDurations = new HashMap<String, Long>();
+        for ( VCProject vcProject : scheduler.getProjects() )
+        {
+            String duration = projectDurations.getProperty( prefix + vcProject.getName() );
+            if ( duration != null )
+            {
+                previousDurations.put( vcProject.getName(), Long.valueOf( duration ) );
+            }
+        }
+        scheduler.setPreviousDurations( previousDurations );
+
+        cellLog.info( "Building " + scheduler.getProjects().size() + " projects for " + cell + ", up to " 
+                + projectWorkers + " at a time" );
+        cell.exitCode = scheduler.execute( new ProjectScheduler.ProjectBuild()
+        {
+            @Override
+            public int build( VCProject vcProject, Log projectLog ) throws IOException, InterruptedException
+            {
+                return runMSBuild( projectFile, platform, configuration, 
+                        Collections.singletonList( vcProject.getTargetName() ), vcProject, projectLog );
+            }
+        }, cellLog );
+
+        cellLog.info( "Project results for " + cell + ":" );
+        for ( ProjectScheduler.ProjectResult result : scheduler.getResults() )
+        {
+            String duration = "";
+            if ( result.getStatus() == ProjectScheduler.Status.SUCCESS 
+                    || result.getStatus() == ProjectScheduler.Status.FAILED )
+            {
+                duration = " [" + result.getDuration() + " ms]";
+            }
+            if ( result.getStatus() == ProjectScheduler.Status.SUCCESS )
+            {
+                projectDurations.setProperty( prefix + result, String.valueOf( result.getDuration() ) );
+            }
+            cellLog.info( "    " + result + " " + result.getStatus() + duration );
+        }
+
+        // A pair with a project that failed has failed, whatever happened to the others
+        cell.cancelled = cell.exitCode == 0 && scheduler.isCancelled();
+    }
+
+    private int runMSBuild( File project, String platform, String configuration, List<String> targets, 
+            VCProject vcProject, Log cellLog ) throws IOException, InterruptedException
+    {
+        FileLog outputLog = null;
+        if ( outputLogDirectory != null )
+        {
+            String name = "msbuild-" + FileUtils.removeExtension( project.getName() )
+                    + ( platform != null ? "-" + platform + "-" + configuration : "" )
+                    + ( vcProject != null ? "-" + vcProject.getName() : "" );
+            outputLog = new FileLog( name, new File( outputLogDirectory, name + ".log" ), cellLog );
+        }
+
+        CpuTokenPool cpuTokenPool = CpuTokenPool.getSessionPool();
+        int cpuTokens = acquireCpuTokens( cpuTokenPool, cellLog );
+        try
+        {
+            return runMSBuild( project, platform, configuration, targets, 
+                    vcProject != null ? PROJECT_PROPERTIES : Collections.<String>emptyList(), 
+                    cpuTokenPool.isEnabled() ? cpuTokens : -1, outputLog != null ? outputLog : cellLog );
+        }
+        finally
+        {
+            cpuTokenPool.release( cpuTokens );
+            if ( outputLog != null )
+            {
+                outputLog.close();
+            }
+        }
+    }
+
+    /**
+     * Take the CPU tokens for one MSBuild process from the session pool. An explicit maxCpuCount is requested as is,
+     * otherwise the process asks for an equal share of the pool between the pairs, or projects, being built at the
+     * same time.
+     */
+    private int acquireCpuTokens( CpuTokenPool cpuTokenPool, Log cellLog ) throws InterruptedException
+    {
+        int wanted = 1;
+        if ( maxCpuCount > 0 )
+        {
+            wanted = maxCpuCount;
+        }
+        else if ( maxCpuCount == -1 && cpuTokenPool.isEnabled() )
+        {
+            wanted = Math.max( 1, cpuTokenPool.getCapacity() / ( activeBuilds * projectWorkers ) );
+        }
+
+        long start = System.currentTimeMillis();
+        int granted = cpuTokenPool.acquire( wanted );
+        long waited = System.currentTimeMillis() - start;
+        if ( cellLog.isDebugEnabled() )
+        {
+            cellLog.debug( "Granted " + granted + " of " + wanted + " CPU tokens after waiting " + waited + " ms" );
+        }
+        return granted;
+    }
+
+    private int runMSBuild( File project, String platform, String configuration, List<String> targets, 
+            List<String> properties, int cpuTokens, Log cellLog ) throws IOException, InterruptedException
     {
         List<String> command = new ArrayList<String>();
         command.add( msbuild.getAbsolutePath() );
         if ( maxCpuCount == -1 )
         {
-            command.add( "/maxcpucount" );
+            // Use the share of the session CPU token pool rather than every core on the machine
+            command.add( cpuTokens > 0 ? "/maxcpucount:" + cpuTokens : "/maxcpucount" );
         }
         else if ( maxCpuCount > 0 )
         {
@@ -103,17 +681,26 @@ final class MSBuildExecutor
         {
             command.add( "/p:Platform=" + platform );
         }
-        if ( buildTargets != null )
+        for ( String property : properties )
+        {
+            command.add( "/p:" + property );
+        }
+        if ( activeBuilds > 1 || projectWorkers > 1 )
+        {
+            // Worker nodes left waiting for reuse outlive a cancelled build when they cannot be killed with it
+            command.add( "/nodeReuse:false" );
+        }
+        if ( targets != null )
         {
             StringBuilder targetsString = new StringBuilder();
-            for ( String target: buildTargets )
+            for ( String target: targets )
             {
                 targetsString.append( target ).append( ";" );
             }
             targetsString.deleteCharAt( targetsString.length() - 1 );
             command.add( "/t:" + targetsString );
         }
-        command.add( projectFile.getAbsolutePath() );
+        command.add( project.getAbsolutePath() );
 
         ProcessBuilder pb = new ProcessBuilder( command );
         
@@ -122,33 +709,62 @@ final class MSBuildExecutor
             pb.environment().putAll( environment );
         }
         
-        if ( log.isInfoEnabled() )
+        if ( cellLog.isInfoEnabled() )
         {
             StringBuilder cmdLine = new StringBuilder();
             for ( String arg : command )
             {
                 cmdLine.append( arg ).append( " " );
             }
-            log.info( cmdLine.toString() );
+            cellLog.info( cmdLine.toString() );
         }
         
+        BuildTimeline.Span processSpan = BuildTimeline.getInstance().start( "MSBuild", "process" )
+                .arg( "project", project.getName() ).arg( "platform", platform ).arg( "configuration", configuration )
+                .arg( "cpuTokens", cpuTokens );
         Process proc = pb.start();
-        final StreamPumper stdoutPumper = new StreamPumper( proc.getInputStream(), new StdoutStreamToLog( log ) );
+        processGroup.add( proc, command );
+        final ProcessOutputPumper stdoutPumper = 
+                new ProcessOutputPumper( proc.getInputStream(), new StdoutStreamToLog( cellLog ), outputCharset );
         stdoutPumper.start();
-        final StreamPumper stderrPumper = new StreamPumper( proc.getErrorStream(), new StderrStreamToLog( log ) );
+        final ProcessOutputPumper stderrPumper = 
+                new ProcessOutputPumper( proc.getErrorStream(), new StderrStreamToLog( cellLog ), outputCharset );
         stderrPumper.start();
         
-        int exitCode = proc.waitFor();
-        stdoutPumper.waitUntilDone();
-        stderrPumper.waitUntilDone();
-        if ( exitCode != 0 )
+        int exitCode;
+        boolean killed;
+        try
+        {
+            exitCode = proc.waitFor();
+            stdoutPumper.waitUntilDone();
+            stderrPumper.waitUntilDone();
+        }
+        finally
+        {
+            killed = processGroup.remove( proc );
+            processSpan.end();
+        }
+        if ( killed )
         {
-            log.error( "MSBuild returned non-zero exit code (" + exitCode + ")" );
-            log.error( "Error building " + platform + "-" + configuration );
+            cellLog.info( "MSBuild cancelled" );
+        }
+        else if ( exitCode != 0 )
+        {
+            cellLog.error( "MSBuild returned non-zero exit code (" + exitCode + ")" );
+            if ( platform != null )
+            {
+                cellLog.error( "Error building " + platform + "-" + configuration );
+            }
         }
         return exitCode;
     }
 
+    /**
+     * Properties passed to MSBuild when building one project of a solution at a time, the projects it references have
+     * already been built.
+     */
+    private static final List<String> PROJECT_PROPERTIES = Collections.singletonList( "BuildProjectReferences=false" );
+
     private Log log;
 
     private File msbuild;
@@ -157,4 +773,16 @@ final class MSBuildExecutor
     private List<String> buildTargets;
     private List<BuildPlatform> buildPlatforms;
     private Map<String, String> environment;
+    private int maxConcurrentBuilds = 1;
+    private int activeBuilds = 1;
+    private int projectWorkers = 1;
+    private Map<String, ProjectDependencyGraph> dependencyGraphs;
+    private File projectDurationsFile;
+    private final Properties projectDurations = new Properties();
+    private File traversalProject;
+    private FailurePolicy failurePolicy = FailurePolicy.keepGoing;
+    private Charset outputCharset = Charset.defaultCharset();
+    private File outputLogDirectory;
+    private ProcessGroup processGroup = new ProcessGroup();
+    private List<CellResult> cellResults = new ArrayList<CellResult>();
 }
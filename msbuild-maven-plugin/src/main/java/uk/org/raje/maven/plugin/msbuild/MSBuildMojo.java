@@ -16,6 +16,18 @@
 package uk.org.raje.maven.plugin.msbuild;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -24,9 +36,12 @@ import org.apache.maven.plugins.annotations.Execute;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.project.MavenProjectHelper;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
 
 import uk.org.raje.maven.plugin.msbuild.configuration.BuildConfiguration;
 import uk.org.raje.maven.plugin.msbuild.configuration.BuildPlatform;
+import uk.org.raje.maven.plugin.msbuild.parser.VCProject;
 
 /**
  * Mojo to execute MSBuild to build the required platform/configuration pairs.
@@ -51,10 +66,210 @@ public class MSBuildMojo extends AbstractMSBuildMojo
         dumpConfiguration();
         validateForMSBuild();
 
+        if ( MSBuildPackaging.isSolution( mavenProject.getPackaging() ) && getChangedFiles() != null )
+        {
+            List<String> affectedTargets = getAffectedTargets();
+            if ( affectedTargets != null )
+            {
+                if ( affectedTargets.isEmpty() )
+                {
+                    getLog().info( "No projects affected by the changed files, skipping MSBuild" );
+                    return;
+                }
+                getLog().info( "Building the targets affected by the changed files: " + affectedTargets );
+                targets = affectedTargets;
+            }
+        }
+
+        File manifestFile = new File( mavenProject.getBuild().getDirectory(), FINGERPRINT_MANIFEST );
+        String inputsDigest = null;
+        if ( msbuildSkipUpToDate )
+        {
+            inputsDigest = getInputsFingerprint().getDigest();
+            if ( isUpToDate( manifestFile, inputsDigest ) )
+            {
+                getLog().info( "Build inputs and outputs unchanged since the last build, skipping MSBuild" );
+                findAndAttachArtifacts();
+                return;
+            }
+            // Never leave a manifest behind that could match a failed build
+            manifestFile.delete();
+        }
+
         runMSBuild( targets, null );
+        if ( inputsDigest != null )
+        {
+            writeManifest( manifestFile, inputsDigest );
+        }
         findAndAttachArtifacts();
     }
 
+    /**
+     * Fingerprint everything that determines the result of running MSBuild: the solution and project files and the 
+     * property sheets they import, the source files found for each project and the files listed by its other items, 
+     * the include directories and preprocessor definitions of each project, the platforms, configurations and 
+     * targets being built and the MSBuild used to build them.
+     * Headers outside the project directories are only represented by the include directories that find them.
+     * @return the fingerprint of the build inputs
+     * @throws MojoExecutionException if the projects cannot be parsed or scanned for sources
+     */
+    private BuildFingerprint getInputsFingerprint() throws MojoExecutionException
+    {
+        BuildFingerprint fingerprint = new BuildFingerprint();
+        fingerprint.add( "msbuild", msbuildPath.getAbsolutePath() );
+        fingerprint.add( "packaging", mavenProject.getPackaging() );
+        fingerprint.add( "targets", targets );
+        fingerprint.addFile( projectFile );
+
+        Set<File> scannedProjects = new HashSet<File>();
+        List<String> noExcludes = Collections.emptyList();
+        for ( BuildPlatform platform : platforms )
+        {
+            for ( BuildConfiguration configuration : platform.getConfigurations() )
+            {
+                String cell = platform.getName() + "-" + configuration.getName();
+                fingerprint.add( cell + ".outputDirectory", configuration.getOutputDirectory() );
+                fingerprint.add( cell + ".primary", configuration.isPrimary() );
+                fingerprint.addFiles( getParsedInputFiles( platform, configuration ) );
+                for ( VCProject vcProject : getParsedProjects( platform, configuration ) )
+                {
+                    String prefix = cell + "." + vcProject.getName();
+                    fingerprint.add( prefix + ".includes", vcProject.getIncludeDirectories() );
+                    fingerprint.add( prefix + ".defines", vcProject.getPreprocessorDefs() );
+                    fingerprint.add( prefix + ".outputDirectory", vcProject.getOutputDirectory() );
+
+                    // Sources only depend on the project location, scan each project once
+                    if ( scannedProjects.add( vcProject.getFile() ) )
+                    {
+                        fingerprint.addFile( vcProject.getFile() );
+                        fingerprint.addFiles( getProjectSources( vcProject, true, noExcludes ) );
+                        fingerprint.addFiles( getProjectOtherItemFiles( vcProject ) );
+                    }
+                }
+            }
+        }
+
+        getLog().debug( "Fingerprinted " + fingerprint.size() + " build inputs" );
+        return fingerprint;
+    }
+
+    /**
+     * Find the targets of the projects affected by the changed files for every platform/configuration pair, keeping
+     * only the configured targets if any are set.
+     * @return the targets to build, or null to build the configured targets if a project has no target name
+     * @throws MojoExecutionException if the projects cannot be parsed or the changed files cannot be read
+     */
+    private List<String> getAffectedTargets() throws MojoExecutionException
+    {
+        Set<String> affectedTargets = new LinkedHashSet<String>();
+        for ( BuildPlatform platform : platforms )
+        {
+            for ( BuildConfiguration configuration : platform.getConfigurations() )
+            {
+                for ( VCProject vcProject : getAffectedProjects( platform, configuration, null ) )
+                {
+                    if ( vcProject.getTargetName() == null )
+                    {
+                        getLog().info( "Project " + vcProject.getName() + " has no target name, building all targets" );
+                        return null;
+                    }
+                    if ( targets == null || targets.contains( vcProject.getTargetName() ) )
+                    {
+                        affectedTargets.add( vcProject.getTargetName() );
+                    }
+                }
+            }
+        }
+        return new ArrayList<String>( affectedTargets );
+    }
+
+    private boolean isUpToDate( File manifestFile, String inputsDigest )
+    {
+        if ( !manifestFile.isFile() )
+        {
+            return false;
+        }
+
+        Properties manifest = new Properties();
+        InputStream manifestStream = null;
+        try
+        {
+            manifestStream = new FileInputStream( manifestFile );
+            manifest.load( manifestStream );
+        }
+        catch ( IOException ioe )
+        {
+            getLog().warn( "Unable to read " + manifestFile + ", MSBuild will be run", ioe );
+            return false;
+        }
+        finally
+        {
+            IOUtil.close( manifestStream );
+        }
+
+        if ( !inputsDigest.equals( manifest.getProperty( MANIFEST_INPUTS ) ) )
+        {
+            getLog().debug( "Build inputs have changed since the last build" );
+            return false;
+        }
+
+        BuildFingerprint outputs = new BuildFingerprint();
+        for ( int i = 0; manifest.getProperty( MANIFEST_OUTPUT + i ) != null; i++ )
+        {
+            outputs.addFile( new File( manifest.getProperty( MANIFEST_OUTPUT + i ) ) );
+        }
+        if ( !outputs.getDigest().equals( manifest.getProperty( MANIFEST_OUTPUTS ) ) )
+        {
+            getLog().debug( "Build outputs have changed since the last build" );
+            return false;
+        }
+        return true;
+    }
+
+    private void writeManifest( File manifestFile, String inputsDigest ) throws MojoExecutionException
+    {
+        List<File> outputFiles = new ArrayList<File>();
+        Properties manifest = new Properties();
+        OutputStream manifestStream = null;
+        try
+        {
+            for ( BuildPlatform platform : platforms )
+            {
+                for ( BuildConfiguration configuration : platform.getConfigurations() )
+                {
+                    for ( File outputDirectory : getOutputDirectories( platform, configuration ) )
+                    {
+                        for ( Object outputFile : FileUtils.getFiles( outputDirectory, "**", null ) )
+                        {
+                            outputFiles.add( ( File ) outputFile );
+                        }
+                    }
+                }
+            }
+
+            BuildFingerprint outputs = new BuildFingerprint();
+            for ( int i = 0; i < outputFiles.size(); i++ )
+            {
+                manifest.setProperty( MANIFEST_OUTPUT + i, outputFiles.get( i ).getAbsolutePath() );
+                outputs.addFile( outputFiles.get( i ) );
+            }
+            manifest.setProperty( MANIFEST_INPUTS, inputsDigest );
+            manifest.setProperty( MANIFEST_OUTPUTS, outputs.getDigest() );
+
+            FileUtils.forceMkdir( manifestFile.getParentFile() );
+            manifestStream = new FileOutputStream( manifestFile );
+            manifest.store( manifestStream, "Build fingerprint written by " + MOJO_NAME );
+        }
+        catch ( IOException ioe )
+        {
+            throw new MojoExecutionException( "Could not write build fingerprint " + manifestFile, ioe );
+        }
+        finally
+        {
+            IOUtil.close( manifestStream );
+        }
+    }
+
     /**
      * Works out the output filename (without the extension) from the project.
      * @return the name part of output files
@@ -124,6 +339,14 @@ public class MSBuildMojo extends AbstractMSBuildMojo
     }
 
 
+    /**
+     * The name of the manifest, written to the build directory, that records the fingerprint of the last build.
+     */
+    private static final String FINGERPRINT_MANIFEST = "msbuild-fingerprint.properties";
+    private static final String MANIFEST_INPUTS = "inputs";
+    private static final String MANIFEST_OUTPUTS = "outputs";
+    private static final String MANIFEST_OUTPUT = "output.";
+
     /**
      * Helper for attaching artifacts provided by the container. 
      */
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.WriterFactory;
+import org.codehaus.plexus.util.xml.PrettyPrintXMLWriter;
+import org.codehaus.plexus.util.xml.XMLWriter;
+
+/**
+ * Generates an MSBuild traversal project that builds every platform/configuration pair of a solution or project from
+ * a single MSBuild process. The traversal project calls itself once per pair, with {@code BuildInParallel} set, and
+ * each of those calls builds the real project and records whether it succeeded in a result file so that the outcome
+ * can be mapped back to the individual pairs.
+ * <p>
+ * The generated project uses {@code ContinueOnError="ErrorAndContinue"} and {@code $(MSBuildLastTaskResult)} and so
+ * requires MSBuild 4.5 or later.
+ */
+final class MSBuildTraversalProject
+{
+    /**
+     * Create a traversal project.
+     * @param traversalFile the path of the traversal project to generate
+     * @param projectFile the solution or project file to build for each pair
+     * @param targets the targets to build in the project, may be null to build the default targets
+     */
+    public MSBuildTraversalProject( File traversalFile, File projectFile, List<String> targets )
+    {
+        this.traversalFile = traversalFile;
+        this.projectFile = projectFile;
+        this.targets = targets;
+    }
+
+    /**
+     * @return the path of the generated traversal project
+     */
+    public File getTraversalFile()
+    {
+        return traversalFile;
+    }
+
+    /**
+     * Write the traversal project for the given pairs, removing any result files left by an earlier build.
+     * @param cells the platform/configuration pairs to build
+     * @throws IOException if the traversal project cannot be written
+     */
+    public void write( List<MSBuildExecutor.CellResult> cells ) throws IOException
+    {
+        FileUtils.forceMkdir( getResultDirectory() );
+        for ( MSBuildExecutor.CellResult cell : cells )
+        {
+            FileUtils.forceDelete( getResultFile( cell ) );
+        }
+
+        Writer writer = WriterFactory.newWriter( traversalFile, WriterFactory.UTF_8 );
+        try
+        {
+            XMLWriter xml = new PrettyPrintXMLWriter( writer, WriterFactory.UTF_8, null );
+            xml.startElement( "Project" );
+            xml.addAttribute( "ToolsVersion", "4.0" );
+            xml.addAttribute( "DefaultTargets", TRAVERSAL_TARGET );
+            xml.addAttribute( "xmlns", "http://schemas.microsoft.com/developer/msbuild/2003" );
+
+            xml.startElement( "ItemGroup" );
+            for ( MSBuildExecutor.CellResult cell : cells )
+            {
+                xml.startElement( "CellProject" );
+                xml.addAttribute( "Include", traversalFile.getAbsolutePath() );
+                xml.startElement( "AdditionalProperties" );
+                xml.writeText( "CellConfiguration=" + cell.getConfiguration().getName()
+                        + ";CellPlatform=" + cell.getPlatform().getName()
+                        + ";CellResultFile=" + getResultFile( cell ).getAbsolutePath() );
+                xml.endElement();
+                xml.endElement();
+            }
+            xml.endElement();
+
+            xml.startElement( "Target" );
+            xml.addAttribute( "Name", TRAVERSAL_TARGET );
+            xml.startElement( "MSBuild" );
+            xml.addAttribute( "Projects", "@(CellProject)" );
+            xml.addAttribute( "Targets", CELL_TARGET );
+            xml.addAttribute( "BuildInParallel", "true" );
+            xml.endElement();
+            xml.endElement();
+
+            xml.startElement( "Target" );
+            xml.addAttribute( "Name", CELL_TARGET );
+            xml.startElement( "MSBuild" );
+            xml.addAttribute( "Projects", projectFile.getAbsolutePath() );
+            if ( targets != null && !targets.isEmpty() )
+            {
+                StringBuilder targetsString = new StringBuilder();
+                for ( String target : targets )
+                {
+                    targetsString.append( targetsString.length() == 0 ? "" : ";" ).append( target );
+                }
+                xml.addAttribute( "Targets", targetsString.toString() );
+            }
+            xml.addAttribute( "Properties", "Configuration=$(CellConfiguration);Platform=$(CellPlatform)" );
+            xml.addAttribute( "ContinueOnError", "ErrorAndContinue" );
+            xml.endElement();
+            xml.startElement( "WriteLinesToFile" );
+            xml.addAttribute( "File", "$(CellResultFile)" );
+            xml.addAttribute( "Lines", "$(MSBuildLastTaskResult)" );
+            xml.addAttribute( "Overwrite", "true" );
+            xml.endElement();
+            xml.endElement();
+
+            xml.endElement();
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+    }
+
+    /**
+     * Read the outcome of one pair after the traversal project has been built.
+     * @param cell the platform/configuration pair
+     * @param processExitCode the exit code of the MSBuild process, used when the pair did not record a result
+     * @return 0 if the pair built successfully, otherwise a non-zero exit code
+     * @throws IOException if the result file exists but cannot be read
+     */
+    public int readExitCode( MSBuildExecutor.CellResult cell, int processExitCode ) throws IOException
+    {
+        File resultFile = getResultFile( cell );
+        if ( !resultFile.isFile() )
+        {
+            // The pair never finished, blame the process as a whole
+            return processExitCode != 0 ? processExitCode : 1;
+        }
+        return "true".equalsIgnoreCase( FileUtils.fileRead( resultFile ).trim() ) ? 0 : 1;
+    }
+
+    private File getResultDirectory()
+    {
+        String name = traversalFile.getName();
+        int extension = name.lastIndexOf( '.' );
+        return new File( traversalFile.getParentFile(),
+                ( extension > 0 ? name.substring( 0, extension ) : name ) + "-results" );
+    }
+
+    private File getResultFile( MSBuildExecutor.CellResult cell )
+    {
+        return new File( getResultDirectory(), cell + ".result" );
+    }
+
+    private static final String TRAVERSAL_TARGET = "Build";
+    private static final String CELL_TARGET = "BuildCell";
+
+    private final File traversalFile;
+    private final File projectFile;
+    private final List<String> targets;
+}
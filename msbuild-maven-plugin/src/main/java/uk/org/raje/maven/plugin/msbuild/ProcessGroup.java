@@ -0,0 +1,304 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * A group of running processes that can be cancelled together. Processes are added to the group once started and
+ * removed when they exit. Cancelling the group kills every process in it, including any child processes they started
+ * (for example the worker nodes of MSBuild or the compilers it runs), and any process added afterwards is killed
+ * immediately.
+ */
+final class ProcessGroup
+{
+    /**
+     * Add a started process to the group.
+     * @param process the process
+     * @param command the command line the process was started with, used to find its process id on Windows with 
+     * Java 8 and earlier
+     * @return true if the process was added, false if the group has been cancelled and the process was killed
+     */
+    public boolean add( Process process, List<String> command )
+    {
+        synchronized ( this )
+        {
+            processes.put( process, command );
+            if ( !cancelled )
+            {
+                return true;
+            }
+            killed.add( process );
+        }
+        destroyTrees( Collections.singletonMap( process, command ) );
+        return false;
+    }
+
+    /**
+     * Remove a process from the group once it has exited.
+     * @param process the process
+     * @return true if the process was killed by the group, whatever exit code it returned
+     */
+    public synchronized boolean remove( Process process )
+    {
+        processes.remove( process );
+        return killed.remove( process );
+    }
+
+    /**
+     * Check whether the group has been cancelled. Work that has not started yet should be skipped.
+     * @return true if {@link #cancel()} has been called
+     */
+    public synchronized boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * Cancel the group, killing every process in it along with the processes they started. This returns once the
+     * kill requests have been made, the owners of each process observe it exiting with a non-zero exit code.
+     * @return true if this call cancelled the group, false if it had already been cancelled
+     */
+    public boolean cancel()
+    {
+        Map<Process, List<String>> toKill;
+        synchronized ( this )
+        {
+            if ( cancelled )
+            {
+                return false;
+            }
+            cancelled = true;
+            toKill = new LinkedHashMap<Process, List<String>>( processes );
+            killed.addAll( processes.keySet() );
+        }
+
+        destroyTrees( toKill );
+        return true;
+    }
+
+    /**
+     * Kill processes along with the processes they started, the whole tree on Windows ({@code taskkill /T}) and the 
+     * direct children elsewhere. {@link Process#destroy()} alone only ends the immediate process, leaving MSBuild 
+     * worker nodes and compilers running.
+     * @param toKill the processes to kill and the command lines they were started with
+     */
+    static void destroyTrees( Map<Process, List<String>> toKill )
+    {
+        Map<String, List<Long>> childProcesses = null;
+        for ( Map.Entry<Process, List<String>> entry : toKill.entrySet() )
+        {
+            Process process = entry.getKey();
+            long pid = getPid( process );
+            if ( pid <= 0 && IS_WINDOWS )
+            {
+                // Process ids are not available before Java 9 on Windows, look for the child of this JVM that has the
+                // same command line
+                if ( childProcesses == null )
+                {
+                    childProcesses = getWindowsChildProcesses();
+                }
+                List<Long> candidates = childProcesses.get( normalizeCommandLine( entry.getValue() ) );
+                if ( candidates != null && candidates.size() == 1 )
+                {
+                    pid = candidates.get( 0 );
+                }
+            }
+
+            if ( pid > 0 )
+            {
+                killChildren( pid );
+            }
+            else
+            {
+                LOGGER.warning( "Unable to find the process id of " + entry.getValue().get( 0 ) + ", only the "
+                        + "process itself is killed, any processes it started may keep running" );
+            }
+            process.destroy();
+        }
+    }
+
+    private static void killChildren( long pid )
+    {
+        List<String> command = new ArrayList<String>();
+        if ( IS_WINDOWS )
+        {
+            command.add( "taskkill" );
+            command.add( "/F" );
+            command.add( "/T" );
+            command.add( "/PID" );
+        }
+        else
+        {
+            command.add( "pkill" );
+            command.add( "-KILL" );
+            command.add( "-P" );
+        }
+        command.add( String.valueOf( pid ) );
+
+        try
+        {
+            new ProcessBuilder( command ).redirectErrorStream( true ).start().waitFor();
+        }
+        catch ( IOException ioe )
+        {
+            LOGGER.fine( "Unable to kill child processes of " + pid + ": " + ioe.getMessage() );
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Find the operating system process id, using Process.pid() where available (Java 9 and later) and the private
+     * field of the Unix implementation otherwise.
+     * @return the process id or -1 if it cannot be determined
+     */
+    private static long getPid( Process process )
+    {
+        try
+        {
+            Method pidMethod = Process.class.getMethod( "pid" );
+            return ( ( Number ) pidMethod.invoke( process ) ).longValue();
+        }
+        catch ( Exception e )
+        {
+            // Not available before Java 9, fall through
+        }
+
+        try
+        {
+            Field pidField = process.getClass().getDeclaredField( "pid" );
+            pidField.setAccessible( true );
+            return pidField.getInt( process );
+        }
+        catch ( Exception e )
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * List the processes started by this JVM on Windows, using WMI through PowerShell.
+     * @return the process ids keyed by normalized command line, empty if they cannot be listed
+     */
+    private static Map<String, List<Long>> getWindowsChildProcesses()
+    {
+        Map<String, List<Long>> childProcesses = new HashMap<String, List<Long>>();
+        String jvmName = ManagementFactory.getRuntimeMXBean().getName();
+        String jvmPid = jvmName.substring( 0, Math.max( 0, jvmName.indexOf( '@' ) ) );
+        if ( jvmPid.isEmpty() )
+        {
+            return childProcesses;
+        }
+
+        List<String> command = Arrays.asList( "powershell", "-NoProfile", "-NonInteractive", "-Command",
+                "Get-WmiObject Win32_Process -Filter 'ParentProcessId=" + jvmPid + "' | "
+                + "ForEach-Object { [string]$_.ProcessId + ' ' + $_.CommandLine }" );
+        try
+        {
+            Process query = new ProcessBuilder( command ).redirectErrorStream( true ).start();
+            query.getOutputStream().close();
+            BufferedReader reader = new BufferedReader( new InputStreamReader( query.getInputStream() ) );
+            try
+            {
+                String line;
+                while ( ( line = reader.readLine() ) != null )
+                {
+                    int separator = line.indexOf( ' ' );
+                    if ( separator <= 0 )
+                    {
+                        continue;
+                    }
+                    try
+                    {
+                        Long pid = Long.valueOf( line.substring( 0, separator ).trim() );
+                        String commandLine = normalizeCommandLine( line.substring( separator + 1 ) );
+                        if ( !childProcesses.containsKey( commandLine ) )
+                        {
+                            childProcesses.put( commandLine, new ArrayList<Long>() );
+                        }
+                        childProcesses.get( commandLine ).add( pid );
+                    }
+                    catch ( NumberFormatException nfe )
+                    {
+                        LOGGER.fine( "Unexpected process listing: " + line );
+                    }
+                }
+            }
+            finally
+            {
+                IOUtil.close( reader );
+            }
+            query.waitFor();
+        }
+        catch ( IOException ioe )
+        {
+            LOGGER.fine( "Unable to list child processes: " + ioe.getMessage() );
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+        }
+        return childProcesses;
+    }
+
+    private static String normalizeCommandLine( List<String> command )
+    {
+        StringBuilder commandLine = new StringBuilder();
+        for ( String argument : command )
+        {
+            commandLine.append( argument ).append( ' ' );
+        }
+        return normalizeCommandLine( commandLine.toString() );
+    }
+
+    /**
+     * Compare command lines ignoring the quotes Windows adds around arguments, spacing and case.
+     */
+    private static String normalizeCommandLine( String commandLine )
+    {
+        return commandLine.replace( "\"", "" ).trim().replaceAll( "\\s+", " " ).toLowerCase( Locale.ENGLISH );
+    }
+
+    private static final Logger LOGGER = Logger.getLogger( ProcessGroup.class.getName() );
+
+    private static final boolean IS_WINDOWS = System.getProperty( "os.name", "" ).startsWith( "Windows" );
+
+    private final Map<Process, List<String>> processes = new LinkedHashMap<Process, List<String>>();
+    private final Set<Process> killed = new HashSet<Process>();
+    private boolean cancelled;
+}
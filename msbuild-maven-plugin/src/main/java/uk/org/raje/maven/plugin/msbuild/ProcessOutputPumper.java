@@ -0,0 +1,203 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+/**
+ * Reads the output of a process on a background thread and passes it to a StreamConsumer one line at a time, a
+ * replacement for the plexus StreamPumper. The stream is read through a channel into a byte buffer and decoded with an
+ * explicit charset into a char buffer, both allocated once and reused for the whole stream. A line that lies within
+ * the char buffer is handed to the consumer as a single String made straight from the buffer, only lines that span
+ * two reads are gathered in an intermediate StringBuilder. Bytes that are not valid in the charset are replaced rather
+ * than stopping the pump.
+ * <p>
+ * Lines end at "\n", "\r\n" or a lone "\r", which is not included in the line passed to the consumer.
+ */
+final class ProcessOutputPumper implements Runnable
+{
+    /**
+     * Create a pumper for one stream.
+     * @param in the stream to read, closed when the end of the stream is reached
+     * @param consumer the consumer to pass each line to
+     * @param charset the charset the process writes its output in
+     */
+    public ProcessOutputPumper( InputStream in, StreamConsumer consumer, Charset charset )
+    {
+        this.channel = Channels.newChannel( in );
+        this.consumer = consumer;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput( CodingErrorAction.REPLACE )
+                .onUnmappableCharacter( CodingErrorAction.REPLACE );
+        this.thread = new Thread( this, "ProcessOutputPumper" );
+        this.thread.setDaemon( true );
+    }
+
+    /**
+     * Start pumping on a new thread.
+     */
+    public void start()
+    {
+        thread.start();
+    }
+
+    /**
+     * Wait for the end of the stream to be reached and every line to be passed to the consumer.
+     * @throws IOException if reading the stream failed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void waitUntilDone() throws IOException, InterruptedException
+    {
+        thread.join();
+        if ( exception != null )
+        {
+            throw exception;
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            pump();
+        }
+        catch ( IOException ioe )
+        {
+            exception = ioe;
+        }
+        finally
+        {
+            try
+            {
+                channel.close();
+            }
+            catch ( IOException ioe )
+            {
+                // Nothing left to read, ignore
+            }
+        }
+    }
+
+    /**
+     * Read the stream to its end, passing each complete line to the consumer.
+     * @throws IOException if reading the stream fails
+     */
+    void pump() throws IOException
+    {
+        final ByteBuffer bytes = ByteBuffer.allocate( BUFFER_SIZE );
+        final CharBuffer chars = CharBuffer.allocate( BUFFER_SIZE );
+        boolean endOfInput = false;
+        while ( !endOfInput )
+        {
+            endOfInput = channel.read( bytes ) < 0;
+            bytes.flip();
+            // No charset decodes to more chars than bytes so the char buffer, as large as the byte buffer, can hold 
+            // everything decoded from one read
+            decoder.decode( bytes, chars, endOfInput );
+            if ( endOfInput )
+            {
+                decoder.flush( chars );
+            }
+            bytes.compact();
+
+            chars.flip();
+            splitLines( chars );
+            chars.clear();
+        }
+
+        if ( partialLine.length() > 0 )
+        {
+            consumer.consumeLine( partialLine.toString() );
+        }
+    }
+
+    /**
+     * Pass every line completed in the decoded characters to the consumer, keeping any incomplete last line.
+     */
+    private void splitLines( CharBuffer chars )
+    {
+        final char[] array = chars.array();
+        final int end = chars.limit();
+        int lineStart = 0;
+
+        if ( pendingCarriageReturn && end > 0 )
+        {
+            // A "\r" ended the last read, skip its "\n" if this read starts with one
+            pendingCarriageReturn = false;
+            if ( array[0] == '\n' )
+            {
+                lineStart = 1;
+            }
+        }
+
+        for ( int i = lineStart; i < end; i++ )
+        {
+            final char c = array[i];
+            if ( c != '\n' && c != '\r' )
+            {
+                continue;
+            }
+
+            if ( partialLine.length() == 0 )
+            {
+                consumer.consumeLine( new String( array, lineStart, i - lineStart ) );
+            }
+            else
+            {
+                partialLine.append( array, lineStart, i - lineStart );
+                consumer.consumeLine( partialLine.toString() );
+                partialLine.setLength( 0 );
+            }
+
+            if ( c == '\r' )
+            {
+                if ( i + 1 == end )
+                {
+                    pendingCarriageReturn = true;
+                }
+                else if ( array[i + 1] == '\n' )
+                {
+                    i++;
+                }
+            }
+            lineStart = i + 1;
+        }
+
+        partialLine.append( array, lineStart, end - lineStart );
+    }
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final StreamConsumer consumer;
+    private final CharsetDecoder decoder;
+    private final Thread thread;
+    private final StringBuilder partialLine = new StringBuilder();
+    private boolean pendingCarriageReturn;
+    private volatile IOException exception;
+}
@@ -0,0 +1,480 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.org.raje.maven.plugin.msbuild;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.maven.plugin.logging.Log;
+
+import uk.org.raje.maven.plugin.msbuild.configuration.FailurePolicy;
+import uk.org.raje.maven.plugin.msbuild.parser.ProjectDependencyGraph;
+import uk.org.raje.maven.plugin.msbuild.parser.VCProject;
+import uk.org.raje.maven.plugin.msbuild.trace.BuildTimeline;
+
+/**
+ * Builds the projects of one platform/configuration pair separately on a bounded pool of workers, starting each
+ * project once every project it depends on has been built. When more projects are ready than there are free workers
+ * the project at the head of the longest remaining chain goes first, measured using how long each project took to
+ * build last time, so that the slowest chain of dependencies is never left waiting behind projects that could have
+ * been built later.
+ */
+final class ProjectScheduler
+{
+    /**
+     * Builds a single project.
+     */
+    interface ProjectBuild
+    {
+        /**
+         * Build a project. Called from a worker thread once every project it depends on has been built.
+         * @param vcProject the project to build
+         * @param projectLog the Log to write the output of the build to
+         * @return the exit code, 0 for success
+         * @throws IOException if the build cannot be run
+         * @throws InterruptedException if interrupted while building
+         */
+        int build( VCProject vcProject, Log projectLog ) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Create a scheduler for a set of projects.
+     * @param graph the dependency graph of the projects in the solution
+     * @param targets the target names of the projects to build, along with every project they depend on, or null to
+     * build every project in the graph
+     * @param workers the maximum number of projects to build at the same time
+     * @param failurePolicy what to do when a project fails to build
+     * @param processGroup the processes started by the builds, checked for cancellation before a project is started
+     */
+    ProjectScheduler( ProjectDependencyGraph graph, Collection<String> targets, int workers,
+            FailurePolicy failurePolicy, ProcessGroup processGroup )
+    {
+        this.graph = graph;
+        this.workers = Math.max( 1, workers );
+        this.failurePolicy = failurePolicy;
+        this.processGroup = processGroup;
+        selectProjects( targets );
+    }
+
+    /**
+     * Set how long each project took to build last time, used to decide which of the projects that are ready to
+     * build goes first. Projects without a duration are assumed to take the average of those that have one.
+     * @param previousDurations build durations in milliseconds keyed by project name
+     */
+    public void setPreviousDurations( Map<String, Long> previousDurations )
+    {
+        this.previousDurations = previousDurations;
+    }
+
+    /**
+     * Get the projects that will be built, in build order.
+     * @return the selected projects
+     */
+    public List<VCProject> getProjects()
+    {
+        return Collections.unmodifiableList( new ArrayList<VCProject>( results.keySet() ) );
+    }
+
+    /**
+     * Build the projects.
+     * @param build builds one project
+     * @param log the Log that the output of each project is written to, as one block once the project has been built
+     * @return 0 if no project failed, otherwise the exit code of the first project in build order that failed; 
+     * projects cancelled because another project or platform/configuration pair failed are not counted as failures,
+     * see {@link #isCancelled()}
+     * @throws IOException if a build cannot be run
+     * @throws InterruptedException if interrupted while waiting for the builds
+     */
+    public int execute( final ProjectBuild build, final Log log ) throws IOException, InterruptedException
+    {
+        Map<VCProject, Integer> waitingFor = new HashMap<VCProject, Integer>();
+        PriorityQueue<VCProject> ready = new PriorityQueue<VCProject>( Math.max( 1, results.size() ),
+                getPriorityOrder() );
+        for ( VCProject vcProject : results.keySet() )
+        {
+            int count = getSelectedDependencies( vcProject ).size();
+            waitingFor.put( vcProject, count );
+            if ( count == 0 )
+            {
+                ready.add( vcProject );
+            }
+        }
+
+        int poolSize = Math.min( workers, Math.max( 1, results.size() ) );
+        ExecutorService executor = Executors.newFixedThreadPool( poolSize );
+        CompletionService<ProjectResult> completion = new ExecutorCompletionService<ProjectResult>( executor );
+        int running = 0;
+        boolean stopped = false;
+        boolean completed = false;
+        try
+        {
+            while ( true )
+            {
+                while ( !stopped && running < poolSize && !ready.isEmpty() )
+                {
+                    if ( processGroup.isCancelled() )
+                    {
+                        stopped = true;
+                        break;
+                    }
+                    final ProjectResult result = results.get( ready.poll() );
+                    completion.submit( new Callable<ProjectResult>()
+                    {
+                        @Override
+                        public ProjectResult call() throws IOException, InterruptedException
+                        {
+                            runProject( result, build, log );
+                            return result;
+                        }
+                    } );
+                    running++;
+                }
+                if ( running == 0 )
+                {
+                    break;
+                }
+
+                ProjectResult finished = MSBuildExecutor.waitFor( completion.take() );
+                running--;
+                if ( finished.getStatus() == Status.SUCCESS )
+                {
+                    for ( VCProject dependent : getSelectedDependents( finished.getProject() ) )
+                    {
+                        int count = waitingFor.get( dependent ) - 1;
+                        waitingFor.put( dependent, count );
+                        if ( count == 0 && results.get( dependent ).getStatus() == Status.WAITING )
+                        {
+                            ready.add( dependent );
+                        }
+                    }
+                }
+                else if ( finished.getStatus() == Status.FAILED && failurePolicy == FailurePolicy.keepGoing )
+                {
+                    skipDependents( finished.getProject() );
+                }
+                else
+                {
+                    stopped = true;
+                    if ( finished.getStatus() == Status.FAILED )
+                    {
+                        processGroup.cancel();
+                    }
+                }
+            }
+            completed = true;
+        }
+        finally
+        {
+            if ( !completed )
+            {
+                // Don't leave MSBuild running after an error or interrupt
+                processGroup.cancel();
+            }
+            executor.shutdownNow();
+        }
+
+        return getExitCode();
+    }
+
+    /**
+     * Check whether any project was cancelled, killed or not started, by the last call to 
+     * {@link #execute(ProjectBuild, Log)}.
+     * @return true if a project was cancelled
+     */
+    public boolean isCancelled()
+    {
+        for ( ProjectResult result : results.values() )
+        {
+            if ( result.getStatus() == Status.CANCELLED )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the outcome of each project, in build order.
+     * @return the results
+     */
+    public List<ProjectResult> getResults()
+    {
+        return Collections.unmodifiableList( new ArrayList<ProjectResult>( results.values() ) );
+    }
+
+    /**
+     * What happened to a project.
+     */
+    enum Status
+    {
+        /** Not built yet */
+        WAITING,
+        SUCCESS,
+        FAILED,
+        /** Killed, or not started, because another project or platform/configuration pair failed */
+        CANCELLED,
+        /** Not built because a project it depends on failed */
+        SKIPPED
+    }
+
+    /**
+     * Outcome of building one project.
+     */
+    static final class ProjectResult
+    {
+        ProjectResult( VCProject vcProject )
+        {
+            this.vcProject = vcProject;
+        }
+
+        /**
+         * @return the project
+         */
+        public VCProject getProject()
+        {
+            return vcProject;
+        }
+
+        /**
+         * @return the outcome of the build
+         */
+        public Status getStatus()
+        {
+            return status;
+        }
+
+        /**
+         * @return the exit code of the build, 0 if the project was not built
+         */
+        public int getExitCode()
+        {
+            return exitCode;
+        }
+
+        /**
+         * @return the wall-clock time taken to build the project in milliseconds
+         */
+        public long getDuration()
+        {
+            return duration;
+        }
+
+        @Override
+        public String toString()
+        {
+            return vcProject.getName();
+        }
+
+        private final VCProject vcProject;
+        private volatile Status status = Status.WAITING;
+        private volatile int exitCode;
+        private volatile long duration;
+    }
+
+    /**
+     * Pick the projects with one of the target names along with every project they depend on.
+     */
+    private void selectProjects( Collection<String> targets )
+    {
+        List<VCProject> selected = new LinkedList<VCProject>();
+        if ( targets == null )
+        {
+            selected.addAll( graph.getProjects() );
+        }
+        else
+        {
+            // Walk backwards through the build order so that dependencies are found after their dependents
+            List<VCProject> buildOrder = graph.getProjects();
+            for ( int i = buildOrder.size() - 1; i >= 0; i-- )
+            {
+                VCProject vcProject = buildOrder.get( i );
+                if ( targets.contains( vcProject.getTargetName() ) || isDependedOn( vcProject, selected ) )
+                {
+                    selected.add( 0, vcProject );
+                }
+            }
+        }
+
+        for ( VCProject vcProject : selected )
+        {
+            results.put( vcProject, new ProjectResult( vcProject ) );
+        }
+    }
+
+    private boolean isDependedOn( VCProject vcProject, Collection<VCProject> selected )
+    {
+        for ( VCProject dependent : graph.getDependents( vcProject ) )
+        {
+            if ( selected.contains( dependent ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<VCProject> getSelectedDependencies( VCProject vcProject )
+    {
+        List<VCProject> selected = new ArrayList<VCProject>( graph.getDependencies( vcProject ) );
+        selected.retainAll( results.keySet() );
+        return selected;
+    }
+
+    private List<VCProject> getSelectedDependents( VCProject vcProject )
+    {
+        List<VCProject> selected = new ArrayList<VCProject>( graph.getDependents( vcProject ) );
+        selected.retainAll( results.keySet() );
+        return selected;
+    }
+
+    /**
+     * Order projects by the expected time from starting them to finishing everything that depends on them, longest
+     * first, and then by build order.
+     */
+    private Comparator<VCProject> getPriorityOrder()
+    {
+        final Map<VCProject, Long> remaining = new HashMap<VCProject, Long>();
+        final Map<VCProject, Integer> position = new HashMap<VCProject, Integer>();
+        long defaultDuration = getDefaultDuration();
+
+        List<VCProject> buildOrder = new ArrayList<VCProject>( results.keySet() );
+        for ( int i = buildOrder.size() - 1; i >= 0; i-- )
+        {
+            VCProject vcProject = buildOrder.get( i );
+            long longestDependent = 0;
+            for ( VCProject dependent : getSelectedDependents( vcProject ) )
+            {
+                longestDependent = Math.max( longestDependent, remaining.get( dependent ) );
+            }
+            Long previous = previousDurations.get( vcProject.getName() );
+            remaining.put( vcProject, longestDependent + ( previous != null ? previous : defaultDuration ) );
+            position.put( vcProject, i );
+        }
+
+        return new Comparator<VCProject>()
+        {
+            @Override
+            public int compare( VCProject first, VCProject second )
+            {
+                int byRemaining = remaining.get( second ).compareTo( remaining.get( first ) );
+                return byRemaining != 0 ? byRemaining : position.get( first ).compareTo( position.get( second ) );
+            }
+        };
+    }
+
+    private long getDefaultDuration()
+    {
+        long total = 0;
+        int count = 0;
+        for ( VCProject vcProject : results.keySet() )
+        {
+            Long previous = previousDurations.get( vcProject.getName() );
+            if ( previous != null )
+            {
+                total += previous;
+                count++;
+            }
+        }
+        return count > 0 ? Math.max( 1, total / count ) : 1;
+    }
+
+    private void runProject( ProjectResult result, ProjectBuild build, Log log )
+            throws IOException, InterruptedException
+    {
+        if ( processGroup.isCancelled() )
+        {
+            result.status = Status.CANCELLED;
+            return;
+        }
+
+        // Hold this project's output back until it completes so it appears as one block
+        BufferedLog projectLog = new BufferedLog( log );
+        BuildTimeline.Span projectSpan = BuildTimeline.getInstance().start( result.toString(), "project" );
+        long start = System.currentTimeMillis();
+        try
+        {
+            result.exitCode = build.build( result.getProject(), projectLog );
+        }
+        finally
+        {
+            result.duration = System.currentTimeMillis() - start;
+            projectSpan.arg( "exitCode", result.exitCode ).end();
+            projectLog.flushTo( log );
+        }
+
+        // Any exit code, even -1, can come from MSBuild itself, a build that stops once the group is cancelled was
+        // killed or gave up because of it
+        if ( result.exitCode != 0 && processGroup.isCancelled() )
+        {
+            result.status = Status.CANCELLED;
+        }
+        else
+        {
+            result.status = result.exitCode == 0 ? Status.SUCCESS : Status.FAILED;
+        }
+    }
+
+    private void skipDependents( VCProject vcProject )
+    {
+        for ( VCProject dependent : getSelectedDependents( vcProject ) )
+        {
+            ProjectResult result = results.get( dependent );
+            if ( result.getStatus() == Status.WAITING )
+            {
+                result.status = Status.SKIPPED;
+                skipDependents( dependent );
+            }
+        }
+    }
+
+    private int getExitCode()
+    {
+        int exitCode = 0;
+        for ( ProjectResult result : results.values() )
+        {
+            if ( result.getStatus() == Status.FAILED && exitCode == 0 )
+            {
+                exitCode = result.getExitCode();
+            }
+            else if ( result.getStatus() == Status.WAITING )
+            {
+                result.status = Status.CANCELLED;
+            }
+        }
+        return exitCode;
+    }
+
+    private final ProjectDependencyGraph graph;
+    private final int workers;
+    private final FailurePolicy failurePolicy;
+    private final ProcessGroup processGroup;
+    private final Map<VCProject, ProjectResult> results = new LinkedHashMap<VCProject, ProjectResult>();
+    private Map<String, Long> previousDurations = Collections.emptyMap();
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.org.raje.maven.plugin.msbuild;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codehaus.plexus.util.SelectorUtils;
+
+/**
+ * An in-memory listing of the directories scanned for source files, shared by every Mojo in the Maven session so that
+ * CppCheck, Vera++ and the build fingerprint, for every platform/configuration pair, do not each walk the same tree.
+ * <p>
+ * Each directory is listed once. Later queries check its modification time, which changes when files are added,
+ * removed or renamed in it, and list it again only if it has changed. Directories modified too recently for their
+ * modification time to be relied on are listed again by the next query. Queries walk the tree one level at a time,
+ * listing or checking the directories of each level in parallel.
+ * <p>
+ * Only names are kept: the size and modification time of a file change without its directory changing, so they are
+ * read from the file system by whoever needs them.
+ */
+final class SourceFileIndex
+{
+    /**
+     * Create an empty index.
+     */
+    SourceFileIndex()
+    {
+    }
+
+    /**
+     * Get the index shared by all Mojos in this Maven session.
+     * @return the session-wide index
+     */
+    public static SourceFileIndex getSessionIndex()
+    {
+        return SESSION_INDEX;
+    }
+
+    /**
+     * Find the files under a directory matching include and exclude patterns, with the same case-insensitive
+     * semantics as a DirectoryScanner: patterns are relative to the directory, either separator may be used and a
+     * pattern ending with a separator matches everything below it.
+     * @param baseDirectory the directory to search
+     * @param includes the patterns of the files to return
+     * @param excludes the patterns of files, or directories, to leave out
+     * @return the matching files, in directory order
+     * @throws IOException if a directory cannot be listed
+     * @throws InterruptedException if interrupted while waiting for directories to be listed
+     */
+    public List<File> getFiles( File baseDirectory, List<String> includes, List<String> excludes )
+            throws IOException, InterruptedException
+    {
+        String[] includePatterns = normalizePatterns( includes );
+        String[] excludePatterns = normalizePatterns( excludes );
+
+        List<File> files = new ArrayList<File>();
+        List<String> level = new ArrayList<String>();
+        level.add( "" );
+        while ( !level.isEmpty() )
+        {
+            List<Directory> levelDirectories = getDirectories( baseDirectory, level );
+            List<String> nextLevel = new ArrayList<String>();
+            for ( int i = 0; i < level.size(); i++ )
+            {
+                String prefix = level.get( i );
+                Directory directory = levelDirectories.get( i );
+                for ( String name : directory.files )
+                {
+                    String path = prefix + name;
+                    if ( matchesAny( includePatterns, path ) && !matchesAny( excludePatterns, path ) )
+                    {
+                        files.add( new File( baseDirectory, path ) );
+                    }
+                }
+                for ( String name : directory.directories )
+                {
+                    String path = prefix + name;
+                    if ( couldHoldIncluded( includePatterns, path ) && !excludesAll( excludePatterns, path ) )
+                    {
+                        nextLevel.add( path + File.separator );
+                    }
+                }
+            }
+            level = nextLevel;
+        }
+        return files;
+    }
+
+    /**
+     * @return the number of times a directory has been listed, rather than answered from the index
+     */
+    public long getListingCount()
+    {
+        return listings.get();
+    }
+
+    /**
+     * Forget every directory listed so far.
+     */
+    public void clear()
+    {
+        directories.clear();
+    }
+
+    /**
+     * The names of the files and sub-directories of a directory when it was listed.
+     */
+    private static final class Directory
+    {
+        Directory( long lastModified, String[] files, String[] directories )
+        {
+            this.lastModified = lastModified;
+            this.files = files;
+            this.directories = directories;
+        }
+
+        private final long lastModified;
+        private final String[] files;
+        private final String[] directories;
+    }
+
+    /**
+     * Get the up to date listing of a set of directories relative to a base directory, in parallel when there is
+     * more than one.
+     */
+    private List<Directory> getDirectories( final File baseDirectory, List<String> paths )
+            throws IOException, InterruptedException
+    {
+        List<Directory> result = new ArrayList<Directory>( paths.size() );
+        if ( paths.size() == 1 )
+        {
+            result.add( getDirectory( new File( baseDirectory, paths.get( 0 ) ) ) );
+            return result;
+        }
+
+        List<Callable<Directory>> tasks = new ArrayList<Callable<Directory>>( paths.size() );
+        for ( final String path : paths )
+        {
+            tasks.add( new Callable<Directory>()
+            {
+                @Override
+                public Directory call() throws IOException
+                {
+                    return getDirectory( new File( baseDirectory, path ) );
+                }
+            } );
+        }
+        for ( Future<Directory> future : getExecutor().invokeAll( tasks ) )
+        {
+            result.add( MSBuildExecutor.waitFor( future ) );
+        }
+        return result;
+    }
+
+    private Directory getDirectory( File directoryFile ) throws IOException
+    {
+        Directory directory = directories.get( directoryFile );
+        long lastModified = directoryFile.lastModified();
+        if ( directory != null && directory.lastModified == lastModified && lastModified != UNRELIABLE )
+        {
+            return directory;
+        }
+
+        File[] entries = directoryFile.listFiles();
+        if ( entries == null )
+        {
+            if ( !directoryFile.exists() )
+            {
+                directories.remove( directoryFile );
+                return EMPTY_DIRECTORY;
+            }
+            throw new IOException( "Unable to list " + directoryFile );
+        }
+        listings.incrementAndGet();
+
+        List<String> files = new ArrayList<String>( entries.length );
+        List<String> subdirectories = new ArrayList<String>();
+        for ( File entry : entries )
+        {
+            if ( entry.isDirectory() )
+            {
+                subdirectories.add( entry.getName() );
+            }
+            else
+            {
+                files.add( entry.getName() );
+            }
+        }
+
+        // A change made in the same tick as the listing would not change the modification time, check next time
+        boolean reliable = System.currentTimeMillis() - lastModified > MODIFICATION_TIME_RESOLUTION;
+        directory = new Directory( reliable ? lastModified : UNRELIABLE, files.toArray( new String[files.size()] ),
+                subdirectories.toArray( new String[subdirectories.size()] ) );
+        directories.put( directoryFile, directory );
+        return directory;
+    }
+
+    private static String[] normalizePatterns( List<String> patterns )
+    {
+        String[] normalized = new String[patterns.size()];
+        for ( int i = 0; i < normalized.length; i++ )
+        {
+            String pattern = patterns.get( i ).trim().replace( '/', File.separatorChar )
+                    .replace( '\\', File.separatorChar );
+            if ( pattern.endsWith( File.separator ) )
+            {
+                pattern += "**";
+            }
+            normalized[i] = pattern;
+        }
+        return normalized;
+    }
+
+    private static boolean matchesAny( String[] patterns, String path )
+    {
+        for ( String pattern : patterns )
+        {
+            if ( SelectorUtils.matchPath( pattern, path, false ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether every file under a directory is excluded, by a pattern ending with a separator and **.
+     */
+    private static boolean excludesAll( String[] patterns, String path )
+    {
+        for ( String pattern : patterns )
+        {
+            if ( pattern.endsWith( File.separator + "**" ) && SelectorUtils.matchPath( pattern, path, false ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean couldHoldIncluded( String[] patterns, String path )
+    {
+        for ( String pattern : patterns )
+        {
+            if ( SelectorUtils.matchPatternStart( pattern, path, false ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static synchronized ExecutorService getExecutor()
+    {
+        if ( executor == null )
+        {
+            executor = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors(), new ThreadFactory()
+            {
+                @Override
+                public Thread newThread( Runnable runnable )
+                {
+                    Thread thread = new Thread( runnable, "msbuild-source-index" );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+        }
+        return executor;
+    }
+
+    /**
+     * How long after a change the modification time of a directory can be relied on to change again, two seconds
+     * covers the coarsest file systems.
+     */
+    private static final long MODIFICATION_TIME_RESOLUTION = 2000;
+
+    private static final long UNRELIABLE = -1;
+
+    private static final Directory EMPTY_DIRECTORY = new Directory( UNRELIABLE, new String[0], new String[0] );
+
+    private static final SourceFileIndex SESSION_INDEX = new SourceFileIndex();
+
+    private static ExecutorService executor;
+
+    private final ConcurrentMap<File, Directory> directories = new ConcurrentHashMap<File, Directory>();
+    private final AtomicLong listings = new AtomicLong();
+}
@@ -36,6 +36,7 @@ import org.codehaus.plexus.util.cli.WriterStreamConsumer;
 
 import uk.org.raje.maven.plugin.msbuild.configuration.BuildConfiguration;
 import uk.org.raje.maven.plugin.msbuild.configuration.BuildPlatform;
+import uk.org.raje.maven.plugin.msbuild.configuration.FailurePolicy;
 import uk.org.raje.maven.plugin.msbuild.configuration.VeraConfiguration;
 import uk.org.raje.maven.plugin.msbuild.parser.VCProject;
 import uk.org.raje.maven.plugin.msbuild.streamconsumers.StdoutStreamToLog;
@@ -78,7 +79,7 @@ public class VeraMojo extends AbstractMSBuildPluginMojo
         {
             for ( BuildConfiguration configuration : platform.getConfigurations() )
             {
-                for ( VCProject vcProject : getParsedProjects( platform, configuration,
+                for ( VCProject vcProject : getAffectedProjects( platform, configuration,
                         vera.getExcludeProjectRegex() ) )
                 {
                     getLog().info( "Running coding style analysis for project " + vcProject.getName() + ", platform="
@@ -87,6 +88,10 @@ public class VeraMojo extends AbstractMSBuildPluginMojo
                     try
                     {
                         wasExecutionSuccessful &= runVera( vcProject );
+                        if ( ! wasExecutionSuccessful && msbuildFailurePolicy == FailurePolicy.failFast )
+                        {
+                            throw new MojoFailureException( "Coding style analysis failed for project " + vcProject );
+                        }
                     }
                     catch ( MojoExecutionException mee )
                     {
@@ -166,11 +171,12 @@ public class VeraMojo extends AbstractMSBuildPluginMojo
         return veraReportWriter;
     }
 
-    private CommandLineRunner createVeraRunner( VCProject vcProject, Writer reportWriter )
+    private CommandLineRunner createVeraRunner( VCProject vcProject, Writer reportWriter, Log outputLog )
             throws MojoExecutionException
     {
-        VeraRunner veraRunner = new VeraRunner( vera.getVeraHome(), reportWriter, getLog() );
+        VeraRunner veraRunner = new VeraRunner( vera.getVeraHome(), reportWriter, outputLog );
         veraRunner.setWorkingDirectory( vcProject.getBaseDirectory() );
+        veraRunner.setOutputCharset( getOutputCharset() );
         veraRunner.setStandardInputString( getSourcesForStdin( vcProject ) );
         veraRunner.setProfile( vera.getProfile() );
         veraRunner.setParameters( vera.getParameters() );
@@ -213,11 +219,23 @@ public class VeraMojo extends AbstractMSBuildPluginMojo
         File reportFile = getReportFile( vcProject );
         Writer reportWriter = createVeraReportWriter( reportFile );
 
-        CommandLineRunner veraRunner = createVeraRunner( vcProject, reportWriter );
-        boolean wasExecutionSuccessful = executeVeraRunner( veraRunner );
-        finaliseReportWriter( reportWriter, reportFile );
+        FileLog outputFileLog = openOutputLog( "vera-" + vcProject, getLog() );
+        try
+        {
+            CommandLineRunner veraRunner = createVeraRunner( vcProject, reportWriter, 
+                    outputFileLog != null ? outputFileLog : getLog() );
+            boolean wasExecutionSuccessful = executeVeraRunner( veraRunner );
+            finaliseReportWriter( reportWriter, reportFile );
 
-        return wasExecutionSuccessful;
+            return wasExecutionSuccessful;
+        }
+        finally
+        {
+            if ( outputFileLog != null )
+            {
+                outputFileLog.close();
+            }
+        }
     }
 
     private File getReportFile( VCProject vcProject )
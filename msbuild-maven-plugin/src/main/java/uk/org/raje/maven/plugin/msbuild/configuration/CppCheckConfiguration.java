@@ -152,6 +152,33 @@ public class CppCheckConfiguration
         return excludeProjectRegex;
     }
 
+    /**
+     * Get the maximum number of CppCheck processes to run at the same time.
+     * @return the configured value or 1 if not configured
+     */
+    public final int getMaxConcurrentRuns()
+    {
+        return maxConcurrentRuns;
+    }
+
+    /**
+     * Get the number of source files above which a project is split across several CppCheck processes.
+     * @return the configured value or 0, never split, if not configured
+     */
+    public final int getFilesPerShard()
+    {
+        return filesPerShard;
+    }
+
+    /**
+     * Get the configured value for findingsCache
+     * @return the configured value or false if not configured
+     */
+    public final boolean getFindingsCache()
+    {
+        return findingsCache;
+    }
+
     /**
      * Set to true to skip CppCheck functionality.
      */
@@ -198,4 +225,39 @@ public class CppCheckConfiguration
             readonly = false, 
             required = false )
     private String excludeProjectRegex;
+
+    /**
+     * The maximum number of CppCheck processes, one per project or per shard of a project split by filesPerShard, 
+     * to run at the same time. Default value of 1 analyses each project in turn. With a larger value the output of 
+     * each CppCheck process is written to the log as a single block when it completes. Processes also take tokens 
+     * from the CPU token pool, see msbuildCpuTokens.
+     */
+    @Parameter( 
+            defaultValue = "1", 
+            readonly = false, 
+            required = false )
+    private int maxConcurrentRuns = 1;
+
+    /**
+     * Split projects with more source files than this across several CppCheck processes, each given files of roughly 
+     * equal total size, and merge their reports into the project report. A project is split into no more shards than
+     * maxConcurrentRuns. Default value of 0 never splits a project.
+     */
+    @Parameter( 
+            defaultValue = "0", 
+            readonly = false, 
+            required = false )
+    private int filesPerShard = 0;
+
+    /**
+     * Set to true to keep the findings for each source file under 'target' and only analyse the files that have 
+     * changed since the last run, or whose include directories, preprocessor definitions, project headers, CppCheck 
+     * version or cppCheckType have changed. Not used with the cppCheckType values all and unusedFunction, which look 
+     * at the whole project at once.
+     */
+    @Parameter( 
+            defaultValue = "false", 
+            readonly = false, 
+            required = false )
+    private boolean findingsCache = false;
 }
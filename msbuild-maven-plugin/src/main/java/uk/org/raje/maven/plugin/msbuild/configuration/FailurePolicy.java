@@ -0,0 +1,34 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild.configuration;
+
+/**
+ * What to do with the remaining work when one MSBuild platform/configuration pair or tool run fails.
+ */
+public enum FailurePolicy
+{
+    /**
+     * Stop at the first failure, processes that are still running are killed along with any child processes they 
+     * started and work that has not started yet is skipped.
+     */
+    failFast,
+
+    /**
+     * Carry on after a failure so that every failure is reported.
+     */
+    keepGoing
+}
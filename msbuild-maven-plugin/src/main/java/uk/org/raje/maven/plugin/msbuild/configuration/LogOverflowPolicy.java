@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild.configuration;
+
+/**
+ * What to do with a new log message when the buffer between external processes and the Maven log is full.
+ */
+public enum LogOverflowPolicy
+{
+    /**
+     * Wait for space in the buffer, no messages are lost but a slow console can slow the process down.
+     */
+    block,
+
+    /**
+     * Discard debug and info messages, warnings and errors wait for space in the buffer.
+     */
+    dropInfo,
+
+    /**
+     * Write the message to a spill file in the build directory instead of the Maven log.
+     */
+    spill
+}
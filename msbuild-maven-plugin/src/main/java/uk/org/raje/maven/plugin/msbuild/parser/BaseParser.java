@@ -48,6 +48,8 @@ abstract class BaseParser
         this.inputFile = inputFile;
         this.configuration = configuration;
         this.platform = platform;
+        this.configurationPlatform = configuration.replaceAll( "[ \t]" , "" ) + "|" 
+                + platform.replaceAll( "[ \t]" , "" );
     }
     
     /**
@@ -83,7 +85,7 @@ abstract class BaseParser
      */
     public String getConfigurationPlatform() 
     {
-        return configuration.replaceAll( "[ \t]" , "" ) + "|" + platform.replaceAll( "[ \t]" , "" );
+        return configurationPlatform;
     }
     
     /**
@@ -95,5 +97,6 @@ abstract class BaseParser
     
     private String platform;
     private String configuration;
+    private String configurationPlatform;
     private File inputFile;
 }
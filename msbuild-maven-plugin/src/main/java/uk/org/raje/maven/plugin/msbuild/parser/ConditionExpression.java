@@ -0,0 +1,619 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild.parser;
+
+import java.io.File;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * A compiled MSBuild {@code Condition} attribute. The following are supported:
+ * <ul>
+ *      <li>quoted and unquoted values, with {@code $(name)} properties expanded from a map of variables; properties
+ *      that have no value expand to the empty string, as in MSBuild</li>
+ *      <li>the comparisons {@code ==} and {@code !=}, which ignore case, and {@code <}, {@code >}, {@code <=} and
+ *      {@code >=} on numbers</li>
+ *      <li>{@code and}, {@code or}, {@code !} and parentheses</li>
+ *      <li>the functions {@code Exists()} and {@code HasTrailingSlash()}</li>
+ * </ul>
+ * Conditions are compiled once per session by {@link #compile(String)} and the compiled form is shared by every
+ * project and platform/configuration pair that uses the same condition text.
+ */
+final class ConditionExpression
+{
+    /**
+     * Return the compiled form of a condition, compiling it on first use. A condition that cannot be compiled is
+     * logged once and is never met.
+     * @param condition the text of the {@code Condition} attribute
+     * @return the compiled condition
+     */
+    static ConditionExpression compile( String condition )
+    {
+        ConditionExpression expression = COMPILED_CONDITIONS.get( condition );
+        if ( expression == null )
+        {
+            Node root;
+            try
+            {
+                root = new Compiler( condition ).compile();
+            }
+            catch ( ParseException pe )
+            {
+                LOGGER.warning( "Unable to evaluate condition \"" + condition + "\" at position "
+                        + pe.getErrorOffset() + ": " + pe.getMessage() + ", treating it as false" );
+                root = new Constant( false );
+            }
+
+            expression = new ConditionExpression( condition, root );
+            ConditionExpression existingExpression = COMPILED_CONDITIONS.putIfAbsent( condition, expression );
+            if ( existingExpression != null )
+            {
+                expression = existingExpression;
+            }
+        }
+        return expression;
+    }
+
+    /**
+     * Evaluate the condition.
+     * @param variables the values of the properties that can appear in the condition
+     * @param usedVariables every property expanded while evaluating is added to this map with its value,
+     * {@code null} if it has no value
+     * @param probedPaths every path checked by {@code Exists()} is added to this map with whether it existed
+     * @param baseDirectory the directory relative paths in {@code Exists()} are resolved against
+     * @return {@code true} if the condition is met
+     */
+    boolean evaluate( Map<String, String> variables, Map<String, String> usedVariables, Map<File, Boolean> probedPaths,
+            File baseDirectory )
+    {
+        return root.evaluate( new Evaluation( variables, usedVariables, probedPaths, baseDirectory ) );
+    }
+
+    @Override
+    public String toString()
+    {
+        return condition;
+    }
+
+    private ConditionExpression( String condition, Node root )
+    {
+        this.condition = condition;
+        this.root = root;
+    }
+
+    /**
+     * The state of one evaluation.
+     */
+    private static final class Evaluation
+    {
+        Evaluation( Map<String, String> variables, Map<String, String> usedVariables, 
+                Map<File, Boolean> probedPaths, File baseDirectory )
+        {
+            this.variables = variables;
+            this.usedVariables = usedVariables;
+            this.probedPaths = probedPaths;
+            this.baseDirectory = baseDirectory;
+        }
+
+        String getVariable( String name )
+        {
+            String value = variables.get( name );
+            usedVariables.put( name, value );
+            return value != null ? value : "";
+        }
+
+        private final Map<String, String> variables;
+        private final Map<String, String> usedVariables;
+        private final Map<File, Boolean> probedPaths;
+        private final File baseDirectory;
+    }
+
+    /**
+     * A node of the compiled condition that evaluates to a boolean.
+     */
+    private abstract static class Node
+    {
+        abstract boolean evaluate( Evaluation evaluation );
+    }
+
+    private static final class Constant extends Node
+    {
+        Constant( boolean value )
+        {
+            this.value = value;
+        }
+
+        @Override
+        boolean evaluate( Evaluation evaluation )
+        {
+            return value;
+        }
+
+        private final boolean value;
+    }
+
+    private static final class And extends Node
+    {
+        And( Node left, Node right )
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean evaluate( Evaluation evaluation )
+        {
+            return left.evaluate( evaluation ) && right.evaluate( evaluation );
+        }
+
+        private final Node left;
+        private final Node right;
+    }
+
+    private static final class Or extends Node
+    {
+        Or( Node left, Node right )
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean evaluate( Evaluation evaluation )
+        {
+            return left.evaluate( evaluation ) || right.evaluate( evaluation );
+        }
+
+        private final Node left;
+        private final Node right;
+    }
+
+    private static final class Not extends Node
+    {
+        Not( Node operand )
+        {
+            this.operand = operand;
+        }
+
+        @Override
+        boolean evaluate( Evaluation evaluation )
+        {
+            return !operand.evaluate( evaluation );
+        }
+
+        private final Node operand;
+    }
+
+    private static final class Comparison extends Node
+    {
+        Comparison( String operator, Value left, Value right )
+        {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean evaluate( Evaluation evaluation )
+        {
+            String leftValue = left.expand( evaluation );
+            String rightValue = right.expand( evaluation );
+            Double leftNumber = toNumber( leftValue );
+            Double rightNumber = toNumber( rightValue );
+
+            if ( "==".equals( operator ) || "!=".equals( operator ) )
+            {
+                boolean equal = leftNumber != null && rightNumber != null
+                        ? leftNumber.doubleValue() == rightNumber.doubleValue()
+                        : leftValue.equalsIgnoreCase( rightValue );
+                return "==".equals( operator ) == equal;
+            }
+
+            if ( leftNumber == null || rightNumber == null )
+            {
+                return false;
+            }
+            int comparison = leftNumber.compareTo( rightNumber );
+            if ( "<".equals( operator ) )
+            {
+                return comparison < 0;
+            }
+            if ( ">".equals( operator ) )
+            {
+                return comparison > 0;
+            }
+            if ( "<=".equals( operator ) )
+            {
+                return comparison <= 0;
+            }
+            return comparison >= 0;
+        }
+
+        private static Double toNumber( String value )
+        {
+            String trimmed = value.trim();
+            if ( trimmed.isEmpty() )
+            {
+                return null;
+            }
+            try
+            {
+                if ( trimmed.startsWith( "0x" ) || trimmed.startsWith( "0X" ) )
+                {
+                    return Double.valueOf( Long.parseLong( trimmed.substring( 2 ), HEX_RADIX ) );
+                }
+                char first = trimmed.charAt( 0 );
+                if ( !Character.isDigit( first ) && first != '-' && first != '+' && first != '.' )
+                {
+                    return null;
+                }
+                return Double.valueOf( trimmed );
+            }
+            catch ( NumberFormatException nfe )
+            {
+                return null;
+            }
+        }
+
+        private static final int HEX_RADIX = 16;
+
+        private final String operator;
+        private final Value left;
+        private final Value right;
+    }
+
+    /**
+     * A value used on its own, true if it is one of the values MSBuild reads as true.
+     */
+    private static final class BooleanValue extends Node
+    {
+        BooleanValue( Value value )
+        {
+            this.value = value;
+        }
+
+        @Override
+        boolean evaluate( Evaluation evaluation )
+        {
+            String expanded = value.expand( evaluation ).trim();
+            return "true".equalsIgnoreCase( expanded ) || "on".equalsIgnoreCase( expanded )
+                    || "yes".equalsIgnoreCase( expanded ) || "!false".equalsIgnoreCase( expanded )
+                    || "!off".equalsIgnoreCase( expanded ) || "!no".equalsIgnoreCase( expanded );
+        }
+
+        private final Value value;
+    }
+
+    private static final class Function extends Node
+    {
+        Function( String name, Value argument )
+        {
+            this.name = name;
+            this.argument = argument;
+        }
+
+        @Override
+        boolean evaluate( Evaluation evaluation )
+        {
+            String path = argument.expand( evaluation ).trim();
+            if ( "HasTrailingSlash".equalsIgnoreCase( name ) )
+            {
+                return path.endsWith( "/" ) || path.endsWith( "\\" );
+            }
+            if ( path.isEmpty() )
+            {
+                return false;
+            }
+
+            File file = new File( path.replace( '\\', File.separatorChar ) );
+            if ( !file.isAbsolute() && evaluation.baseDirectory != null )
+            {
+                file = new File( evaluation.baseDirectory, file.getPath() );
+            }
+            boolean exists = file.exists();
+            evaluation.probedPaths.put( file.getAbsoluteFile(), exists );
+            return exists;
+        }
+
+        private final String name;
+        private final Value argument;
+    }
+
+    /**
+     * A quoted or unquoted value, split at compile time into literal text and the names of the properties to expand.
+     */
+    private static final class Value
+    {
+        Value( String text )
+        {
+            int start = 0;
+            int propertyStart;
+            while ( ( propertyStart = text.indexOf( "$(", start ) ) >= 0 )
+            {
+                int propertyEnd = text.indexOf( ')', propertyStart );
+                if ( propertyEnd < 0 )
+                {
+                    break;
+                }
+                if ( propertyStart > start )
+                {
+                    literals.add( text.substring( start, propertyStart ) );
+                    properties.add( null );
+                }
+                literals.add( null );
+                properties.add( text.substring( propertyStart + 2, propertyEnd ).trim() );
+                start = propertyEnd + 1;
+            }
+            if ( start < text.length() || literals.isEmpty() )
+            {
+                literals.add( text.substring( start ) );
+                properties.add( null );
+            }
+        }
+
+        String expand( Evaluation evaluation )
+        {
+            if ( literals.size() == 1 )
+            {
+                return literals.get( 0 ) != null ? literals.get( 0 ) : evaluation.getVariable( properties.get( 0 ) );
+            }
+
+            StringBuilder expanded = new StringBuilder();
+            for ( int i = 0; i < literals.size(); i++ )
+            {
+                expanded.append( literals.get( i ) != null
+                        ? literals.get( i ) : evaluation.getVariable( properties.get( i ) ) );
+            }
+            return expanded.toString();
+        }
+
+        private final List<String> literals = new ArrayList<String>();
+        private final List<String> properties = new ArrayList<String>();
+    }
+
+    /**
+     * A recursive descent compiler for the condition grammar:
+     * <pre>
+     * or         := and ( "or" and )*
+     * and        := unary ( "and" unary )*
+     * unary      := "!" unary | primary
+     * primary    := "(" or ")" | function | value ( comparison value )?
+     * function   := name "(" value ")"
+     * </pre>
+     */
+    private static final class Compiler
+    {
+        Compiler( String source )
+        {
+            this.source = source;
+        }
+
+        Node compile() throws ParseException
+        {
+            Node node = compileOr();
+            skipWhitespace();
+            if ( position < source.length() )
+            {
+                throw new ParseException( "Unexpected '" + source.charAt( position ) + "'", position );
+            }
+            return node;
+        }
+
+        private Node compileOr() throws ParseException
+        {
+            Node node = compileAnd();
+            while ( acceptKeyword( "or" ) )
+            {
+                node = new Or( node, compileAnd() );
+            }
+            return node;
+        }
+
+        private Node compileAnd() throws ParseException
+        {
+            Node node = compileUnary();
+            while ( acceptKeyword( "and" ) )
+            {
+                node = new And( node, compileUnary() );
+            }
+            return node;
+        }
+
+        private Node compileUnary() throws ParseException
+        {
+            skipWhitespace();
+            if ( position < source.length() && source.charAt( position ) == '!'
+                    && !source.startsWith( "!=", position ) )
+            {
+                position++;
+                return new Not( compileUnary() );
+            }
+            return compilePrimary();
+        }
+
+        private Node compilePrimary() throws ParseException
+        {
+            skipWhitespace();
+            if ( position >= source.length() )
+            {
+                throw new ParseException( "Unexpected end of condition", position );
+            }
+
+            if ( source.charAt( position ) == '(' )
+            {
+                position++;
+                Node node = compileOr();
+                expect( ')' );
+                return node;
+            }
+
+            if ( source.charAt( position ) != '\'' )
+            {
+                int nameStart = position;
+                String word = readWord();
+                skipWhitespace();
+                if ( position < source.length() && source.charAt( position ) == '(' && isFunctionName( word ) )
+                {
+                    position++;
+                    Value argument = compileValue();
+                    expect( ')' );
+                    return new Function( word, argument );
+                }
+                position = nameStart;
+            }
+
+            Value left = compileValue();
+            String operator = readOperator();
+            if ( operator == null )
+            {
+                return new BooleanValue( left );
+            }
+            return new Comparison( operator, left, compileValue() );
+        }
+
+        private Value compileValue() throws ParseException
+        {
+            skipWhitespace();
+            if ( position >= source.length() )
+            {
+                throw new ParseException( "Expected a value", position );
+            }
+
+            if ( source.charAt( position ) == '\'' )
+            {
+                int end = source.indexOf( '\'', position + 1 );
+                if ( end < 0 )
+                {
+                    throw new ParseException( "Unterminated string", position );
+                }
+                String text = source.substring( position + 1, end );
+                position = end + 1;
+                return new Value( text );
+            }
+
+            String word = readWord();
+            if ( word.isEmpty() )
+            {
+                throw new ParseException( "Expected a value", position );
+            }
+            return new Value( word );
+        }
+
+        /**
+         * Read an unquoted value, which may contain {@code $(name)} properties, up to whitespace, an operator or a
+         * parenthesis.
+         */
+        private String readWord()
+        {
+            int start = position;
+            while ( position < source.length() )
+            {
+                char c = source.charAt( position );
+                if ( c == '$' && position + 1 < source.length() && source.charAt( position + 1 ) == '(' )
+                {
+                    int end = source.indexOf( ')', position );
+                    position = end < 0 ? source.length() : end + 1;
+                }
+                else if ( Character.isWhitespace( c ) || "()=!<>,'".indexOf( c ) >= 0 )
+                {
+                    break;
+                }
+                else
+                {
+                    position++;
+                }
+            }
+            return source.substring( start, position );
+        }
+
+        private String readOperator()
+        {
+            skipWhitespace();
+            for ( String operator : OPERATORS )
+            {
+                if ( source.startsWith( operator, position ) )
+                {
+                    position += operator.length();
+                    return operator;
+                }
+            }
+            return null;
+        }
+
+        private boolean acceptKeyword( String keyword )
+        {
+            skipWhitespace();
+            int end = position + keyword.length();
+            if ( source.regionMatches( true, position, keyword, 0, keyword.length() )
+                    && ( end == source.length() || Character.isWhitespace( source.charAt( end ) )
+                            || source.charAt( end ) == '(' || source.charAt( end ) == '\'' ) )
+            {
+                position = end;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect( char c ) throws ParseException
+        {
+            skipWhitespace();
+            if ( position >= source.length() || source.charAt( position ) != c )
+            {
+                throw new ParseException( "Expected '" + c + "'", position );
+            }
+            position++;
+        }
+
+        private void skipWhitespace()
+        {
+            while ( position < source.length() && Character.isWhitespace( source.charAt( position ) ) )
+            {
+                position++;
+            }
+        }
+
+        private static boolean isFunctionName( String word )
+        {
+            return "Exists".equalsIgnoreCase( word ) || "HasTrailingSlash".equalsIgnoreCase( word );
+        }
+
+        /**
+         * Longest first so that {@code <=} is not read as {@code <}.
+         */
+        private static final String[] OPERATORS = { "==", "!=", "<=", ">=", "<", ">" };
+
+        private final String source;
+        private int position;
+    }
+
+    private static final Logger LOGGER = Logger.getLogger( ConditionExpression.class.getName() );
+
+    /**
+     * Compiled conditions by their text. Projects in a solution share a handful of distinct conditions, so the map
+     * stays small.
+     */
+    private static final ConcurrentMap<String, ConditionExpression> COMPILED_CONDITIONS =
+            new ConcurrentHashMap<String, ConditionExpression>();
+
+    private final String condition;
+    private final Node root;
+}
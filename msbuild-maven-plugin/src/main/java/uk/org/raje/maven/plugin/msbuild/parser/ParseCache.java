@@ -0,0 +1,494 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild.parser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * A file holding the {@link VCProject}s parsed for one solution or project and one platform/configuration pair, so that
+ * they can be reused by later Maven invocations. The entry records every file that was parsed, with its size,
+ * modification time and SHA-1 hash, every path whose existence was checked, with whether it existed, and the value of
+ * every variable substituted while parsing. It is only used if all of these are unchanged: files are first compared by
+ * size and modification time and only hashed when those differ, so a file that was touched but not changed does not
+ * invalidate the entry. The new size and modification time of such a file are written back so that it is not hashed
+ * again by the next invocation.
+ */
+final class ParseCache
+{
+    /**
+     * Create a cache backed by a file.
+     * @param cacheFile the file to read and write, it need not exist
+     */
+    ParseCache( File cacheFile )
+    {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * Read the cached projects if the entry is still valid.
+     * @param envVariables the variables that override the environment when parsing, may be {@code null}
+     * @param builtInVariables the names of variables whose values the parser derives from the input file, platform and
+     * configuration, which therefore need not be checked
+     * @param inputFiles if the entry is valid, the files the cached projects were parsed from are added to this
+     * @param probedPaths if the entry is valid, the paths checked while parsing are added to this with whether they
+     * existed
+     * @return the cached projects, or {@code null} if there is no valid entry
+     */
+    List<VCProject> load( Map<String, String> envVariables, Collection<String> builtInVariables,
+            Collection<File> inputFiles, Map<File, Boolean> probedPaths )
+    {
+        if ( !cacheFile.isFile() )
+        {
+            return null;
+        }
+
+        Properties entry = new Properties();
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( cacheFile );
+            entry.load( in );
+        }
+        catch ( IOException ioe )
+        {
+            LOGGER.fine( "Unable to read parse cache " + cacheFile + ": " + ioe.getMessage() );
+            return null;
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        if ( !FORMAT_VERSION.equals( entry.getProperty( "version" ) ) )
+        {
+            return null;
+        }
+        List<File> cachedInputFiles = new ArrayList<File>();
+        Map<File, Boolean> cachedProbedPaths = new TreeMap<File, Boolean>();
+        boolean restamped;
+        try
+        {
+            restamped = restampInputFiles( entry, cachedInputFiles );
+        }
+        catch ( IOException ioe )
+        {
+            LOGGER.fine( "Parse cache " + cacheFile + " is out of date: " + ioe.getMessage() );
+            return null;
+        }
+        if ( !areProbedPathsUnchanged( entry, cachedProbedPaths )
+                || !areVariablesUnchanged( entry, envVariables, builtInVariables ) )
+        {
+            return null;
+        }
+        List<VCProject> vcProjects = readProjects( entry );
+        if ( vcProjects != null )
+        {
+            inputFiles.addAll( cachedInputFiles );
+            probedPaths.putAll( cachedProbedPaths );
+            if ( restamped )
+            {
+                write( entry );
+            }
+        }
+        return vcProjects;
+    }
+
+    /**
+     * Write an entry, replacing any existing one. Failures are logged and otherwise ignored, the cache is only an
+     * optimisation.
+     * @param vcProjects the parsed projects
+     * @param inputFiles every file read to produce the projects
+     * @param usedVariables the variables substituted while parsing and their values
+     * @param probedPaths the paths whose existence was checked while parsing and whether they existed
+     */
+    void store( List<VCProject> vcProjects, Collection<File> inputFiles, Map<String, String> usedVariables,
+            Map<File, Boolean> probedPaths )
+    {
+        Properties entry = new Properties();
+        entry.setProperty( "version", FORMAT_VERSION );
+
+        int index = 0;
+        try
+        {
+            for ( File inputFile : inputFiles )
+            {
+                String prefix = "file." + index++ + ".";
+                entry.setProperty( prefix + "path", inputFile.getAbsolutePath() );
+                entry.setProperty( prefix + "size", String.valueOf( inputFile.length() ) );
+                entry.setProperty( prefix + "modified", String.valueOf( inputFile.lastModified() ) );
+                entry.setProperty( prefix + "sha1", sha1( inputFile ) );
+            }
+        }
+        catch ( IOException ioe )
+        {
+            LOGGER.fine( "Unable to hash parsed file for " + cacheFile + ": " + ioe.getMessage() );
+            return;
+        }
+
+        index = 0;
+        for ( Map.Entry<File, Boolean> probedPath : probedPaths.entrySet() )
+        {
+            String prefix = "probe." + index++ + ".";
+            entry.setProperty( prefix + "path", probedPath.getKey().getAbsolutePath() );
+            entry.setProperty( prefix + "exists", probedPath.getValue().toString() );
+        }
+
+        for ( Map.Entry<String, String> variable : usedVariables.entrySet() )
+        {
+            entry.setProperty( variable.getValue() != null ? "env." + variable.getKey() : "unset." + variable.getKey(),
+                    variable.getValue() != null ? variable.getValue() : "" );
+        }
+
+        writeProjects( entry, vcProjects );
+        write( entry );
+    }
+
+    /**
+     * Write an entry to the cache file. Failures are logged and otherwise ignored.
+     */
+    private void write( Properties entry )
+    {
+        OutputStream out = null;
+        try
+        {
+            FileUtils.forceMkdir( cacheFile.getParentFile() );
+            out = new FileOutputStream( cacheFile );
+            entry.store( out, "msbuild-maven-plugin parse cache" );
+        }
+        catch ( IOException ioe )
+        {
+            LOGGER.fine( "Unable to write parse cache " + cacheFile + ": " + ioe.getMessage() );
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+    }
+
+    /**
+     * Check the files recorded in an entry, updating the size and modification time of files that were touched but 
+     * not changed.
+     * @return true if some files were only touched and the entry has been updated, false if every file is unchanged
+     * @throws IOException if a file has changed or cannot be read
+     */
+    private boolean restampInputFiles( Properties entry, List<File> cachedInputFiles ) throws IOException
+    {
+        boolean restamped = false;
+        for ( int i = 0; entry.getProperty( "file." + i + ".path" ) != null; i++ )
+        {
+            String prefix = "file." + i + ".";
+            File inputFile = new File( entry.getProperty( prefix + "path" ) );
+            if ( !inputFile.isFile() )
+            {
+                throw new IOException( inputFile + " no longer exists" );
+            }
+            cachedInputFiles.add( inputFile );
+            String size = String.valueOf( inputFile.length() );
+            String modified = String.valueOf( inputFile.lastModified() );
+            if ( size.equals( entry.getProperty( prefix + "size" ) ) 
+                    && modified.equals( entry.getProperty( prefix + "modified" ) ) )
+            {
+                continue;
+            }
+
+            // Touched, check whether the content actually changed
+            if ( !sha1( inputFile ).equals( entry.getProperty( prefix + "sha1" ) ) )
+            {
+                throw new IOException( inputFile + " has changed" );
+            }
+            entry.setProperty( prefix + "size", size );
+            entry.setProperty( prefix + "modified", modified );
+            restamped = true;
+        }
+        return restamped;
+    }
+
+    private boolean areProbedPathsUnchanged( Properties entry, Map<File, Boolean> cachedProbedPaths )
+    {
+        for ( int i = 0; entry.getProperty( "probe." + i + ".path" ) != null; i++ )
+        {
+            String prefix = "probe." + i + ".";
+            File probedPath = new File( entry.getProperty( prefix + "path" ) );
+            boolean existed = Boolean.parseBoolean( entry.getProperty( prefix + "exists" ) );
+            if ( probedPath.exists() != existed )
+            {
+                LOGGER.fine( "Parse cache " + cacheFile + " is out of date, " + probedPath 
+                        + ( existed ? " no longer exists" : " now exists" ) );
+                return false;
+            }
+            cachedProbedPaths.put( probedPath, existed );
+        }
+        return true;
+    }
+
+    private boolean areVariablesUnchanged( Properties entry, Map<String, String> envVariables,
+            Collection<String> builtInVariables )
+    {
+        for ( String key : entry.stringPropertyNames() )
+        {
+            String name;
+            String cachedValue;
+            if ( key.startsWith( "env." ) )
+            {
+                name = key.substring( "env.".length() );
+                cachedValue = entry.getProperty( key );
+            }
+            else if ( key.startsWith( "unset." ) )
+            {
+                name = key.substring( "unset.".length() );
+                cachedValue = null;
+            }
+            else
+            {
+                continue;
+            }
+
+            String value;
+            if ( envVariables != null && envVariables.containsKey( name ) )
+            {
+                value = envVariables.get( name );
+            }
+            else if ( builtInVariables.contains( name ) )
+            {
+                continue;
+            }
+            else
+            {
+                value = System.getenv( name );
+            }
+
+            if ( value == null ? cachedValue != null : !value.equals( cachedValue ) )
+            {
+                LOGGER.fine( "Parse cache " + cacheFile + " is out of date, $(" + name + ") has changed" );
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeProjects( Properties entry, List<VCProject> vcProjects )
+    {
+        entry.setProperty( "project.count", String.valueOf( vcProjects.size() ) );
+        for ( int i = 0; i < vcProjects.size(); i++ )
+        {
+            VCProject vcProject = vcProjects.get( i );
+            String prefix = "project." + i + ".";
+            setIfNotNull( entry, prefix + "name", vcProject.getName() );
+            setIfNotNull( entry, prefix + "file", vcProject.getFile() );
+            setIfNotNull( entry, prefix + "platform", vcProject.getPlatform() );
+            setIfNotNull( entry, prefix + "configuration", vcProject.getConfiguration() );
+            setIfNotNull( entry, prefix + "guid", vcProject.getGuid() );
+            setIfNotNull( entry, prefix + "solutionGuid", vcProject.getSolutionGuid() );
+            setIfNotNull( entry, prefix + "targetName", vcProject.getTargetName() );
+            setIfNotNull( entry, prefix + "baseDirectory", vcProject.getBaseDirectory() );
+            setIfNotNull( entry, prefix + "outputDirectory", vcProject.getOutputDirectory() );
+
+            List<File> includeDirectories = vcProject.getIncludeDirectories();
+            for ( int j = 0; j < includeDirectories.size(); j++ )
+            {
+                entry.setProperty( prefix + "include." + j, includeDirectories.get( j ).getPath() );
+            }
+            List<String> preprocessorDefs = vcProject.getPreprocessorDefs();
+            for ( int j = 0; j < preprocessorDefs.size(); j++ )
+            {
+                entry.setProperty( prefix + "define." + j, preprocessorDefs.get( j ) );
+            }
+            List<String> projectDependencies = vcProject.getProjectDependencies();
+            for ( int j = 0; j < projectDependencies.size(); j++ )
+            {
+                entry.setProperty( prefix + "dependency." + j, projectDependencies.get( j ) );
+            }
+            List<File> projectReferences = vcProject.getProjectReferences();
+            for ( int j = 0; j < projectReferences.size(); j++ )
+            {
+                entry.setProperty( prefix + "reference." + j, projectReferences.get( j ).getPath() );
+            }
+            List<File> sourceFiles = vcProject.getSourceFiles();
+            for ( int j = 0; j < sourceFiles.size(); j++ )
+            {
+                entry.setProperty( prefix + "source." + j, sourceFiles.get( j ).getPath() );
+            }
+            List<File> headerFiles = vcProject.getHeaderFiles();
+            for ( int j = 0; j < headerFiles.size(); j++ )
+            {
+                entry.setProperty( prefix + "header." + j, headerFiles.get( j ).getPath() );
+            }
+            List<File> otherItemFiles = vcProject.getOtherItemFiles();
+            for ( int j = 0; j < otherItemFiles.size(); j++ )
+            {
+                entry.setProperty( prefix + "item." + j, otherItemFiles.get( j ).getPath() );
+            }
+        }
+    }
+
+    private static List<VCProject> readProjects( Properties entry )
+    {
+        int count;
+        try
+        {
+            count = Integer.parseInt( entry.getProperty( "project.count", "" ) );
+        }
+        catch ( NumberFormatException nfe )
+        {
+            return null;
+        }
+
+        List<VCProject> vcProjects = new ArrayList<VCProject>( count );
+        for ( int i = 0; i < count; i++ )
+        {
+            String prefix = "project." + i + ".";
+            VCProject vcProject = new VCProject( entry.getProperty( prefix + "name" ),
+                    getFile( entry, prefix + "file" ), entry.getProperty( prefix + "platform" ),
+                    entry.getProperty( prefix + "configuration" ) );
+            vcProject.setGuid( entry.getProperty( prefix + "guid" ) );
+            vcProject.setSolutionGuid( entry.getProperty( prefix + "solutionGuid" ) );
+            vcProject.setTargetName( entry.getProperty( prefix + "targetName" ) );
+            vcProject.setBaseDirectory( getFile( entry, prefix + "baseDirectory" ) );
+            vcProject.setOutputDirectory( getFile( entry, prefix + "outputDirectory" ) );
+
+            List<File> includeDirectories = new ArrayList<File>();
+            for ( int j = 0; entry.getProperty( prefix + "include." + j ) != null; j++ )
+            {
+                includeDirectories.add( new File( entry.getProperty( prefix + "include." + j ) ) );
+            }
+            vcProject.setIncludeDirectories( includeDirectories );
+
+            List<String> preprocessorDefs = new ArrayList<String>();
+            for ( int j = 0; entry.getProperty( prefix + "define." + j ) != null; j++ )
+            {
+                preprocessorDefs.add( entry.getProperty( prefix + "define." + j ) );
+            }
+            vcProject.setPreprocessorDefs( preprocessorDefs );
+
+            List<String> projectDependencies = new ArrayList<String>();
+            for ( int j = 0; entry.getProperty( prefix + "dependency." + j ) != null; j++ )
+            {
+                projectDependencies.add( entry.getProperty( prefix + "dependency." + j ) );
+            }
+            vcProject.setProjectDependencies( projectDependencies );
+
+            List<File> projectReferences = new ArrayList<File>();
+            for ( int j = 0; entry.getProperty( prefix + "reference." + j ) != null; j++ )
+            {
+                projectReferences.add( new File( entry.getProperty( prefix + "reference." + j ) ) );
+            }
+            vcProject.setProjectReferences( projectReferences );
+
+            List<File> sourceFiles = new ArrayList<File>();
+            for ( int j = 0; entry.getProperty( prefix + "source." + j ) != null; j++ )
+            {
+                sourceFiles.add( new File( entry.getProperty( prefix + "source." + j ) ) );
+            }
+            vcProject.setSourceFiles( sourceFiles );
+
+            List<File> headerFiles = new ArrayList<File>();
+            for ( int j = 0; entry.getProperty( prefix + "header." + j ) != null; j++ )
+            {
+                headerFiles.add( new File( entry.getProperty( prefix + "header." + j ) ) );
+            }
+            vcProject.setHeaderFiles( headerFiles );
+
+            List<File> otherItemFiles = new ArrayList<File>();
+            for ( int j = 0; entry.getProperty( prefix + "item." + j ) != null; j++ )
+            {
+                otherItemFiles.add( new File( entry.getProperty( prefix + "item." + j ) ) );
+            }
+            vcProject.setOtherItemFiles( otherItemFiles );
+
+            vcProjects.add( vcProject );
+        }
+        return Collections.unmodifiableList( vcProjects );
+    }
+
+    private static void setIfNotNull( Properties entry, String key, Object value )
+    {
+        if ( value != null )
+        {
+            entry.setProperty( key, value.toString() );
+        }
+    }
+
+    private static File getFile( Properties entry, String key )
+    {
+        String path = entry.getProperty( key );
+        return path != null ? new File( path ) : null;
+    }
+
+    private static String sha1( File file ) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance( "SHA-1" );
+        }
+        catch ( NoSuchAlgorithmException nsae )
+        {
+            throw new IOException( nsae.getMessage() );
+        }
+
+        InputStream in = new FileInputStream( file );
+        try
+        {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ( ( read = in.read( buffer ) ) > 0 )
+            {
+                digest.update( buffer, 0, read );
+            }
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for ( byte b : digest.digest() )
+        {
+            hex.append( String.format( "%02x", b ) );
+        }
+        return hex.toString();
+    }
+
+    private static final Logger LOGGER = Logger.getLogger( ParseCache.class.getName() );
+
+    /**
+     * Changed whenever the content of an entry changes so that entries written by older versions are ignored.
+     */
+    private static final String FORMAT_VERSION = "6";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File cacheFile;
+}
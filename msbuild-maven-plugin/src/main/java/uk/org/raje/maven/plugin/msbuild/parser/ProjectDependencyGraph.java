@@ -0,0 +1,487 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * The dependencies between the Visual C++ projects parsed for one platform/configuration pair. A project depends on
+ * another when the solution lists it in the {@code ProjectDependencies} section of the project, or when the project
+ * references it through a {@code <ProjectReference>} element. Dependencies on projects that were not parsed, such as
+ * projects outside the solution, are ignored.
+ * <p>
+ * The graph cannot be changed once built. Projects are sorted so that each one comes after every project it depends
+ * on, and otherwise keep the order they were parsed in, which is the solution order.
+ */
+public final class ProjectDependencyGraph
+{
+    /**
+     * Build the dependency graph of a set of projects.
+     * @param vcProjects the projects, in solution order
+     * @throws ParseException if the projects depend on each other in a cycle
+     */
+    ProjectDependencyGraph( List<VCProject> vcProjects ) throws ParseException
+    {
+        projects = Collections.unmodifiableList( new ArrayList<VCProject>( vcProjects ) );
+        for ( int i = 0; i < projects.size(); i++ )
+        {
+            indexes.put( projects.get( i ), i );
+        }
+
+        dependencies = resolveDependencies();
+        dependents = reverse( dependencies );
+        sortedProjects = sort();
+        criticalPath = findCriticalPath();
+    }
+
+    /**
+     * Return the projects in build order: every project comes after the projects it depends on.
+     * @return the projects in build order
+     */
+    public List<VCProject> getProjects()
+    {
+        return sortedProjects;
+    }
+
+    /**
+     * Return the projects a project depends on directly.
+     * @param vcProject a project in the graph
+     * @return the projects it depends on, in solution order
+     */
+    public List<VCProject> getDependencies( VCProject vcProject )
+    {
+        return toProjects( dependencies[getIndex( vcProject )] );
+    }
+
+    /**
+     * Return the projects that depend directly on a project.
+     * @param vcProject a project in the graph
+     * @return the projects that depend on it, in solution order
+     */
+    public List<VCProject> getDependents( VCProject vcProject )
+    {
+        return toProjects( dependents[getIndex( vcProject )] );
+    }
+
+    /**
+     * Return the longest chain of projects that depend on each other, which have to be built one after the other
+     * however many projects are built at the same time.
+     * @return the projects on the critical path, each one depending on the one before it
+     */
+    public List<VCProject> getCriticalPath()
+    {
+        return criticalPath;
+    }
+
+    /**
+     * Return the number of projects on the critical path, see {@link #getCriticalPath()}.
+     * @return the number of projects on the critical path, 0 if there are no projects
+     */
+    public int getCriticalPathLength()
+    {
+        return criticalPath.size();
+    }
+
+    /**
+     * Return the projects affected by a set of changed files: the projects that own a changed file and every project
+     * that depends on them, directly or indirectly. A project owns the source and header files it lists, the files in 
+     * its directory and sub-directories and the files in its include directories and their sub-directories. A changed
+     * file that no project owns could be an input to any of them, so every project is affected.
+     * @param changedFiles the changed files, relative paths are relative to the current directory
+     * @return the affected projects in build order
+     */
+    public List<VCProject> getAffectedProjects( Collection<File> changedFiles )
+    {
+        Map<File, List<Integer>> pathOwners = getOwners();
+        boolean[] affected = new boolean[projects.size()];
+        List<Integer> pending = new ArrayList<Integer>();
+        for ( File changedFile : changedFiles )
+        {
+            int ownerCount = pending.size();
+            for ( File file = getCanonicalFile( changedFile ); file != null; file = file.getParentFile() )
+            {
+                List<Integer> fileOwners = pathOwners.get( file );
+                if ( fileOwners != null )
+                {
+                    pending.addAll( fileOwners );
+                }
+            }
+            if ( pending.size() == ownerCount )
+            {
+                LOGGER.info( "Changed file " + changedFile + " does not belong to any project, all projects are "
+                        + "affected" );
+                return getProjects();
+            }
+        }
+
+        while ( !pending.isEmpty() )
+        {
+            int project = pending.remove( pending.size() - 1 );
+            if ( !affected[project] )
+            {
+                affected[project] = true;
+                for ( int dependent : dependents[project] )
+                {
+                    pending.add( dependent );
+                }
+            }
+        }
+
+        List<VCProject> affectedProjects = new ArrayList<VCProject>();
+        for ( int project : order )
+        {
+            if ( affected[project] )
+            {
+                affectedProjects.add( projects.get( project ) );
+            }
+        }
+        return Collections.unmodifiableList( affectedProjects );
+    }
+
+    /**
+     * Return a file with a canonical path, or an absolute path if the canonical path cannot be determined, so that
+     * the same file is always represented by the same path.
+     * @param file a file
+     * @return the canonical file
+     */
+    static File getCanonicalFile( File file )
+    {
+        try
+        {
+            return file.getCanonicalFile();
+        }
+        catch ( IOException ioe )
+        {
+            return file.getAbsoluteFile();
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger( ProjectDependencyGraph.class.getName() );
+
+    /**
+     * Find the dependencies of every project, from the solution and from project references, without duplicates.
+     */
+    private int[][] resolveDependencies()
+    {
+        Map<String, Integer> guidIndexes = new HashMap<String, Integer>();
+        Map<File, Integer> fileIndexes = new HashMap<File, Integer>();
+        for ( int i = 0; i < projects.size(); i++ )
+        {
+            VCProject vcProject = projects.get( i );
+            if ( vcProject.getGuid() != null )
+            {
+                guidIndexes.put( vcProject.getGuid().toUpperCase( Locale.ENGLISH ), i );
+            }
+            fileIndexes.put( getCanonicalFile( vcProject.getFile() ), i );
+        }
+
+        int[][] resolved = new int[projects.size()][];
+        for ( int i = 0; i < projects.size(); i++ )
+        {
+            VCProject vcProject = projects.get( i );
+            Set<Integer> projectDependencies = new LinkedHashSet<Integer>();
+            for ( String guid : vcProject.getProjectDependencies() )
+            {
+                addDependency( projectDependencies, guidIndexes.get( guid.toUpperCase( Locale.ENGLISH ) ),
+                        vcProject, guid );
+            }
+            for ( File reference : vcProject.getProjectReferences() )
+            {
+                addDependency( projectDependencies, fileIndexes.get( getCanonicalFile( reference ) ), vcProject,
+                        reference.getPath() );
+            }
+            resolved[i] = toSortedArray( projectDependencies );
+        }
+        return resolved;
+    }
+
+    private static void addDependency( Set<Integer> projectDependencies, Integer dependency, VCProject vcProject,
+            String reference )
+    {
+        if ( dependency != null )
+        {
+            projectDependencies.add( dependency );
+        }
+        else
+        {
+            LOGGER.fine( "Ignoring dependency of " + vcProject.getName() + " on " + reference
+                    + ", the project has not been parsed" );
+        }
+    }
+
+    private static int[][] reverse( int[][] edges )
+    {
+        List<List<Integer>> reversed = new ArrayList<List<Integer>>( edges.length );
+        for ( int i = 0; i < edges.length; i++ )
+        {
+            reversed.add( new ArrayList<Integer>() );
+        }
+        for ( int i = 0; i < edges.length; i++ )
+        {
+            for ( int j : edges[i] )
+            {
+                reversed.get( j ).add( i );
+            }
+        }
+
+        int[][] reversedEdges = new int[edges.length][];
+        for ( int i = 0; i < edges.length; i++ )
+        {
+            reversedEdges[i] = toSortedArray( reversed.get( i ) );
+        }
+        return reversedEdges;
+    }
+
+    /**
+     * Sort the projects in build order, taking the ready project that comes first in the solution at each step.
+     */
+    private List<VCProject> sort() throws ParseException
+    {
+        int[] pendingDependencies = new int[projects.size()];
+        PriorityQueue<Integer> ready = new PriorityQueue<Integer>();
+        for ( int i = 0; i < projects.size(); i++ )
+        {
+            pendingDependencies[i] = dependencies[i].length;
+            if ( pendingDependencies[i] == 0 )
+            {
+                ready.add( i );
+            }
+        }
+
+        List<VCProject> sorted = new ArrayList<VCProject>( projects.size() );
+        order = new int[projects.size()];
+        while ( !ready.isEmpty() )
+        {
+            int next = ready.poll();
+            order[sorted.size()] = next;
+            sorted.add( projects.get( next ) );
+            for ( int dependent : dependents[next] )
+            {
+                if ( --pendingDependencies[dependent] == 0 )
+                {
+                    ready.add( dependent );
+                }
+            }
+        }
+
+        if ( sorted.size() < projects.size() )
+        {
+            throw new ParseException( "Circular project dependency: " + describeCycle( pendingDependencies ), 0 );
+        }
+        return Collections.unmodifiableList( sorted );
+    }
+
+    /**
+     * Describe a cycle among the projects that could not be sorted. Each of them still depends on another one, so
+     * following those dependencies from any of them comes back to a project already seen.
+     */
+    private String describeCycle( int[] pendingDependencies )
+    {
+        int start = 0;
+        while ( pendingDependencies[start] == 0 )
+        {
+            start++;
+        }
+
+        List<Integer> path = new ArrayList<Integer>();
+        int current = start;
+        while ( !path.contains( current ) )
+        {
+            path.add( current );
+            for ( int dependency : dependencies[current] )
+            {
+                if ( pendingDependencies[dependency] > 0 )
+                {
+                    current = dependency;
+                    break;
+                }
+            }
+        }
+
+        StringBuilder cycle = new StringBuilder();
+        for ( int project : path.subList( path.indexOf( current ), path.size() ) )
+        {
+            cycle.append( projects.get( project ).getName() ).append( " -> " );
+        }
+        return cycle.append( projects.get( current ).getName() ).toString();
+    }
+
+    private List<VCProject> findCriticalPath()
+    {
+        int[] length = new int[projects.size()];
+        int[] previous = new int[projects.size()];
+        int last = -1;
+        for ( int project : order )
+        {
+            previous[project] = -1;
+            for ( int dependency : dependencies[project] )
+            {
+                if ( length[dependency] > length[project] )
+                {
+                    length[project] = length[dependency];
+                    previous[project] = dependency;
+                }
+            }
+            length[project]++;
+            if ( last < 0 || length[project] > length[last] )
+            {
+                last = project;
+            }
+        }
+
+        List<VCProject> path = new ArrayList<VCProject>();
+        for ( int project = last; project >= 0; project = previous[project] )
+        {
+            path.add( projects.get( project ) );
+        }
+        Collections.reverse( path );
+        return Collections.unmodifiableList( path );
+    }
+
+    private int getIndex( VCProject vcProject )
+    {
+        Integer index = indexes.get( vcProject );
+        if ( index == null )
+        {
+            throw new IllegalArgumentException( "Project " + vcProject + " is not in the dependency graph" );
+        }
+        return index;
+    }
+
+    private List<VCProject> toProjects( int[] projectIndexes )
+    {
+        List<VCProject> vcProjects = new ArrayList<VCProject>( projectIndexes.length );
+        for ( int index : projectIndexes )
+        {
+            vcProjects.add( projects.get( index ) );
+        }
+        return Collections.unmodifiableList( vcProjects );
+    }
+
+    private static int[] toSortedArray( Iterable<Integer> values )
+    {
+        List<Integer> sorted = new ArrayList<Integer>();
+        for ( Integer value : values )
+        {
+            sorted.add( value );
+        }
+        Collections.sort( sorted );
+
+        int[] array = new int[sorted.size()];
+        for ( int i = 0; i < array.length; i++ )
+        {
+            array[i] = sorted.get( i );
+        }
+        return array;
+    }
+
+    /**
+     * Return the projects that own each file and directory, see {@link #getAffectedProjects}. Computed on first use.
+     */
+    private synchronized Map<File, List<Integer>> getOwners()
+    {
+        if ( owners == null )
+        {
+            owners = new HashMap<File, List<Integer>>();
+            for ( int i = 0; i < projects.size(); i++ )
+            {
+                VCProject vcProject = projects.get( i );
+                File projectDirectory = vcProject.getFile().getAbsoluteFile().getParentFile();
+                addOwner( getCanonicalFile( projectDirectory ), i );
+                for ( File includeDirectory : vcProject.getIncludeDirectories() )
+                {
+                    //Relative include directories are relative to the project directory
+                    addOwner( getCanonicalFile( includeDirectory.isAbsolute() ? includeDirectory 
+                            : new File( projectDirectory, includeDirectory.getPath() ) ), i );
+                }
+                for ( File itemFile : vcProject.getSourceFiles() )
+                {
+                    addOwner( getItemPath( itemFile ), i );
+                }
+                for ( File itemFile : vcProject.getHeaderFiles() )
+                {
+                    addOwner( getItemPath( itemFile ), i );
+                }
+            }
+        }
+        return owners;
+    }
+
+    /**
+     * Return the canonical path of a source or header file, or of the directory a wildcard item matches files in.
+     */
+    private static File getItemPath( File itemFile )
+    {
+        File path = itemFile;
+        for ( File parent = itemFile; parent != null; parent = parent.getParentFile() )
+        {
+            if ( parent.getName().contains( "*" ) || parent.getName().contains( "?" ) )
+            {
+                path = parent.getParentFile();
+            }
+        }
+        return getCanonicalFile( path );
+    }
+
+    private void addOwner( File directory, int project )
+    {
+        List<Integer> directoryOwners = owners.get( directory );
+        if ( directoryOwners == null )
+        {
+            directoryOwners = new ArrayList<Integer>( 1 );
+            owners.put( directory, directoryOwners );
+        }
+        if ( !directoryOwners.contains( project ) )
+        {
+            directoryOwners.add( project );
+        }
+    }
+
+    private final List<VCProject> projects;
+
+    /**
+     * The position of each project in {@link #projects}, the graph refers to projects by position.
+     */
+    private final Map<VCProject, Integer> indexes = new HashMap<VCProject, Integer>();
+    private final int[][] dependencies;
+    private final int[][] dependents;
+    private final List<VCProject> sortedProjects;
+    private final List<VCProject> criticalPath;
+
+    /**
+     * The positions of the projects in build order.
+     */
+    private int[] order;
+
+    /**
+     * The positions of the projects that own each file and directory, by canonical path.
+     */
+    private Map<File, List<Integer>> owners;
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild.parser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The properties a property sheet ({@code .props} or {@code .targets} file brought in by an {@code <Import>} element)
+ * contributes for one platform/configuration pair. A sheet is evaluated on its own, as if nothing had been defined
+ * before it, and then merged into each project that imports it, so a sheet shared by many projects is only parsed
+ * once per platform/configuration pair for the whole Maven session.
+ * <p>
+ * Evaluated sheets are kept in a session-wide cache. A cached sheet is reused while the sheet file, and any file it
+ * imports, is unchanged, the paths it checks for still exist or are still missing and the variables substituted while
+ * evaluating it have the same values for the importing project.
+ */
+final class PropertySheet
+{
+    /**
+     * Find an evaluated sheet in the cache.
+     * @param sheetFile the sheet file, canonical so that every project finds the same entry
+     * @param platform the platform the sheet was evaluated for
+     * @param configuration the configuration the sheet was evaluated for
+     * @param envVariables the variables of the importing project
+     * @return the evaluated sheet, or {@code null} if it needs to be evaluated
+     */
+    static PropertySheet find( File sheetFile, String platform, String configuration,
+            Map<String, String> envVariables )
+    {
+        List<PropertySheet> sheets = EVALUATED_SHEETS.get( getKey( sheetFile, platform, configuration ) );
+        if ( sheets != null )
+        {
+            for ( PropertySheet sheet : sheets )
+            {
+                if ( sheet.isUpToDate() && sheet.isEvaluatedWith( envVariables ) )
+                {
+                    return sheet;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Add an evaluated sheet to the cache, dropping any entry for the same platform/configuration pair whose files
+     * have changed since.
+     * @param sheet the evaluated sheet
+     * @param platform the platform the sheet was evaluated for
+     * @param configuration the configuration the sheet was evaluated for
+     */
+    static void add( PropertySheet sheet, String platform, String configuration )
+    {
+        String key = getKey( sheet.sheetFile, platform, configuration );
+        List<PropertySheet> sheets = EVALUATED_SHEETS.get( key );
+        if ( sheets == null )
+        {
+            sheets = new CopyOnWriteArrayList<PropertySheet>();
+            List<PropertySheet> existingSheets = EVALUATED_SHEETS.putIfAbsent( key, sheets );
+            if ( existingSheets != null )
+            {
+                sheets = existingSheets;
+            }
+        }
+
+        for ( PropertySheet cachedSheet : sheets )
+        {
+            if ( !cachedSheet.isUpToDate() )
+            {
+                sheets.remove( cachedSheet );
+            }
+        }
+        sheets.add( sheet );
+    }
+
+    /**
+     * Create an evaluated sheet.
+     * @param sheetFile the sheet file
+     * @param includeDirectories the include directories the sheet adds
+     * @param preprocessorDefs the preprocessor definitions the sheet sets, with {@link #INHERITED_PREPROCESSOR_DEFS}
+     * where the definitions made before the sheet is imported are kept
+     * @param outputDirectory the output directory the sheet sets, not yet resolved against the importing project, or
+     * {@code null} if the sheet does not set one
+     * @param usedVariables the variables substituted while evaluating the sheet and their values
+     * @param importedFiles the files the sheet imports, directly or indirectly
+     * @param probedPaths the paths whose existence was checked while evaluating the sheet and whether they existed
+     */
+    PropertySheet( File sheetFile, List<File> includeDirectories, List<String> preprocessorDefs,
+            String outputDirectory, Map<String, String> usedVariables, List<File> importedFiles, 
+            Map<File, Boolean> probedPaths )
+    {
+        this.sheetFile = sheetFile;
+        this.includeDirectories = Collections.unmodifiableList( new ArrayList<File>( includeDirectories ) );
+        this.preprocessorDefs = Collections.unmodifiableList( new ArrayList<String>( preprocessorDefs ) );
+        this.outputDirectory = outputDirectory;
+        this.usedVariables = usedVariables;
+        this.probedPaths = probedPaths;
+
+        List<File> sheetFiles = new ArrayList<File>( importedFiles.size() + 1 );
+        sheetFiles.add( sheetFile );
+        sheetFiles.addAll( importedFiles );
+        this.files = sheetFiles.toArray( new File[sheetFiles.size()] );
+        this.sizes = new long[this.files.length];
+        this.lastModified = new long[this.files.length];
+        for ( int i = 0; i < this.files.length; i++ )
+        {
+            sizes[i] = this.files[i].length();
+            lastModified[i] = this.files[i].lastModified();
+        }
+    }
+
+    /**
+     * @return the include directories the sheet adds
+     */
+    List<File> getIncludeDirectories()
+    {
+        return includeDirectories;
+    }
+
+    /**
+     * @return the preprocessor definitions the sheet sets, with {@link #INHERITED_PREPROCESSOR_DEFS} where the
+     * definitions made before the sheet is imported are kept
+     */
+    List<String> getPreprocessorDefs()
+    {
+        return preprocessorDefs;
+    }
+
+    /**
+     * @return the output directory the sheet sets, or {@code null} if it does not set one
+     */
+    String getOutputDirectory()
+    {
+        return outputDirectory;
+    }
+
+    /**
+     * @return the variables substituted while evaluating the sheet and their values
+     */
+    Map<String, String> getUsedVariables()
+    {
+        return usedVariables;
+    }
+
+    /**
+     * @return the paths whose existence was checked while evaluating the sheet and whether they existed
+     */
+    Map<File, Boolean> getProbedPaths()
+    {
+        return probedPaths;
+    }
+
+    /**
+     * @return the sheet file followed by every file it imports, directly or indirectly
+     */
+    List<File> getFiles()
+    {
+        return Collections.unmodifiableList( Arrays.asList( files ) );
+    }
+
+    private static String getKey( File sheetFile, String platform, String configuration )
+    {
+        return sheetFile.getPath() + "|" + platform + "|" + configuration;
+    }
+
+    private boolean isUpToDate()
+    {
+        for ( int i = 0; i < files.length; i++ )
+        {
+            if ( files[i].length() != sizes[i] || files[i].lastModified() != lastModified[i] )
+            {
+                return false;
+            }
+        }
+        for ( Map.Entry<File, Boolean> probedPath : probedPaths.entrySet() )
+        {
+            if ( probedPath.getKey().exists() != probedPath.getValue() )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isEvaluatedWith( Map<String, String> envVariables )
+    {
+        for ( Map.Entry<String, String> usedVariable : usedVariables.entrySet() )
+        {
+            String value = envVariables.get( usedVariable.getKey() );
+            if ( value == null ? usedVariable.getValue() != null : !value.equals( usedVariable.getValue() ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The entry MSBuild replaces with the preprocessor definitions inherited from earlier definitions.
+     */
+    static final String INHERITED_PREPROCESSOR_DEFS = "%(PreprocessorDefinitions)";
+
+    /**
+     * Evaluated sheets by file, platform and configuration. There can be more than one for the same key when projects
+     * import a sheet with different values for the variables it uses, for example projects in different solutions.
+     */
+    private static final ConcurrentMap<String, List<PropertySheet>> EVALUATED_SHEETS =
+            new ConcurrentHashMap<String, List<PropertySheet>>();
+
+    private final File sheetFile;
+    private final List<File> includeDirectories;
+    private final List<String> preprocessorDefs;
+    private final String outputDirectory;
+    private final Map<String, String> usedVariables;
+    private final Map<File, Boolean> probedPaths;
+    private final File[] files;
+    private final long[] sizes;
+    private final long[] lastModified;
+}
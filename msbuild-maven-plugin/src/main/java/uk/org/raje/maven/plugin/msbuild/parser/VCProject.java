@@ -26,6 +26,7 @@ import java.util.List;
  *      <li>Preprocessor Definitions (<em>i.e.</em> {@code #define}s used during code compilation such as {@code WIN32},
  *      {@code _DEBUG})</li> 
  *      <li>Output Directory (location of the generated output file)</li>
+ *      <li>Project dependencies, from the solution and from {@code <ProjectReference>} elements</li>
  * </ul>  
  */
 public class VCProject 
@@ -217,6 +218,79 @@ public class VCProject
         this.preprocessorDefs = preprocessorDefs;
     }
 
+    /**
+     * Return the GUIDs of the projects this project depends on, as listed in its {@code ProjectDependencies} section of
+     * the solution.
+     * @return the GUIDs of the projects this project depends on in the solution
+     */
+    public List<String> getProjectDependencies()
+    {
+        return projectDependencies;
+    }
+
+    protected void setProjectDependencies( List<String> projectDependencies )
+    {
+        this.projectDependencies = projectDependencies;
+    }
+
+    /**
+     * Return the project files this project references through {@code <ProjectReference>} elements.
+     * @return the referenced project files
+     */
+    public List<File> getProjectReferences()
+    {
+        return projectReferences;
+    }
+
+    protected void setProjectReferences( List<File> projectReferences )
+    {
+        this.projectReferences = projectReferences;
+    }
+
+    /**
+     * Return the files listed by the {@code <ClCompile>} items of this project that are not excluded from the build.
+     * Items with wildcards ({@code *}, {@code ?} or {@code **}) are returned as they are, without being expanded.
+     * @return the source files, empty if the project lists none
+     */
+    public List<File> getSourceFiles()
+    {
+        return sourceFiles;
+    }
+
+    protected void setSourceFiles( List<File> sourceFiles )
+    {
+        this.sourceFiles = sourceFiles;
+    }
+
+    /**
+     * Return the files listed by the {@code <ClInclude>} items of this project, see {@link #getSourceFiles()}.
+     * @return the header files, empty if the project lists none
+     */
+    public List<File> getHeaderFiles()
+    {
+        return headerFiles;
+    }
+
+    protected void setHeaderFiles( List<File> headerFiles )
+    {
+        this.headerFiles = headerFiles;
+    }
+
+    /**
+     * Return the files listed by the other items of this project, such as {@code <ResourceCompile>}, 
+     * {@code <CustomBuild>}, {@code <Library>} and {@code <None>}, see {@link #getSourceFiles()}.
+     * @return the other item files, empty if the project lists none
+     */
+    public List<File> getOtherItemFiles()
+    {
+        return otherItemFiles;
+    }
+
+    protected void setOtherItemFiles( List<File> otherItemFiles )
+    {
+        this.otherItemFiles = otherItemFiles;
+    }
+
     private String guid;
     private String solutionGuid;
     private String name;
@@ -228,4 +302,9 @@ public class VCProject
     private File outputDirectory;
     private List<File> includeDirectories = Collections.emptyList();
     private List<String> preprocessorDefs = Collections.emptyList();;
+    private List<String> projectDependencies = Collections.emptyList();
+    private List<File> projectReferences = Collections.emptyList();
+    private List<File> sourceFiles = Collections.emptyList();
+    private List<File> headerFiles = Collections.emptyList();
+    private List<File> otherItemFiles = Collections.emptyList();
 }
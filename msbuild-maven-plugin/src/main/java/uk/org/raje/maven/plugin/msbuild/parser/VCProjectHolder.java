@@ -19,15 +19,32 @@ package uk.org.raje.maven.plugin.msbuild.parser;
 import java.io.File;
 import java.io.IOException;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.xml.sax.SAXException;
+
+import uk.org.raje.maven.plugin.msbuild.trace.BuildTimeline;
 /**
  * This class represents a container for parsed Visual C++ projects. It is the entry point for using parsing
  * functionalities in {@link uk.org.raje.maven.plugin.msbuild.parser}. The container is populated as needed (lazy
@@ -37,7 +54,8 @@ public final class VCProjectHolder
 {
     /**
      * Find or create a container for parsed Visual C++ projects. If a container has already been created for the given
-     * {@code inputFile} that container is returned; otherwise a new container is created.
+     * {@code inputFile} and no environment variable overrides that container is returned; otherwise a new container is
+     * created.
      * @param inputFile the file to parse, it can be a Visual Studio solution (containing Visual C++ projects) or a
      * standalone Visual C++ project
      * @param isSolution {@code true} if {@code inputFile} is a solution, {@code false} if it is a standalone project
@@ -45,20 +63,14 @@ public final class VCProjectHolder
      */
     public static VCProjectHolder getVCProjectHolder( File inputFile, boolean isSolution )
     {
-        VCProjectHolder vcProjectHolder = VCPROJECT_HOLDERS.get( inputFile );
-
-        if ( vcProjectHolder == null )
-        {
-            vcProjectHolder = new VCProjectHolder( inputFile, isSolution, new HashMap<String, String>() );
-            VCPROJECT_HOLDERS.put( inputFile, vcProjectHolder );
-        }
-
-        return vcProjectHolder;
+        return getVCProjectHolder( inputFile, isSolution, null );
     }
 
     /**
      * Find or create a container for parsed Visual C++ projects. If a container has already been created for the given
-     * {@code inputFile} that container is returned; otherwise a new container is created.
+     * {@code inputFile} and the same {@code envVariables} that container is returned; otherwise a new container is
+     * created. This method can be called from several threads at once, for example by modules built in parallel that 
+     * share a solution, and always returns the same container for the same arguments.
      * @param inputFile the file to parse, it can be a Visual Studio solution (containing Visual C++ projects) or a
      * standalone Visual C++ project
      * @param isSolution {@code true} if {@code inputFile} is a solution, {@code false} if it is a standalone project
@@ -71,17 +83,39 @@ public final class VCProjectHolder
     public static VCProjectHolder getVCProjectHolder( File inputFile, boolean isSolution,
             Map<String, String> envVariables )
     {
-        VCProjectHolder vcProjectHolder = VCPROJECT_HOLDERS.get( inputFile );
+        // Copy the variables so that later changes to the caller's map affect neither the key nor the parse
+        Map<String, String> variables = new TreeMap<String, String>();
+        if ( envVariables != null )
+        {
+            variables.putAll( envVariables );
+        }
+
+        HolderKey key = new HolderKey( inputFile, isSolution, variables );
+        VCProjectHolder vcProjectHolder = VCPROJECT_HOLDERS.get( key );
 
         if ( vcProjectHolder == null )
         {
-            vcProjectHolder = new VCProjectHolder( inputFile, isSolution, envVariables );
-            VCPROJECT_HOLDERS.put( inputFile, vcProjectHolder );
+            vcProjectHolder = new VCProjectHolder( inputFile, isSolution, variables );
+            VCProjectHolder existingHolder = VCPROJECT_HOLDERS.putIfAbsent( key, vcProjectHolder );
+            if ( existingHolder != null )
+            {
+                vcProjectHolder = existingHolder;
+            }
         }
 
         return vcProjectHolder;
     }
 
+    /**
+     * Have every container check whether the files parsed for each platform/configuration pair have changed the next
+     * time the pair is looked up. Between calls parsed projects are returned without checking the files again, so 
+     * goals call this when they start to notice files changed by an earlier goal or module.
+     */
+    public static void checkForChanges()
+    {
+        VALIDATION_GENERATION.incrementAndGet();
+    }
+
     /**
      * Create a container for parsed Visual C++ projects.
      * @param inputFile the file to parse, it can be a Visual Studio solution (containing Visual C++ projects) or a
@@ -101,7 +135,9 @@ public final class VCProjectHolder
 
     /**
      * Return a {@link List} of {@link VCProject} beans for a given platform/configuration pair. Each {@link VCProject}
-     * bean holds properties for a parsed Visual C++ project.
+     * bean holds properties for a parsed Visual C++ project. Each pair is parsed once and the result returned to every
+     * caller, including callers on other threads that ask while the parse is in progress, until one of the parsed 
+     * files is found to have changed, see {@link #checkForChanges()}.
      * @param platform the platform to use for parsing (for example, {@code Win32}, {@code x64})
      * @param configuration the configuration to use for parsing (for example,{@code Release}, {@code Debug})
      * @return a {@link List} of {@link VCProject}s that hold properties for parsed Visual C++ projects
@@ -112,31 +148,216 @@ public final class VCProjectHolder
      */
     public List<VCProject> getParsedProjects( String platform, String configuration )
             throws IOException, ParserConfigurationException, ParseException, SAXException
+    {
+        return getParsedProjectsEntry( platform, configuration ).getProjects();
+    }
+
+    /**
+     * Return the dependencies between the {@link VCProject}s returned by {@link #getParsedProjects} for a given 
+     * platform/configuration pair, taken from the solution and from the project references in each project. The graph
+     * is built once for each parse of the projects.
+     * @param platform the platform to use for parsing (for example, {@code Win32}, {@code x64})
+     * @param configuration the configuration to use for parsing (for example,{@code Release}, {@code Debug})
+     * @return the dependency graph of the parsed projects
+     * @throws IOException if the input file does not exists or cannot be accessed
+     * @throws ParserConfigurationException  if a parser cannot be created which satisfies the requested configuration
+     * @throws ParseException if an error occurs during parsing or the projects depend on each other in a cycle
+     * @throws SAXException if a SAX parsing error occurs
+     */
+    public ProjectDependencyGraph getDependencyGraph( String platform, String configuration )
+            throws IOException, ParserConfigurationException, ParseException, SAXException
+    {
+        return getParsedProjectsEntry( platform, configuration ).getDependencyGraph();
+    }
+
+    /**
+     * Return the files read to parse the {@link VCProject}s returned by {@link #getParsedProjects} for a given
+     * platform/configuration pair: the solution, the project files and every property sheet they import.
+     * @param platform the platform to use for parsing (for example, {@code Win32}, {@code x64})
+     * @param configuration the configuration to use for parsing (for example,{@code Release}, {@code Debug})
+     * @return the parsed files
+     * @throws IOException if the input file does not exists or cannot be accessed
+     * @throws ParserConfigurationException  if a parser cannot be created which satisfies the requested configuration
+     * @throws ParseException if an error occurs during parsing
+     * @throws SAXException if a SAX parsing error occurs
+     */
+    public List<File> getInputFiles( String platform, String configuration )
+            throws IOException, ParserConfigurationException, ParseException, SAXException
+    {
+        return getParsedProjectsEntry( platform, configuration ).getInputFiles();
+    }
+
+    /**
+     * Return the {@link VCProject}s affected by a set of changed files for a given platform/configuration pair: the 
+     * projects that own a changed file, through their directory or their include directories, and every project that 
+     * depends on them (see {@link ProjectDependencyGraph#getAffectedProjects}). A change to a file read while parsing
+     * other than a project file, such as the solution or a property sheet, affects every project.
+     * @param platform the platform to use for parsing (for example, {@code Win32}, {@code x64})
+     * @param configuration the configuration to use for parsing (for example,{@code Release}, {@code Debug})
+     * @param changedFiles the changed files
+     * @return the affected projects in build order
+     * @throws IOException if the input file does not exists or cannot be accessed
+     * @throws ParserConfigurationException  if a parser cannot be created which satisfies the requested configuration
+     * @throws ParseException if an error occurs during parsing or the projects depend on each other in a cycle
+     * @throws SAXException if a SAX parsing error occurs
+     */
+    public List<VCProject> getAffectedProjects( String platform, String configuration, Collection<File> changedFiles )
+            throws IOException, ParserConfigurationException, ParseException, SAXException
+    {
+        ParsedProjects parsedProjects = getParsedProjectsEntry( platform, configuration );
+        ProjectDependencyGraph dependencyGraph = parsedProjects.getDependencyGraph();
+        Set<File> otherInputFiles = parsedProjects.getOtherInputFiles();
+        for ( File changedFile : changedFiles )
+        {
+            if ( otherInputFiles.contains( ProjectDependencyGraph.getCanonicalFile( changedFile ) ) )
+            {
+                LOGGER.info( "Changed file " + changedFile + " is read for every project, all projects are affected" );
+                return dependencyGraph.getProjects();
+            }
+        }
+        return dependencyGraph.getAffectedProjects( changedFiles );
+    }
+
+    /**
+     * Keep parsed projects in files in a directory so that later Maven invocations can reuse them while the parsed 
+     * files and the variables substituted in them are unchanged. Containers are shared by every module that builds the
+     * same file, so the directory last set is used by the next parse.
+     * @param cacheDirectory the directory to keep the parse cache in, {@code null} to parse in every invocation
+     */
+    public void setCacheDirectory( File cacheDirectory )
+    {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * The containers created so far, by input file and environment variable overrides.
+     */
+    private static final ConcurrentMap<HolderKey, VCProjectHolder> VCPROJECT_HOLDERS = 
+            new ConcurrentHashMap<HolderKey, VCProjectHolder>();
+    private static final Logger LOGGER = Logger.getLogger( VCProjectHolder.class.getName() );
+
+    /**
+     * Incremented by {@link #checkForChanges()}, parsed projects are checked at most once for each value.
+     */
+    private static final AtomicInteger VALIDATION_GENERATION = new AtomicInteger();
+
+    /**
+     * The variables {@link VCProjectParser} sets from the input file, platform and configuration.
+     */
+    private static final List<String> BUILT_IN_VARIABLES = Arrays.asList( "SolutionDir", "Configuration", "Platform" );
+
+    /**
+     * Return the entry for a platform/configuration pair, parsing the projects unless they have been parsed already
+     * and none of the parsed files have changed since they were last checked.
+     */
+    private ParsedProjects getParsedProjectsEntry( final String platform, final String configuration )
+            throws IOException, ParserConfigurationException, ParseException, SAXException
     {
         String key = platform + "-" + configuration;
-        List<VCProject> vcProjects = parsedVCProjects.get( key );
+        while ( true )
+        {
+            FutureTask<ParsedProjects> parseTask = parsedVCProjects.get( key );
+            if ( parseTask == null )
+            {
+                FutureTask<ParsedProjects> newParseTask = new FutureTask<ParsedProjects>( 
+                        new Callable<ParsedProjects>()
+                        {
+                            @Override
+                            public ParsedProjects call() throws Exception
+                            {
+                                return parseProjects( platform, configuration );
+                            }
+                        } );
+                parseTask = parsedVCProjects.putIfAbsent( key, newParseTask );
+                if ( parseTask == null )
+                {
+                    // Parse on this thread, any other thread asking for the same key waits for the result
+                    parseTask = newParseTask;
+                    parseTask.run();
+                }
+            }
 
+            ParsedProjects parsedProjects = null;
+            try
+            {
+                parsedProjects = getParseResult( parseTask );
+            }
+            finally
+            {
+                if ( parsedProjects == null )
+                {
+                    // Failed, let the next caller try again rather than keep the failure
+                    parsedVCProjects.remove( key, parseTask );
+                }
+            }
+
+            if ( parsedProjects.isUpToDate() )
+            {
+                return parsedProjects;
+            }
+
+            LOGGER.info( "Files parsed for " + inputFile.getName() + " have changed, parsing again" );
+            parsedVCProjects.remove( key, parseTask );
+        }
+    }
+
+    /**
+     * Parse, or load from the parse cache, the projects for one platform-configuration pair.
+     */
+    private ParsedProjects parseProjects( String platform, String configuration )
+            throws IOException, ParserConfigurationException, ParseException, SAXException
+    {
+        // A set, many projects import the same property sheets
+        Set<File> inputFiles = new LinkedHashSet<File>();
+        Map<File, Boolean> probedPaths = new TreeMap<File, Boolean>();
+        List<VCProject> vcProjects = null;
+
+        ParseCache parseCache = null;
+        File currentCacheDirectory = cacheDirectory;
+        if ( currentCacheDirectory != null )
+        {
+            parseCache = new ParseCache( new File( currentCacheDirectory, getFilename( inputFile ) + "-" + platform 
+                    + "-" + configuration + ".properties" ) );
+            vcProjects = parseCache.load( envVariables, BUILT_IN_VARIABLES, inputFiles, probedPaths );
+            if ( vcProjects != null && !inputFiles.contains( inputFile.getAbsoluteFile() ) )
+            {
+                // The entry is named after the file, it was written for another file with the same name
+                vcProjects = null;
+            }
+            if ( vcProjects != null )
+            {
+                LOGGER.info( "Using cached projects for " + inputFile.getName() + " with platform=" + platform 
+                        + ", configuration=" + configuration );
+            }
+        }
+    
         if ( vcProjects == null )
         {
+            inputFiles.clear();
+            probedPaths.clear();
+            Map<String, String> usedVariables = new TreeMap<String, String>();
             if ( isSolution )
             {
-                vcProjects = parseVCSolution( inputFile, platform, configuration );
+                vcProjects = parseVCSolution( inputFile, platform, configuration, inputFiles, usedVariables, 
+                        probedPaths );
             }
             else
             {
-                vcProjects = Arrays.asList( parseStandaloneVCProject( inputFile, platform, configuration ) );
+                vcProjects = Arrays.asList( parseStandaloneVCProject( inputFile, platform, configuration, 
+                        inputFiles, usedVariables, probedPaths ) );
             }
 
-            parsedVCProjects.put( key, vcProjects );
+            if ( parseCache != null )
+            {
+                parseCache.store( vcProjects, inputFiles, usedVariables, probedPaths );
+            }
         }
 
-        return vcProjects;
+        return new ParsedProjects( vcProjects, inputFiles, probedPaths );
     }
 
-    private static final Map< File, VCProjectHolder > VCPROJECT_HOLDERS = new HashMap<File, VCProjectHolder>();
-    private static final Logger LOGGER = Logger.getLogger( VCProjectHolder.class.getName() );
-
-    private List<VCProject> parseVCSolution( File solutionFile, String platform, String configuration )
+    private List<VCProject> parseVCSolution( File solutionFile, String platform, String configuration, 
+            Set<File> inputFiles, Map<String, String> usedVariables, Map<File, Boolean> probedPaths )
             throws IOException, ParserConfigurationException, ParseException, SAXException
     {
         String name = getFilename( solutionFile );
@@ -145,24 +366,135 @@ public final class VCProjectHolder
                 + ", configuration=" + configuration );
 
         VCSolutionParser vcSolutionParser = new VCSolutionParser( solutionFile, platform, configuration );
-        vcSolutionParser.parse();
+        BuildTimeline.Span parseSpan = BuildTimeline.getInstance().start( "Parse solution " + name, "parse" )
+                .arg( "platform", platform ).arg( "configuration", configuration );
+        try
+        {
+            vcSolutionParser.parse();
+        }
+        finally
+        {
+            parseSpan.end();
+        }
 
         LOGGER.info( "Solution parsing complete" );
+        inputFiles.add( solutionFile );
 
-        for ( VCProject vcProject : vcSolutionParser.getVCProjects() )
+        List<VCProject> vcProjects = vcSolutionParser.getVCProjects();
+        List<VCProjectParser> vcProjectParsers = parseVCProjects( vcProjects, solutionFile );
+        for ( int i = 0; i < vcProjects.size(); i++ )
         {
-            LOGGER.info( "Parsing project " + vcProject.getName() + " with platform=" + vcProject.getPlatform()
-                    + ", configuration=" + vcProject.getConfiguration() );
-
-            parseVCProject( vcProject, solutionFile );
+            inputFiles.add( vcProjects.get( i ).getFile() );
+            inputFiles.addAll( vcProjectParsers.get( i ).getImportedFiles() );
+            usedVariables.putAll( vcProjectParsers.get( i ).getUsedEnvVariables() );
+            probedPaths.putAll( vcProjectParsers.get( i ).getProbedPaths() );
         }
 
         LOGGER.info( "Project parsing complete" );
 
-        return vcSolutionParser.getVCProjects();
+        return vcProjects;
     }
 
-    private VCProject parseStandaloneVCProject( File projectFile, String platform, String configuration )
+    /**
+     * Parse the projects of a solution, in parallel when there is more than one processor. The projects are updated 
+     * in place so the order of the list is kept.
+     * @return the parser of each project, in the same order as the projects
+     */
+    private List<VCProjectParser> parseVCProjects( List<VCProject> vcProjects, final File solutionFile )
+            throws IOException, ParserConfigurationException, ParseException, SAXException
+    {
+        int threads = Math.min( vcProjects.size(), Runtime.getRuntime().availableProcessors() );
+        List<VCProjectParser> vcProjectParsers = new ArrayList<VCProjectParser>( vcProjects.size() );
+        if ( threads <= 1 )
+        {
+            for ( VCProject vcProject : vcProjects )
+            {
+                vcProjectParsers.add( parseSolutionProject( vcProject, solutionFile ) );
+            }
+            return vcProjectParsers;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try
+        {
+            List<Future<VCProjectParser>> futures = new ArrayList<Future<VCProjectParser>>();
+            for ( final VCProject vcProject : vcProjects )
+            {
+                futures.add( executor.submit( new Callable<VCProjectParser>()
+                {
+                    @Override
+                    public VCProjectParser call() throws Exception
+                    {
+                        return parseSolutionProject( vcProject, solutionFile );
+                    }
+                } ) );
+            }
+
+            for ( Future<VCProjectParser> future : futures )
+            {
+                vcProjectParsers.add( getParseResult( future ) );
+            }
+            return vcProjectParsers;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private VCProjectParser parseSolutionProject( VCProject vcProject, File solutionFile )
+            throws IOException, ParserConfigurationException, ParseException, SAXException
+    {
+        LOGGER.info( "Parsing project " + vcProject.getName() + " with platform=" + vcProject.getPlatform()
+                + ", configuration=" + vcProject.getConfiguration() );
+
+        return parseVCProject( vcProject, solutionFile );
+    }
+
+    /**
+     * Wait for a parse task and rethrow any exception it failed with as thrown by the parser.
+     */
+    private static <T> T getParseResult( Future<T> future )
+            throws IOException, ParserConfigurationException, ParseException, SAXException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while parsing projects" );
+        }
+        catch ( ExecutionException ee )
+        {
+            Throwable cause = ee.getCause();
+            if ( cause instanceof IOException )
+            {
+                throw ( IOException ) cause;
+            }
+            if ( cause instanceof ParseException )
+            {
+                throw ( ParseException ) cause;
+            }
+            if ( cause instanceof SAXException )
+            {
+                throw ( SAXException ) cause;
+            }
+            if ( cause instanceof ParserConfigurationException )
+            {
+                throw ( ParserConfigurationException ) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw ( RuntimeException ) cause;
+            }
+            throw new IllegalStateException( cause );
+        }
+    }
+
+    private VCProject parseStandaloneVCProject( File projectFile, String platform, String configuration, 
+            Set<File> inputFiles, Map<String, String> usedVariables, Map<File, Boolean> probedPaths )
             throws IOException, ParserConfigurationException, ParseException, SAXException
     {
 
@@ -171,7 +503,11 @@ public final class VCProjectHolder
         LOGGER.info( "Parsing standalone project " + vcProject.getName() + " with platform=" + vcProject.getPlatform()
                 + ", configuration=" + vcProject.getConfiguration() );
 
-        parseVCProject( vcProject, null );
+        VCProjectParser vcProjectParser = parseVCProject( vcProject, null );
+        usedVariables.putAll( vcProjectParser.getUsedEnvVariables() );
+        probedPaths.putAll( vcProjectParser.getProbedPaths() );
+        inputFiles.add( projectFile );
+        inputFiles.addAll( vcProjectParser.getImportedFiles() );
 
         LOGGER.info( "Project parsing complete" );
 
@@ -190,8 +526,12 @@ public final class VCProjectHolder
         return name;
     }
 
-    private void parseVCProject( VCProject vcProject, File solutionFile )
-        throws IOException, ParserConfigurationException, ParseException, SAXException
+    /**
+     * Parse one project and update it with the parsed properties.
+     * @return the parser, which holds the variables substituted and the files imported while parsing
+     */
+    private VCProjectParser parseVCProject( VCProject vcProject, File solutionFile )
+            throws IOException, ParserConfigurationException, ParseException, SAXException
     {
         VCProjectParser vcProjectParser;
         File projectFile = vcProject.getFile();
@@ -203,18 +543,188 @@ public final class VCProjectHolder
         {
             vcProjectParser.setEnvVariables( envVariables );
         }
+        vcProjectParser.setProjectModel( getProjectModel( projectFile ) );
 
-        vcProjectParser.parse();
+        BuildTimeline.Span parseSpan = BuildTimeline.getInstance().start( "Parse project " + vcProject.getName(), 
+                "parse" );
+        parseSpan.arg( "platform", vcProject.getPlatform() ).arg( "configuration", vcProject.getConfiguration() );
+        try
+        {
+            vcProjectParser.parse();
+        }
+        finally
+        {
+            parseSpan.end();
+        }
         vcProjectParser.updateVCProject( vcProject );
+        return vcProjectParser;
+    }
+
+    /**
+     * Projects parsed for one platform-configuration pair, with the size and modification time of every file read to
+     * produce them and the paths whose existence was checked, so that the projects can be parsed again when any of 
+     * those files change or a checked path appears or disappears.
+     */
+    private static final class ParsedProjects
+    {
+        ParsedProjects( List<VCProject> vcProjects, Set<File> inputFiles, Map<File, Boolean> probedPaths )
+        {
+            this.vcProjects = vcProjects;
+            this.probedPaths = probedPaths;
+            this.inputFiles = inputFiles.toArray( new File[inputFiles.size()] );
+            this.sizes = new long[this.inputFiles.length];
+            this.lastModified = new long[this.inputFiles.length];
+            for ( int i = 0; i < this.inputFiles.length; i++ )
+            {
+                sizes[i] = this.inputFiles[i].length();
+                lastModified[i] = this.inputFiles[i].lastModified();
+            }
+        }
+
+        List<VCProject> getProjects()
+        {
+            return vcProjects;
+        }
+
+        List<File> getInputFiles()
+        {
+            return Collections.unmodifiableList( Arrays.asList( inputFiles ) );
+        }
+
+        synchronized ProjectDependencyGraph getDependencyGraph() throws ParseException
+        {
+            if ( dependencyGraph == null )
+            {
+                dependencyGraph = new ProjectDependencyGraph( vcProjects );
+            }
+            return dependencyGraph;
+        }
+
+        /**
+         * Return the canonical input files other than the project files, such as the solution and property sheets.
+         */
+        synchronized Set<File> getOtherInputFiles()
+        {
+            if ( otherInputFiles == null )
+            {
+                otherInputFiles = new HashSet<File>();
+                for ( File inputFile : inputFiles )
+                {
+                    otherInputFiles.add( ProjectDependencyGraph.getCanonicalFile( inputFile ) );
+                }
+                for ( VCProject vcProject : vcProjects )
+                {
+                    otherInputFiles.remove( ProjectDependencyGraph.getCanonicalFile( vcProject.getFile() ) );
+                }
+            }
+            return otherInputFiles;
+        }
+
+        /**
+         * Check whether the parsed files are unchanged, at most once between calls to {@link #checkForChanges()}.
+         */
+        boolean isUpToDate()
+        {
+            int generation = VALIDATION_GENERATION.get();
+            if ( validatedGeneration == generation )
+            {
+                return true;
+            }
+
+            for ( int i = 0; i < inputFiles.length; i++ )
+            {
+                if ( inputFiles[i].length() != sizes[i] || inputFiles[i].lastModified() != lastModified[i] )
+                {
+                    return false;
+                }
+            }
+            for ( Map.Entry<File, Boolean> probedPath : probedPaths.entrySet() )
+            {
+                if ( probedPath.getKey().exists() != probedPath.getValue() )
+                {
+                    return false;
+                }
+            }
+            validatedGeneration = generation;
+            return true;
+        }
+
+        private final List<VCProject> vcProjects;
+        private final Map<File, Boolean> probedPaths;
+        private final File[] inputFiles;
+        private final long[] sizes;
+        private final long[] lastModified;
+        private ProjectDependencyGraph dependencyGraph;
+        private Set<File> otherInputFiles;
+        private volatile int validatedGeneration = VALIDATION_GENERATION.get();
+    }
+
+    /**
+     * Identifies a container in {@link #VCPROJECT_HOLDERS}.
+     */
+    private static final class HolderKey
+    {
+        HolderKey( File inputFile, boolean isSolution, Map<String, String> envVariables )
+        {
+            this.inputFile = inputFile.getAbsoluteFile();
+            this.isSolution = isSolution;
+            this.envVariables = envVariables;
+        }
+
+        @Override
+        public boolean equals( Object other )
+        {
+            if ( !( other instanceof HolderKey ) )
+            {
+                return false;
+            }
+            HolderKey otherKey = ( HolderKey ) other;
+            return inputFile.equals( otherKey.inputFile ) && isSolution == otherKey.isSolution
+                    && envVariables.equals( otherKey.envVariables );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Arrays.asList( inputFile, envVariables, isSolution ).hashCode();
+        }
+
+        private final File inputFile;
+        private final boolean isSolution;
+        private final Map<String, String> envVariables;
+    }
+
+    /**
+     * Return the model of a project file, reading the file only if it has not been read already or has changed since.
+     */
+    private VCProjectModel getProjectModel( File projectFile ) throws IOException, ParseException
+    {
+        VCProjectModel projectModel = projectModels.get( projectFile );
+        if ( projectModel == null || !projectModel.isUpToDate() )
+        {
+            // Two threads parsing different configurations may both read a file here, which is harmless
+            projectModel = VCProjectModel.read( projectFile );
+            projectModels.put( projectFile, projectModel );
+        }
+        return projectModel;
     }
 
-    private File inputFile;
-    private boolean isSolution;
+    private final File inputFile;
+    private final boolean isSolution;
+
+    /**
+     * The {@link VCProject}s parsed from the project files for each platform-configuration pair. The Map is populated
+     * as needed (lazy loading) by the method {@link #getParsedProjects}; an entry is added before parsing starts so
+     * that other threads asking for the same pair wait for that parse rather than starting another.
+     */
+    private final ConcurrentMap<String, FutureTask<ParsedProjects>> parsedVCProjects = 
+            new ConcurrentHashMap<String, FutureTask<ParsedProjects>>();
 
     /**
-     * A Map containing {@link VCProject}s parsed from the project files for each platform-configuration pair.
-     * The Map is populated as needed (lazy loading) by the method {@link #getParsedProjects}.
+     * The models of the project files read so far, shared by every platform-configuration pair so that each file is
+     * read once rather than once per pair.
      */
-    private Map<String, List<VCProject> > parsedVCProjects = new HashMap<String, List<VCProject>>();
-    private Map<String, String> envVariables;
+    private final ConcurrentMap<File, VCProjectModel> projectModels = new ConcurrentHashMap<File, VCProjectModel>();
+    private final Map<String, String> envVariables;
+    private volatile File cacheDirectory;
 }
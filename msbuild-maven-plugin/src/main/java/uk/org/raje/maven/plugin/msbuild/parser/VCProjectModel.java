@@ -0,0 +1,277 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The parts of a Visual C++ project file that {@link VCProjectParser} reads, for every platform/configuration pair.
+ * The file is read once and the elements of every {@code Condition}-qualified group are kept in memory, in document
+ * order, with their {@code Condition} attribute and text, along with the {@code Import} elements and their
+ * {@code Project} attribute and the items, other than {@code ProjectConfiguration}, with their {@code Include} 
+ * attribute and {@code ExcludedFromBuild} metadata. The parser then resolves each 
+ * platform/configuration pair by replaying those elements rather than reading and parsing the file again. Elements 
+ * the parser never looks at, such as other top level elements and item metadata, are not kept.
+ */
+final class VCProjectModel
+{
+    /**
+     * Read a project file.
+     * @param projectFile the file to read
+     * @return the model of the file
+     * @throws IOException if the file cannot be read
+     * @throws ParseException if the file is not well formed XML
+     */
+    static VCProjectModel read( File projectFile ) throws IOException, ParseException
+    {
+        VCProjectModel model = new VCProjectModel( projectFile );
+        try
+        {
+            getThreadParser().parse( projectFile, model.new Recorder() );
+        }
+        catch ( SAXParseException sape )
+        {
+            throw new ParseException( sape.getMessage(), sape.getLineNumber() );
+        }
+        catch ( SAXException sae )
+        {
+            throw new ParseException( sae.getMessage(), 0 );
+        }
+        return model;
+    }
+
+    /**
+     * @return the file this model was read from
+     */
+    File getProjectFile()
+    {
+        return projectFile;
+    }
+
+    /**
+     * @return {@code false} if the file has changed since this model was read
+     */
+    boolean isUpToDate()
+    {
+        return projectFile.length() == size && projectFile.lastModified() == lastModified;
+    }
+
+    /**
+     * Pass the kept elements to a handler in the order they appear in the file, as a SAX parser would.
+     * @param handler the handler to pass the elements to
+     * @throws SAXException if the handler fails
+     */
+    void replay( ContentHandler handler ) throws SAXException
+    {
+        for ( Event event : events )
+        {
+            switch ( event.type )
+            {
+            case START:
+                AttributesImpl attributes = new AttributesImpl();
+                if ( event.value != null )
+                {
+                    attributes.addAttribute( "", CONDITION, CONDITION, "CDATA", event.value );
+                }
+                if ( event.project != null )
+                {
+                    attributes.addAttribute( "", PROJECT, PROJECT, "CDATA", event.project );
+                }
+                if ( event.include != null )
+                {
+                    attributes.addAttribute( "", INCLUDE, INCLUDE, "CDATA", event.include );
+                }
+                handler.startElement( "", event.name, event.name, attributes );
+                break;
+
+            case TEXT:
+                handler.characters( event.value.toCharArray(), 0, event.value.length() );
+                break;
+
+            default:
+                handler.endElement( "", event.name, event.name );
+            }
+        }
+    }
+
+    private VCProjectModel( File projectFile )
+    {
+        this.projectFile = projectFile;
+        this.size = projectFile.length();
+        this.lastModified = projectFile.lastModified();
+    }
+
+    /**
+     * Get the SAX parser for the current thread, creating it on first use. Creating a parser is expensive compared to
+     * parsing a typical project file, so one is kept per thread and reset before each use.
+     */
+    private static SAXParser getThreadParser() throws SAXException
+    {
+        SAXParser parser = THREAD_PARSER.get();
+        if ( parser == null )
+        {
+            try
+            {
+                synchronized ( PARSER_FACTORY )
+                {
+                    parser = PARSER_FACTORY.newSAXParser();
+                }
+            }
+            catch ( ParserConfigurationException pce )
+            {
+                throw new SAXException( pce );
+            }
+            THREAD_PARSER.set( parser );
+        }
+        else
+        {
+            parser.reset();
+        }
+        return parser;
+    }
+
+    /**
+     * Keeps the root element and the groups listed in {@link #KEPT_GROUPS}, skipping every other top level element, the
+     * items of {@code ItemGroup}s listed in {@link #SKIPPED_ITEMS} and the item metadata not listed in 
+     * {@link #KEPT_ITEM_METADATA}.
+     */
+    private class Recorder extends DefaultHandler
+    {
+        @Override
+        public void startElement( String uri, String localName, String qName, Attributes attributes )
+        {
+            depth++;
+            if ( depth == 2 )
+            {
+                group = qName;
+            }
+            if ( skipDepth == 0 && ( ( depth == 2 && !KEPT_GROUPS.contains( qName ) ) 
+                    || ( depth == 3 && group.equals( ITEM_GROUP ) && SKIPPED_ITEMS.contains( qName ) )
+                    || ( depth == 4 && group.equals( ITEM_GROUP ) && !KEPT_ITEM_METADATA.contains( qName ) ) ) )
+            {
+                skipDepth = depth;
+            }
+            if ( skipDepth == 0 )
+            {
+                events.add( new Event( EventType.START, qName, attributes.getValue( CONDITION ), 
+                        attributes.getValue( PROJECT ), attributes.getValue( INCLUDE ) ) );
+            }
+        }
+
+        @Override
+        public void endElement( String uri, String localName, String qName )
+        {
+            if ( skipDepth == 0 )
+            {
+                events.add( new Event( EventType.END, qName, null, null, null ) );
+            }
+            else if ( skipDepth == depth )
+            {
+                skipDepth = 0;
+            }
+            depth--;
+        }
+
+        @Override
+        public void characters( char[] chars, int start, int length )
+        {
+            // Text directly inside the groups is only whitespace, the parser reads the text of their children
+            if ( skipDepth == 0 && depth > 2 )
+            {
+                events.add( new Event( EventType.TEXT, null, new String( chars, start, length ), null, null ) );
+            }
+        }
+
+        private int depth;
+        private int skipDepth;
+        private String group;
+    }
+
+    private enum EventType
+    {
+        START,
+        TEXT,
+        END
+    }
+
+    /**
+     * An element start, with its {@code Condition}, {@code Project} and {@code Include} attributes, an element end, or
+     * a piece of element text.
+     */
+    private static final class Event
+    {
+        Event( EventType type, String name, String value, String project, String include )
+        {
+            this.type = type;
+            this.name = name;
+            this.value = value;
+            this.project = project;
+            this.include = include;
+        }
+
+        private final EventType type;
+        private final String name;
+        private final String value;
+        private final String project;
+        private final String include;
+    }
+
+    private static final String CONDITION = "Condition";
+    private static final String PROJECT = "Project";
+    private static final String INCLUDE = "Include";
+    private static final String ITEM_GROUP = "ItemGroup";
+
+    /**
+     * The top level elements {@link VCProjectParser} reads.
+     */
+    private static final List<String> KEPT_GROUPS = Arrays.asList( "PropertyGroup", "ItemDefinitionGroup", 
+            "ImportGroup", "Import", ITEM_GROUP );
+
+    /**
+     * The items {@link VCProjectParser} does not read, every other item lists files.
+     */
+    private static final List<String> SKIPPED_ITEMS = Arrays.asList( "ProjectConfiguration" );
+
+    /**
+     * The item metadata {@link VCProjectParser} reads.
+     */
+    private static final List<String> KEPT_ITEM_METADATA = Arrays.asList( "ExcludedFromBuild" );
+
+    private static final SAXParserFactory PARSER_FACTORY = SAXParserFactory.newInstance();
+    private static final ThreadLocal<SAXParser> THREAD_PARSER = new ThreadLocal<SAXParser>();
+
+    private final File projectFile;
+    private final long size;
+    private final long lastModified;
+    private final List<Event> events = new ArrayList<Event>();
+}
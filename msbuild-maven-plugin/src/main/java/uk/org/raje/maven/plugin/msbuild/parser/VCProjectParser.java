@@ -22,20 +22,19 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
-import org.xml.sax.SAXParseException;
 import org.xml.sax.helpers.DefaultHandler;
 
 /**
@@ -45,8 +44,11 @@ import org.xml.sax.helpers.DefaultHandler;
  *      <li>Preprocessor Definitions (<em>i.e.</em> {@code #define}s used during code compilation such as {@code WIN32},
  *      {@code _DEBUG}).</li> 
  *      <li>Output Directory (location of the generated output file).</li>
+ *      <li>Project References (other projects this project depends on).</li>
  * </ul> 
- * These properties are necessary for other tools to work (for example, CppCheck, CxxTest, Sonar).</p>
+ * These properties are necessary for other tools to work (for example, CppCheck, CxxTest, Sonar). Properties set in
+ * property sheets brought in by {@code <Import>} elements are included; each sheet is evaluated through the
+ * session-wide {@link PropertySheet} cache so that sheets shared by many projects are only parsed once.</p>
  * <p>Once the C++ project has been parsed, the {@link VCProjectParser#updateVCProject} method can be used to update a 
  * {@link VCProject} bean with the values of the retrieved properties.
  */
@@ -68,9 +70,6 @@ class VCProjectParser extends BaseParser
             throws FileNotFoundException, ParserConfigurationException, SAXException 
     {
         super( projectFile, platform, configuration );
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-
-        parser = factory.newSAXParser();
         this.solutionFile = solutionFile;
         
         //Assume the output directory is set to the default value. This can change later if the project specifies one
@@ -113,7 +112,7 @@ class VCProjectParser extends BaseParser
     
     /**
      * Update a {@link VCProject} bean with the Visual C++ project properties retrieved by the parser (Include 
-     * Directories, Preprocessor Definitions and Output Directory).
+     * Directories, Preprocessor Definitions, Output Directory, Project References and Source and Header Files).
      * @param vcProject the {@link VCProject} bean to update
      */
     public void updateVCProject( VCProject vcProject )
@@ -122,18 +121,59 @@ class VCProjectParser extends BaseParser
         vcProject.setOutputDirectory( outputDirectory );
         vcProject.setPreprocessorDefs( preprocessorDefs );
         vcProject.setIncludeDirectories( includeDirectories );
+        vcProject.setProjectReferences( projectReferences );
+        vcProject.setSourceFiles( sourceFiles );
+        vcProject.setHeaderFiles( headerFiles );
+        vcProject.setOtherItemFiles( otherItemFiles );
+    }
+
+    /**
+     * Return the variables substituted while parsing, with the value each one had ({@code null} for variables that 
+     * had no value). The parsed properties only depend on the project file and these values.
+     * @return a map of variable names to the values substituted for them
+     */
+    public Map<String, String> getUsedEnvVariables()
+    {
+        return Collections.unmodifiableMap( usedEnvVariables );
+    }
+
+    /**
+     * Return the property sheets imported while parsing, directly or through other sheets. The parsed properties 
+     * depend on these files as well as on the project file.
+     * @return the imported property sheet files
+     */
+    public List<File> getImportedFiles()
+    {
+        return Collections.unmodifiableList( importedFiles );
+    }
+
+    /**
+     * Return the paths whose existence was checked while parsing, by {@code Exists()} conditions and by imports of
+     * property sheets that do not exist. The parsed properties are only the same while each path still exists, or
+     * still does not.
+     * @return a map of absolute paths to whether they existed
+     */
+    public Map<File, Boolean> getProbedPaths()
+    {
+        return Collections.unmodifiableMap( probedPaths );
+    }
+
+    /**
+     * Resolve the project properties from a model already read from the project file, rather than reading the file.
+     * @param projectModel the model of the project file, {@code null} to read the file when parsing
+     */
+    public void setProjectModel( VCProjectModel projectModel )
+    {
+        this.projectModel = projectModel;
     }
 
     @Override
     public void parse() throws IOException, ParseException 
     {
+        VCProjectModel model = projectModel != null ? projectModel : VCProjectModel.read( getInputFile() );
         try 
         {
-            parser.parse( getInputFile(), new VCProjectHandler() );
-        }
-        catch ( SAXParseException sape ) 
-        {
-            throw new ParseException( sape.getMessage(), sape.getLineNumber() );
+            model.replay( new VCProjectHandler() );
         }
         catch ( SAXException sae ) 
         {
@@ -146,6 +186,22 @@ class VCProjectParser extends BaseParser
     private static final List<String> PATH_PROPERTY_GROUP = Arrays.asList( "Project", "PropertyGroup" );
     private static final List<String> PATH_OUTDIR = Arrays.asList( "Project", "PropertyGroup", "OutDir" );
     private static final List<String> PATH_ITEM_DEFINITION_GROUP = Arrays.asList( "Project", "ItemDefinitionGroup" );
+    private static final List<String> PATH_IMPORT = Arrays.asList( "Project", "Import" );
+    private static final List<String> PATH_IMPORT_GROUP = Arrays.asList( "Project", "ImportGroup" );
+    private static final List<String> PATH_IMPORT_GROUP_IMPORT = Arrays.asList( "Project", "ImportGroup", "Import" );
+    private static final List<String> PATH_ITEM_GROUP = Arrays.asList( "Project", "ItemGroup" );
+    private static final List<String> PATH_PROJECT_REFERENCE = Arrays.asList( "Project", "ItemGroup", 
+            "ProjectReference" );
+    private static final List<String> PATH_CL_COMPILE = Arrays.asList( "Project", "ItemGroup", "ClCompile" );
+    private static final List<String> PATH_CL_INCLUDE = Arrays.asList( "Project", "ItemGroup", "ClInclude" );
+    private static final List<String> PATH_PROJECT_CONFIGURATION = Arrays.asList( "Project", "ItemGroup", 
+            "ProjectConfiguration" );
+    private static final String EXCLUDED_FROM_BUILD = "ExcludedFromBuild";
+
+    /**
+     * The depth of nested imports after which further imports are ignored, this also stops circular imports.
+     */
+    private static final int MAX_IMPORT_DEPTH = 16;
     
     private static final List<String> PATH_ADDITIONAL_INCDIRS = Arrays.asList( "Project", "ItemDefinitionGroup", 
             "ClCompile", "AdditionalIncludeDirectories" );
@@ -170,32 +226,59 @@ class VCProjectParser extends BaseParser
                 // element), we assume that the Condition attribute was present in the parent <ProperyGroup> and that 
                 // the Condition matched the required platform/configuration; otherwise we need to check whether the  
                 // current element satisfies the required platform/configuration pair through the Condition attribute. 
-                if ( condition == null
-                    || ( condition != null && condition.contains( getConfigurationPlatform() ) ) )
+                if ( xmlPath.equals( PATH_OUTDIR ) && isConditionMet( condition ) ) 
                 {
-                    if ( xmlPath.equals( PATH_OUTDIR ) ) 
-                    {
-                        charParserState = CharParserState.PARSE_OUTPUT_DIRECTORY;
-                    }
+                    charParserState = CharParserState.PARSE_OUTPUT_DIRECTORY;
                 }
             
                 break;
 
+            case PARSE_IMPORT_GROUP:
+
+                if ( xmlPath.equals( PATH_IMPORT_GROUP_IMPORT ) && isConditionMet( condition ) )
+                {
+                    importPropertySheet( attributes.getValue( "Project" ) );
+                }
+
+                break;
+
+            case PARSE_ITEM_GROUP:
+
+                if ( xmlPath.equals( PATH_PROJECT_REFERENCE ) && isConditionMet( condition ) )
+                {
+                    addProjectReference( attributes.getValue( "Include" ) );
+                }
+                else if ( xmlPath.equals( PATH_CL_COMPILE ) && isConditionMet( condition ) )
+                {
+                    startItem( attributes.getValue( "Include" ), sourceFiles );
+                }
+                else if ( xmlPath.equals( PATH_CL_INCLUDE ) && isConditionMet( condition ) )
+                {
+                    startItem( attributes.getValue( "Include" ), headerFiles );
+                }
+                else if ( xmlPath.size() == PATH_ITEM_GROUP.size() + 1 && !xmlPath.equals( PATH_PROJECT_CONFIGURATION ) 
+                        && isConditionMet( condition ) )
+                {
+                    startItem( attributes.getValue( "Include" ), otherItemFiles );
+                }
+                else if ( itemFiles != null && qName.equals( EXCLUDED_FROM_BUILD ) && isConditionMet( condition ) )
+                {
+                    charParserState = CharParserState.PARSE_EXCLUDED_FROM_BUILD;
+                }
+
+                break;
+
             case PARSE_CONFIGPLATFORM_GROUP:
                 
                 //Here we use the same strategy and make the same assumptions as above
-                if ( condition == null
-                    || ( condition != null && condition.contains( getConfigurationPlatform() ) ) )
+                if ( xmlPath.equals( PATH_ADDITIONAL_INCDIRS ) && isConditionMet( condition ) ) 
+                {
+                    charParserState = CharParserState.PARSE_INCLUDE_DIRECTORIES;
+                }
+                
+                if ( xmlPath.equals( PATH_PREPROCESSOR_DEFS ) && isConditionMet( condition ) ) 
                 {
-                    if ( xmlPath.equals( PATH_ADDITIONAL_INCDIRS ) ) 
-                    {
-                        charParserState = CharParserState.PARSE_INCLUDE_DIRECTORIES;
-                    }
-                    
-                    if ( xmlPath.equals( PATH_PREPROCESSOR_DEFS ) ) 
-                    {
-                        charParserState = CharParserState.PARSE_PREPROCESSOR_DEFS;
-                    }
+                    charParserState = CharParserState.PARSE_PREPROCESSOR_DEFS;
                 }
                 
                 break;
@@ -216,16 +299,25 @@ class VCProjectParser extends BaseParser
                  * attribute will appear in (all) the child elements contained within <ProperyGroup></ProperyGroup>; we 
                  * use the same strategy and assumptions for a <ItemDefinitionGroup> element.
                  */
-                if ( condition == null || condition.contains( getConfigurationPlatform() ) )
+                if ( xmlPath.equals( PATH_IMPORT ) && isConditionMet( condition ) )
                 {
-                    if ( xmlPath.equals( PATH_PROPERTY_GROUP ) )
-                    {
-                        elementParserState = ElementParserState.PARSE_PROPERTY_GROUP;
-                    }
-                    else if ( xmlPath.equals( PATH_ITEM_DEFINITION_GROUP ) )
-                    {
-                        elementParserState = ElementParserState.PARSE_CONFIGPLATFORM_GROUP;
-                    }
+                    importPropertySheet( attributes.getValue( "Project" ) );
+                }
+                else if ( xmlPath.equals( PATH_IMPORT_GROUP ) && isConditionMet( condition ) )
+                {
+                    elementParserState = ElementParserState.PARSE_IMPORT_GROUP;
+                }
+                else if ( xmlPath.equals( PATH_PROPERTY_GROUP ) && isConditionMet( condition ) )
+                {
+                    elementParserState = ElementParserState.PARSE_PROPERTY_GROUP;
+                }
+                else if ( xmlPath.equals( PATH_ITEM_DEFINITION_GROUP ) && isConditionMet( condition ) )
+                {
+                    elementParserState = ElementParserState.PARSE_CONFIGPLATFORM_GROUP;
+                }
+                else if ( xmlPath.equals( PATH_ITEM_GROUP ) && isConditionMet( condition ) )
+                {
+                    elementParserState = ElementParserState.PARSE_ITEM_GROUP;
                 }
             }
         }
@@ -244,6 +336,21 @@ class VCProjectParser extends BaseParser
                 elementParserState = ElementParserState.PARSE_IGNORE;
             }
 
+            if ( xmlPath.equals( PATH_IMPORT_GROUP ) ) 
+            {
+                elementParserState = ElementParserState.PARSE_IGNORE;
+            }
+
+            if ( xmlPath.equals( PATH_ITEM_GROUP ) ) 
+            {
+                elementParserState = ElementParserState.PARSE_IGNORE;
+            }
+
+            if ( itemFiles != null && xmlPath.size() == PATH_ITEM_GROUP.size() + 1 )
+            {
+                endItem();
+            }
+
             charParserState = CharParserState.PARSE_IGNORE;
             xmlPath.remove( xmlPath.lastIndexOf( qName ) );
         }
@@ -277,6 +384,11 @@ class VCProjectParser extends BaseParser
             case PARSE_PREPROCESSOR_DEFS:
                 parsePreprocessorDefs( entries );
                 break;
+
+            //A source or header item is excluded from the build for this platform/configuration pair
+            case PARSE_EXCLUDED_FROM_BUILD:
+                itemExcluded = Boolean.parseBoolean( entries.trim() );
+                break;
                 
             default:
                 throw new SAXException( "Invalid character parser state" );
@@ -286,6 +398,7 @@ class VCProjectParser extends BaseParser
         
         private void parseOutputDirectory( String directory )
         {
+            outputDirectoryValue = directory;
             outputDirectory = new File( directory );
             
             //If the output directory is not absolute, then it is relative to the project directory. The solution
@@ -321,7 +434,19 @@ class VCProjectParser extends BaseParser
         
         private void parsePreprocessorDefs( String entries )
         {
-            preprocessorDefs = splitEntries( entries );
+            List<String> inheritedDefs = preprocessorDefs;
+            preprocessorDefs = new ArrayList<String>();
+            for ( String entry : entries.split( ";" ) )
+            {
+                if ( entry.trim().equals( PropertySheet.INHERITED_PREPROCESSOR_DEFS ) )
+                {
+                    preprocessorDefs.addAll( inheritedDefs );
+                }
+                else
+                {
+                    preprocessorDefs.addAll( splitEntries( entry ) );
+                }
+            }
 
             if ( preprocessorDefs.size() > 0 ) 
             {
@@ -335,6 +460,11 @@ class VCProjectParser extends BaseParser
         }
         
         private String replaceEnvVariables( String entries )
+        {
+            return replaceEnvVariables( entries, true );
+        }
+
+        private String replaceEnvVariables( String entries, boolean warnIfMissing )
         {
             //(Reluctantly) Match environment variable names in the format: $(variable_name), use a group to retrieve
             // variable_name without surrounding markers
@@ -347,8 +477,13 @@ class VCProjectParser extends BaseParser
                 //Extract a matched variable name and check whether it is present in the environment variable map
                 String envVariableName = envVariableMatcher.group( 1 );
                 String envVariableValue = envVariables.get( envVariableName );
+                usedEnvVariables.put( envVariableName, envVariableValue );
                 
-                if ( envVariableValue == null )
+                if ( envVariableValue == null && !warnIfMissing )
+                {
+                    LOGGER.fine( "Could not find value for variable '" + envVariableName + "'" );
+                }
+                else if ( envVariableValue == null )
                 {
                     LOGGER.warning( "Could not find value for environment variable '" + envVariableName 
                             + "' - skipping substitution" );
@@ -366,6 +501,156 @@ class VCProjectParser extends BaseParser
             return parsedEntires.toString();
         }
         
+        /**
+         * Evaluate the Condition attribute of an element against the platform, configuration and variables of this
+         * parser. Paths in {@code Exists()} are relative to the file being parsed.
+         */
+        private boolean isConditionMet( String condition )
+        {
+            return condition == null || ConditionExpression.compile( condition ).evaluate( envVariables, 
+                    usedEnvVariables, probedPaths, getInputFile().getParentFile() );
+        }
+
+        private void importPropertySheet( String sheetPath ) throws SAXException
+        {
+            if ( sheetPath == null )
+            {
+                return;
+            }
+
+            // Imports of the Visual Studio sheets refer to MSBuild properties such as $(VCTargetsPath) that are only
+            // known to MSBuild, skip them quietly
+            String resolvedPath = replaceEnvVariables( sheetPath, false );
+            if ( resolvedPath.contains( "$(" ) )
+            {
+                LOGGER.fine( "Skipping import of " + sheetPath + ", not all variables are known" );
+                return;
+            }
+
+            File sheetFile = new File( resolvedPath );
+            if ( !sheetFile.isAbsolute() )
+            {
+                sheetFile = new File( getInputFile().getParentFile(), resolvedPath );
+            }
+            if ( !sheetFile.isFile() )
+            {
+                LOGGER.fine( "Skipping import of " + sheetFile + ", the file does not exist" );
+                probedPaths.put( sheetFile.getAbsoluteFile(), Boolean.FALSE );
+                return;
+            }
+            if ( importDepth >= MAX_IMPORT_DEPTH )
+            {
+                LOGGER.warning( "Skipping import of " + sheetFile + " from " + getInputFile() 
+                        + ", imports are nested too deeply" );
+                return;
+            }
+
+            PropertySheet sheet;
+            try
+            {
+                sheet = getPropertySheet( sheetFile.getCanonicalFile() );
+            }
+            catch ( IOException ioe )
+            {
+                LOGGER.warning( "Unable to read property sheet " + sheetFile + ": " + ioe.getMessage() );
+                return;
+            }
+            catch ( ParseException pe )
+            {
+                LOGGER.warning( "Unable to parse property sheet " + sheetFile + ": " + pe.getMessage() );
+                return;
+            }
+
+            includeDirectories.addAll( sheet.getIncludeDirectories() );
+            List<String> inheritedDefs = preprocessorDefs;
+            preprocessorDefs = new ArrayList<String>();
+            for ( String preprocessorDef : sheet.getPreprocessorDefs() )
+            {
+                if ( preprocessorDef.equals( PropertySheet.INHERITED_PREPROCESSOR_DEFS ) )
+                {
+                    preprocessorDefs.addAll( inheritedDefs );
+                }
+                else
+                {
+                    preprocessorDefs.add( preprocessorDef );
+                }
+            }
+            if ( sheet.getOutputDirectory() != null )
+            {
+                parseOutputDirectory( sheet.getOutputDirectory() );
+            }
+            usedEnvVariables.putAll( sheet.getUsedVariables() );
+            probedPaths.putAll( sheet.getProbedPaths() );
+            importedFiles.addAll( sheet.getFiles() );
+        }
+
+        private void addProjectReference( String referencePath )
+        {
+            if ( referencePath == null )
+            {
+                return;
+            }
+
+            String resolvedPath = replaceEnvVariables( referencePath, false );
+            if ( resolvedPath.contains( "$(" ) )
+            {
+                LOGGER.fine( "Skipping reference to " + referencePath + ", not all variables are known" );
+                return;
+            }
+
+            //Relative references are relative to the project directory
+            File referenceFile = new File( resolvedPath );
+            if ( !referenceFile.isAbsolute() )
+            {
+                referenceFile = new File( getInputFile().getParentFile(), resolvedPath );
+            }
+            projectReferences.add( referenceFile );
+
+            LOGGER.fine( "Project reference:" );
+            LOGGER.fine( "\t" + referenceFile );
+        }
+
+        /**
+         * Start an item such as {@code <ClCompile>} or {@code <ClInclude>}, the files it lists are added once it ends 
+         * unless it is excluded from the build. Relative paths are relative to the project directory, wildcards are 
+         * kept.
+         */
+        private void startItem( String include, List<File> files )
+        {
+            itemFiles = files;
+            itemExcluded = false;
+            itemPaths = new ArrayList<File>();
+            if ( include == null )
+            {
+                return;
+            }
+
+            for ( String entry : replaceEnvVariables( include, false ).split( ";" ) )
+            {
+                String path = entry.trim();
+                if ( path.contains( "$(" ) || path.contains( "%(" ) || path.contains( "@(" ) )
+                {
+                    LOGGER.fine( "Skipping item " + path + ", not all variables are known" );
+                }
+                else if ( !path.isEmpty() )
+                {
+                    File itemFile = new File( path.replace( '\\', File.separatorChar ) );
+                    itemPaths.add( itemFile.isAbsolute() ? itemFile 
+                            : new File( getInputFile().getParentFile(), itemFile.getPath() ) );
+                }
+            }
+        }
+
+        private void endItem()
+        {
+            if ( !itemExcluded )
+            {
+                itemFiles.addAll( itemPaths );
+            }
+            itemFiles = null;
+            itemPaths = null;
+        }
+
         private List<String> splitEntries( String entries ) 
         {
             List<String> entryList = new ArrayList<String>();
@@ -384,6 +669,44 @@ class VCProjectParser extends BaseParser
         }
     }
     
+    /**
+     * Return a property sheet evaluated for this parser's platform, configuration and variables, from the cache if
+     * possible. A sheet is evaluated as a project of its own, starting with no preprocessor definitions other than the
+     * ones it inherits from the importing project.
+     */
+    private PropertySheet getPropertySheet( File sheetFile ) throws IOException, ParseException
+    {
+        PropertySheet sheet = PropertySheet.find( sheetFile, getPlatform(), getConfiguration(), envVariables );
+        if ( sheet != null )
+        {
+            return sheet;
+        }
+
+        VCProjectParser sheetParser;
+        try
+        {
+            sheetParser = new VCProjectParser( sheetFile, solutionFile, getPlatform(), getConfiguration() );
+        }
+        catch ( ParserConfigurationException pce )
+        {
+            throw new IOException( pce.getMessage() );
+        }
+        catch ( SAXException se )
+        {
+            throw new IOException( se.getMessage() );
+        }
+        sheetParser.setEnvVariables( envVariables );
+        sheetParser.importDepth = importDepth + 1;
+        sheetParser.preprocessorDefs.add( PropertySheet.INHERITED_PREPROCESSOR_DEFS );
+        sheetParser.parse();
+
+        sheet = new PropertySheet( sheetFile, sheetParser.includeDirectories, sheetParser.preprocessorDefs, 
+                sheetParser.outputDirectoryValue, new TreeMap<String, String>( sheetParser.usedEnvVariables ), 
+                sheetParser.importedFiles, new TreeMap<File, Boolean>( sheetParser.probedPaths ) );
+        PropertySheet.add( sheet, getPlatform(), getConfiguration() );
+        return sheet;
+    }
+
     /**
      * Retrieve the default output directory for the Visual C++ project.
      * @return the default output directory for the Visual C++ project
@@ -419,6 +742,8 @@ class VCProjectParser extends BaseParser
         PARSE_IGNORE,
         PARSE_PROPERTY_GROUP,
         PARSE_CONFIGPLATFORM_GROUP,
+        PARSE_IMPORT_GROUP,
+        PARSE_ITEM_GROUP,
     }
 
     private enum CharParserState 
@@ -426,16 +751,29 @@ class VCProjectParser extends BaseParser
         PARSE_IGNORE,
         PARSE_OUTPUT_DIRECTORY,
         PARSE_INCLUDE_DIRECTORIES,
-        PARSE_PREPROCESSOR_DEFS
+        PARSE_PREPROCESSOR_DEFS,
+        PARSE_EXCLUDED_FROM_BUILD
     }    
     
-    private SAXParser parser = null; 
     private List<String> xmlPath = new ArrayList<String>(); 
     private ElementParserState elementParserState = ElementParserState.PARSE_IGNORE;
     private CharParserState charParserState = CharParserState.PARSE_IGNORE;
     private List<File> includeDirectories = new ArrayList<File>();
     private List<String> preprocessorDefs = new ArrayList<String>();
     private Map<String, String> envVariables = new HashMap<String, String>( System.getenv() );
+    private Map<String, String> usedEnvVariables = new TreeMap<String, String>();
+    private List<File> importedFiles = new ArrayList<File>();
+    private Map<File, Boolean> probedPaths = new TreeMap<File, Boolean>();
+    private List<File> projectReferences = new ArrayList<File>();
+    private List<File> sourceFiles = new ArrayList<File>();
+    private List<File> headerFiles = new ArrayList<File>();
+    private List<File> otherItemFiles = new ArrayList<File>();
+    private List<File> itemFiles;
+    private List<File> itemPaths;
+    private boolean itemExcluded;
     private File outputDirectory;
+    private String outputDirectoryValue;
     private File solutionFile;
+    private VCProjectModel projectModel;
+    private int importDepth;
 }
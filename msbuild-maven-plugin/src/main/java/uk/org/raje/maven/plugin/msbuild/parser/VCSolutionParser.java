@@ -16,19 +16,21 @@
 
 package uk.org.raje.maven.plugin.msbuild.parser;
 
-import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.text.ParseException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+
+import org.codehaus.plexus.util.IOUtil;
 
 /**
  * <p>Class that parses a Visual Studio solution file containing Visual C++ projects. This class identifies all projects
@@ -40,6 +42,11 @@ import java.util.regex.Pattern;
  * for each pair, the solution also specify a given platform/configuration pair for each project entry in the solution. 
  * Note that Visual Studio allows the platform/configuration pair for a projects to be different from the solution 
  * platform/configuration pair.</p>
+ * <p>The {@code ProjectDependencies} section of each project entry, which lists the projects that have to be built
+ * before it, is also read and stored in the {@link VCProject} beans as project GUIDs.</p>
+ * <p>The solution is read into a character buffer in one go and tokenized in place. Spaces and tabs are not 
+ * significant anywhere in the lines the parser reads and are skipped while matching, Strings are only created for the 
+ * values stored in the {@link VCProject} beans.</p>
  */
 class VCSolutionParser extends BaseParser 
 {
@@ -56,27 +63,10 @@ class VCSolutionParser extends BaseParser
             throws FileNotFoundException 
     {
         super( solutionFile, platform, configuration );
-        StringBuffer projectPatternRegex = new StringBuffer(); 
         
         solutionParserState = SolutionParserState.PARSE_IGNORE;
         isSolutionConfigPlatformSupported = false;
-        projects = new HashMap<String, VCProject>();
-
-        /*
-         * Build a regex to parse a Visual C++ project line in the solution file. A project line looks like this:
-         * 
-         * Project("{8BC9CEB8-8B4A-11D0-8D11-00A0C91BC942}") = "hello-world", "hello-world-project\hello-world.vcxproj",
-         * "{5AF88374-A467-4CCA-8B38-CEB0DDE9BA58}"
-         * 
-         * where the 4 strings represent: the solution GUID, the project name, the project path relative to the solution
-         * path, and finally the project GUID.
-         */
-        for ( ProjectProperty property : ProjectProperty.values() ) 
-        {
-            projectPatternRegex.append( property.getRegex() );
-        }
-        
-        projectPropertiesPattern = Pattern.compile( projectPatternRegex.toString() );
+        projects = new LinkedHashMap<String, VCProject>();
     }
     
     /**
@@ -91,179 +81,227 @@ class VCSolutionParser extends BaseParser
     @Override
     public void parse() throws IOException, ParseException 
     {
-        String line;
-        BufferedReader reader = new BufferedReader( new FileReader( getInputFile() ) );
+        buffer = readSolution();
         
-        while ( ( line = reader.readLine() ) != null ) 
+        int lineStart = 0;
+        while ( lineStart < bufferLength ) 
         {
-            //Remove all whitespace, it makes the lines easier to analyse via regexs.
-            line = line.replaceAll( "[ \t]", "" );
-            
-            switch ( solutionParserState ) 
+            int lineEnd = lineStart;
+            while ( lineEnd < bufferLength && buffer[lineEnd] != '\n' && buffer[lineEnd] != '\r' ) 
             {
+                lineEnd++;
+            }
             
-            //Parse the solution global section, which contains the list of supported platform/configuration pairs for 
-            // the solution.
-            case PARSE_SOLUTION_GLOBAL_SECTION:
-                if ( line.startsWith( END_SOLUTION_GLOBAL_SECTION ) ) 
-                {
-                    solutionParserState = SolutionParserState.PARSE_IGNORE;
-                }
-                else 
-                {
-                    parseSolutionConfig( line );
-                }
-                
-                break;
-                
-            //Parse the project global section, which contains the list of supported platform/configuration pairs for 
-            // each project, for each platform/configuration pair supported by the solution (for example, a solution 
-            // supporting the Win32/Release pair may specify that a project has to be built against a Win32/Debug pair)
-            case PARSE_PROJECT_GLOBAL_SECTION:
-                if ( line.startsWith( END_PROJECT_GLOBAL_SECTION ) ) 
-                {
-                    solutionParserState = SolutionParserState.PARSE_IGNORE;
-                }
-                else 
-                {
-                    parseProjectPlatformConfig( line );
-                }
-                
-                break;
+            parseLine( lineStart, lineEnd );
             
-            //Parse the rest of the solution file
-            default:
-                Matcher prjMatcher = projectPropertiesPattern.matcher( line );
-                
-                if ( prjMatcher.matches() ) 
-                {
-                    parseProjectEntry( prjMatcher );
-                }
-                else if ( line.startsWith( BEGIN_SOLUTION_GLOBAL_SECTION ) ) 
-                {
-                    solutionParserState = SolutionParserState.PARSE_SOLUTION_GLOBAL_SECTION;
-                }
-                else if ( line.startsWith( BEGIN_PROJECT_GLOBAL_SECTION ) ) 
-                {
-                    solutionParserState = SolutionParserState.PARSE_PROJECT_GLOBAL_SECTION;
-                }
-            }
+            lineStart = lineEnd + 1;
         }
         
-        reader.close();
+        buffer = null;
         validateProjectPlatformConfigs();
     }
     
     private static final Logger LOGGER = Logger.getLogger( VCSolutionParser.class.getName() );
     
+    private static final String PROJECT_ENTRY = "Project(";
+    private static final String END_PROJECT_ENTRY = "EndProject";
+    private static final String BEGIN_PROJECT_DEPENDENCIES_SECTION = "ProjectSection(ProjectDependencies)";
+    private static final String END_PROJECT_DEPENDENCIES_SECTION = "EndProjectSection";
     private static final String BEGIN_SOLUTION_GLOBAL_SECTION = "GlobalSection(SolutionConfigurationPlatforms)";
     private static final String BEGIN_PROJECT_GLOBAL_SECTION = "GlobalSection(ProjectConfigurationPlatforms)";
     private static final String END_SOLUTION_GLOBAL_SECTION = "EndGlobalSection";
     private static final String END_PROJECT_GLOBAL_SECTION = "EndGlobalSection";
-
-    private static String getGUIDPattern( String groupName ) 
-    {
-        return "\"(?<" + groupName + ">\\{[\\w-]+\\})\"";
-    }
-
-    private static String getStringPattern( String groupName ) 
-    {
-        return "\"(?<" + groupName + ">[\\w-]+)\"";
-    }
-    
-    private static String getPathPattern( String groupName ) 
-    {
-        return "\"(?<" + groupName + ">.+\\..*proj)\"";
-    }
+    private static final String ACTIVE_CONFIGURATION = "ActiveCfg";
+    private static final String PROJECT_FILE_SUFFIX = "proj";
     
     private enum SolutionParserState 
     {
         PARSE_IGNORE,
         PARSE_SOLUTION_GLOBAL_SECTION,
-        PARSE_PROJECT_GLOBAL_SECTION
+        PARSE_PROJECT_GLOBAL_SECTION,
+        PARSE_PROJECT_DEPENDENCIES_SECTION
     }
 
-    private enum ProjectProperty 
+    /**
+     * Read the whole solution into {@link #buffer}. Solutions are at most a few megabytes, even with thousands of 
+     * projects.
+     */
+    private char[] readSolution() throws IOException
     {
-        solutionGuid 
-        { 
-            @Override
-            String getRegex() 
-            {
-                return "Project\\(" + getGUIDPattern( name() ) + "\\)=";
-            } 
-        },
-        name 
+        char[] chars = new char[( int ) Math.max( getInputFile().length(), 1 )];
+        bufferLength = 0;
+        Reader reader = new InputStreamReader( new FileInputStream( getInputFile() ) );
+        try
         {
-            @Override
-            String getRegex() 
+            int read;
+            while ( ( read = reader.read( chars, bufferLength, chars.length - bufferLength ) ) >= 0 ) 
             {
-                return getStringPattern( name() ) + ",";
-            } 
-        },
-        relativePath 
+                bufferLength += read;
+                if ( bufferLength == chars.length )
+                {
+                    chars = Arrays.copyOf( chars, chars.length * 2 );
+                }
+            }
+        }
+        finally
         {
-            @Override
-            String getRegex() 
-            {
-                return getPathPattern( name() ) + ",";
-            } 
-        },
-        guid 
+            IOUtil.close( reader );
+        }
+        return chars;
+    }
+
+    private void parseLine( int start, int end ) 
+    {
+        switch ( solutionParserState ) 
         {
-            @Override
-            String getRegex() 
+        
+        //Parse the solution global section, which contains the list of supported platform/configuration pairs for 
+        // the solution.
+        case PARSE_SOLUTION_GLOBAL_SECTION:
+            if ( matchPrefix( start, end, END_SOLUTION_GLOBAL_SECTION ) >= 0 ) 
             {
-                return getGUIDPattern( name() );
-            };
-        };
+                solutionParserState = SolutionParserState.PARSE_IGNORE;
+            }
+            else 
+            {
+                parseSolutionConfig( start, end );
+            }
+            
+            break;
+            
+        //Parse the project global section, which contains the list of supported platform/configuration pairs for 
+        // each project, for each platform/configuration pair supported by the solution (for example, a solution 
+        // supporting the Win32/Release pair may specify that a project has to be built against a Win32/Debug pair)
+        case PARSE_PROJECT_GLOBAL_SECTION:
+            if ( matchPrefix( start, end, END_PROJECT_GLOBAL_SECTION ) >= 0 ) 
+            {
+                solutionParserState = SolutionParserState.PARSE_IGNORE;
+            }
+            else 
+            {
+                parseProjectPlatformConfig( start, end );
+            }
+            
+            break;
+            
+        //Parse the dependencies of the current project entry, one project GUID per line in the form {GUID} = {GUID}
+        case PARSE_PROJECT_DEPENDENCIES_SECTION:
+            if ( matchPrefix( start, end, END_PROJECT_DEPENDENCIES_SECTION ) >= 0 ) 
+            {
+                solutionParserState = SolutionParserState.PARSE_IGNORE;
+            }
+            else 
+            {
+                parseProjectDependency( start, end );
+            }
+            
+            break;
         
-        String getValue( Matcher matcher ) 
-        {
-            return matcher.group( name() );
+        //Parse the rest of the solution file
+        default:
+            int position = matchPrefix( start, end, PROJECT_ENTRY );
+            if ( position >= 0 ) 
+            {
+                currentProjectDependencies = null;
+                parseProjectEntry( position, end );
+            }
+            else if ( regionEquals( start, end, END_PROJECT_ENTRY ) )
+            {
+                currentProjectDependencies = null;
+            }
+            else if ( currentProjectDependencies != null 
+                    && matchPrefix( start, end, BEGIN_PROJECT_DEPENDENCIES_SECTION ) >= 0 )
+            {
+                solutionParserState = SolutionParserState.PARSE_PROJECT_DEPENDENCIES_SECTION;
+            }
+            else if ( matchPrefix( start, end, BEGIN_SOLUTION_GLOBAL_SECTION ) >= 0 ) 
+            {
+                solutionParserState = SolutionParserState.PARSE_SOLUTION_GLOBAL_SECTION;
+            }
+            else if ( matchPrefix( start, end, BEGIN_PROJECT_GLOBAL_SECTION ) >= 0 ) 
+            {
+                solutionParserState = SolutionParserState.PARSE_PROJECT_GLOBAL_SECTION;
+            }
         }
-
-        abstract String getRegex();
     }
     
-    private void parseSolutionConfig( String line ) 
+    private void parseSolutionConfig( int start, int end ) 
     {
-        final int slnConfigPlatformId = 1;
-
-        //Retrieve one of the supported platform/configuration pairs for the solution; also check whether this pair
-        // matches the one we are looking for.
-        String slnConfigPlatform = line.split( "=" )[slnConfigPlatformId];
+        //Retrieve one of the supported platform/configuration pairs for the solution, the value after the first '=';
+        // also check whether this pair matches the one we are looking for.
+        int valueStart = indexOf( '=', start, end );
+        if ( valueStart < 0 )
+        {
+            return;
+        }
+        int valueEnd = indexOf( '=', valueStart + 1, end );
         
-        if ( slnConfigPlatform.compareTo( getConfigurationPlatform() ) == 0 ) 
+        if ( regionEquals( valueStart + 1, valueEnd < 0 ? end : valueEnd, getConfigurationPlatform() ) ) 
         {
             isSolutionConfigPlatformSupported = true;
         }
     }
     
-    private void parseProjectEntry( Matcher projMatcher ) 
+    /**
+     * Parse a Visual C++ project line in the solution file, after the leading {@code Project(}. A project line looks 
+     * like this:
+     * <pre>
+     * Project("{8BC9CEB8-8B4A-11D0-8D11-00A0C91BC942}") = "hello-world", "hello-world-project\hello-world.vcxproj",
+     * "{5AF88374-A467-4CCA-8B38-CEB0DDE9BA58}"
+     * </pre>
+     * where the 4 strings represent: the solution GUID, the project name, the project path relative to the solution
+     * path, and finally the project GUID. Lines for other kinds of entries, such as solution folders, do not have a 
+     * project file path and are ignored.
+     */
+    private void parseProjectEntry( int start, int end ) 
     {
+        int[] solutionGuid = new int[2];
+        int[] name = new int[2];
+        int[] relativePath = new int[2];
+        int[] guid = new int[2];
+        
+        int position = readQuoted( start, end, solutionGuid );
+        position = expect( position, end, ')' );
+        position = expect( position, end, '=' );
+        position = readQuoted( position, end, name );
+        position = expect( position, end, ',' );
+        position = readQuoted( position, end, relativePath );
+        position = expect( position, end, ',' );
+        position = readQuoted( position, end, guid );
+        
+        if ( position < 0 || skipWhitespace( position, end ) != end 
+                || !isGuid( solutionGuid ) || !isName( name ) || !isProjectPath( relativePath ) || !isGuid( guid ) )
+        {
+            return;
+        }
+        
         //Compute the full project path by joining the solution path with the relative project path.
-        String relativeProjectPath = ProjectProperty.relativePath.getValue( projMatcher );
+        String relativeProjectPath = toString( relativePath[0], relativePath[1] );
         File fullProjectPath = new File( getInputFile().getParentFile(), relativeProjectPath );
         
         //Create and populate a new bean for this project.
-        VCProject vcProject = new VCProject( ProjectProperty.name.getValue( projMatcher ), fullProjectPath );
+        VCProject vcProject = new VCProject( toString( name[0], name[1] ), fullProjectPath );
         vcProject.setTargetName( new File( relativeProjectPath ).getParent() );
-        vcProject.setGuid( ProjectProperty.guid.getValue( projMatcher ) );
-        vcProject.setSolutionGuid( ProjectProperty.solutionGuid.getValue( projMatcher ) );
+        vcProject.setGuid( toString( guid[0], guid[1] ) );
+        vcProject.setSolutionGuid( toString( solutionGuid[0], solutionGuid[1] ) );
+        currentProjectDependencies = new ArrayList<String>();
+        vcProject.setProjectDependencies( currentProjectDependencies );
         
         projects.put( vcProject.getGuid(), vcProject );
     }
     
-    private void parseProjectPlatformConfig( String line ) 
+    private void parseProjectDependency( int start, int end ) 
+    {
+        int separator = indexOf( '=', start, end );
+        int[] guid = { start, separator < 0 ? end : separator };
+        if ( isGuid( guid ) )
+        {
+            currentProjectDependencies.add( toString( guid[0], guid[1] ) );
+        }
+    }
+    
+    private void parseProjectPlatformConfig( int start, int end ) 
     {
-        final int solutionProjectGuidId = 0;
-        final int solutionConfigurationPlatformId = 1;
-        final int solutionProjectConfigurationId = 2;
-        final int projectConfigurationPlatformId = 1;
-        final int projectConfigurationEntryId = 0;
-        final int projectPlatformEntryId = 1;
-        
         /*
          * A supported platform/configuration pair for a project looks like this:
          * 
@@ -275,28 +313,209 @@ class VCSolutionParser extends BaseParser
          * C = this is an active project platform/configuration pair
          * D = project platform/configuration pair for this solution platform/configuration pair
          */
-        String solutionProjectEntries[] = line.split( "\\." );
-        String projectGUID = solutionProjectEntries[solutionProjectGuidId];
-        String solutionConfigurationPlatform = solutionProjectEntries[solutionConfigurationPlatformId];
-        String projectActiveConfigEntry = solutionProjectEntries[solutionProjectConfigurationId]; 
+        int firstDot = indexOf( '.', start, end );
+        int secondDot = firstDot < 0 ? -1 : indexOf( '.', firstDot + 1, end );
+        if ( secondDot < 0 )
+        {
+            return;
+        }
+        int thirdDot = indexOf( '.', secondDot + 1, end );
+        int activeConfigEnd = thirdDot < 0 ? end : thirdDot;
 
-        //If the project GUID is in the list of projects for this solution, and the solution platform/configuration pair
-        // matches the one we are looking for, it means we found a platform/configuration pair for this project.
-        if ( projects.containsKey( projectGUID ) 
-                && projectActiveConfigEntry.startsWith( "ActiveCfg" )  
-                && solutionConfigurationPlatform.compareTo( getConfigurationPlatform() ) == 0 ) 
+        //Only look the project up if the solution platform/configuration pair matches the one we are looking for and 
+        // this is the active project platform/configuration pair
+        int activeConfigStart = matchPrefix( secondDot + 1, activeConfigEnd, ACTIVE_CONFIGURATION );
+        if ( activeConfigStart < 0 || !regionEquals( firstDot + 1, secondDot, getConfigurationPlatform() ) )
         {
-            VCProject vcProject = projects.get( projectGUID );
-            String projConfigurationPlatform[] = 
-                    projectActiveConfigEntry.split( "=" )[projectConfigurationPlatformId].split( "\\|" );
-            
-            vcProject.setConfiguration( projConfigurationPlatform[projectConfigurationEntryId] );
-            vcProject.setPlatform( projConfigurationPlatform[projectPlatformEntryId] );
-            
-            LOGGER.fine( "\tFound project " + vcProject.getName() + " with platform=" + vcProject.getPlatform() 
-                    + ", configuration=" + vcProject.getConfiguration() );
-            
+            return;
+        }
+        
+        VCProject vcProject = projects.get( toString( start, firstDot ) );
+        if ( vcProject == null )
+        {
+            return;
+        }
+        
+        //The project platform/configuration pair is the value after the first '=', up to any further '='
+        int valueStart = indexOf( '=', activeConfigStart, activeConfigEnd );
+        if ( valueStart < 0 )
+        {
+            return;
+        }
+        int valueEnd = indexOf( '=', valueStart + 1, activeConfigEnd );
+        valueEnd = valueEnd < 0 ? activeConfigEnd : valueEnd;
+        int separator = indexOf( '|', valueStart + 1, valueEnd );
+        if ( separator < 0 )
+        {
+            return;
+        }
+        int platformEnd = indexOf( '|', separator + 1, valueEnd );
+        
+        vcProject.setConfiguration( toString( valueStart + 1, separator ) );
+        vcProject.setPlatform( toString( separator + 1, platformEnd < 0 ? valueEnd : platformEnd ) );
+        
+        LOGGER.fine( "\tFound project " + vcProject.getName() + " with platform=" + vcProject.getPlatform() 
+                + ", configuration=" + vcProject.getConfiguration() );
+    }
+    
+    /**
+     * Match a prefix at the start of a range, ignoring whitespace.
+     * @return the position after the prefix, or -1 if the range does not start with the prefix
+     */
+    private int matchPrefix( int start, int end, String prefix )
+    {
+        int position = start;
+        for ( int i = 0; i < prefix.length(); i++ )
+        {
+            position = skipWhitespace( position, end );
+            if ( position == end || buffer[position] != prefix.charAt( i ) )
+            {
+                return -1;
+            }
+            position++;
+        }
+        return position;
+    }
+    
+    /**
+     * Compare a range with a String, ignoring whitespace in the range.
+     */
+    private boolean regionEquals( int start, int end, String value )
+    {
+        int position = matchPrefix( start, end, value );
+        return position >= 0 && skipWhitespace( position, end ) == end;
+    }
+    
+    /**
+     * Read a quoted value, storing the range inside the quotes.
+     * @return the position after the closing quote, or -1 if there is no quoted value
+     */
+    private int readQuoted( int start, int end, int[] range )
+    {
+        int position = expect( start, end, '"' );
+        if ( position < 0 )
+        {
+            return -1;
+        }
+        int closingQuote = indexOf( '"', position, end );
+        if ( closingQuote < 0 )
+        {
+            return -1;
+        }
+        range[0] = position;
+        range[1] = closingQuote;
+        return closingQuote + 1;
+    }
+    
+    /**
+     * @return the position after the expected character, which can be preceded by whitespace, or -1 if it is not next
+     */
+    private int expect( int start, int end, char expected )
+    {
+        if ( start < 0 )
+        {
+            return -1;
+        }
+        int position = skipWhitespace( start, end );
+        return position < end && buffer[position] == expected ? position + 1 : -1;
+    }
+    
+    private int indexOf( char c, int start, int end )
+    {
+        for ( int i = start; i < end; i++ )
+        {
+            if ( buffer[i] == c )
+            {
+                return i;
+            }
         }
+        return -1;
+    }
+    
+    private int skipWhitespace( int start, int end )
+    {
+        int position = start;
+        while ( position < end && isWhitespace( buffer[position] ) )
+        {
+            position++;
+        }
+        return position;
+    }
+    
+    /**
+     * @return {@code true} for the characters that are not significant in a solution file
+     */
+    private static boolean isWhitespace( char c )
+    {
+        return c == ' ' || c == '\t';
+    }
+    
+    private static boolean isWordCharacter( char c )
+    {
+        return ( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' ) || ( c >= '0' && c <= '9' ) || c == '_' 
+                || c == '-';
+    }
+
+    /**
+     * @return {@code true} if the range holds at least one word character or '-' and nothing else but whitespace
+     */
+    private boolean isName( int[] range )
+    {
+        boolean empty = true;
+        for ( int i = range[0]; i < range[1]; i++ )
+        {
+            if ( isWordCharacter( buffer[i] ) )
+            {
+                empty = false;
+            }
+            else if ( !isWhitespace( buffer[i] ) )
+            {
+                return false;
+            }
+        }
+        return !empty;
+    }
+    
+    /**
+     * @return {@code true} if the range holds a GUID in braces
+     */
+    private boolean isGuid( int[] range )
+    {
+        int start = skipWhitespace( range[0], range[1] );
+        int end = range[1];
+        while ( end > start && isWhitespace( buffer[end - 1] ) )
+        {
+            end--;
+        }
+        return end - start > 2 && buffer[start] == '{' && buffer[end - 1] == '}' 
+                && isName( new int[] { start + 1, end - 1 } );
+    }
+    
+    /**
+     * @return {@code true} if the range holds a path that has an extension and ends in "proj"
+     */
+    private boolean isProjectPath( int[] range )
+    {
+        String path = toString( range[0], range[1] );
+        int dot = path.indexOf( '.', 1 );
+        return dot > 0 && path.endsWith( PROJECT_FILE_SUFFIX ) && dot <= path.length() - PROJECT_FILE_SUFFIX.length()
+                - 1;
+    }
+    
+    /**
+     * @return the content of a range without whitespace
+     */
+    private String toString( int start, int end )
+    {
+        StringBuilder value = new StringBuilder( end - start );
+        for ( int i = start; i < end; i++ )
+        {
+            if ( !isWhitespace( buffer[i] ) )
+            {
+                value.append( buffer[i] );
+            }
+        }
+        return value.toString();
     }
     
     private void validateProjectPlatformConfigs() throws ParseException 
@@ -319,6 +538,13 @@ class VCSolutionParser extends BaseParser
         
     private SolutionParserState solutionParserState;
     private boolean isSolutionConfigPlatformSupported;
-    private Pattern projectPropertiesPattern;
     private Map<String, VCProject> projects;
+    
+    /**
+     * The dependencies of the project entry being parsed, {@code null} outside project entries and for entries other 
+     * than projects, such as solution folders.
+     */
+    private List<String> currentProjectDependencies;
+    private char[] buffer;
+    private int bufferLength;
 }
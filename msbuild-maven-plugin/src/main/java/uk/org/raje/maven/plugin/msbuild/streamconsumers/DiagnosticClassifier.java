@@ -0,0 +1,169 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild.streamconsumers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Decides whether a line of tool output is an error, a warning or just information. The classifier holds an ordered
+ * list of {@link Rule}s, the first rule that matches a line decides its severity and lines no rule matches are
+ * information. Each rule has a keyword that must appear in the line (ignoring case) before its regular expression is
+ * tried, most lines of a build log contain neither "error" nor "warning" and are classified without running a regular
+ * expression at all.
+ */
+public final class DiagnosticClassifier
+{
+    /**
+     * The severity of a line of output.
+     */
+    public enum Severity
+    {
+        ERROR,
+        WARNING,
+        INFO
+    }
+
+    /**
+     * A rule matching lines of a particular severity.
+     */
+    public static final class Rule
+    {
+        /**
+         * Create a rule.
+         * @param severity the severity of lines this rule matches
+         * @param keyword text that must appear in the line, ignoring case, for the rule to be tried
+         * @param regex the regular expression to find in the line
+         */
+        public Rule( Severity severity, String keyword, String regex )
+        {
+            this.severity = severity;
+            this.keyword = keyword;
+            this.pattern = Pattern.compile( regex );
+        }
+
+        /**
+         * @return the severity of lines this rule matches
+         */
+        public Severity getSeverity()
+        {
+            return severity;
+        }
+
+        /**
+         * Check whether this rule matches a line.
+         * @param line the line to check
+         * @return true if the line contains the keyword and the regular expression is found in it
+         */
+        public boolean matches( String line )
+        {
+            return containsIgnoreCase( line, keyword ) && pattern.matcher( line ).find();
+        }
+
+        @Override
+        public String toString()
+        {
+            return severity + ": " + pattern.pattern();
+        }
+
+        private final Severity severity;
+        private final String keyword;
+        private final Pattern pattern;
+    }
+
+    /**
+     * Create a classifier from an ordered list of rules.
+     * @param rules the rules to try in order
+     */
+    public DiagnosticClassifier( List<Rule> rules )
+    {
+        this.rules = Collections.unmodifiableList( new ArrayList<Rule>( rules ) );
+    }
+
+    /**
+     * Get the classifier that recognises the error and warning formats of MSBuild, the Microsoft compiler and linker
+     * and generic "error:" and "warning:" messages.
+     * @return the default classifier
+     */
+    public static DiagnosticClassifier getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * Classify a line of output.
+     * @param line the line to classify
+     * @return the severity of the first rule matching the line, {@link Severity#INFO} if none match
+     */
+    public Severity classify( String line )
+    {
+        for ( Rule rule : rules )
+        {
+            if ( rule.matches( line ) )
+            {
+                return rule.getSeverity();
+            }
+        }
+        return Severity.INFO;
+    }
+
+    /**
+     * @return the rules of this classifier, in the order they are tried
+     */
+    public List<Rule> getRules()
+    {
+        return rules;
+    }
+
+    /**
+     * A case-insensitive {@link String#indexOf(String)} that does not allocate, for ASCII keywords.
+     */
+    private static boolean containsIgnoreCase( String line, String keyword )
+    {
+        final int keywordLength = keyword.length();
+        final int last = line.length() - keywordLength;
+        if ( keywordLength == 0 )
+        {
+            return true;
+        }
+
+        final char lower = Character.toLowerCase( keyword.charAt( 0 ) );
+        final char upper = Character.toUpperCase( keyword.charAt( 0 ) );
+        for ( int i = 0; i <= last; i++ )
+        {
+            final char c = line.charAt( i );
+            if ( ( c == lower || c == upper )
+                    && line.regionMatches( true, i + 1, keyword, 1, keywordLength - 1 ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Regexs devised using http://www.regexplanet.com/advanced/java/index.html
+    private static final DiagnosticClassifier DEFAULT = new DiagnosticClassifier( Arrays.asList(
+            // "error:" in any case, or the compiler/linker form ": fatal error C1083:"
+            new Rule( Severity.ERROR, "error", "(?:(?i)error\\:)|(?:\\: (?:fatal )?error (?:[A-Z]+[0-9]+)?\\:)" ),
+            // "warning:" in any case, or the compiler/linker form ": warning LNK4099:"
+            new Rule( Severity.WARNING, "warning", "(?:(?i)warning\\:)|(?:\\: warning (?:[A-Z]+[0-9]+)?\\:)" ) ) );
+
+    private final List<Rule> rules;
+}
@@ -21,39 +21,47 @@ import org.codehaus.plexus.util.cli.StreamConsumer;
 
 /**
  * StreamConsumer that writes lines from a stream to the supplied Log. The default is to log at 'info' level, we also 
- * try to identify errors and warning messages and log these at the appropriate level.
+ * try to identify errors and warning messages and log these at the appropriate level using a 
+ * {@link DiagnosticClassifier}.
  */
 public class StdoutStreamToLog implements StreamConsumer
 {
     /**
-     * Construct an instance to output to specified Log
+     * Construct an instance to output to specified Log, classifying lines with the default rules
      * @param logger the Log to write to
      */
     public StdoutStreamToLog( Log logger ) 
+    {
+        this( logger, DiagnosticClassifier.getDefault() );
+    }
+
+    /**
+     * Construct an instance to output to specified Log, classifying lines with the supplied rules
+     * @param logger the Log to write to
+     * @param classifier decides the level each line is logged at
+     */
+    public StdoutStreamToLog( Log logger, DiagnosticClassifier classifier ) 
     {
         this.logger = logger;
+        this.classifier = classifier;
     }
     
     @Override
     public void consumeLine( String line )
     {
-        // Regexs devised using http://www.regexplanet.com/advanced/java/index.html
-
-        // Look for errors with Regex: .*((?:(?i)error\:)|(?:\: (?:fatal )?error (?:[A-Z]+[0-9]+)?\:)).*
-        if ( line.matches( ".*((?:(?i)error\\:)|(?:\\: (?:fatal )?error (?:[A-Z]+[0-9]+)?\\:)).*" ) )
+        switch ( classifier.classify( line ) )
         {
+        case ERROR:
             logger.error( line );
-        }
-        // Look for warnings with Regex: .*((?:(?i)warning\:)|(?:\: warning (?:[A-Z]+[0-9]+)?\:)).*
-        else if ( line.matches( ".*((?:(?i)warning\\:)|(?:\\: warning (?:[A-Z]+[0-9]+)?\\:)).*" ) ) 
-        {
+            break;
+        case WARNING:
             logger.warn( line );
-        }
-        else
-        {
+            break;
+        default:
             logger.info( line );
         }
     }
     
     private Log logger;
+    private DiagnosticClassifier classifier;
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.WriterFactory;
+
+/**
+ * Records timed spans for the Mojos, platform/configuration pairs, parsing and processes run during a Maven session
+ * and writes them out in the Chrome trace-event format (load the file in chrome://tracing or Perfetto). Recording is
+ * off until {@link #setEnabled(boolean)} is called, while it is off {@link #start(String, String)} returns a span that
+ * records nothing.
+ */
+public final class BuildTimeline
+{
+    /**
+     * Get the timeline shared by all Mojos in this Maven session.
+     * @return the session-wide timeline
+     */
+    public static BuildTimeline getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Turn recording on or off. Spans already recorded are kept.
+     * @param enabled true to record spans
+     */
+    public void setEnabled( boolean enabled )
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return true if spans are being recorded
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Start a span on the current thread. The span is recorded when {@link Span#end()} is called, which should be done
+     * in a {@code finally} block.
+     * @param name the name shown for the span
+     * @param category the category of the span, for example "mojo" or "process"
+     * @return the started span
+     */
+    public Span start( String name, String category )
+    {
+        if ( !enabled )
+        {
+            return DISABLED_SPAN;
+        }
+        return new Span( this, name, category );
+    }
+
+    /**
+     * Write every span recorded so far to a file in the Chrome trace-event format.
+     * @param traceFile the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void writeTo( File traceFile ) throws IOException
+    {
+        List<String> toWrite;
+        synchronized ( this )
+        {
+            toWrite = new ArrayList<String>( events );
+        }
+
+        FileUtils.forceMkdir( traceFile.getParentFile() );
+        Writer writer = WriterFactory.newWriter( traceFile, WriterFactory.UTF_8 );
+        try
+        {
+            writer.write( "{\"displayTimeUnit\":\"ms\",\"traceEvents\":[" );
+            for ( int i = 0; i < toWrite.size(); i++ )
+            {
+                writer.write( i == 0 ? "\n" : ",\n" );
+                writer.write( toWrite.get( i ) );
+            }
+            writer.write( "\n]}\n" );
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+    }
+
+    /**
+     * A span of time on one thread.
+     */
+    public static final class Span
+    {
+        private Span( BuildTimeline timeline, String name, String category )
+        {
+            this.timeline = timeline;
+            this.name = name;
+            this.category = category;
+            this.threadId = Thread.currentThread().getId();
+            this.start = timeline == null ? 0 : timeline.now();
+        }
+
+        /**
+         * Attach a value to the span, shown when the span is selected in the trace viewer.
+         * @param key the name of the value
+         * @param value the value
+         * @return this span
+         */
+        public Span arg( String key, Object value )
+        {
+            if ( timeline != null )
+            {
+                args.put( key, String.valueOf( value ) );
+            }
+            return this;
+        }
+
+        /**
+         * End the span and record it in the timeline.
+         */
+        public void end()
+        {
+            if ( timeline != null )
+            {
+                timeline.record( this, timeline.now() - start );
+            }
+        }
+
+        private final BuildTimeline timeline;
+        private final String name;
+        private final String category;
+        private final long threadId;
+        private final long start;
+        private final Map<String, String> args = new LinkedHashMap<String, String>();
+    }
+
+    private BuildTimeline()
+    {
+    }
+
+    /**
+     * @return microseconds since the timeline was created
+     */
+    private long now()
+    {
+        return ( System.nanoTime() - origin ) / NANOS_PER_MICRO;
+    }
+
+    private void record( Span span, long duration )
+    {
+        StringBuilder event = new StringBuilder();
+        event.append( "{\"name\":" ).append( quote( span.name ) )
+             .append( ",\"cat\":" ).append( quote( span.category ) )
+             .append( ",\"ph\":\"X\",\"pid\":1" )
+             .append( ",\"tid\":" ).append( span.threadId )
+             .append( ",\"ts\":" ).append( span.start )
+             .append( ",\"dur\":" ).append( duration );
+        if ( !span.args.isEmpty() )
+        {
+            event.append( ",\"args\":{" );
+            boolean first = true;
+            for ( Map.Entry<String, String> arg : span.args.entrySet() )
+            {
+                event.append( first ? "" : "," ).append( quote( arg.getKey() ) ).append( ':' )
+                     .append( quote( arg.getValue() ) );
+                first = false;
+            }
+            event.append( '}' );
+        }
+        event.append( '}' );
+
+        synchronized ( this )
+        {
+            events.add( event.toString() );
+        }
+    }
+
+    private static String quote( String value )
+    {
+        StringBuilder quoted = new StringBuilder( value.length() + 2 );
+        quoted.append( '"' );
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            char c = value.charAt( i );
+            switch ( c )
+            {
+            case '"':
+                quoted.append( "\\\"" );
+                break;
+            case '\\':
+                quoted.append( "\\\\" );
+                break;
+            case '\n':
+                quoted.append( "\\n" );
+                break;
+            case '\r':
+                quoted.append( "\\r" );
+                break;
+            case '\t':
+                quoted.append( "\\t" );
+                break;
+            default:
+                if ( c < ' ' )
+                {
+                    quoted.append( String.format( "\\u%04x", ( int ) c ) );
+                }
+                else
+                {
+                    quoted.append( c );
+                }
+            }
+        }
+        return quoted.append( '"' ).toString();
+    }
+
+    private static final BuildTimeline INSTANCE = new BuildTimeline();
+    private static final Span DISABLED_SPAN = new Span( null, null, null );
+    private static final long NANOS_PER_MICRO = 1000;
+
+    private final long origin = System.nanoTime();
+    private final List<String> events = new ArrayList<String>();
+    private volatile boolean enabled;
+}
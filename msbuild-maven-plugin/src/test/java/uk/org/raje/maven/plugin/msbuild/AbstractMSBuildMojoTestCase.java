@@ -34,6 +34,8 @@ import org.apache.maven.project.ProjectBuildingRequest;
 import uk.org.raje.maven.plugin.msbuild.configuration.BuildConfiguration;
 import uk.org.raje.maven.plugin.msbuild.configuration.BuildPlatform;
 import uk.org.raje.maven.plugin.msbuild.configuration.CppCheckConfiguration;
+import uk.org.raje.maven.plugin.msbuild.configuration.FailurePolicy;
+import uk.org.raje.maven.plugin.msbuild.configuration.LogOverflowPolicy;
 
 /**
  * Abstract unit test base class to extend AbstractMojoTestCase and add 
@@ -60,6 +62,20 @@ public abstract class AbstractMSBuildMojoTestCase extends AbstractMojoTestCase
                 mojo.msbuildPath );
         
         assertEquals( 2, mojo.msbuildMaxCpuCount );
+        assertEquals( 3, mojo.msbuildMaxConcurrentBuilds );
+        assertEquals( 6, mojo.msbuildCpuTokens );
+        assertTrue( mojo.msbuildSingleInvocation );
+        assertTrue( mojo.msbuildSkipUpToDate );
+        assertEquals( FailurePolicy.failFast, mojo.msbuildFailurePolicy );
+        assertTrue( mojo.msbuildTimeline );
+        assertEquals( 128, mojo.msbuildLogBufferSize );
+        assertEquals( LogOverflowPolicy.dropInfo, mojo.msbuildLogOverflowPolicy );
+        assertEquals( "IBM850", mojo.msbuildOutputEncoding );
+        assertTrue( mojo.msbuildOutputToFiles );
+        assertTrue( mojo.msbuildParseCache );
+        assertEquals( "src/a.cpp,include/a.h", mojo.msbuildChangedFiles );
+        assertEquals( "changed-files.txt", mojo.msbuildChangedFilesList.getName() );
+        assertTrue( mojo.msbuildProjectScheduler );
         assertEquals( "C:\\include", mojo.msbuildSystemIncludes );
 
         // Version Info settings
@@ -78,6 +94,9 @@ public abstract class AbstractMSBuildMojoTestCase extends AbstractMojoTestCase
         assertEquals( Arrays.asList( new String[] { "nocppcheck.cpp", "foo/foonocppcheck.cpp" } ),
                 mojo.cppCheck.getExcludes() );
         assertEquals( "*Test", mojo.cppCheck.getExcludeProjectRegex() );
+        assertEquals( 4, mojo.cppCheck.getMaxConcurrentRuns() );
+        assertEquals( 64, mojo.cppCheck.getFilesPerShard() );
+        assertTrue( mojo.cppCheck.getFindingsCache() );
 
         // Vera++ settings
         assertEquals( false, mojo.vera.getSkip() );
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.org.raje.maven.plugin.msbuild;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Test;
+
+import uk.org.raje.maven.plugin.msbuild.configuration.LogOverflowPolicy;
+
+/**
+ * Test the bounded asynchronous log.
+ */
+public class AsyncLogTest
+{
+    @Test
+    public void writesMessagesInOrder() throws Exception
+    {
+        RecordingLog target = new RecordingLog( null );
+        AsyncLog log = new AsyncLog( target, 2, LogOverflowPolicy.block, null );
+        log.info( "one" );
+        log.warn( "two" );
+        log.error( "three" );
+        log.info( "four" );
+        log.close();
+
+        assertEquals( Arrays.asList( "info:one", "warn:two", "error:three", "info:four" ), target.messages );
+    }
+
+    @Test
+    public void dropInfoKeepsWarningsAndErrors() throws Exception
+    {
+        CountDownLatch gate = new CountDownLatch( 1 );
+        RecordingLog target = new RecordingLog( gate );
+        final AsyncLog log = new AsyncLog( target, 2, LogOverflowPolicy.dropInfo, null );
+
+        // The writer thread takes the first message and stalls on the gate, the next two fill the buffer
+        log.info( "first" );
+        target.waitForFirst();
+        log.info( "queued1" );
+        log.info( "queued2" );
+        log.info( "dropped" );
+        log.debug( "dropped" );
+        assertEquals( 2, log.getDroppedCount() );
+
+        Thread warner = new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                log.warn( "kept" );
+            }
+        } );
+        warner.start();
+        gate.countDown();
+        warner.join();
+        log.close();
+
+        assertEquals( Arrays.asList( "info:first", "info:queued1", "info:queued2", "warn:kept",
+                "warn:2 debug and info messages were dropped because the log could not keep up" ), target.messages );
+    }
+
+    @Test
+    public void spillWritesOverflowToFile() throws Exception
+    {
+        File spillFile = new File( System.getProperty( "java.io.tmpdir" ), "msbuild-log-spill-test.log" );
+        spillFile.delete();
+
+        CountDownLatch gate = new CountDownLatch( 1 );
+        RecordingLog target = new RecordingLog( gate );
+        AsyncLog log = new AsyncLog( target, 1, LogOverflowPolicy.spill, spillFile );
+        log.info( "first" );
+        target.waitForFirst();
+        log.info( "queued" );
+        log.error( "spilled" );
+        assertEquals( 1, log.getSpilledCount() );
+        gate.countDown();
+        log.close();
+
+        assertEquals( "info:queued", target.messages.get( 1 ) );
+        assertTrue( FileUtils.fileRead( spillFile ).startsWith( "[ERROR] spilled" ) );
+        spillFile.delete();
+    }
+
+    /**
+     * A Log that records what it is given, optionally holding the first message until a gate opens.
+     */
+    private static class RecordingLog extends SystemStreamLog
+    {
+        RecordingLog( CountDownLatch gate )
+        {
+            this.gate = gate;
+        }
+
+        @Override
+        public void debug( CharSequence content )
+        {
+            record( "debug", content );
+        }
+
+        @Override
+        public void info( CharSequence content )
+        {
+            record( "info", content );
+        }
+
+        @Override
+        public void warn( CharSequence content )
+        {
+            record( "warn", content );
+        }
+
+        @Override
+        public void error( CharSequence content )
+        {
+            record( "error", content );
+        }
+
+        void waitForFirst() throws InterruptedException
+        {
+            first.await();
+        }
+
+        private void record( String level, CharSequence content )
+        {
+            synchronized ( messages )
+            {
+                messages.add( level + ":" + content );
+            }
+            first.countDown();
+            if ( gate != null )
+            {
+                try
+                {
+                    gate.await();
+                }
+                catch ( InterruptedException ie )
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private final List<String> messages = new ArrayList<String>();
+        private final CountDownLatch first = new CountDownLatch( 1 );
+        private final CountDownLatch gate;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.org.raje.maven.plugin.msbuild;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Test;
+
+/**
+ * Test the build fingerprint digest.
+ */
+public class BuildFingerprintTest
+{
+    @Test
+    public void orderDoesNotMatter()
+    {
+        BuildFingerprint first = new BuildFingerprint();
+        first.add( "targets", Arrays.asList( "Target1" ) );
+        first.add( "packaging", "exe" );
+
+        BuildFingerprint second = new BuildFingerprint();
+        second.add( "packaging", "exe" );
+        second.add( "targets", Arrays.asList( "Target1" ) );
+
+        assertEquals( first.getDigest(), second.getDigest() );
+    }
+
+    @Test
+    public void valueChangeAltersDigest()
+    {
+        BuildFingerprint first = new BuildFingerprint();
+        first.add( "defines", Arrays.asList( "WIN32", "NDEBUG" ) );
+
+        BuildFingerprint second = new BuildFingerprint();
+        second.add( "defines", Arrays.asList( "WIN32", "_DEBUG" ) );
+
+        assertFalse( first.getDigest().equals( second.getDigest() ) );
+    }
+
+    @Test
+    public void fileChangeAltersDigest() throws Exception
+    {
+        File file = new File( "target/unit-tests/fingerprint/source.cpp" );
+        FileUtils.forceMkdir( file.getParentFile() );
+        FileUtils.fileWrite( file, "int main() { return 0; }" );
+
+        BuildFingerprint before = new BuildFingerprint();
+        before.addFile( file );
+
+        FileUtils.fileWrite( file, "int main() { return 1; } // changed" );
+        BuildFingerprint after = new BuildFingerprint();
+        after.addFile( file );
+
+        assertFalse( before.getDigest().equals( after.getDigest() ) );
+
+        file.delete();
+        BuildFingerprint missing = new BuildFingerprint();
+        missing.addFile( file );
+        assertFalse( after.getDigest().equals( missing.getDigest() ) );
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+import uk.org.raje.maven.plugin.msbuild.streamconsumers.StdoutStreamToLog;
+
+/**
+ * Test that cancellation is reported apart from the exit code of the process.
+ */
+public class CommandLineRunnerTest
+{
+    @Test
+    public void failureIsNotCancellation() throws Exception
+    {
+        ExitRunner runner = new ExitRunner( FAILED_EXIT_CODE );
+        runner.setProcessGroup( new ProcessGroup() );
+
+        assertEquals( FAILED_EXIT_CODE, runner.runCommandLine() );
+        assertFalse( runner.isCancelled() );
+    }
+
+    @Test
+    public void processInCancelledGroupIsCancelled() throws Exception
+    {
+        ProcessGroup group = new ProcessGroup();
+        group.cancel();
+        ExitRunner runner = new ExitRunner( 0 );
+        runner.setProcessGroup( group );
+
+        runner.runCommandLine();
+        assertTrue( runner.isCancelled() );
+    }
+
+    /**
+     * Runs a shell that exits with a given code.
+     */
+    private static final class ExitRunner extends CommandLineRunner
+    {
+        ExitRunner( int exitCode )
+        {
+            super( "exit", new StdoutStreamToLog( new SystemStreamLog() ), 
+                    new StdoutStreamToLog( new SystemStreamLog() ) );
+            this.exitCode = exitCode;
+        }
+
+        @Override
+        protected List<String> getCommandLineArguments()
+        {
+            if ( System.getProperty( "os.name" ).startsWith( "Windows" ) )
+            {
+                return Arrays.asList( "cmd", "/c", "exit " + exitCode );
+            }
+            return Arrays.asList( "sh", "-c", "exit " + exitCode );
+        }
+
+        private final int exitCode;
+    }
+
+    private static final int FAILED_EXIT_CODE = 3;
+}
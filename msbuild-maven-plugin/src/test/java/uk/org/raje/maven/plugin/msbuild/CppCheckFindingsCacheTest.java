@@ -0,0 +1,128 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+/**
+ * Test keeping CppCheck findings per source file and reusing them while the file is unchanged.
+ */
+public class CppCheckFindingsCacheTest
+{
+    @Before
+    public void createProject() throws Exception
+    {
+        directory = new File( System.getProperty( "java.io.tmpdir" ), "msbuild-cppcheck-findings-cache-test" );
+        FileUtils.forceMkdir( directory );
+        first = new File( directory, "first.cpp" );
+        FileUtils.fileWrite( first, "UTF-8", "int first;" );
+        second = new File( directory, "second.cpp" );
+        FileUtils.fileWrite( second, "UTF-8", "int second;" );
+        sources = Arrays.asList( first, second );
+        report = new File( directory, "report.xml" );
+        FileUtils.fileWrite( report, "UTF-8", "<?xml version=\"1.0\"?>\n<results>\n"
+                + "<error file=\"first.cpp\" line=\"1\" id=\"nullPointer\" severity=\"error\" msg=\"a\"/>\n"
+                + "<error file=\".\\SECOND.cpp\" line=\"1\" id=\"memleak\" severity=\"error\" msg=\"b\"/>\n"
+                + "<error file=\"first.h\" line=\"1\" id=\"uninitMemberVar\" severity=\"style\" msg=\"h\"/>\n"
+                + "</results>\n" );
+    }
+
+    @After
+    public void deleteProject() throws Exception
+    {
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void storedFilesAreNotAnalysedAgain() throws Exception
+    {
+        CppCheckFindingsCache cache = createCache( "config" );
+        assertEquals( sources, cache.getUncachedFiles( sources ) );
+
+        cache.store( report, sources );
+
+        assertTrue( createCache( "config" ).getUncachedFiles( sources ).isEmpty() );
+        assertEquals( sources, createCache( "other config" ).getUncachedFiles( sources ) );
+    }
+
+    @Test
+    public void entriesHoldTheFindingsOfTheirFile() throws Exception
+    {
+        createCache( "config" ).store( report, sources );
+
+        List<File> entries = createCache( "config" ).getEntries( Arrays.asList( second ) );
+
+        assertEquals( 1, entries.size() );
+        NodeList errors = readErrors( entries.get( 0 ) );
+        assertEquals( 2, errors.getLength() );
+        assertEquals( "memleak", errors.item( 0 ).getAttributes().getNamedItem( "id" ).getNodeValue() );
+        assertEquals( "first.h", errors.item( 1 ).getAttributes().getNamedItem( "file" ).getNodeValue() );
+    }
+
+    @Test
+    public void changedFileIsAnalysedAgain() throws Exception
+    {
+        createCache( "config" ).store( report, sources );
+        FileUtils.fileWrite( second, "UTF-8", "int changed;" );
+
+        assertEquals( Arrays.asList( second ), createCache( "config" ).getUncachedFiles( sources ) );
+    }
+
+    @Test
+    public void pruneDeletesEntriesOfOldContents() throws Exception
+    {
+        createCache( "config" ).store( report, sources );
+        FileUtils.fileWrite( second, "UTF-8", "int changed;" );
+
+        CppCheckFindingsCache cache = createCache( "config" );
+        cache.store( report, Arrays.asList( second ) );
+        cache.prune( sources );
+
+        assertEquals( 2, new File( directory, "cache" ).list().length );
+    }
+
+    private CppCheckFindingsCache createCache( String configuration )
+    {
+        return new CppCheckFindingsCache( new File( directory, "cache" ), directory, configuration );
+    }
+
+    private static NodeList readErrors( File entry ) throws Exception
+    {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse( entry );
+        return document.getElementsByTagName( "error" );
+    }
+
+    private File directory;
+    private File first;
+    private File second;
+    private List<File> sources;
+    private File report;
+}
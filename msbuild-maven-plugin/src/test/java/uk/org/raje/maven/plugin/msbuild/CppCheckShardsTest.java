@@ -0,0 +1,163 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+/**
+ * Test splitting project sources across CppCheck processes and merging their reports.
+ */
+public class CppCheckShardsTest
+{
+    @Before
+    public void createDirectory() throws Exception
+    {
+        directory = new File( System.getProperty( "java.io.tmpdir" ), "msbuild-cppcheck-shards-test" );
+        FileUtils.forceMkdir( directory );
+    }
+
+    @After
+    public void deleteDirectory() throws Exception
+    {
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void splitBalancesSizes() throws Exception
+    {
+        // Sizes 9, 7, 6, 5, 4, 3 split into 2 shards of 17 each
+        List<File> files = new ArrayList<File>();
+        for ( int size : new int[] { 3, 9, 5, 6, 7, 4 } )
+        {
+            files.add( writeFile( "size" + size + ".cpp", size ) );
+        }
+
+        List<List<File>> shards = CppCheckShards.split( files, 2 );
+
+        assertEquals( 2, shards.size() );
+        assertEquals( Arrays.asList( files.get( 0 ), files.get( 1 ), files.get( 2 ) ), shards.get( 0 ) );
+        assertEquals( Arrays.asList( files.get( 3 ), files.get( 4 ), files.get( 5 ) ), shards.get( 1 ) );
+        assertEquals( totalSize( shards.get( 0 ) ), totalSize( shards.get( 1 ) ) );
+    }
+
+    @Test
+    public void splitNeverMakesEmptyShards() throws Exception
+    {
+        List<File> files = Arrays.asList( writeFile( "a.cpp", 1 ), writeFile( "b.cpp", 1 ) );
+
+        assertEquals( 2, CppCheckShards.split( files, 4 ).size() );
+        assertTrue( CppCheckShards.split( new ArrayList<File>(), 4 ).isEmpty() );
+    }
+
+    @Test
+    public void mergeReportsKeepsEveryError() throws Exception
+    {
+        File first = new File( directory, "first.xml" );
+        FileUtils.fileWrite( first, "UTF-8", "<?xml version=\"1.0\"?>\n<results>\n"
+                + "<error file=\"a.cpp\" line=\"1\" id=\"nullPointer\" severity=\"error\" msg=\"A &amp; B\"/>\n"
+                + "</results>\n" );
+        File empty = new File( directory, "empty.xml" );
+        FileUtils.fileWrite( empty, "UTF-8", "" );
+        File second = new File( directory, "second.xml" );
+        FileUtils.fileWrite( second, "UTF-8", "<?xml version=\"1.0\"?>\n<results>\n"
+                + "<error file=\"b.cpp\" line=\"2\" id=\"unusedVariable\" severity=\"style\" msg=\"b\"/>\n"
+                + "<error file=\"c.cpp\" line=\"3\" id=\"memleak\" severity=\"error\" msg=\"c\"/>\n"
+                + "</results>\n" );
+        File report = new File( directory, "report.xml" );
+
+        CppCheckShards.mergeReports( Arrays.asList( first, empty, second ), report );
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse( report );
+        assertEquals( "results", document.getDocumentElement().getNodeName() );
+        NodeList errors = document.getElementsByTagName( "error" );
+        assertEquals( 3, errors.getLength() );
+        assertEquals( "A & B", errors.item( 0 ).getAttributes().getNamedItem( "msg" ).getNodeValue() );
+        assertEquals( "c.cpp", errors.item( 2 ).getAttributes().getNamedItem( "file" ).getNodeValue() );
+    }
+
+    @Test
+    public void mergeReportsWritesRepeatedErrorsOnce() throws Exception
+    {
+        String header = "<error file=\"a.h\" line=\"1\" id=\"uninitMemberVar\" severity=\"style\" msg=\"h\"/>\n";
+        File first = new File( directory, "first.xml" );
+        FileUtils.fileWrite( first, "UTF-8", "<?xml version=\"1.0\"?>\n<results>\n" + header 
+                + "<error file=\"a.cpp\" line=\"1\" id=\"nullPointer\" severity=\"error\" msg=\"a\"/>\n"
+                + "</results>\n" );
+        File second = new File( directory, "second.xml" );
+        FileUtils.fileWrite( second, "UTF-8", "<?xml version=\"1.0\"?>\n<results>\n" + header 
+                + "<error file=\"b.cpp\" line=\"1\" id=\"nullPointer\" severity=\"error\" msg=\"a\"/>\n"
+                + "</results>\n" );
+        File report = new File( directory, "report.xml" );
+
+        CppCheckShards.mergeReports( Arrays.asList( first, second ), report );
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse( report );
+        assertEquals( 3, document.getElementsByTagName( "error" ).getLength() );
+    }
+
+    @Test
+    public void mergeNoReportsWritesNothing() throws Exception
+    {
+        File empty = new File( directory, "empty.xml" );
+        FileUtils.fileWrite( empty, "UTF-8", "" );
+        File report = new File( directory, "report.xml" );
+
+        CppCheckShards.mergeReports( Arrays.asList( empty ), report );
+
+        assertTrue( report.exists() );
+        assertEquals( 0, report.length() );
+    }
+
+    private File writeFile( String name, int size ) throws Exception
+    {
+        File file = new File( directory, name );
+        StringBuilder content = new StringBuilder();
+        for ( int i = 0; i < size; i++ )
+        {
+            content.append( 'x' );
+        }
+        FileUtils.fileWrite( file, "UTF-8", content.toString() );
+        return file;
+    }
+
+    private static long totalSize( List<File> files )
+    {
+        long total = 0;
+        for ( File file : files )
+        {
+            total += file.length();
+        }
+        return total;
+    }
+
+    private File directory;
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.org.raje.maven.plugin.msbuild;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Test the session-wide CPU token pool.
+ */
+public class CpuTokenPoolTest
+{
+    @Test
+    public void grantsAtMostAvailable() throws Exception
+    {
+        CpuTokenPool pool = new CpuTokenPool( 4 );
+        assertEquals( 3, pool.acquire( 3 ) );
+        assertEquals( 1, pool.acquire( 3 ) );
+        pool.release( 3 );
+        assertEquals( 2, pool.acquire( 2 ) );
+        assertEquals( 3, pool.getAcquisitionCount() );
+    }
+
+    @Test
+    public void alwaysGrantsAtLeastOne() throws Exception
+    {
+        CpuTokenPool pool = new CpuTokenPool( 2 );
+        assertEquals( 1, pool.acquire( 0 ) );
+    }
+
+    @Test
+    public void disabledPoolGrantsRequest() throws Exception
+    {
+        CpuTokenPool pool = new CpuTokenPool( -1 );
+        assertFalse( pool.isEnabled() );
+        assertEquals( 16, pool.acquire( 16 ) );
+        assertEquals( 16, pool.acquire( 16 ) );
+    }
+
+    @Test
+    public void resizingKeepsTokensInUse() throws Exception
+    {
+        CpuTokenPool pool = new CpuTokenPool( 4 );
+        assertEquals( 4, pool.acquire( 4 ) );
+        pool.setCapacity( -1 );
+        assertEquals( 2, pool.acquire( 2 ) );
+        pool.setCapacity( 2 );
+        assertEquals( 6, pool.getTokensInUse() );
+
+        pool.release( 4 );
+        pool.release( 2 );
+        assertEquals( 0, pool.getTokensInUse() );
+        assertEquals( 2, pool.acquire( 4 ) );
+    }
+
+    @Test
+    public void onlyFirstConfigurationApplies()
+    {
+        CpuTokenPool pool = new CpuTokenPool( 0 );
+        assertTrue( pool.configure( 3 ) );
+        assertTrue( pool.configure( 3 ) );
+        assertFalse( pool.configure( 5 ) );
+        assertFalse( pool.configure( -1 ) );
+        assertEquals( 3, pool.getCapacity() );
+    }
+
+    @Test
+    public void zeroCapacityUsesAvailableProcessors()
+    {
+        CpuTokenPool pool = new CpuTokenPool( 0 );
+        assertEquals( Runtime.getRuntime().availableProcessors(), pool.getCapacity() );
+    }
+
+    @Test
+    public void waitsForRelease() throws Exception
+    {
+        final CpuTokenPool pool = new CpuTokenPool( 1 );
+        pool.acquire( 1 );
+
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final int[] granted = new int[1];
+        Thread waiter = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                started.countDown();
+                try
+                {
+                    granted[0] = pool.acquire( 1 );
+                }
+                catch ( InterruptedException ie )
+                {
+                    granted[0] = -1;
+                }
+            }
+        };
+        waiter.start();
+        started.await();
+        Thread.sleep( WAIT_MS );
+        assertTrue( waiter.isAlive() );
+
+        pool.release( 1 );
+        waiter.join();
+        assertEquals( 1, granted[0] );
+        assertTrue( pool.getMaxWaitTime() > 0 );
+        assertTrue( pool.getTotalWaitTime() >= pool.getMaxWaitTime() );
+    }
+
+    private static final long WAIT_MS = 50;
+}
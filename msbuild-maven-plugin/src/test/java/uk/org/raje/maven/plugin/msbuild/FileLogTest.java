@@ -0,0 +1,75 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.org.raje.maven.plugin.msbuild;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Test;
+
+/**
+ * Test that tool output goes to a file with only warnings, errors and a summary passed on.
+ */
+public class FileLogTest
+{
+    @Test
+    public void onlyWarningsAndErrorsReachTheTarget() throws Exception
+    {
+        File logFile = new File( System.getProperty( "java.io.tmpdir" ), "msbuild-file-log-test/tool.log" );
+        final List<String> passedOn = new ArrayList<String>();
+        SystemStreamLog target = new SystemStreamLog()
+        {
+            @Override
+            public void info( CharSequence content )
+            {
+                passedOn.add( "info:" + content );
+            }
+
+            @Override
+            public void warn( CharSequence content )
+            {
+                passedOn.add( "warn:" + content );
+            }
+
+            @Override
+            public void error( CharSequence content )
+            {
+                passedOn.add( "error:" + content );
+            }
+        };
+
+        FileLog log = new FileLog( "tool", logFile, target );
+        log.info( "Build started" );
+        log.warn( "foo.cpp(1): warning C4100: unreferenced" );
+        log.info( "Compiling" );
+        log.error( "foo.cpp(2): error C2143: syntax error" );
+        log.close();
+
+        assertEquals( Arrays.asList( "warn:foo.cpp(1): warning C4100: unreferenced",
+                "error:foo.cpp(2): error C2143: syntax error",
+                "info:tool: 1 error(s), 1 warning(s), full output in " + logFile ), passedOn );
+        assertEquals( Arrays.asList( "Build started", "foo.cpp(1): warning C4100: unreferenced", "Compiling",
+                "foo.cpp(2): error C2143: syntax error" ),
+                Arrays.asList( FileUtils.fileRead( logFile, "UTF-8" ).split( "\r?\n" ) ) );
+        FileUtils.forceDelete( logFile.getParentFile() );
+    }
+}
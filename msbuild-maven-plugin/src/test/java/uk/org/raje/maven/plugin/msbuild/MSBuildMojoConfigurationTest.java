@@ -183,7 +183,7 @@ public class MSBuildMojoConfigurationTest extends AbstractMSBuildMojoTestCase
         msbuildMojo.execute();
         
         assertTrue( "MSBuild command line error /maxcpucount not found",
-                outputStream.toString().contains( "/maxcpucount " ) );
+                outputStream.toString().contains( "/maxcpucount:" ) );
     }
 
     @Test
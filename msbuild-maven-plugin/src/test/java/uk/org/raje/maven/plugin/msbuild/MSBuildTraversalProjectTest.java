@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.org.raje.maven.plugin.msbuild;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.org.raje.maven.plugin.msbuild.configuration.BuildConfiguration;
+import uk.org.raje.maven.plugin.msbuild.configuration.BuildPlatform;
+
+/**
+ * Test generation of the traversal project and mapping of results back to platform/configuration pairs.
+ */
+public class MSBuildTraversalProjectTest
+{
+    @Before
+    public void setupTraversal() throws Exception
+    {
+        File outputDir = new File( "target/unit-tests/traversal" );
+        FileUtils.forceMkdir( outputDir );
+        traversal = new MSBuildTraversalProject( new File( outputDir, "msbuild-traversal.proj" ),
+                new File( "hello-world.sln" ), Arrays.asList( "Target1", "Target2" ) );
+
+        BuildPlatform win32 = new BuildPlatform( "Win32" );
+        BuildPlatform x64 = new BuildPlatform( "x64" );
+        cells = Arrays.asList( new MSBuildExecutor.CellResult( win32, new BuildConfiguration( "Release" ) ),
+                new MSBuildExecutor.CellResult( x64, new BuildConfiguration( "Debug" ) ) );
+    }
+
+    @Test
+    public void writesOneItemPerPair() throws Exception
+    {
+        traversal.write( cells );
+
+        String content = FileUtils.fileRead( traversal.getTraversalFile() );
+        assertTrue( content.contains( "CellConfiguration=Release;CellPlatform=Win32;" ) );
+        assertTrue( content.contains( "CellConfiguration=Debug;CellPlatform=x64;" ) );
+        assertTrue( content.contains( "Targets=\"Target1;Target2\"" ) );
+        assertTrue( content.contains( "BuildInParallel=\"true\"" ) );
+    }
+
+    @Test
+    public void mapsResultsToPairs() throws Exception
+    {
+        traversal.write( cells );
+        File resultDir = new File( traversal.getTraversalFile().getParentFile(), "msbuild-traversal-results" );
+        FileUtils.fileWrite( new File( resultDir, "Win32-Release.result" ), "True" );
+        FileUtils.fileWrite( new File( resultDir, "x64-Debug.result" ), "False" );
+
+        assertEquals( 0, traversal.readExitCode( cells.get( 0 ), 1 ) );
+        assertEquals( 1, traversal.readExitCode( cells.get( 1 ), 1 ) );
+    }
+
+    @Test
+    public void missingResultIsFailure() throws Exception
+    {
+        traversal.write( cells );
+
+        assertEquals( 3, traversal.readExitCode( cells.get( 0 ), 3 ) );
+        assertEquals( 1, traversal.readExitCode( cells.get( 1 ), 0 ) );
+    }
+
+    private MSBuildTraversalProject traversal;
+    private List<MSBuildExecutor.CellResult> cells;
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.org.raje.maven.plugin.msbuild;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Test cancellation of a group of processes.
+ */
+public class ProcessGroupTest
+{
+    @Test
+    public void cancelKillsRunningProcesses() throws Exception
+    {
+        ProcessGroup group = new ProcessGroup();
+        Process process = startLongRunningProcess();
+        assertTrue( group.add( process, Arrays.asList( "sleep" ) ) );
+
+        long start = System.currentTimeMillis();
+        assertTrue( group.cancel() );
+        process.waitFor();
+        assertTrue( System.currentTimeMillis() - start < LONG_RUNNING_MS );
+        assertTrue( group.isCancelled() );
+    }
+
+    @Test
+    public void processAddedAfterCancelIsKilled() throws Exception
+    {
+        ProcessGroup group = new ProcessGroup();
+        group.cancel();
+        assertFalse( group.cancel() );
+
+        Process process = startLongRunningProcess();
+        long start = System.currentTimeMillis();
+        assertFalse( group.add( process, Arrays.asList( "sleep" ) ) );
+        process.waitFor();
+        assertTrue( System.currentTimeMillis() - start < LONG_RUNNING_MS );
+    }
+
+    private static Process startLongRunningProcess() throws Exception
+    {
+        String seconds = String.valueOf( LONG_RUNNING_MS / 1000 );
+        if ( System.getProperty( "os.name" ).startsWith( "Windows" ) )
+        {
+            return new ProcessBuilder( "ping", "-n", seconds, "127.0.0.1" ).start();
+        }
+        return new ProcessBuilder( "sleep", seconds ).start();
+    }
+
+    private static final long LONG_RUNNING_MS = 30000;
+}
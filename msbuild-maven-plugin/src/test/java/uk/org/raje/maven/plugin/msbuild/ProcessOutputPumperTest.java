@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.org.raje.maven.plugin.msbuild;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codehaus.plexus.util.StringUtils;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.junit.Test;
+
+/**
+ * Test splitting and decoding of process output.
+ */
+public class ProcessOutputPumperTest
+{
+    @Test
+    public void splitsOnAnyLineEnding() throws Exception
+    {
+        assertEquals( Arrays.asList( "one", "two", "", "three", "four" ),
+                pump( "one\r\ntwo\n\nthree\rfour", UTF_8 ) );
+    }
+
+    @Test
+    public void trailingLineEndingAddsNoLine() throws Exception
+    {
+        assertEquals( Arrays.asList( "one", "two" ), pump( "one\ntwo\r\n", UTF_8 ) );
+        assertEquals( Arrays.asList( "one" ), pump( "one\r", UTF_8 ) );
+    }
+
+    @Test
+    public void linesLongerThanTheBuffer() throws Exception
+    {
+        String longLine = StringUtils.repeat( "x", 3 * READ_SIZE );
+        assertEquals( Arrays.asList( "start", longLine, "end" ), pump( "start\n" + longLine + "\nend\n", UTF_8 ) );
+    }
+
+    @Test
+    public void carriageReturnAndLineFeedInSeparateReads() throws Exception
+    {
+        // Place the "\r" at the last position of the first read and the "\n" at the first position of the next
+        String first = StringUtils.repeat( "a", READ_SIZE - 1 );
+        assertEquals( Arrays.asList( first, "b" ), pump( first + "\r\nb", UTF_8 ) );
+    }
+
+    @Test
+    public void decodesWithTheGivenCharset() throws Exception
+    {
+        Charset oem = Charset.forName( "IBM850" );
+        String text = "G\u00e9n\u00e9ration termin\u00e9e\n\u00c9chec : 0";
+        assertEquals( Arrays.asList( "G\u00e9n\u00e9ration termin\u00e9e", "\u00c9chec : 0" ), pump( text, oem ) );
+    }
+
+    @Test
+    public void multiByteCharacterSplitBetweenReads() throws Exception
+    {
+        String first = StringUtils.repeat( "a", READ_SIZE - 1 );
+        assertEquals( Arrays.asList( first + "\u00e9" ), pump( first + "\u00e9", UTF_8 ) );
+    }
+
+    private static List<String> pump( String text, Charset charset ) throws Exception
+    {
+        final List<String> lines = new ArrayList<String>();
+        StreamConsumer consumer = new StreamConsumer()
+        {
+            @Override
+            public void consumeLine( String line )
+            {
+                lines.add( line );
+            }
+        };
+        ByteArrayInputStream in = new ByteArrayInputStream( text.getBytes( charset.name() ) );
+        ProcessOutputPumper pumper = new ProcessOutputPumper( in, consumer, charset );
+        pumper.start();
+        pumper.waitUntilDone();
+        return lines;
+    }
+
+    /**
+     * The number of bytes the pumper reads at a time.
+     */
+    private static final int READ_SIZE = 8 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.org.raje.maven.plugin.msbuild.configuration.FailurePolicy;
+import uk.org.raje.maven.plugin.msbuild.parser.ProjectDependencyGraph;
+import uk.org.raje.maven.plugin.msbuild.parser.VCProject;
+import uk.org.raje.maven.plugin.msbuild.parser.VCProjectHolder;
+
+/**
+ * Test building the projects of a solution one at a time in dependency order.
+ */
+public class ProjectSchedulerTest
+{
+    @Before
+    public void createSolution() throws Exception
+    {
+        directory = new File( System.getProperty( "java.io.tmpdir" ), "msbuild-project-scheduler-test" );
+        FileUtils.forceMkdir( directory );
+
+        // app -> lib (solution dependency) -> base (project reference), tool depends on nothing
+        File solutionFile = new File( directory, "scheduler.sln" );
+        FileUtils.fileWrite( solutionFile, "UTF-8",
+                "Microsoft Visual Studio Solution File, Format Version 12.00\r\n"
+                + project( "tool", "{T}" )
+                + project( "app", "{A}" )
+                + "\tProjectSection(ProjectDependencies) = postProject\r\n"
+                + "\t\t{L} = {L}\r\n"
+                + "\tEndProjectSection\r\n"
+                + "EndProject\r\n"
+                + project( "lib", "{L}" )
+                + project( "base", "{B}" )
+                + "Global\r\n"
+                + "\tGlobalSection(SolutionConfigurationPlatforms) = preSolution\r\n"
+                + "\t\tRelease|Win32 = Release|Win32\r\n"
+                + "\tEndGlobalSection\r\n"
+                + "\tGlobalSection(ProjectConfigurationPlatforms) = postSolution\r\n"
+                + "\t\t{T}.Release|Win32.ActiveCfg = Release|Win32\r\n"
+                + "\t\t{A}.Release|Win32.ActiveCfg = Release|Win32\r\n"
+                + "\t\t{L}.Release|Win32.ActiveCfg = Release|Win32\r\n"
+                + "\t\t{B}.Release|Win32.ActiveCfg = Release|Win32\r\n"
+                + "\tEndGlobalSection\r\n"
+                + "EndGlobal\r\n" );
+        writeProject( "tool", "" );
+        writeProject( "app", "" );
+        writeProject( "lib", "../base/base.vcxproj" );
+        writeProject( "base", "" );
+
+        graph = VCProjectHolder.getVCProjectHolder( solutionFile, true ).getDependencyGraph( "Win32", "Release" );
+    }
+
+    @After
+    public void deleteDirectory() throws Exception
+    {
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void longestChainStartsFirst() throws Exception
+    {
+        ProjectScheduler scheduler = new ProjectScheduler( graph, null, 1, FailurePolicy.failFast,
+                new ProcessGroup() );
+        RecordingBuild build = new RecordingBuild();
+
+        assertEquals( 0, scheduler.execute( build, LOG ) );
+        assertEquals( Arrays.asList( "base", "lib", "tool", "app" ), build.built );
+        for ( ProjectScheduler.ProjectResult result : scheduler.getResults() )
+        {
+            assertEquals( ProjectScheduler.Status.SUCCESS, result.getStatus() );
+        }
+    }
+
+    @Test
+    public void previousDurationsChangeThePriority() throws Exception
+    {
+        ProjectScheduler scheduler = new ProjectScheduler( graph, null, 1, FailurePolicy.failFast,
+                new ProcessGroup() );
+        Map<String, Long> previousDurations = new HashMap<String, Long>();
+        previousDurations.put( "tool", SLOW_PROJECT );
+        previousDurations.put( "base", FAST_PROJECT );
+        previousDurations.put( "lib", FAST_PROJECT );
+        scheduler.setPreviousDurations( previousDurations );
+        RecordingBuild build = new RecordingBuild();
+
+        scheduler.execute( build, LOG );
+        assertEquals( Arrays.asList( "tool", "base", "lib", "app" ), build.built );
+    }
+
+    @Test
+    public void dependenciesFinishBeforeDependentsStart() throws Exception
+    {
+        ProjectScheduler scheduler = new ProjectScheduler( graph, null, WORKERS, FailurePolicy.failFast,
+                new ProcessGroup() );
+        RecordingBuild build = new RecordingBuild();
+
+        assertEquals( 0, scheduler.execute( build, LOG ) );
+        assertEquals( 4, build.built.size() );
+        assertTrue( build.built.indexOf( "base" ) < build.built.indexOf( "lib" ) );
+        assertTrue( build.built.indexOf( "lib" ) < build.built.indexOf( "app" ) );
+        assertFalse( build.overlapped );
+    }
+
+    @Test
+    public void targetsSelectTheirDependencies() throws Exception
+    {
+        ProjectScheduler scheduler = new ProjectScheduler( graph, Arrays.asList( "lib" ), WORKERS,
+                FailurePolicy.failFast, new ProcessGroup() );
+
+        List<String> names = new ArrayList<String>();
+        for ( VCProject vcProject : scheduler.getProjects() )
+        {
+            names.add( vcProject.getName() );
+        }
+        assertEquals( Arrays.asList( "base", "lib" ), names );
+    }
+
+    @Test
+    public void keepGoingSkipsDependentsOfFailures() throws Exception
+    {
+        ProjectScheduler scheduler = new ProjectScheduler( graph, null, 1, FailurePolicy.keepGoing,
+                new ProcessGroup() );
+        RecordingBuild build = new RecordingBuild();
+        build.failing = "lib";
+
+        assertEquals( FAILED_EXIT_CODE, scheduler.execute( build, LOG ) );
+        assertEquals( Arrays.asList( "base", "lib", "tool" ), build.built );
+        assertEquals( "[tool SUCCESS, base SUCCESS, lib FAILED, app SKIPPED]", getStatuses( scheduler ) );
+    }
+
+    @Test
+    public void failFastCancelsRemainingProjects() throws Exception
+    {
+        ProcessGroup processGroup = new ProcessGroup();
+        ProjectScheduler scheduler = new ProjectScheduler( graph, null, 1, FailurePolicy.failFast, processGroup );
+        RecordingBuild build = new RecordingBuild();
+        build.failing = "base";
+
+        assertEquals( FAILED_EXIT_CODE, scheduler.execute( build, LOG ) );
+        assertEquals( Arrays.asList( "base" ), build.built );
+        assertEquals( "[tool CANCELLED, base FAILED, lib CANCELLED, app CANCELLED]", getStatuses( scheduler ) );
+        assertTrue( processGroup.isCancelled() );
+    }
+
+    @Test
+    public void minusOneIsAFailure() throws Exception
+    {
+        ProjectScheduler scheduler = new ProjectScheduler( graph, null, 1, FailurePolicy.keepGoing,
+                new ProcessGroup() );
+        RecordingBuild build = new RecordingBuild();
+        build.failing = "lib";
+        build.failingExitCode = -1;
+
+        assertEquals( -1, scheduler.execute( build, LOG ) );
+        assertEquals( "[tool SUCCESS, base SUCCESS, lib FAILED, app SKIPPED]", getStatuses( scheduler ) );
+        assertFalse( scheduler.isCancelled() );
+    }
+
+    private static String getStatuses( ProjectScheduler scheduler )
+    {
+        List<String> statuses = new ArrayList<String>();
+        for ( ProjectScheduler.ProjectResult result : scheduler.getResults() )
+        {
+            statuses.add( result + " " + result.getStatus() );
+        }
+        return statuses.toString();
+    }
+
+    private static String project( String name, String guid )
+    {
+        return "Project(\"{8BC9CEB8-8B4A-11D0-8D11-00A0C91BC942}\") = \"" + name + "\", \"" + name + "/" + name
+                + ".vcxproj\", \"" + guid + "\"\r\n"
+                + ( "app".equals( name ) ? "" : "EndProject\r\n" );
+    }
+
+    private void writeProject( String name, String reference ) throws Exception
+    {
+        String itemGroup = reference.isEmpty() ? "" : "  <ItemGroup>\n"
+                + "    <ProjectReference Include=\"" + reference + "\" />\n"
+                + "  </ItemGroup>\n";
+        File projectDirectory = new File( directory, name );
+        FileUtils.forceMkdir( projectDirectory );
+        FileUtils.fileWrite( new File( projectDirectory, name + ".vcxproj" ), "UTF-8",
+                "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<Project>\n" + itemGroup + "</Project>\n" );
+    }
+
+    /**
+     * Records the order projects are built in and whether a project started before one it depends on finished.
+     */
+    private final class RecordingBuild implements ProjectScheduler.ProjectBuild
+    {
+        @Override
+        public int build( VCProject vcProject, Log projectLog ) throws InterruptedException
+        {
+            synchronized ( this )
+            {
+                for ( VCProject dependency : graph.getDependencies( vcProject ) )
+                {
+                    overlapped |= !built.contains( dependency.getName() ) || running.contains( dependency );
+                }
+                running.add( vcProject );
+            }
+            Thread.sleep( BUILD_TIME );
+            synchronized ( this )
+            {
+                running.remove( vcProject );
+                built.add( vcProject.getName() );
+            }
+            return vcProject.getName().equals( failing ) ? failingExitCode : 0;
+        }
+
+        private final List<String> built = Collections.synchronizedList( new ArrayList<String>() );
+        private final List<VCProject> running = new ArrayList<VCProject>();
+        private boolean overlapped;
+        private String failing;
+        private int failingExitCode = FAILED_EXIT_CODE;
+    }
+
+    private static final Log LOG = new SystemStreamLog();
+    private static final long SLOW_PROJECT = 60000;
+    private static final long FAST_PROJECT = 1000;
+    private static final long BUILD_TIME = 20;
+    private static final int WORKERS = 3;
+    private static final int FAILED_EXIT_CODE = 2;
+
+    private File directory;
+    private ProjectDependencyGraph graph;
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test finding source files through the in-memory directory index.
+ */
+public class SourceFileIndexTest
+{
+    @Before
+    public void createTree() throws Exception
+    {
+        directory = new File( System.getProperty( "java.io.tmpdir" ), "msbuild-source-index-test" );
+        FileUtils.deleteDirectory( directory );
+        for ( String path : new String[] { "main.cpp", "main.h", "src/a.c", "src/b.CPP", "src/c.txt",
+                "src/sub/d.cpp", "src/sub/d.hpp", "test/t.cpp", "generated/g.cpp", "Debug/obj.cpp" } )
+        {
+            File file = new File( directory, path );
+            FileUtils.forceMkdir( file.getParentFile() );
+            FileUtils.fileWrite( file, "UTF-8", path );
+        }
+        // Make every directory old enough for its modification time to be relied on
+        setOld( directory );
+    }
+
+    @After
+    public void deleteTree() throws Exception
+    {
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void matchesLikeADirectoryScanner() throws Exception
+    {
+        List<String> includes = Arrays.asList( "**\\*.c", "**\\*.cpp", "**/*.hpp" );
+        List<String> excludes = Arrays.asList( "generated\\", "debug/**", "**/t.cpp" );
+
+        SourceFileIndex index = new SourceFileIndex();
+        assertEquals( scan( includes, excludes ), relativePaths( index.getFiles( directory, includes, excludes ) ) );
+    }
+
+    @Test
+    public void warmQueriesDoNotListDirectories() throws Exception
+    {
+        List<String> includes = Arrays.asList( "**\\*.cpp" );
+        List<String> excludes = Collections.emptyList();
+        SourceFileIndex index = new SourceFileIndex();
+
+        List<File> cold = index.getFiles( directory, includes, excludes );
+        long listings = index.getListingCount();
+        assertEquals( DIRECTORIES, listings );
+
+        assertEquals( cold, index.getFiles( directory, includes, excludes ) );
+        assertEquals( listings, index.getListingCount() );
+    }
+
+    @Test
+    public void changedDirectoriesAreListedAgain() throws Exception
+    {
+        List<String> includes = Arrays.asList( "**\\*.cpp" );
+        List<String> excludes = Collections.emptyList();
+        SourceFileIndex index = new SourceFileIndex();
+        index.getFiles( directory, includes, excludes );
+        long listings = index.getListingCount();
+
+        File subDirectory = new File( directory, "src/sub" );
+        FileUtils.fileWrite( new File( subDirectory, "e.cpp" ), "UTF-8", "e" );
+        subDirectory.setLastModified( subDirectory.lastModified() + OLD );
+
+        List<String> paths = relativePaths( index.getFiles( directory, includes, excludes ) );
+        assertTrue( paths.contains( "src" + File.separator + "sub" + File.separator + "e.cpp" ) );
+        assertEquals( listings + 1, index.getListingCount() );
+    }
+
+    @Test
+    public void missingDirectoriesAreEmpty() throws Exception
+    {
+        List<String> includes = Arrays.asList( "**\\*.cpp" );
+        List<String> excludes = Collections.emptyList();
+
+        assertTrue( new SourceFileIndex().getFiles( new File( directory, "missing" ), includes, excludes ).isEmpty() );
+    }
+
+    private List<String> scan( List<String> includes, List<String> excludes )
+    {
+        DirectoryScanner directoryScanner = new DirectoryScanner();
+        directoryScanner.setCaseSensitive( false );
+        directoryScanner.setIncludes( includes.toArray( new String[includes.size()] ) );
+        directoryScanner.setExcludes( excludes.toArray( new String[excludes.size()] ) );
+        directoryScanner.setBasedir( directory );
+        directoryScanner.scan();
+        List<String> paths = new ArrayList<String>( Arrays.asList( directoryScanner.getIncludedFiles() ) );
+        Collections.sort( paths );
+        return paths;
+    }
+
+    private List<String> relativePaths( List<File> files )
+    {
+        List<String> paths = new ArrayList<String>();
+        for ( File file : files )
+        {
+            paths.add( file.getPath().substring( directory.getPath().length() + 1 ) );
+        }
+        Collections.sort( paths );
+        return paths;
+    }
+
+    private static void setOld( File file )
+    {
+        File[] children = file.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                setOld( child );
+            }
+        }
+        file.setLastModified( System.currentTimeMillis() - OLD );
+    }
+
+    private static final long OLD = 60000;
+    private static final long DIRECTORIES = 6;
+
+    private File directory;
+}
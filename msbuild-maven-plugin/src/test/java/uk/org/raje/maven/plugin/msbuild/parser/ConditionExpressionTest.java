@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test evaluation of MSBuild Condition attributes.
+ */
+public class ConditionExpressionTest
+{
+    @Before
+    public void setVariables()
+    {
+        variables.put( "Configuration", "Release Static" );
+        variables.put( "Platform", "Win32" );
+        variables.put( "WarningLevel", "4" );
+        variables.put( "OutDir", "bin\\" );
+    }
+
+    @Test
+    public void configurationAndPlatformComparisons()
+    {
+        assertTrue( isMet( "'$(Configuration)|$(Platform)'=='Release Static|Win32'" ) );
+        assertFalse( isMet( "'$(Configuration)|$(Platform)'=='Release|Win32'" ) );
+        assertTrue( isMet( "'$(Configuration)'=='release static'" ) );
+        assertFalse( isMet( "'$(Platform)' != 'Win32'" ) );
+        assertTrue( isMet( " '$(Platform)' == 'Win32' " ) );
+    }
+
+    @Test
+    public void booleanOperators()
+    {
+        assertTrue( isMet( "'$(Platform)'=='x64' or '$(Platform)'=='Win32'" ) );
+        assertFalse( isMet( "'$(Platform)'=='Win32' and '$(Configuration)'=='Debug'" ) );
+        assertTrue( isMet( "'$(Platform)'=='Win32' AND !('$(Configuration)'=='Debug')" ) );
+        assertTrue( isMet( "('$(Platform)'=='x64' or '$(Platform)'=='Win32') and true" ) );
+        assertFalse( isMet( "!true" ) );
+    }
+
+    @Test
+    public void undefinedPropertiesAreEmpty()
+    {
+        assertTrue( isMet( "'$(Undefined)'==''" ) );
+        assertFalse( isMet( "$(Undefined)" ) );
+        assertTrue( usedVariables.containsKey( "Undefined" ) );
+    }
+
+    @Test
+    public void numericComparisons()
+    {
+        assertTrue( isMet( "$(WarningLevel) >= 3" ) );
+        assertTrue( isMet( "'$(WarningLevel)' == '4.0'" ) );
+        assertFalse( isMet( "$(WarningLevel) < 0x4" ) );
+    }
+
+    @Test
+    public void functions()
+    {
+        File directory = new File( System.getProperty( "java.io.tmpdir" ) );
+        assertTrue( ConditionExpression.compile( "Exists('.')" ).evaluate( variables, usedVariables, probedPaths, 
+                directory ) );
+        assertFalse( ConditionExpression.compile( "exists('$(Undefined)\\Microsoft.Cpp.$(Platform).user.props')" )
+                .evaluate( variables, usedVariables, probedPaths, directory ) );
+        assertEquals( Boolean.TRUE, probedPaths.get( new File( directory, "." ).getAbsoluteFile() ) );
+        assertEquals( 2, probedPaths.size() );
+        assertTrue( probedPaths.containsValue( Boolean.FALSE ) );
+        assertTrue( isMet( "HasTrailingSlash('$(OutDir)')" ) );
+    }
+
+    @Test
+    public void conditionsAreCompiledOnce()
+    {
+        String condition = "'$(Configuration)|$(Platform)'=='Debug|x64'";
+        assertSame( ConditionExpression.compile( condition ),
+                ConditionExpression.compile( new String( condition.toCharArray() ) ) );
+    }
+
+    @Test
+    public void invalidConditionsAreNotMet()
+    {
+        assertFalse( isMet( "'$(Platform)'=='Win32' and" ) );
+        assertFalse( isMet( "'unterminated" ) );
+        assertEquals( 0, usedVariables.size() );
+    }
+
+    private boolean isMet( String condition )
+    {
+        return ConditionExpression.compile( condition ).evaluate( variables, usedVariables, probedPaths, null );
+    }
+
+    private final Map<String, String> variables = new HashMap<String, String>();
+    private final Map<String, String> usedVariables = new TreeMap<String, String>();
+    private final Map<File, Boolean> probedPaths = new HashMap<File, Boolean>();
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.org.raje.maven.plugin.msbuild.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test that parsed projects are reused between holders only while their inputs are unchanged.
+ */
+public class ParseCacheTest
+{
+    @Before
+    public void createProject() throws Exception
+    {
+        directory = new File( System.getProperty( "java.io.tmpdir" ), "msbuild-parse-cache-test" );
+        FileUtils.forceMkdir( directory );
+        projectFile = new File( directory, "cached.vcxproj" );
+        writeProject( "DEFINE_A" );
+    }
+
+    @After
+    public void deleteProject() throws Exception
+    {
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void unchangedInputsAreReadFromTheCache() throws Exception
+    {
+        VCProject parsed = parse( Collections.singletonMap( "INC", "first" ) );
+        assertEquals( Arrays.asList( "DEFINE_A" ), parsed.getPreprocessorDefs() );
+        assertEquals( Arrays.asList( new File( directory, "cached.rc" ) ), parsed.getOtherItemFiles() );
+        assertTrue( new File( directory, "cache/cached-Win32-Release.properties" ).isFile() );
+
+        // Same size and modification time, only the cheap check is made so the cached value is returned
+        long modified = projectFile.lastModified();
+        writeProject( "DEFINE_B" );
+        projectFile.setLastModified( modified );
+
+        VCProject cached = parse( Collections.singletonMap( "INC", "first" ) );
+        assertEquals( Arrays.asList( "DEFINE_A" ), cached.getPreprocessorDefs() );
+        assertEquals( parsed.getIncludeDirectories(), cached.getIncludeDirectories() );
+        assertEquals( parsed.getOutputDirectory(), cached.getOutputDirectory() );
+        assertEquals( parsed.getBaseDirectory(), cached.getBaseDirectory() );
+        assertEquals( Arrays.asList( new File( directory, "cached.cpp" ) ), cached.getSourceFiles() );
+        assertEquals( parsed.getOtherItemFiles(), cached.getOtherItemFiles() );
+    }
+
+    @Test
+    public void changedContentIsParsedAgain() throws Exception
+    {
+        parse( Collections.singletonMap( "INC", "first" ) );
+        writeProject( "DEFINE_LONGER" );
+        projectFile.setLastModified( projectFile.lastModified() + 1000 );
+
+        assertEquals( Arrays.asList( "DEFINE_LONGER" ),
+                parse( Collections.singletonMap( "INC", "first" ) ).getPreprocessorDefs() );
+    }
+
+    @Test
+    public void touchedInputIsRestamped() throws Exception
+    {
+        parse( Collections.singletonMap( "INC", "first" ) );
+        long modified = projectFile.lastModified() + 1000;
+        projectFile.setLastModified( modified );
+
+        parse( Collections.singletonMap( "INC", "first" ) );
+        assertTrue( FileUtils.fileRead( new File( directory, "cache/cached-Win32-Release.properties" ) )
+                .contains( ".modified=" + projectFile.lastModified() ) );
+    }
+
+    @Test
+    public void createdImportIsParsedAgain() throws Exception
+    {
+        assertEquals( Arrays.asList( new File( "first/include" ) ),
+                parse( Collections.singletonMap( "INC", "first" ) ).getIncludeDirectories() );
+
+        FileUtils.fileWrite( new File( directory, "extra.props" ), "UTF-8", "<?xml version=\"1.0\"?>\n"
+                + "<Project>\n"
+                + "  <ItemDefinitionGroup>\n"
+                + "    <ClCompile>\n"
+                + "      <AdditionalIncludeDirectories>extra</AdditionalIncludeDirectories>\n"
+                + "    </ClCompile>\n"
+                + "  </ItemDefinitionGroup>\n"
+                + "</Project>\n" );
+
+        assertEquals( Arrays.asList( new File( "first/include" ), new File( "extra" ) ),
+                parse( Collections.singletonMap( "INC", "first" ) ).getIncludeDirectories() );
+    }
+
+    @Test
+    public void changedVariableIsParsedAgain() throws Exception
+    {
+        assertEquals( Arrays.asList( new File( "first/include" ) ),
+                parse( Collections.singletonMap( "INC", "first" ) ).getIncludeDirectories() );
+        assertEquals( Arrays.asList( new File( "second/include" ) ),
+                parse( Collections.singletonMap( "INC", "second" ) ).getIncludeDirectories() );
+    }
+
+    @Test
+    public void projectWithTheSameNameIsNotReadFromTheCache() throws Exception
+    {
+        parse( Collections.singletonMap( "INC", "first" ) );
+        File otherDirectory = new File( directory, "other" );
+        FileUtils.forceMkdir( otherDirectory );
+        projectFile = new File( otherDirectory, "cached.vcxproj" );
+        writeProject( "DEFINE_OTHER" );
+
+        assertEquals( Arrays.asList( "DEFINE_OTHER" ),
+                parse( Collections.singletonMap( "INC", "first" ) ).getPreprocessorDefs() );
+    }
+
+    private VCProject parse( Map<String, String> envVariables ) throws Exception
+    {
+        VCProjectHolder holder = new VCProjectHolder( projectFile, false, envVariables );
+        holder.setCacheDirectory( new File( directory, "cache" ) );
+        List<VCProject> vcProjects = holder.getParsedProjects( "Win32", "Release" );
+        assertEquals( 1, vcProjects.size() );
+        return vcProjects.get( 0 );
+    }
+
+    private void writeProject( String define ) throws Exception
+    {
+        FileUtils.fileWrite( projectFile, "UTF-8", "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                + "<Project DefaultTargets=\"Build\" ToolsVersion=\"4.0\">\n"
+                + "  <ItemGroup Label=\"ProjectConfigurations\">\n"
+                + "    <ProjectConfiguration Include=\"Release|Win32\" />\n"
+                + "  </ItemGroup>\n"
+                + "  <ItemDefinitionGroup Condition=\"'$(Configuration)|$(Platform)'=='Release|Win32'\">\n"
+                + "    <ClCompile>\n"
+                + "      <AdditionalIncludeDirectories>$(INC)/include</AdditionalIncludeDirectories>\n"
+                + "      <PreprocessorDefinitions>" + define + "</PreprocessorDefinitions>\n"
+                + "    </ClCompile>\n"
+                + "  </ItemDefinitionGroup>\n"
+                + "  <Import Project=\"extra.props\" />\n"
+                + "  <ItemGroup>\n"
+                + "    <ClCompile Include=\"cached.cpp\" />\n"
+                + "    <ResourceCompile Include=\"cached.rc\" />\n"
+                + "    <None Include=\"unused.txt\">\n"
+                + "      <ExcludedFromBuild>true</ExcludedFromBuild>\n"
+                + "    </None>\n"
+                + "  </ItemGroup>\n"
+                + "</Project>\n" );
+    }
+
+    private File directory;
+    private File projectFile;
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the dependency graph built from solution dependencies and project references.
+ */
+public class ProjectDependencyGraphTest
+{
+    @Before
+    public void createDirectory() throws Exception
+    {
+        directory = new File( System.getProperty( "java.io.tmpdir" ), "msbuild-dependency-graph-test" );
+        FileUtils.forceMkdir( directory );
+    }
+
+    @After
+    public void deleteDirectory() throws Exception
+    {
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void projectsAreSortedInBuildOrder() throws Exception
+    {
+        VCProject app = createProject( "app", "{A}" );
+        VCProject core = createProject( "core", "{C}" );
+        VCProject util = createProject( "util", "{U}" );
+        VCProject tests = createProject( "tests", "{T}" );
+        app.setProjectDependencies( Arrays.asList( "{c}", "{U}", "{OUTSIDE}" ) );
+        util.setProjectReferences( Arrays.asList( core.getFile() ) );
+        tests.setProjectDependencies( Arrays.asList( "{U}" ) );
+
+        ProjectDependencyGraph graph = new ProjectDependencyGraph( Arrays.asList( app, core, util, tests ) );
+
+        assertEquals( Arrays.asList( core, util, app, tests ), graph.getProjects() );
+        assertEquals( Arrays.asList( core, util ), graph.getDependencies( app ) );
+        assertEquals( Arrays.asList( app, tests ), graph.getDependents( util ) );
+        assertEquals( Arrays.asList( core, util, app ), graph.getCriticalPath() );
+        assertEquals( 3, graph.getCriticalPathLength() );
+    }
+
+    @Test
+    public void independentProjectsKeepSolutionOrder() throws Exception
+    {
+        List<VCProject> vcProjects = new ArrayList<VCProject>();
+        for ( int i = 0; i < PROJECT_COUNT; i++ )
+        {
+            vcProjects.add( createProject( "project" + i, "{" + i + "}" ) );
+        }
+
+        ProjectDependencyGraph graph = new ProjectDependencyGraph( vcProjects );
+
+        assertEquals( vcProjects, graph.getProjects() );
+        assertEquals( 1, graph.getCriticalPathLength() );
+        assertTrue( new ProjectDependencyGraph( Collections.<VCProject>emptyList() ).getCriticalPath().isEmpty() );
+    }
+
+    @Test
+    public void cyclesAreReported() throws Exception
+    {
+        VCProject first = createProject( "first", "{1}" );
+        VCProject second = createProject( "second", "{2}" );
+        VCProject third = createProject( "third", "{3}" );
+        first.setProjectDependencies( Arrays.asList( "{2}" ) );
+        second.setProjectReferences( Arrays.asList( third.getFile() ) );
+        third.setProjectDependencies( Arrays.asList( "{1}" ) );
+
+        try
+        {
+            new ProjectDependencyGraph( Arrays.asList( first, second, third ) );
+            fail( "Cycle not detected" );
+        }
+        catch ( ParseException pe )
+        {
+            assertEquals( "Circular project dependency: first -> second -> third -> first", pe.getMessage() );
+        }
+    }
+
+    @Test
+    public void changedFilesAffectOwnersAndDependents() throws Exception
+    {
+        VCProject core = createProject( "core/core", "{C}" );
+        VCProject util = createProject( "util/util", "{U}" );
+        VCProject app = createProject( "app/app", "{A}" );
+        VCProject tool = createProject( "tool/tool", "{T}" );
+        core.setIncludeDirectories( Arrays.asList( new File( directory, "include" ) ) );
+        util.setProjectReferences( Arrays.asList( core.getFile() ) );
+        app.setProjectDependencies( Arrays.asList( "{U}" ) );
+        tool.setIncludeDirectories( Arrays.asList( new File( "..\\include".replace( '\\', File.separatorChar ) ) ) );
+
+        ProjectDependencyGraph graph = new ProjectDependencyGraph( Arrays.asList( app, core, util, tool ) );
+
+        assertEquals( Arrays.asList( util, app ),
+                graph.getAffectedProjects( Arrays.asList( new File( directory, "util/src/util.cpp" ) ) ) );
+        assertEquals( Arrays.asList( core, util, app, tool ),
+                graph.getAffectedProjects( Arrays.asList( new File( directory, "include/core.h" ) ) ) );
+        assertEquals( Arrays.asList( tool ), graph.getAffectedProjects( Arrays.asList( tool.getFile() ) ) );
+        assertEquals( graph.getProjects(),
+                graph.getAffectedProjects( Arrays.asList( new File( directory, "README.md" ) ) ) );
+    }
+
+    @Test
+    public void listedFilesAreOwnedWhereverTheyAre() throws Exception
+    {
+        VCProject core = createProject( "core/core", "{C}" );
+        VCProject app = createProject( "app/app", "{A}" );
+        app.setProjectDependencies( Arrays.asList( "{C}" ) );
+        core.setSourceFiles( Arrays.asList( new File( directory, "shared/core.cpp" ),
+                new File( directory, "generated/*/core_*.cpp" ) ) );
+        app.setHeaderFiles( Arrays.asList( new File( directory, "shared/app.h" ) ) );
+
+        ProjectDependencyGraph graph = new ProjectDependencyGraph( Arrays.asList( app, core ) );
+
+        assertEquals( Arrays.asList( core, app ),
+                graph.getAffectedProjects( Arrays.asList( new File( directory, "shared/core.cpp" ) ) ) );
+        assertEquals( Arrays.asList( app ),
+                graph.getAffectedProjects( Arrays.asList( new File( directory, "shared/app.h" ) ) ) );
+        assertEquals( Arrays.asList( core, app ),
+                graph.getAffectedProjects( Arrays.asList( new File( directory, "generated/x86/core_a.cpp" ) ) ) );
+        assertEquals( Arrays.asList( core, app ),
+                graph.getAffectedProjects( Arrays.asList( new File( directory, "shared/other.h" ) ) ) );
+    }
+
+    @Test
+    public void dependenciesAreReadFromSolutionAndProjects() throws Exception
+    {
+        File solutionFile = new File( directory, "graph.sln" );
+        FileUtils.fileWrite( solutionFile, "UTF-8",
+                "Microsoft Visual Studio Solution File, Format Version 12.00\r\n"
+                + "Project(\"{8BC9CEB8-8B4A-11D0-8D11-00A0C91BC942}\") = \"app\", \"app.vcxproj\", \"{A}\"\r\n"
+                + "\tProjectSection(ProjectDependencies) = postProject\r\n"
+                + "\t\t{L} = {L}\r\n"
+                + "\tEndProjectSection\r\n"
+                + "EndProject\r\n"
+                + "Project(\"{8BC9CEB8-8B4A-11D0-8D11-00A0C91BC942}\") = \"lib\", \"lib.vcxproj\", \"{L}\"\r\n"
+                + "EndProject\r\n"
+                + "Project(\"{8BC9CEB8-8B4A-11D0-8D11-00A0C91BC942}\") = \"base\", \"base.vcxproj\", \"{B}\"\r\n"
+                + "EndProject\r\n"
+                + "Global\r\n"
+                + "\tGlobalSection(SolutionConfigurationPlatforms) = preSolution\r\n"
+                + "\t\tRelease|Win32 = Release|Win32\r\n"
+                + "\tEndGlobalSection\r\n"
+                + "\tGlobalSection(ProjectConfigurationPlatforms) = postSolution\r\n"
+                + "\t\t{A}.Release|Win32.ActiveCfg = Release|Win32\r\n"
+                + "\t\t{L}.Release|Win32.ActiveCfg = Release|Win32\r\n"
+                + "\t\t{B}.Release|Win32.ActiveCfg = Release|Win32\r\n"
+                + "\tEndGlobalSection\r\n"
+                + "EndGlobal\r\n" );
+        writeProject( "app", "" );
+        writeProject( "lib", "base.vcxproj" );
+        writeProject( "base", "" );
+
+        VCProjectHolder holder = VCProjectHolder.getVCProjectHolder( solutionFile, true );
+        List<VCProject> vcProjects = holder.getParsedProjects( "Win32", "Release" );
+        ProjectDependencyGraph graph = holder.getDependencyGraph( "Win32", "Release" );
+
+        assertEquals( Arrays.asList( "{L}" ), vcProjects.get( 0 ).getProjectDependencies() );
+        assertEquals( Arrays.asList( vcProjects.get( 2 ), vcProjects.get( 1 ), vcProjects.get( 0 ) ),
+                graph.getProjects() );
+        assertEquals( 3, graph.getCriticalPathLength() );
+        assertEquals( graph.getProjects(),
+                holder.getAffectedProjects( "Win32", "Release", Arrays.asList( solutionFile ) ) );
+    }
+
+    private VCProject createProject( String name, String guid )
+    {
+        VCProject vcProject = new VCProject( name, new File( directory, name + ".vcxproj" ) );
+        vcProject.setGuid( guid );
+        return vcProject;
+    }
+
+    private void writeProject( String name, String reference ) throws Exception
+    {
+        String itemGroup = reference.isEmpty() ? "" : "  <ItemGroup>\n"
+                + "    <ClCompile Include=\"" + name + ".cpp\" />\n"
+                + "    <ProjectReference Include=\"" + reference + "\">\n"
+                + "      <Project>{B}</Project>\n"
+                + "    </ProjectReference>\n"
+                + "  </ItemGroup>\n";
+        FileUtils.fileWrite( new File( directory, name + ".vcxproj" ), "UTF-8",
+                "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<Project>\n" + itemGroup + "</Project>\n" );
+    }
+
+    private static final int PROJECT_COUNT = 20;
+
+    private File directory;
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.org.raje.maven.plugin.msbuild.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test that properties set in imported property sheets are merged into the importing project.
+ */
+public class PropertySheetTest
+{
+    @Before
+    public void createProjects() throws Exception
+    {
+        directory = new File( System.getProperty( "java.io.tmpdir" ), "msbuild-property-sheet-test" );
+        FileUtils.forceMkdir( directory );
+        sheetFile = new File( directory, "common.props" );
+        writeSheet( "SHARED" );
+    }
+
+    @After
+    public void deleteProjects() throws Exception
+    {
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void sheetPropertiesAreMerged() throws Exception
+    {
+        VCProjectParser parser = parse( "first", "..\\common.props" );
+        VCProject vcProject = updateVCProject( parser );
+
+        assertEquals( Arrays.asList( "FIRST", "SHARED" ), vcProject.getPreprocessorDefs() );
+        assertEquals( Arrays.asList( new File( "shared" ), new File( "first" ) ),
+                vcProject.getIncludeDirectories() );
+        assertEquals( Arrays.asList( sheetFile.getCanonicalFile() ), parser.getImportedFiles() );
+    }
+
+    @Test
+    public void changedSheetIsEvaluatedAgain() throws Exception
+    {
+        assertEquals( Arrays.asList( "FIRST", "SHARED" ),
+                updateVCProject( parse( "first", "..\\common.props" ) ).getPreprocessorDefs() );
+
+        long lastModified = sheetFile.lastModified();
+        writeSheet( "CHANGED" );
+        sheetFile.setLastModified( lastModified + 1000 );
+
+        assertEquals( Arrays.asList( "SECOND", "CHANGED" ),
+                updateVCProject( parse( "second", "..\\common.props" ) ).getPreprocessorDefs() );
+    }
+
+    @Test
+    public void unresolvedImportsAreSkipped() throws Exception
+    {
+        VCProjectParser parser = parse( "first", "$(VCTargetsPath)\\Microsoft.Cpp.props" );
+
+        assertEquals( Arrays.asList( "FIRST" ), updateVCProject( parser ).getPreprocessorDefs() );
+        assertTrue( parser.getImportedFiles().isEmpty() );
+    }
+
+    private VCProjectParser parse( String name, String importPath ) throws Exception
+    {
+        File projectDirectory = new File( directory, name );
+        File projectFile = new File( projectDirectory, name + ".vcxproj" );
+        FileUtils.forceMkdir( projectDirectory );
+        FileUtils.fileWrite( projectFile, "UTF-8", "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<Project>\n"
+                + "  <ImportGroup Label=\"PropertySheets\" "
+                + "Condition=\"'$(Configuration)|$(Platform)'=='Release|Win32'\">\n"
+                + "    <Import Project=\"" + importPath.replace( '\\', File.separatorChar ) + "\" />\n"
+                + "  </ImportGroup>\n"
+                + "  <ItemDefinitionGroup Condition=\"'$(Configuration)|$(Platform)'=='Release|Win32'\">\n"
+                + "    <ClCompile>\n"
+                + "      <AdditionalIncludeDirectories>" + name + "</AdditionalIncludeDirectories>\n"
+                + "      <PreprocessorDefinitions>" + name.toUpperCase() + ";%(PreprocessorDefinitions)"
+                + "</PreprocessorDefinitions>\n"
+                + "    </ClCompile>\n"
+                + "  </ItemDefinitionGroup>\n</Project>\n" );
+
+        VCProjectParser parser = new VCProjectParser( projectFile, "Win32", "Release" );
+        parser.parse();
+        return parser;
+    }
+
+    private VCProject updateVCProject( VCProjectParser parser )
+    {
+        VCProject vcProject = new VCProject( "test", parser.getInputFile(), "Win32", "Release" );
+        parser.updateVCProject( vcProject );
+        return vcProject;
+    }
+
+    private void writeSheet( String define ) throws Exception
+    {
+        FileUtils.fileWrite( sheetFile, "UTF-8", "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<Project>\n"
+                + "  <ItemDefinitionGroup>\n"
+                + "    <ClCompile>\n"
+                + "      <AdditionalIncludeDirectories>shared;%(AdditionalIncludeDirectories)"
+                + "</AdditionalIncludeDirectories>\n"
+                + "      <PreprocessorDefinitions>" + define + ";%(PreprocessorDefinitions)</PreprocessorDefinitions>\n"
+                + "    </ClCompile>\n"
+                + "  </ItemDefinitionGroup>\n</Project>\n" );
+    }
+
+    private File directory;
+    private File sheetFile;
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.org.raje.maven.plugin.msbuild.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test parsing of every project in a solution.
+ */
+public class VCProjectHolderTest
+{
+    @Before
+    public void createSolution() throws Exception
+    {
+        directory = new File( System.getProperty( "java.io.tmpdir" ), "msbuild-holder-test" );
+        FileUtils.forceMkdir( directory );
+
+        StringBuilder projects = new StringBuilder();
+        StringBuilder configurations = new StringBuilder();
+        for ( int i = 0; i < PROJECT_COUNT; i++ )
+        {
+            String guid = String.format( "{00000000-0000-0000-0000-%012d}", i );
+            projects.append( "Project(\"{8BC9CEB8-8B4A-11D0-8D11-00A0C91BC942}\") = \"project" ).append( i )
+                    .append( "\", \"project" ).append( i ).append( ".vcxproj\", \"" ).append( guid )
+                    .append( "\"\nEndProject\n" );
+            configurations.append( "        " ).append( guid ).append( ".Release|Win32.ActiveCfg = Release|Win32\n" )
+                    .append( "        " ).append( guid ).append( ".Release|Win32.Build.0 = Release|Win32\n" );
+
+            FileUtils.fileWrite( new File( directory, "project" + i + ".vcxproj" ), "UTF-8",
+                    "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<Project>\n"
+                    + "  <ItemDefinitionGroup Condition=\"'$(Configuration)|$(Platform)'=='Release|Win32'\">\n"
+                    + "    <ClCompile><PreprocessorDefinitions>PROJECT" + i + "</PreprocessorDefinitions></ClCompile>\n"
+                    + "  </ItemDefinitionGroup>\n</Project>\n" );
+        }
+
+        solutionFile = new File( directory, "holder-test.sln" );
+        FileUtils.fileWrite( solutionFile, "UTF-8", "Microsoft Visual Studio Solution File, Format Version 11.00\n"
+                + projects
+                + "Global\n"
+                + "    GlobalSection(SolutionConfigurationPlatforms) = preSolution\n"
+                + "        Release|Win32 = Release|Win32\n"
+                + "    EndGlobalSection\n"
+                + "    GlobalSection(ProjectConfigurationPlatforms) = postSolution\n"
+                + configurations
+                + "    EndGlobalSection\n"
+                + "EndGlobal\n" );
+    }
+
+    @After
+    public void deleteSolution() throws Exception
+    {
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void projectsKeepSolutionOrder() throws Exception
+    {
+        VCProjectHolder holder = new VCProjectHolder( solutionFile, true, new HashMap<String, String>() );
+        List<VCProject> vcProjects = holder.getParsedProjects( "Win32", "Release" );
+
+        List<String> expected = new ArrayList<String>();
+        List<String> actual = new ArrayList<String>();
+        for ( int i = 0; i < PROJECT_COUNT; i++ )
+        {
+            expected.add( "project" + i + ":PROJECT" + i );
+            actual.add( vcProjects.get( i ).getName() + ":" + vcProjects.get( i ).getPreprocessorDefs().get( 0 ) );
+        }
+        assertEquals( expected, actual );
+    }
+
+    @Test
+    public void holdersAreSharedPerEnvironment() throws Exception
+    {
+        Map<String, String> envVariables = new HashMap<String, String>();
+        envVariables.put( "CXXTEST_HOME", "cxxtest" );
+
+        VCProjectHolder plain = VCProjectHolder.getVCProjectHolder( solutionFile, true );
+        VCProjectHolder withEnv = VCProjectHolder.getVCProjectHolder( solutionFile, true, envVariables );
+
+        assertSame( plain, VCProjectHolder.getVCProjectHolder( solutionFile, true, null ) );
+        assertSame( withEnv, VCProjectHolder.getVCProjectHolder( solutionFile, true,
+                new HashMap<String, String>( envVariables ) ) );
+        assertNotSame( plain, withEnv );
+    }
+
+    @Test
+    public void concurrentCallersShareOneParse() throws Exception
+    {
+        final VCProjectHolder holder = new VCProjectHolder( solutionFile, true, null );
+        ExecutorService executor = Executors.newFixedThreadPool( THREAD_COUNT );
+        try
+        {
+            List<Future<List<VCProject>>> results = new ArrayList<Future<List<VCProject>>>();
+            for ( int i = 0; i < THREAD_COUNT; i++ )
+            {
+                results.add( executor.submit( new Callable<List<VCProject>>()
+                {
+                    @Override
+                    public List<VCProject> call() throws Exception
+                    {
+                        return holder.getParsedProjects( "Win32", "Release" );
+                    }
+                } ) );
+            }
+            for ( Future<List<VCProject>> result : results )
+            {
+                assertSame( results.get( 0 ).get(), result.get() );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void inputFilesIncludeImportedSheets() throws Exception
+    {
+        File sheetFile = new File( directory, "common.props" );
+        FileUtils.fileWrite( sheetFile, "UTF-8", "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<Project />\n" );
+        File projectFile = new File( directory, "project0.vcxproj" );
+        FileUtils.fileWrite( projectFile, "UTF-8", FileUtils.fileRead( projectFile, "UTF-8" )
+                .replace( "</Project>", "  <Import Project=\"common.props\" />\n</Project>" ) );
+
+        List<File> inputFiles = new VCProjectHolder( solutionFile, true, null ).getInputFiles( "Win32", "Release" );
+        assertTrue( inputFiles.contains( solutionFile ) );
+        assertTrue( inputFiles.contains( projectFile ) );
+        assertTrue( inputFiles.contains( sheetFile.getCanonicalFile() ) );
+    }
+
+    @Test
+    public void changedProjectIsParsedAgain() throws Exception
+    {
+        VCProjectHolder holder = new VCProjectHolder( solutionFile, true, null );
+        List<VCProject> vcProjects = holder.getParsedProjects( "Win32", "Release" );
+        assertSame( vcProjects, holder.getParsedProjects( "Win32", "Release" ) );
+
+        File projectFile = new File( directory, "project0.vcxproj" );
+        long lastModified = projectFile.lastModified();
+        FileUtils.fileWrite( projectFile, "UTF-8", FileUtils.fileRead( projectFile, "UTF-8" )
+                .replace( "PROJECT0", "CHANGED" ) );
+        projectFile.setLastModified( lastModified + 1000 );
+        assertSame( vcProjects, holder.getParsedProjects( "Win32", "Release" ) );
+
+        VCProjectHolder.checkForChanges();
+        List<VCProject> reparsed = holder.getParsedProjects( "Win32", "Release" );
+        assertNotSame( vcProjects, reparsed );
+        assertEquals( "CHANGED", reparsed.get( 0 ).getPreprocessorDefs().get( 0 ) );
+    }
+
+    private static final int THREAD_COUNT = 4;
+    private static final int PROJECT_COUNT = 50;
+
+    private File directory;
+    private File solutionFile;
+}
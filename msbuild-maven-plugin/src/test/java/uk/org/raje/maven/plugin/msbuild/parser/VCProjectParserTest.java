@@ -334,6 +334,60 @@ public class VCProjectParserTest
     }    
     
     
+    @Test
+    public void testOneModelForAllPlatformsAndConfigs()
+            throws ParserConfigurationException, ParseException, SAXException, IOException
+    {
+        final File projectFile = getResourceFile( TEST_PROJECT_PREPROCESSOR_DEFS );
+        final VCProjectModel projectModel = VCProjectModel.read( projectFile );
+
+        for ( int p = 0; p < TEST_PLATFORMS.length; p++ )
+        {
+            for ( int c = 0; c < TEST_CONFIGURATIONS.length; c++ )
+            {
+                VCProject expectedVCProject = 
+                        new VCProject( TEST_PROJECT_NAMES[0], projectFile, TEST_PLATFORMS[p], TEST_CONFIGURATIONS[c] );
+
+                expectedVCProject.setPreprocessorDefs( Arrays.asList( TEST_PREPROCESSOR_DEFS[p][c] ) );
+                expectedVCProject.setOutputDirectory( getOutputDirectory( projectFile, p, c ) );
+                testProject( expectedVCProject, null, Collections.<String, String> emptyMap(), projectModel );
+            }
+        }
+    }
+    
+    @Test
+    public void testSourceAndHeaderItems()
+            throws ParserConfigurationException, ParseException, SAXException, IOException
+    {
+        final File projectFile = getResourceFile( TEST_PROJECT_SOURCES );
+        final File projectDir = projectFile.getParentFile();
+        final File header = new File( projectDir, "include" + File.separator + "hello-world.h" );
+        final File source = new File( projectDir, "hello-world.cpp" );
+        final File debugSource = new File( projectDir, "debug-only.cpp" );
+        final File generated = new File( projectDir, "generated" + File.separator + "*.cpp" );
+        final File shared = new File( projectDir, ".." + File.separator + "shared" + File.separator + "trace.cpp" );
+
+        VCProject debugProject = parseProject( projectFile, TEST_CONFIGURATIONS[DEBUG] );
+        assertEquals( Arrays.asList( source, debugSource, generated, shared ), debugProject.getSourceFiles() );
+        assertEquals( Arrays.asList( header ), debugProject.getHeaderFiles() );
+
+        VCProject releaseProject = parseProject( projectFile, TEST_CONFIGURATIONS[RELEASE] );
+        assertEquals( Arrays.asList( source, generated ), releaseProject.getSourceFiles() );
+        assertEquals( Arrays.asList( header ), releaseProject.getHeaderFiles() );
+    }
+
+    private VCProject parseProject( File projectFile, String configuration )
+            throws ParserConfigurationException, ParseException, SAXException, IOException
+    {
+        VCProject vcProject = new VCProject( TEST_PROJECT_NAMES[0], projectFile, TEST_PLATFORMS[WIN32], 
+                configuration );
+        VCProjectParser projectParser = new VCProjectParser( projectFile, null, TEST_PLATFORMS[WIN32], 
+                configuration );
+        projectParser.parse();
+        projectParser.updateVCProject( vcProject );
+        return vcProject;
+    }
+
     private void testProject( VCProject expectedVCProject, File solutionFile )
             throws ParserConfigurationException, ParseException, SAXException, IOException
     {
@@ -342,6 +396,13 @@ public class VCProjectParserTest
 
     private void testProject( VCProject expectedVCProject, File solutionFile, Map<String, String> envVariables )
             throws ParserConfigurationException, ParseException, SAXException, IOException
+    {
+        testProject( expectedVCProject, solutionFile, envVariables, null );
+    }
+
+    private void testProject( VCProject expectedVCProject, File solutionFile, Map<String, String> envVariables,
+            VCProjectModel projectModel )
+            throws ParserConfigurationException, ParseException, SAXException, IOException
     {
         VCProject vcTestProject = new VCProject( expectedVCProject.getName(), expectedVCProject.getFile(), 
                 expectedVCProject.getPlatform(), expectedVCProject.getConfiguration() );
@@ -350,6 +411,7 @@ public class VCProjectParserTest
                 vcTestProject.getPlatform(), vcTestProject.getConfiguration() );
 
         projectParser.setEnvVariables( envVariables );
+        projectParser.setProjectModel( projectModel );
         projectParser.parse();
         projectParser.updateVCProject( vcTestProject );
         
@@ -399,6 +461,9 @@ public class VCProjectParserTest
     private static final String TEST_PROJECT_RELATIVE_OUTDIR = CONFIG_TEST_RESOURCE_DIR
             + "configurations-project/configurations-relative-outdir-test.vcxproj";    
 
+    private static final String TEST_PROJECT_SOURCES = CONFIG_TEST_RESOURCE_DIR
+            + "configurations-project/configurations-sources-test.vcxproj";    
+
     private static final String TEST_PROJECT_ENVVARIABLE = CPPCHECK_TEST_RESOURCE_DIR
             + "hello-world-env-variables/hello-world-app.vcxproj";    
 
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.util.List;
 
+import org.codehaus.plexus.util.FileUtils;
 import org.junit.Test;
 import org.junit.Assert;
 
@@ -66,6 +67,42 @@ public class VCSolutionParserTest
         }
     }
 
+    @Test
+    public void testWhitespaceAndSolutionFolders() throws Exception
+    {
+        File solutionFile = File.createTempFile( "msbuild-solution-test", ".sln" );
+        try
+        {
+            FileUtils.fileWrite( solutionFile, "UTF-8", 
+                    "Microsoft Visual Studio Solution File, Format Version 12.00\r\n"
+                    + "Project(\"{2150E333-8FDC-42A3-9474-1A3956D46DE8}\") = \"tests\", \"tests\", \"{B1}\"\r\n"
+                    + "EndProject\r\n"
+                    + "\tProject( \"{8BC9CEB8-8B4A-11D0-8D11-00A0C91BC942}\" )=\"hello-world\","
+                    + "\"hello\\hello.vcxproj\" , \"{A1}\" \r\n"
+                    + "EndProject\r\n"
+                    + "Global\r\n"
+                    + "\tGlobalSection(SolutionConfigurationPlatforms) = preSolution\r\n"
+                    + "\t\tRelease | Win32 = Release|Win32\r\n"
+                    + "\r\n"
+                    + "\tEndGlobalSection\r\n"
+                    + "\tGlobalSection(ProjectConfigurationPlatforms) = postSolution\r\n"
+                    + "\t\t{A1}.Release|Win32.ActiveCfg = Debug | x64\r\n"
+                    + "\t\t{A1}.Release|Win32.Build.0 = Debug|x64\r\n"
+                    + "\tEndGlobalSection\r\n"
+                    + "EndGlobal\r\n" );
+            List<VCProject> vcProjects = parseSolution( solutionFile, TEST_PLATFORMS[0], TEST_CONFIGURATIONS[1] );
+
+            Assert.assertEquals( 1, vcProjects.size() );
+            validateProject( vcProjects.get( 0 ), TEST_PROJECT_NAMES_SINGLE[0], TEST_PLATFORMS[1], 
+                    TEST_CONFIGURATIONS[0] );
+            Assert.assertEquals( "{A1}", vcProjects.get( 0 ).getGuid() );
+        }
+        finally
+        {
+            FileUtils.forceDelete( solutionFile );
+        }
+    }
+
     private void testSingleProjectSolution( String platform, String configuration )
     {
         String solutionPath = TEST_RESOURCE_DIR + "hello-world-solution/hello-world.sln";
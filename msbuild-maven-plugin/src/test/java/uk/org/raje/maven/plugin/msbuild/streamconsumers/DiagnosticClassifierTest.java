@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.org.raje.maven.plugin.msbuild.streamconsumers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import uk.org.raje.maven.plugin.msbuild.streamconsumers.DiagnosticClassifier.Rule;
+import uk.org.raje.maven.plugin.msbuild.streamconsumers.DiagnosticClassifier.Severity;
+
+/**
+ * Test classification of tool output lines.
+ */
+public class DiagnosticClassifierTest
+{
+    @Test
+    public void defaultRules()
+    {
+        DiagnosticClassifier classifier = DiagnosticClassifier.getDefault();
+        assertEquals( Severity.ERROR, classifier.classify( "foo.cpp(7): error C2143: syntax error" ) );
+        assertEquals( Severity.ERROR, classifier.classify( "c1xx : fatal error C1083: Cannot open source file" ) );
+        assertEquals( Severity.ERROR, classifier.classify( "ERROR: message" ) );
+        assertEquals( Severity.WARNING, classifier.classify( "foo.obj : warning LNK4099: PDB not found" ) );
+        assertEquals( Severity.WARNING, classifier.classify( "Warning: message" ) );
+        assertEquals( Severity.INFO, classifier.classify( "Build started 01/01/2013 12:00:00." ) );
+        assertEquals( Severity.INFO, classifier.classify( "error.cpp" ) );
+        assertEquals( Severity.INFO, classifier.classify( "" ) );
+    }
+
+    @Test
+    public void errorBeatsWarning()
+    {
+        assertEquals( Severity.ERROR,
+                DiagnosticClassifier.getDefault().classify( "warning: treated as error: C4996" ) );
+    }
+
+    @Test
+    public void customRulesInOrder()
+    {
+        DiagnosticClassifier classifier = new DiagnosticClassifier( Arrays.asList(
+                new Rule( Severity.WARNING, "style", "\\(style\\)" ),
+                new Rule( Severity.ERROR, "", "^FAILED" ) ) );
+        assertEquals( Severity.WARNING, classifier.classify( "[foo.cpp:3]: (style) Variable 'x' is unused" ) );
+        assertEquals( Severity.INFO, classifier.classify( "[foo.cpp:3]: STYLE only in keyword" ) );
+        assertEquals( Severity.ERROR, classifier.classify( "FAILED tests" ) );
+        assertEquals( Severity.INFO, classifier.classify( "error: not a rule here" ) );
+    }
+}
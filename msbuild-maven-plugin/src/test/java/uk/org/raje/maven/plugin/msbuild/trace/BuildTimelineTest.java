@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013 Andrew Everitt, Andrew Heckford, Daniele Masato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.org.raje.maven.plugin.msbuild.trace;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test recording and export of the build timeline.
+ */
+public class BuildTimelineTest
+{
+    @After
+    public void disableTimeline()
+    {
+        BuildTimeline.getInstance().setEnabled( false );
+    }
+
+    @Test
+    public void writesCompleteEvents() throws Exception
+    {
+        BuildTimeline timeline = BuildTimeline.getInstance();
+        timeline.setEnabled( true );
+        timeline.start( "Parse project \"hello-world\"", "parse" ).arg( "platform", "Win32" ).end();
+
+        File traceFile = new File( "target/unit-tests/trace/msbuild-timeline.json" );
+        timeline.writeTo( traceFile );
+        String trace = FileUtils.fileRead( traceFile );
+
+        assertTrue( trace.startsWith( "{\"displayTimeUnit\":\"ms\",\"traceEvents\":[" ) );
+        assertTrue( trace.contains( "\"name\":\"Parse project \\\"hello-world\\\"\",\"cat\":\"parse\",\"ph\":\"X\"" ) );
+        assertTrue( trace.contains( "\"args\":{\"platform\":\"Win32\"}" ) );
+    }
+
+    @Test
+    public void disabledTimelineRecordsNothing() throws Exception
+    {
+        BuildTimeline timeline = BuildTimeline.getInstance();
+        timeline.start( "not recorded", "test" ).end();
+
+        File traceFile = new File( "target/unit-tests/trace/disabled-timeline.json" );
+        timeline.writeTo( traceFile );
+        assertFalse( FileUtils.fileRead( traceFile ).contains( "not recorded" ) );
+    }
+}